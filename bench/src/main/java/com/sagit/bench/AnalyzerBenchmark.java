@@ -0,0 +1,83 @@
+package com.sagit.bench;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.EnumDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.sagit.semantic.JavaSemanticAnalyzer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JavaSemanticAnalyzer.analyze across file sizes, against the previous
+ * five-findAll implementation as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+    @Param({"20", "200", "2000"})
+    int members;
+
+    String source;
+    CompilationUnit parsed;
+    final JavaSemanticAnalyzer analyzer = new JavaSemanticAnalyzer();
+    final JavaSemanticAnalyzer fastAnalyzer = new JavaSemanticAnalyzer(JavaSemanticAnalyzer.Mode.FAST);
+    static final ParserConfiguration CONFIG = new ParserConfiguration()
+            .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17);
+
+    @Setup
+    public void setup() {
+        source = JavaSourceFixture.source("bench", "Fixture", members, 42L);
+        parsed = new JavaParser(CONFIG).parse(source).getResult().orElseThrow();
+    }
+
+    /** Parse + single visitor walk (current implementation). */
+    @Benchmark
+    public JavaSemanticAnalyzer.Stats analyze() {
+        return analyzer.analyze(source);
+    }
+
+    /** Grammar-checking declaration scan (hook default), no AST. */
+    @Benchmark
+    public JavaSemanticAnalyzer.Stats analyzeFast() {
+        return fastAnalyzer.analyze(source);
+    }
+
+    /** Parse + five findAll traversals (pre-visitor implementation). */
+    @Benchmark
+    public JavaSemanticAnalyzer.Stats analyzeFindAllBaseline() {
+        CompilationUnit cu = new JavaParser(CONFIG).parse(source).getResult().orElseThrow();
+        return countFindAll(cu);
+    }
+
+    /** Counting only, on a pre-parsed tree: isolates traversal cost. */
+    @Benchmark
+    public void countVisitor(Blackhole bh) {
+        bh.consume(analyzer.analyze(parsed));
+    }
+
+    @Benchmark
+    public void countFindAllBaseline(Blackhole bh) {
+        bh.consume(countFindAll(parsed));
+    }
+
+    static JavaSemanticAnalyzer.Stats countFindAll(CompilationUnit cu) {
+        JavaSemanticAnalyzer.Stats s = new JavaSemanticAnalyzer.Stats();
+        s.classes     = cu.findAll(ClassOrInterfaceDeclaration.class, n -> !n.isInterface()).size();
+        s.interfaces_ = cu.findAll(ClassOrInterfaceDeclaration.class, ClassOrInterfaceDeclaration::isInterface).size();
+        s.enums_      = cu.findAll(EnumDeclaration.class).size();
+        s.methods     = cu.findAll(MethodDeclaration.class).size();
+        s.fields      = cu.findAll(FieldDeclaration.class).size();
+        return s;
+    }
+}
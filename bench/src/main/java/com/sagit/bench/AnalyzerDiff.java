@@ -0,0 +1,82 @@
+package com.sagit.bench;
+
+import com.sagit.semantic.JavaSemanticAnalyzer;
+import com.sagit.semantic.JavaSemanticAnalyzer.Stats;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Differential check of the analyzer modes: every .java file under the given directories (and
+ * --generated fixtures of {@link JavaSourceFixture}) is counted by FAST's declaration scanner and
+ * by FULL's JavaParser walk, and the two {@link Stats} must agree wherever the scanner vouched for
+ * the file. Prints each mismatch, how many files the scanner passed on to the parser, and the time
+ * each side took; exits 1 on any mismatch.
+ *
+ *   java -cp bench/target/benchmarks.jar com.sagit.bench.AnalyzerDiff src/main/java ~/src/jdk/src --generated 200
+ */
+public final class AnalyzerDiff {
+
+    public static void main(String[] args) throws Exception {
+        List<Path> roots = new ArrayList<>();
+        int generated = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--generated")) generated = Integer.parseInt(args[++i]);
+            else roots.add(Path.of(args[i]));
+        }
+        if (roots.isEmpty() && generated == 0) roots.add(Path.of("src/main/java"));
+
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (Path root : roots) {
+            try (Stream<Path> s = Files.walk(root)) {
+                for (Path f : (Iterable<Path>) s.filter(p -> p.toString().endsWith(".java")).sorted()::iterator) {
+                    sources.put(f.toString(), new String(Files.readAllBytes(f), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        for (int i = 0; i < generated; i++) {
+            sources.put("generated-" + i, JavaSourceFixture.source("bench", "Fixture" + i, 10 + i % 500, 42L + i));
+        }
+
+        JavaSemanticAnalyzer fast = new JavaSemanticAnalyzer(JavaSemanticAnalyzer.Mode.FAST);
+        JavaSemanticAnalyzer full = new JavaSemanticAnalyzer(JavaSemanticAnalyzer.Mode.FULL);
+        int scanned = 0, parsed = 0, mismatches = 0;
+        long fastNanos = 0, fullNanos = 0;
+        for (Map.Entry<String, String> e : sources.entrySet()) {
+            String src = e.getValue();
+            long t0 = System.nanoTime();
+            Stats f = fast.withoutParse(src);
+            long t1 = System.nanoTime();
+            Stats p = full.analyze(src);
+            long t2 = System.nanoTime();
+            if (f == null) {
+                parsed++;
+                continue;
+            }
+            scanned++;
+            fastNanos += t1 - t0;
+            fullNanos += t2 - t1;
+            String a = describe(f), b = describe(p);
+            if (!a.equals(b)) {
+                mismatches++;
+                System.out.printf("MISMATCH %s%n  fast %s%n  full %s%n", e.getKey(), a, b);
+            }
+        }
+        System.out.printf("%d files: %d scanned (%d mismatches), %d passed to the parser%n",
+                sources.size(), scanned, mismatches, parsed);
+        System.out.printf("scanned files: fast %d ms, full %d ms%n", fastNanos / 1_000_000, fullNanos / 1_000_000);
+        if (mismatches > 0) System.exit(1);
+    }
+
+    static String describe(Stats s) {
+        return "classes=" + s.classes + " interfaces=" + s.interfaces_ + " enums=" + s.enums_
+                + " methods=" + s.methods + " fields=" + s.fields + " constructors=" + s.constructors
+                + " records=" + s.records + " annotations=" + s.annotations + " depth=" + s.depth;
+    }
+}
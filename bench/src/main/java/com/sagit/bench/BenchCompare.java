@@ -0,0 +1,87 @@
+package com.sagit.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compare two JMH JSON result files (`-rf json -rff FILE`), benchmark by benchmark and
+ * parameter set. A result is a regression when it is worse by more than the threshold (percent,
+ * default 10) and by more than the two runs' combined error; "worse" is lower for throughput
+ * modes and higher for time modes. Exits 1 when there is any regression.
+ *
+ *   java -cp bench/target/benchmarks.jar com.sagit.bench.BenchCompare base.json new.json --threshold 5
+ */
+public final class BenchCompare {
+
+    record Result(String mode, double score, double error, String unit) {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: BenchCompare BASE.json NEW.json [--threshold PERCENT]");
+            System.exit(2);
+        }
+        double threshold = 10;
+        for (int i = 2; i + 1 < args.length; i++) if (args[i].equals("--threshold")) threshold = Double.parseDouble(args[i + 1]);
+
+        Map<String, Result> base = load(Path.of(args[0])), next = load(Path.of(args[1]));
+        int regressions = 0;
+        System.out.printf(Locale.ROOT, "%-72s %14s %14s %-8s %8s%n", "benchmark", "base", "new", "unit", "change");
+        for (Map.Entry<String, Result> e : base.entrySet()) {
+            Result a = e.getValue(), b = next.get(e.getKey());
+            if (b == null) {
+                System.out.printf(Locale.ROOT, "%-72s %14.3f %14s %-8s%n", e.getKey(), a.score(), "-", a.unit());
+                continue;
+            }
+            boolean higherIsBetter = a.mode().equals("thrpt");
+            double change = a.score() == 0 ? 0 : (b.score() - a.score()) / a.score() * 100;
+            double worse = higherIsBetter ? -change : change;
+            double noise = (finite(a.error()) + finite(b.error()));
+            boolean regressed = worse > threshold && Math.abs(b.score() - a.score()) > noise;
+            boolean improved = worse < -threshold && Math.abs(b.score() - a.score()) > noise;
+            if (regressed) regressions++;
+            System.out.printf(Locale.ROOT, "%-72s %14.3f %14.3f %-8s %+7.1f%%%s%n", e.getKey(), a.score(), b.score(),
+                    b.unit(), change, regressed ? "  REGRESSION" : improved ? "  improved" : "");
+        }
+        for (Map.Entry<String, Result> e : next.entrySet()) {
+            if (!base.containsKey(e.getKey())) {
+                System.out.printf(Locale.ROOT, "%-72s %14s %14.3f %-8s  (new)%n", e.getKey(), "-", e.getValue().score(), e.getValue().unit());
+            }
+        }
+        System.out.printf(Locale.ROOT, "%d regression(s) beyond %.1f%%%n", regressions, threshold);
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    // "AnalyzerBenchmark.analyze members=200" -> result
+    @SuppressWarnings("unchecked")
+    static Map<String, Result> load(Path file) throws Exception {
+        Map<String, Result> out = new LinkedHashMap<>();
+        for (Object o : (List<Object>) Json.parse(Files.readString(file))) {
+            Map<String, Object> run = (Map<String, Object>) o;
+            String name = ((String) run.get("benchmark")).replaceFirst("^com\\.sagit\\.bench\\.", "");
+            Map<String, Object> params = (Map<String, Object>) run.getOrDefault("params", Map.of());
+            StringBuilder key = new StringBuilder(name);
+            new TreeMap<>(params).forEach((k, v) -> key.append(' ').append(k).append('=').append(v));
+            Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+            out.put(key.toString(), new Result((String) run.get("mode"), number(metric.get("score")),
+                    number(metric.get("scoreError")), (String) metric.get("scoreUnit")));
+        }
+        return out;
+    }
+
+    private static double number(Object v) {
+        if (v instanceof Double d) return d;
+        if (v instanceof String s) {
+            try { return Double.parseDouble(s); } catch (NumberFormatException e) { return Double.NaN; }
+        }
+        return Double.NaN;
+    }
+
+    private static double finite(double v) {
+        return Double.isFinite(v) ? v : 0;
+    }
+}
@@ -0,0 +1,92 @@
+package com.sagit.bench;
+
+import com.sagit.git.GitService;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GitService on a generated repository ({@link RepoFixture}): tree-to-tree and staged diffs
+ * (with the configured rename detection), and blob loading through the shared blob cache
+ * versus straight from the object database.
+ *
+ *   java -jar bench/target/benchmarks.jar GitBenchmark -p files=20000 -p changed=1000 -p layout=loose
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitBenchmark {
+
+    @Param({"2000"})
+    int files;
+
+    @Param({"100"})
+    int changed;
+
+    @Param({"packed"})
+    String layout;
+
+    /** Blobs read per blob-loading invocation. */
+    static final int BLOBS = 256;
+
+    Path dir;
+    RepoFixture.Fixture fixture;
+    Repository repo;
+    GitService gs;
+    ObjectId[] blobs;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("sagit-git-bench");
+        fixture = RepoFixture.create(dir, files, changed, !"loose".equals(layout), 42L);
+        repo = new FileRepositoryBuilder().setWorkTree(dir.toFile()).setGitDir(dir.resolve(".git").toFile()).build();
+        GitService.setResident(repo); // what the daemon does: every GitService uses this Repository
+        gs = GitService.openFromWorkingDir();
+        blobs = new ObjectId[Math.min(BLOBS, fixture.blobs().size())];
+        for (int i = 0; i < blobs.length; i++) blobs[i] = fixture.blobs().get(i * (fixture.blobs().size() / blobs.length));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        gs.close();
+        GitService.setResident(null);
+        repo.close();
+        RepoFixture.delete(dir);
+    }
+
+    /** base..head: modifies, adds, deletes and renames. */
+    @Benchmark
+    public List<DiffEntry> diffBetween() throws Exception {
+        return gs.diffBetween(fixture.baseTree(), fixture.headTree());
+    }
+
+    /** Index (head plus staged modifications) against HEAD, as the commit hooks run it. */
+    @Benchmark
+    public List<DiffEntry> diffStagedAgainstHead() throws Exception {
+        return gs.diffStagedAgainstHead();
+    }
+
+    /** GitService.loadBlob: the shared blob cache after the first invocation. */
+    @Benchmark
+    public void loadBlobCached(Blackhole bh) throws Exception {
+        for (ObjectId id : blobs) bh.consume(gs.loadBlob(id));
+    }
+
+    /** The miss path of loadBlob: open and inflate through the thread's reader. */
+    @Benchmark
+    public void loadBlobFromOdb(Blackhole bh) throws Exception {
+        for (ObjectId id : blobs) bh.consume(gs.reader().open(id, Constants.OBJ_BLOB).getBytes());
+    }
+}
@@ -0,0 +1,237 @@
+package com.sagit.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * End-to-end hook latency: generate a {@link SyntheticRepo}, install the hooks with
+ * {@code sagit setup}, then make real {@code git commit} runs (message drafted by the hooks,
+ * {@code GIT_EDITOR=true}) and time prepare-commit-msg, commit-msg and post-commit separately.
+ * Per-hook times come from git's own trace2 event stream (child_start / child_exit of class
+ * "hook"), so they include the JVM start and nothing else; the whole commit is timed as well.
+ *
+ * Writes a JSON report (p50/p95/p99 per hook). With --baseline, compares p50 and p95 against an
+ * earlier report and exits 1 when one is slower by more than --threshold percent and --slack-ms.
+ *
+ *   java -cp bench/target/benchmarks.jar com.sagit.bench.HookLatencyHarness \
+ *        --jar target/sagit-0.1.0.jar --files 5000 --history 100 --commits 30 --report hooks.json
+ *   ... --daemon --baseline hooks-base.json --threshold 20
+ */
+public final class HookLatencyHarness {
+
+    static final List<String> HOOKS = List.of("prepare-commit-msg", "commit-msg", "post-commit");
+    static final String COMMIT = "commit"; // whole `git commit`, hooks included
+    static final List<String> COMPARED = List.of("p50", "p95");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            boolean flag = i + 1 == args.length || args[i + 1].startsWith("--");
+            opt.put(args[i], flag ? "true" : args[++i]);
+        }
+        Path jar = Path.of(opt.getOrDefault("--jar", "target/sagit-0.1.0.jar")).toAbsolutePath();
+        int commits = Integer.parseInt(opt.getOrDefault("--commits", "30"));
+        int warmup = Integer.parseInt(opt.getOrDefault("--warmup", "3"));
+        boolean daemon = opt.containsKey("--daemon"), cds = opt.containsKey("--cds"), keep = opt.containsKey("--keep");
+        Path report = Path.of(opt.getOrDefault("--report", "hook-latency.json"));
+        if (Files.notExists(jar)) throw new IllegalArgumentException("sagit jar not found: " + jar + " (mvn package, or --jar)");
+        if (commits < 1 || warmup < 0) throw new IllegalArgumentException("--commits must be >= 1 and --warmup >= 0");
+
+        SyntheticRepo.Options o = SyntheticRepo.options(opt);
+        Path dir = opt.containsKey("--dir") ? Path.of(opt.get("--dir")).toAbsolutePath() : Files.createTempDirectory("sagit-hooks");
+        if (Files.exists(dir.resolve(".git"))) throw new IllegalArgumentException("already a repository: " + dir);
+        Path trace = Files.createTempFile("sagit-trace2", ".json");
+        int regressions = 0;
+        try {
+            long t0 = System.nanoTime();
+            List<String> paths = SyntheticRepo.create(dir, o);
+            System.err.printf("generated %s: %d files, %d commits (%d ms)%n", dir, paths.size(), o.history() + 1,
+                    (System.nanoTime() - t0) / 1_000_000);
+
+            List<String> setup = new ArrayList<>(List.of(java(), "-jar", jar.toString(), "setup"));
+            if (cds) setup.add("--cds");
+            run(dir, List.of(), setup.toArray(String[]::new));
+            if (daemon) {
+                run(dir, List.of(), java(), "-jar", dir.resolve(".sagit/sagit.jar").toString(), "daemon", "start");
+                // the POSIX hooks reach the daemon through nc and quietly start the jar without it
+                if (output(dir, "sh", "-c", "command -v nc || echo missing").contains("missing")) {
+                    System.err.println("warning: nc not on PATH; hooks will start the jar instead of using the daemon");
+                }
+            }
+
+            Map<String, List<Double>> samples = new LinkedHashMap<>();
+            for (String h : HOOKS) samples.put(h, new ArrayList<>());
+            samples.put(COMMIT, new ArrayList<>());
+
+            Random rnd = new Random(o.seed() ^ 0x5a617);
+            for (int c = 1; c <= warmup + commits; c++) {
+                SyntheticRepo.Step s = SyntheticRepo.step(rnd, paths, o.history() + c, o);
+                SyntheticRepo.apply(dir, s, o.seed() + o.history() + c);
+                for (Map.Entry<String, String> e : s.renamed().entrySet()) {
+                    paths.set(paths.indexOf(e.getKey()), e.getValue());
+                }
+                run(dir, List.of(), "git", "add", "-A");
+
+                Files.deleteIfExists(trace);
+                long start = System.nanoTime();
+                run(dir, List.of("GIT_TRACE2_EVENT=" + trace, "GIT_EDITOR=true"), "git", "commit", "-q");
+                double wall = (System.nanoTime() - start) / 1e6;
+                Map<String, Double> hooks = hookTimes(Files.readAllLines(trace));
+                for (String h : HOOKS) {
+                    if (!hooks.containsKey(h)) throw new IllegalStateException(h + " did not run (hooks not installed?)");
+                }
+                if (c <= warmup) continue;
+                hooks.forEach((h, ms) -> samples.computeIfAbsent(h, k -> new ArrayList<>()).add(ms));
+                samples.get(COMMIT).add(wall);
+            }
+            Map<String, Map<String, Double>> stats = new LinkedHashMap<>();
+            samples.forEach((h, v) -> stats.put(h, stats(v)));
+            String json = toJson(o, commits, daemon, cds, stats);
+            Files.writeString(report, json);
+            print(stats);
+            System.out.println("report: " + report.toAbsolutePath());
+
+            if (opt.containsKey("--baseline")) {
+                double threshold = Double.parseDouble(opt.getOrDefault("--threshold", "20"));
+                double slack = Double.parseDouble(opt.getOrDefault("--slack-ms", "5"));
+                regressions = compare(Path.of(opt.get("--baseline")), stats, threshold, slack);
+                System.out.printf(Locale.ROOT, "%d regression(s) beyond %.1f%% and %.0f ms%n", regressions, threshold, slack);
+            }
+        } finally {
+            if (daemon && Files.exists(dir.resolve(".sagit/sagit.jar"))) {
+                output(dir, java(), "-jar", dir.resolve(".sagit/sagit.jar").toString(), "daemon", "stop");
+            }
+            Files.deleteIfExists(trace);
+            if (!keep && !opt.containsKey("--dir")) RepoFixture.delete(dir);
+        }
+        if (regressions > 0) System.exit(1);
+    }
+
+    // ---------- trace2 ----------
+
+    /** Hook name -> milliseconds, from one command's trace2 event lines (hooks of child processes included). */
+    @SuppressWarnings("unchecked")
+    static Map<String, Double> hookTimes(List<String> lines) {
+        Map<String, String> started = new HashMap<>(); // sid/child_id -> hook
+        Map<String, Double> out = new LinkedHashMap<>();
+        for (String line : lines) {
+            if (!line.contains("\"child_")) continue;
+            Map<String, Object> ev = (Map<String, Object>) Json.parse(line);
+            String key = ev.get("sid") + "/" + ev.get("child_id");
+            if ("child_start".equals(ev.get("event")) && "hook".equals(ev.get("child_class"))) {
+                started.put(key, (String) ev.get("hook_name"));
+            } else if ("child_exit".equals(ev.get("event")) && started.containsKey(key)) {
+                out.merge(started.remove(key), (Double) ev.get("t_rel") * 1000, Double::sum);
+            }
+        }
+        return out;
+    }
+
+    // ---------- statistics ----------
+
+    // nearest-rank percentiles
+    static Map<String, Double> stats(List<Double> v) {
+        double[] a = v.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        Map<String, Double> m = new LinkedHashMap<>();
+        m.put("n", (double) a.length);
+        if (a.length == 0) return m;
+        m.put("mean", Arrays.stream(a).average().orElse(0));
+        m.put("p50", percentile(a, 50));
+        m.put("p95", percentile(a, 95));
+        m.put("p99", percentile(a, 99));
+        m.put("max", a[a.length - 1]);
+        return m;
+    }
+
+    static double percentile(double[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compare(Path baseline, Map<String, Map<String, Double>> stats, double threshold, double slack) throws IOException {
+        Map<String, Object> base = (Map<String, Object>) ((Map<String, Object>) Json.parse(Files.readString(baseline))).get("timings");
+        int regressions = 0;
+        System.out.printf(Locale.ROOT, "%-20s %-4s %10s %10s %8s%n", "phase", "", "base ms", "new ms", "change");
+        for (Map.Entry<String, Map<String, Double>> e : stats.entrySet()) {
+            Map<String, Object> b = (Map<String, Object>) base.get(e.getKey());
+            if (b == null) continue;
+            for (String q : COMPARED) {
+                Double was = (Double) b.get(q + "_ms"), now = e.getValue().get(q);
+                if (was == null || now == null) continue;
+                double change = was == 0 ? 0 : (now - was) / was * 100;
+                boolean regressed = change > threshold && now - was > slack;
+                if (regressed) regressions++;
+                System.out.printf(Locale.ROOT, "%-20s %-4s %10.1f %10.1f %+7.1f%%%s%n", e.getKey(), q, was, now, change,
+                        regressed ? "  REGRESSION" : "");
+            }
+        }
+        return regressions;
+    }
+
+    // ---------- output ----------
+
+    private static void print(Map<String, Map<String, Double>> stats) {
+        System.out.printf(Locale.ROOT, "%-20s %5s %9s %9s %9s %9s %9s%n", "phase (ms)", "n", "mean", "p50", "p95", "p99", "max");
+        stats.forEach((h, m) -> System.out.printf(Locale.ROOT, "%-20s %5.0f %9.1f %9.1f %9.1f %9.1f %9.1f%n", h, m.get("n"),
+                m.getOrDefault("mean", 0.0), m.getOrDefault("p50", 0.0), m.getOrDefault("p95", 0.0),
+                m.getOrDefault("p99", 0.0), m.getOrDefault("max", 0.0)));
+    }
+
+    private static String toJson(SyntheticRepo.Options o, int commits, boolean daemon, boolean cds,
+                                 Map<String, Map<String, Double>> stats) throws Exception {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"git\": ").append(Json.quote(output(Path.of("."), "git", "--version").trim())).append(",\n");
+        sb.append("  \"java\": ").append(Json.quote(System.getProperty("java.version"))).append(",\n");
+        sb.append(String.format(Locale.ROOT,
+                "  \"repo\": {\"files\": %d, \"history\": %d, \"modify\": %d, \"renames\": %d, \"move_every\": %d, \"packed\": %b, \"seed\": %d},%n",
+                o.files(), o.history(), o.modify(), o.renames(), o.moveEvery(), o.packed(), o.seed()));
+        sb.append(String.format(Locale.ROOT, "  \"commits\": %d, \"daemon\": %b, \"cds\": %b,%n", commits, daemon, cds));
+        sb.append("  \"timings\": {");
+        String sep = "\n";
+        for (Map.Entry<String, Map<String, Double>> e : stats.entrySet()) {
+            sb.append(sep).append("    ").append(Json.quote(e.getKey())).append(": {");
+            String inner = "";
+            for (Map.Entry<String, Double> m : e.getValue().entrySet()) {
+                String k = m.getKey().equals("n") ? "n" : m.getKey() + "_ms";
+                String v = m.getKey().equals("n") ? String.valueOf(m.getValue().intValue()) : String.format(Locale.ROOT, "%.3f", m.getValue());
+                sb.append(inner).append(Json.quote(k)).append(": ").append(v);
+                inner = ", ";
+            }
+            sb.append('}');
+            sep = ",\n";
+        }
+        return sb.append("\n  }\n}\n").toString();
+    }
+
+    // ---------- processes ----------
+
+    private static String java() {
+        return Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    private static void run(Path dir, List<String> env, String... cmd) throws Exception {
+        ProcessBuilder pb = new ProcessBuilder(cmd).directory(dir.toFile()).redirectErrorStream(true);
+        for (String kv : env) pb.environment().put(kv.substring(0, kv.indexOf('=')), kv.substring(kv.indexOf('=') + 1));
+        Process p = pb.start();
+        p.getOutputStream().close();
+        String out = new String(p.getInputStream().readAllBytes());
+        if (p.waitFor() != 0) throw new IllegalStateException(String.join(" ", cmd) + " failed (exit " + p.exitValue() + "):\n" + out);
+    }
+
+    private static String output(Path dir, String... cmd) throws Exception {
+        Process p = new ProcessBuilder(cmd).directory(dir.toFile()).redirectErrorStream(true).start();
+        String out = new String(p.getInputStream().readAllBytes());
+        p.waitFor();
+        return out;
+    }
+}
@@ -0,0 +1,50 @@
+package com.sagit.bench;
+
+import java.util.Random;
+
+/** Deterministic synthetic Java sources for benchmarks (same seed → same text). */
+public final class JavaSourceFixture {
+
+    private JavaSourceFixture() {}
+
+    /**
+     * A compilation unit with roughly {@code members} members spread over a
+     * top-level class, a nested class, an interface and an enum. Method bodies
+     * carry real statements so the parser pays for expressions, as it does on
+     * production code.
+     */
+    public static String source(String pkg, String name, int members, long seed) {
+        Random rnd = new Random(seed);
+        StringBuilder sb = new StringBuilder(members * 160);
+        sb.append("package ").append(pkg).append(";\n\n");
+        sb.append("import java.util.*;\n\n");
+        sb.append("/** Generated fixture. */\n");
+        sb.append("public class ").append(name).append(" {\n");
+        for (int i = 0; i < members; i++) {
+            switch (rnd.nextInt(4)) {
+                case 0 -> sb.append("    private int f").append(i).append(" = ").append(rnd.nextInt(100)).append(";\n");
+                case 1 -> sb.append("    public ").append(name).append("(int a").append(i).append(") { this.hashCode(); }\n");
+                default -> method(sb, i, rnd);
+            }
+        }
+        sb.append("    static class Nested").append(" {\n");
+        for (int i = 0; i < Math.max(1, members / 8); i++) method(sb, members + i, rnd);
+        sb.append("        interface Callback { void on(int v); }\n");
+        sb.append("    }\n");
+        sb.append("    enum Mode { A, B, C; int weight() { return ordinal() * 2; } }\n");
+        sb.append("    record Point(int x, int y) { int sum() { return x + y; } }\n");
+        sb.append("    @interface Marker { String value() default \"\"; }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static void method(StringBuilder sb, int i, Random rnd) {
+        sb.append("    public int m").append(i).append("(int x, List<String> xs) {\n");
+        sb.append("        int acc = ").append(rnd.nextInt(10)).append(";\n");
+        sb.append("        for (String s : xs) { if (s.length() > x) { acc += s.hashCode() % 7; } else { acc--; } }\n");
+        sb.append("        Map<String, Integer> m = new HashMap<>();\n");
+        sb.append("        m.put(\"k").append(i).append("\", acc);\n");
+        sb.append("        return m.values().stream().mapToInt(Integer::intValue).sum() + x * ").append(rnd.nextInt(50)).append(";\n");
+        sb.append("    }\n");
+    }
+}
@@ -0,0 +1,139 @@
+package com.sagit.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for benchmark result files: parse to Map / List / String / Double /
+ * Boolean / null, and quote strings for writing. No dependency, like the CLI's own JSON.
+ */
+public final class Json {
+
+    private final String s;
+    private int i;
+
+    private Json(String s) {
+        this.s = s;
+    }
+
+    public static Object parse(String text) {
+        Json p = new Json(text);
+        Object v = p.value();
+        p.ws();
+        if (p.i != p.s.length()) throw p.error("trailing data");
+        return v;
+    }
+
+    public static String quote(String v) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : v.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // ---------- parser ----------
+
+    private Object value() {
+        ws();
+        if (i >= s.length()) throw error("unexpected end");
+        char c = s.charAt(i);
+        if (c == '{') return object();
+        if (c == '[') return array();
+        if (c == '"') return string();
+        if (s.startsWith("true", i)) { i += 4; return Boolean.TRUE; }
+        if (s.startsWith("false", i)) { i += 5; return Boolean.FALSE; }
+        if (s.startsWith("null", i)) { i += 4; return null; }
+        if (s.startsWith("NaN", i)) { i += 3; return Double.NaN; } // JMH writes NaN for missing errors
+        return number();
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        i++;
+        ws();
+        if (peek('}')) { i++; return m; }
+        while (true) {
+            ws();
+            String k = string();
+            ws();
+            expect(':');
+            m.put(k, value());
+            ws();
+            if (peek(',')) { i++; continue; }
+            expect('}');
+            return m;
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> l = new ArrayList<>();
+        i++;
+        ws();
+        if (peek(']')) { i++; return l; }
+        while (true) {
+            l.add(value());
+            ws();
+            if (peek(',')) { i++; continue; }
+            expect(']');
+            return l;
+        }
+    }
+
+    private String string() {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (i < s.length()) {
+            char c = s.charAt(i++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') { sb.append(c); continue; }
+            char e = s.charAt(i++);
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 't' -> sb.append('\t');
+                case 'r' -> sb.append('\r');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> { sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16)); i += 4; }
+                default -> sb.append(e);
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private Double number() {
+        int from = i;
+        while (i < s.length() && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) i++;
+        if (from == i) throw error("unexpected '" + s.charAt(i) + "'");
+        return Double.parseDouble(s.substring(from, i));
+    }
+
+    private void ws() {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+    }
+
+    private boolean peek(char c) {
+        return i < s.length() && s.charAt(i) == c;
+    }
+
+    private void expect(char c) {
+        if (!peek(c)) throw error("expected '" + c + "'");
+        i++;
+    }
+
+    private IllegalArgumentException error(String msg) {
+        return new IllegalArgumentException("JSON: " + msg + " at offset " + i);
+    }
+}
@@ -0,0 +1,69 @@
+package com.sagit.bench;
+
+import com.sagit.meta.MetaRecord;
+import com.sagit.meta.MetaStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MetaStore.append throughput (one record per call, as the post-commit hook does) and
+ * appendAll in batches (as `sagit index --all` does), with and without fsync. Each
+ * iteration starts from an empty store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetaStoreBenchmark {
+
+    @Param({"false", "true"})
+    boolean fsync;
+
+    static final int BATCH = 64;
+
+    Path dir;
+    MetaStore store;
+    long next;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("sagit-meta-bench");
+        store = new MetaStore(dir, fsync);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        RepoFixture.delete(dir);
+    }
+
+    /** Records per second, one append each. */
+    @Benchmark
+    public void append() throws Exception {
+        store.append(record(next++));
+    }
+
+    /** Batches per second ({@value #BATCH} records each, one write and one fsync). */
+    @Benchmark
+    public void appendAll() throws Exception {
+        List<MetaRecord> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) batch.add(record(next++));
+        store.appendAll(batch);
+    }
+
+    static MetaRecord record(long n) {
+        MetaRecord r = new MetaRecord();
+        r.commitId = String.format("%040x", n);
+        r.timestamp = "2024-01-01T00:00:00Z";
+        r.summary = Map.of("files_added", 1, "files_modified", (int) (n % 7), "files_deleted", 0,
+                "java_types_delta", 0, "java_methods_delta", (int) (n % 3), MetaRecord.ANALYZER_VERSION, 1);
+        return r;
+    }
+}
@@ -0,0 +1,133 @@
+package com.sagit.bench;
+
+import com.sagit.meta.MetaRecord;
+import com.sagit.meta.MetaStore;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Concurrency stress for MetaStore: several writer processes, each with several threads,
+ * append to one store; then every record must be present exactly once and findable by id.
+ * With --tear a partial frame is appended before verification, which the next open must cut off.
+ *
+ *   java -cp bench/target/benchmarks.jar com.sagit.bench.MetaStoreStress --procs 8 --threads 4 --records 200
+ */
+public final class MetaStoreStress {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            boolean flag = i + 1 == args.length || args[i + 1].startsWith("--");
+            opt.put(args[i], flag ? "true" : args[++i]);
+        }
+        int procs = Integer.parseInt(opt.getOrDefault("--procs", "8"));
+        int threads = Integer.parseInt(opt.getOrDefault("--threads", "4"));
+        int records = Integer.parseInt(opt.getOrDefault("--records", "200"));
+        boolean fsync = Boolean.parseBoolean(opt.getOrDefault("--fsync", "true"));
+
+        if (opt.containsKey("--child")) {
+            child(Path.of(opt.get("--dir")), Integer.parseInt(opt.get("--child")), threads, records, fsync);
+            return;
+        }
+
+        Path dir = opt.containsKey("--dir") ? Path.of(opt.get("--dir")) : Files.createTempDirectory("sagit-meta-stress");
+        String cp = System.getProperty("java.class.path");
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+        long t0 = System.nanoTime();
+        List<Process> ps = new ArrayList<>();
+        for (int p = 0; p < procs; p++) {
+            ps.add(new ProcessBuilder(java, "-cp", cp, MetaStoreStress.class.getName(),
+                    "--child", String.valueOf(p), "--dir", dir.toString(),
+                    "--threads", String.valueOf(threads), "--records", String.valueOf(records),
+                    "--fsync", String.valueOf(fsync))
+                    .inheritIO().start());
+        }
+        for (Process p : ps) {
+            if (p.waitFor() != 0) throw new IllegalStateException("writer exited with " + p.exitValue());
+        }
+        long ms = (System.nanoTime() - t0) / 1_000_000;
+        int expected = procs * threads * records;
+        System.out.printf("%d writers x %d threads x %d records = %d appends in %d ms (%.0f/s incl. JVM start-up)%n",
+                procs, threads, records, expected, ms, expected * 1000.0 / Math.max(1, ms));
+
+        if (opt.containsKey("--tear")) {
+            try (Stream<Path> s = Files.list(dir)) {
+                Path last = s.filter(f -> f.getFileName().toString().startsWith("seg-")).sorted()
+                        .reduce((a, b) -> b).orElseThrow();
+                try (FileChannel ch = FileChannel.open(last, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    ch.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 60, 1, 2, 3}));
+                }
+                System.out.println("tore the tail of " + last.getFileName());
+            }
+        }
+
+        MetaStore store = new MetaStore(dir, fsync);
+        Set<String> seen = new HashSet<>();
+        int[] dupes = {0};
+        store.forEach(json -> {
+            String id = json.substring(json.indexOf("\"commitId\":\"") + 12, json.indexOf("\"commitId\":\"") + 52);
+            if (!seen.add(id)) dupes[0]++;
+        });
+        int missing = 0;
+        for (int p = 0; p < procs; p++)
+            for (int t = 0; t < threads; t++)
+                for (int r = 0; r < records; r++)
+                    if (store.get(id(p, t, r)) == null) missing++;
+        System.out.printf("records: %d (expected %d), duplicates: %d, not found by id: %d%n",
+                seen.size(), expected, dupes[0], missing);
+        if (seen.size() != expected || dupes[0] != 0 || missing != 0) System.exit(1);
+    }
+
+    private static void child(Path dir, int proc, int threads, int records, boolean fsync) throws Exception {
+        MetaStore store = new MetaStore(dir, fsync);
+        List<Thread> ts = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            ts.add(new Thread(() -> {
+                try {
+                    for (int r = 0; r < records; r++) {
+                        MetaRecord rec = new MetaRecord();
+                        rec.commitId = id(proc, thread, r).name();
+                        rec.timestamp = "p" + proc + "t" + thread + "r" + r;
+                        rec.summary = Map.of("files_added", r, "java_types_delta", -thread);
+                        store.append(rec);
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) { errors.add(e); }
+                }
+            }));
+        }
+        ts.forEach(Thread::start);
+        for (Thread t : ts) t.join();
+        if (!errors.isEmpty()) {
+            errors.get(0).printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static ObjectId id(int proc, int thread, int record) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-1")
+                    .digest((proc + "/" + thread + "/" + record).getBytes(StandardCharsets.UTF_8));
+            return ObjectId.fromRaw(d);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
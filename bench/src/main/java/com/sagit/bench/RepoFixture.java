@@ -0,0 +1,163 @@
+package com.sagit.bench;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic synthetic repositories for benchmarks (same arguments → same objects).
+ *
+ * Two commits over {@code files} generated Java sources: "base", then "head", which modifies
+ * {@code changed} files and adds, deletes and renames a tenth as many each. The index then
+ * stages another {@code changed} modifications on top of head, for staged-diff benchmarks.
+ * Objects go straight into the object database (no work tree), packed unless asked otherwise.
+ *
+ *   java -cp bench/target/benchmarks.jar com.sagit.bench.RepoFixture --dir /tmp/fixture --files 10000 --changed 500
+ */
+public final class RepoFixture {
+
+    /** A generated repository and the ids benchmarks need. */
+    public record Fixture(Path root, ObjectId baseTree, ObjectId headTree, ObjectId headCommit, List<ObjectId> blobs) {}
+
+    private static final PersonIdent AUTHOR = new PersonIdent("bench", "bench@example.com", 1_700_000_000_000L, 0);
+
+    private RepoFixture() {}
+
+    public static Fixture create(Path dir, int files, int changed, boolean packed, long seed) throws Exception {
+        Random rnd = new Random(seed);
+        try (Git git = Git.init().setDirectory(dir.toFile()).setInitialBranch("main").call()) {
+            Repository repo = git.getRepository();
+            Map<String, ObjectId> tree = new TreeMap<>();
+            try (ObjectInserter ins = repo.newObjectInserter()) {
+                for (int i = 0; i < files; i++) tree.put(path(i), source(ins, i, seed));
+
+                ObjectId base = commit(repo, ins, tree, null, "base");
+                ObjectId baseTree = repo.parseCommit(base).getTree().getId();
+
+                // head: modify, add, delete, rename
+                List<String> paths = new ArrayList<>(tree.keySet());
+                int extra = Math.max(1, changed / 10);
+                for (int k = 0; k < changed; k++) {
+                    int i = rnd.nextInt(files);
+                    tree.put(path(i), source(ins, i, seed + 1 + k));
+                }
+                for (int k = 0; k < extra; k++) tree.put(path(files + k), source(ins, files + k, seed));
+                for (int k = 0; k < extra; k++) tree.remove(paths.get(rnd.nextInt(paths.size())));
+                for (int k = 0; k < extra; k++) {
+                    String from = paths.get(rnd.nextInt(paths.size()));
+                    ObjectId blob = tree.remove(from);
+                    if (blob != null) tree.put(from.replace("/p", "/moved/p"), blob);
+                }
+                ObjectId head = commit(repo, ins, tree, base, "head");
+                ObjectId headTree = repo.parseCommit(head).getTree().getId();
+
+                // staged on top of head
+                Map<String, ObjectId> staged = new TreeMap<>(tree);
+                List<String> live = new ArrayList<>(staged.keySet());
+                for (int k = 0; k < changed; k++) {
+                    String p = live.get(rnd.nextInt(live.size()));
+                    staged.put(p, source(ins, k, seed + 1_000_000 + k));
+                }
+                ins.flush();
+                writeIndex(repo, staged);
+                if (packed) git.gc().setAggressive(false).call();
+                return new Fixture(dir, baseTree, headTree, head, new ArrayList<>(tree.values()));
+            }
+        }
+    }
+
+    /** Delete a fixture directory. */
+    public static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> s = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) s.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(p);
+        }
+    }
+
+    static String path(int i) {
+        return "src/main/java/com/acme/m" + (i / 500) + "/p" + (i / 25) + "/C" + i + ".java";
+    }
+
+    private static ObjectId source(ObjectInserter ins, int i, long seed) throws IOException {
+        String pkg = "com.acme.m" + (i / 500) + ".p" + (i / 25);
+        int members = 10 + Math.floorMod(seed * 31 + i, 50);
+        byte[] text = JavaSourceFixture.source(pkg, "C" + i, members, seed + i).getBytes(StandardCharsets.UTF_8);
+        return ins.insert(Constants.OBJ_BLOB, text);
+    }
+
+    private static ObjectId commit(Repository repo, ObjectInserter ins, Map<String, ObjectId> files, ObjectId parent,
+                                   String message) throws IOException {
+        DirCache dc = DirCache.newInCore();
+        fill(dc, files);
+        CommitBuilder cb = new CommitBuilder();
+        cb.setTreeId(dc.writeTree(ins));
+        if (parent != null) cb.setParentId(parent);
+        cb.setAuthor(AUTHOR);
+        cb.setCommitter(AUTHOR);
+        cb.setMessage(message);
+        ObjectId id = ins.insert(cb);
+        ins.flush();
+        RefUpdate ru = repo.updateRef(Constants.HEAD);
+        ru.setNewObjectId(id);
+        ru.setForceUpdate(true);
+        ru.update();
+        return id;
+    }
+
+    private static void writeIndex(Repository repo, Map<String, ObjectId> files) throws IOException {
+        DirCache dc = repo.lockDirCache();
+        try {
+            fill(dc, files);
+            dc.write();
+            dc.commit();
+        } finally {
+            dc.unlock();
+        }
+    }
+
+    private static void fill(DirCache dc, Map<String, ObjectId> files) {
+        DirCacheBuilder b = dc.builder();
+        for (Map.Entry<String, ObjectId> e : files.entrySet()) {
+            DirCacheEntry de = new DirCacheEntry(e.getKey());
+            de.setFileMode(FileMode.REGULAR_FILE);
+            de.setObjectId(e.getValue());
+            b.add(de);
+        }
+        b.finish();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) opt.put(args[i], args[i + 1]);
+        Path dir = Path.of(opt.getOrDefault("--dir", "sagit-fixture"));
+        int files = Integer.parseInt(opt.getOrDefault("--files", "2000"));
+        int changed = Integer.parseInt(opt.getOrDefault("--changed", "100"));
+        long seed = Long.parseLong(opt.getOrDefault("--seed", "42"));
+        long t0 = System.nanoTime();
+        Fixture f = create(dir, files, changed, !"loose".equals(opt.get("--layout")), seed);
+        System.out.printf("%s: %d files, head %s (%d ms)%n", f.root(), f.blobs().size(), f.headCommit().name(),
+                (System.nanoTime() - t0) / 1_000_000);
+    }
+}
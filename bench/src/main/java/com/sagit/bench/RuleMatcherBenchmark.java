@@ -0,0 +1,123 @@
+package com.sagit.bench;
+
+import com.sagit.rules.RuleMatcher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Mapping every changed path through a generated tests.map: the compiled prefix-trie matcher
+ * against the previous linear scan (one find() per rule per path), plus the cost of compiling
+ * the rules and of loading them from the on-disk cache.
+ *
+ * Rules are mostly per-package `^src/main/java/...` mappings, with some floating ones
+ * (`/generated/`, `\.proto$`) and a catch-all at the end; paths mix hits and misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class RuleMatcherBenchmark {
+
+    @Param({"10000"})
+    int rules;
+
+    @Param({"10000"})
+    int paths;
+
+    List<String[]> ruleLines;
+    List<Pattern> linear;
+    String[] changed;
+    RuleMatcher matcher;
+    Path rulesFile, cacheFile;
+
+    @Setup
+    public void setup() throws Exception {
+        Random rnd = new Random(42L);
+        ruleLines = new ArrayList<>(rules);
+        StringBuilder text = new StringBuilder("# generated\n");
+        for (int i = 0; i < rules - 1; i++) {
+            String rule;
+            if (i % 50 == 7) {
+                rule = "/generated/m" + i + "/(.*)\\.java$ => src/test/java/gen/m" + i + "/$1Test.java";
+            } else if (i % 97 == 3) {
+                rule = "\\.proto" + i + "$ => src/test/java/proto/P" + i + "Test.java";
+            } else {
+                String pkg = pkg(i);
+                rule = "^src/main/java/" + pkg + "/(\\w+)\\.java$ => src/test/java/" + pkg + "/$1Test.java";
+            }
+            String[] parts = rule.split(" => ");
+            ruleLines.add(parts);
+            text.append(rule).append('\n');
+        }
+        ruleLines.add(new String[]{"\\.java$", "src/test/java/AllTests.java"});
+        text.append("\\.java$ => src/test/java/AllTests.java\n");
+
+        linear = new ArrayList<>(ruleLines.size());
+        for (String[] r : ruleLines) linear.add(Pattern.compile(r[0]));
+
+        changed = new String[paths];
+        for (int i = 0; i < paths; i++) {
+            int k = rnd.nextInt(rules + rules / 4); // some packages have no rule
+            changed[i] = switch (i % 10) {
+                case 0 -> "docs/page" + k + ".md";
+                case 1 -> "build/generated/m" + k + "/Gen" + k + ".java";
+                default -> "src/main/java/" + pkg(k) + "/Type" + i + ".java";
+            };
+        }
+
+        matcher = RuleMatcher.compile(ruleLines);
+        Path dir = Files.createTempDirectory("sagit-rules-bench");
+        rulesFile = dir.resolve("tests.map");
+        cacheFile = dir.resolve("rules.bin");
+        Files.writeString(rulesFile, text, StandardCharsets.UTF_8);
+        RuleMatcher.load(rulesFile, cacheFile); // warm the cache
+    }
+
+    private static String pkg(int i) {
+        return "com/acme/mod" + (i / 100) + "/pkg" + i;
+    }
+
+    /** Compiled matcher (patterns already compiled lazily by earlier invocations). */
+    @Benchmark
+    public void compiled(Blackhole bh) {
+        for (String p : changed) bh.consume(matcher.apply(p));
+    }
+
+    /** Previous implementation: every rule's find() until the first hit. */
+    @Benchmark
+    public void linearBaseline(Blackhole bh) {
+        for (String p : changed) {
+            String mapped = null;
+            for (int i = 0; i < linear.size() && mapped == null; i++) {
+                Matcher m = linear.get(i).matcher(p);
+                if (m.find()) mapped = m.replaceAll(ruleLines.get(i)[1]);
+            }
+            bh.consume(mapped);
+        }
+    }
+
+    /** Building the trie from parsed rules, then one pass over the paths with cold patterns. */
+    @Benchmark
+    public void compileAndApply(Blackhole bh) {
+        RuleMatcher m = RuleMatcher.compile(ruleLines);
+        for (String p : changed) bh.consume(m.apply(p));
+    }
+
+    /** What `sagit impacted` pays on a warm cache: hash the rules file, read the compiled form. */
+    @Benchmark
+    public RuleMatcher loadCached() {
+        return RuleMatcher.load(rulesFile, cacheFile);
+    }
+}
@@ -0,0 +1,174 @@
+package com.sagit.bench;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * A checked-out synthetic repository with history: {@code files} generated Java sources, then
+ * {@code history} commits that each modify, rename and (every {@code moveEvery} commits) move a
+ * whole package directory. History objects go straight into the object database; the work tree
+ * is checked out at the end, so the repository is ready for real {@code git commit} runs.
+ * {@link #step} plans the same kind of change for callers that edit the work tree themselves.
+ *
+ *   java -cp bench/target/benchmarks.jar com.sagit.bench.SyntheticRepo --dir /tmp/big --files 20000 --history 500
+ */
+public final class SyntheticRepo {
+
+    /** Shape of a generated repository and of each commit in it. */
+    public record Options(int files, int history, int modify, int renames, int moveEvery, boolean packed, long seed) {}
+
+    /** One commit's worth of changes: rewritten paths, then renames (old path -> new path). */
+    public record Step(List<String> modified, Map<String, String> renamed) {}
+
+    private static final PersonIdent AUTHOR = new PersonIdent("bench", "bench@example.com", 1_700_000_000_000L, 0);
+
+    private SyntheticRepo() {}
+
+    /** Generate into {@code dir}; returns the live paths at HEAD. */
+    public static List<String> create(Path dir, Options o) throws Exception {
+        Random rnd = new Random(o.seed());
+        try (Git git = Git.init().setDirectory(dir.toFile()).setInitialBranch("main").call()) {
+            Repository repo = git.getRepository();
+            StoredConfig cfg = repo.getConfig();
+            cfg.setString("user", null, "name", AUTHOR.getName());
+            cfg.setString("user", null, "email", AUTHOR.getEmailAddress());
+            cfg.setBoolean("gc", null, "auto", false); // no background gc in the middle of a measurement
+            cfg.save();
+
+            Map<String, ObjectId> tree = new TreeMap<>();
+            try (ObjectInserter ins = repo.newObjectInserter()) {
+                for (int i = 0; i < o.files(); i++) tree.put(RepoFixture.path(i), blob(ins, RepoFixture.path(i), o.seed()));
+                ObjectId head = commit(repo, ins, tree, null, "initial import", 0);
+                for (int c = 1; c <= o.history(); c++) {
+                    Step s = step(rnd, new ArrayList<>(tree.keySet()), c, o);
+                    for (String p : s.modified()) tree.put(p, blob(ins, p, o.seed() + c));
+                    s.renamed().forEach((from, to) -> tree.put(to, tree.remove(from)));
+                    head = commit(repo, ins, tree, head, "change " + c, c);
+                }
+            }
+            if (o.packed()) git.gc().setAggressive(false).call();
+            git.reset().setMode(ResetCommand.ResetType.HARD).setRef(Constants.HEAD).call();
+            return new ArrayList<>(tree.keySet());
+        }
+    }
+
+    /**
+     * Plan commit {@code n} over {@code paths}: {@code modify} rewrites, {@code renames} single-file
+     * renames in place, and on every {@code moveEvery}-th commit one package directory moved.
+     */
+    public static Step step(Random rnd, List<String> paths, int n, Options o) {
+        List<String> modified = new ArrayList<>();
+        Map<String, String> renamed = new LinkedHashMap<>();
+        for (int k = 0; k < o.modify() && !paths.isEmpty(); k++) modified.add(paths.get(rnd.nextInt(paths.size())));
+        for (int k = 0; k < o.renames() && !paths.isEmpty(); k++) {
+            String from = paths.get(rnd.nextInt(paths.size()));
+            if (renamed.containsKey(from) || modified.contains(from)) continue;
+            int slash = from.lastIndexOf('/');
+            renamed.put(from, from.substring(0, slash + 1) + "R" + n + "x" + k + from.substring(slash + 1));
+        }
+        if (o.moveEvery() > 0 && n % o.moveEvery() == 0 && !paths.isEmpty()) {
+            String any = paths.get(rnd.nextInt(paths.size()));
+            String dir = any.substring(0, any.lastIndexOf('/') + 1);
+            String target = dir.substring(0, dir.length() - 1) + "_v" + n + "/";
+            for (String p : paths) {
+                if (p.startsWith(dir) && p.indexOf('/', dir.length()) < 0 && !renamed.containsKey(p) && !modified.contains(p)) {
+                    renamed.put(p, target + p.substring(dir.length()));
+                }
+            }
+        }
+        return new Step(modified, renamed);
+    }
+
+    /** Apply a step to a checked-out work tree (content for rewrites derives from {@code seed}). */
+    public static void apply(Path root, Step s, long seed) throws IOException {
+        for (String p : s.modified()) Files.writeString(root.resolve(p), source(p, seed));
+        for (Map.Entry<String, String> e : s.renamed().entrySet()) {
+            Path to = root.resolve(e.getValue());
+            Files.createDirectories(to.getParent());
+            Files.move(root.resolve(e.getKey()), to);
+        }
+    }
+
+    // "src/main/java/com/acme/m0/p3/C77.java" -> package com.acme.m0.p3, class C77
+    static String source(String path, long seed) {
+        String rel = path.substring("src/main/java/".length(), path.length() - ".java".length());
+        int slash = rel.lastIndexOf('/');
+        String cls = rel.substring(slash + 1);
+        long h = seed * 31 + path.hashCode();
+        return JavaSourceFixture.source(rel.substring(0, slash).replace('/', '.'), cls, 10 + Math.floorMod(h, 50), h);
+    }
+
+    private static ObjectId blob(ObjectInserter ins, String path, long seed) throws IOException {
+        return ins.insert(Constants.OBJ_BLOB, source(path, seed).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ObjectId commit(Repository repo, ObjectInserter ins, Map<String, ObjectId> files, ObjectId parent,
+                                   String message, int n) throws IOException {
+        DirCache dc = DirCache.newInCore();
+        DirCacheBuilder b = dc.builder();
+        for (Map.Entry<String, ObjectId> e : files.entrySet()) {
+            DirCacheEntry de = new DirCacheEntry(e.getKey());
+            de.setFileMode(FileMode.REGULAR_FILE);
+            de.setObjectId(e.getValue());
+            b.add(de);
+        }
+        b.finish();
+        PersonIdent who = new PersonIdent(AUTHOR, AUTHOR.getWhen().getTime() + n * 60_000L, 0);
+        CommitBuilder cb = new CommitBuilder();
+        cb.setTreeId(dc.writeTree(ins));
+        if (parent != null) cb.setParentId(parent);
+        cb.setAuthor(who);
+        cb.setCommitter(who);
+        cb.setMessage(message);
+        ObjectId id = ins.insert(cb);
+        ins.flush();
+        RefUpdate ru = repo.updateRef(Constants.HEAD);
+        ru.setNewObjectId(id);
+        ru.setForceUpdate(true);
+        ru.update();
+        return id;
+    }
+
+    static Options options(Map<String, String> opt) {
+        return new Options(
+                Integer.parseInt(opt.getOrDefault("--files", "5000")),
+                Integer.parseInt(opt.getOrDefault("--history", "100")),
+                Integer.parseInt(opt.getOrDefault("--modify", "5")),
+                Integer.parseInt(opt.getOrDefault("--renames", "1")),
+                Integer.parseInt(opt.getOrDefault("--move-every", "10")),
+                !"loose".equals(opt.get("--layout")),
+                Long.parseLong(opt.getOrDefault("--seed", "42")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) opt.put(args[i], args[i + 1]);
+        Path dir = Path.of(opt.getOrDefault("--dir", "sagit-synthetic"));
+        long t0 = System.nanoTime();
+        List<String> paths = create(dir, options(opt));
+        System.out.printf("%s: %d files at HEAD (%d ms)%n", dir, paths.size(), (System.nanoTime() - t0) / 1_000_000);
+    }
+}
@@ -4,8 +4,12 @@ import com.sagit.commands.SetupCommand;
 import com.sagit.commands.DiffSemanticCommand;
 import com.sagit.commands.MetaShowCommand;
 import com.sagit.commands.hooks.HookCommand;
+import com.sagit.metrics.Metrics;
 import picocli.CommandLine;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @CommandLine.Command(
         name = "sagit",
         mixinStandardHelpOptions = true,
@@ -18,6 +22,13 @@ import picocli.CommandLine;
                 com.sagit.commands.DescribeCommand.class,
                 com.sagit.commands.ImpactedCommand.class,
                 com.sagit.commands.VerifyCommand.class,  
+                com.sagit.commands.CacheCommand.class,
+                com.sagit.commands.DaemonCommand.class,
+                com.sagit.commands.IndexCommand.class,
+                com.sagit.commands.SymbolCommand.class,
+                com.sagit.commands.CoverageCommand.class,
+                com.sagit.commands.TestsCommand.class,
+                com.sagit.commands.StatsCommand.class,
                 HookCommand.class
         }
 )
@@ -26,7 +37,31 @@ public class SagitCLI implements Runnable {
         CommandLine.usage(this, System.out);
     }
     public static void main(String[] args) {
-        int code = new CommandLine(new SagitCLI()).execute(args);
+        int code = execute(args);
         System.exit(code);
     }
+
+    /** Run one command line with its phases timed into .sagit/metrics (the daemon calls this per request). */
+    public static int execute(String... args) {
+        CommandLine cl = new CommandLine(new SagitCLI());
+        cl.setExecutionStrategy(pr -> {
+            List<String> names = new ArrayList<>();
+            boolean help = pr.isUsageHelpRequested() || pr.isVersionHelpRequested();
+            for (CommandLine.ParseResult p = pr.subcommand(); p != null; p = p.subcommand()) {
+                names.add(p.commandSpec().name());
+                help |= p.isUsageHelpRequested() || p.isVersionHelpRequested();
+            }
+            // stats reads the metrics, the daemon's own run spans many requests
+            if (help || names.isEmpty() || names.get(0).equals("stats") || names.get(0).equals("daemon")) {
+                return new CommandLine.RunLast().execute(pr);
+            }
+            Metrics.begin(String.join(" ", names));
+            try {
+                return new CommandLine.RunLast().execute(pr);
+            } finally {
+                Metrics.end();
+            }
+        });
+        return cl.execute(args);
+    }
 }
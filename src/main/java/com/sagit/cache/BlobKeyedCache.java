@@ -0,0 +1,578 @@
+package com.sagit.cache;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Content-addressed cache keyed by git blob id.
+ *
+ * analysis.bin       base: header (magic, format, value version, count), a table of
+ *                    (id[20], offset, length, rank) sorted by id, then each payload followed
+ *                    by crc32(id, payload). Memory-mapped and binary-searched; a payload is
+ *                    decoded only when its id is looked up, so opening costs the same at any
+ *                    size and a process that touches k blobs does k searches.
+ * analysis.bin.log   records since the base was written, read whole on open (it stays small):
+ *                    PUT   = 'P' id[20] varint(len) payload[len] crc32
+ *                    TOUCH = 'T' id[20]          (LRU recency for hits)
+ * analysis.bin.lock  held while appending to the log or replacing the base.
+ *
+ * Each flush appends at most one record per id, in order of last use. Once the log outgrows
+ * 1/32 of the cap (or on gc) it is folded into a new base: entries are ranked by last use and
+ * the least recently used are dropped until the rest fits the cap. Both happen under the lock
+ * against the files as they are then, so records other processes wrote meanwhile are kept,
+ * and a torn log tail (a crashed writer) is cut off before anything is appended after it.
+ */
+public class BlobKeyedCache<V> implements Closeable {
+
+    /** Binary (de)serializer for cached values. */
+    public interface Codec<V> {
+        void write(DataOutput out, V value) throws IOException;
+        V read(DataInput in) throws IOException;
+    }
+
+    private static final int MAGIC  = 0x53474331; // "SGC1"
+    private static final int FORMAT = 2;
+    private static final int HEADER = 16;
+    private static final int SLOT = 32;           // id[20] offset length rank
+    private static final int LOG_HEADER = 12;
+    private static final byte PUT = 'P', TOUCH = 'T';
+    private static final int TOUCH_BYTES = 21;
+    private static final long MAX_FILE = Integer.MAX_VALUE; // offsets are ints, one mapping per base
+
+    // FileLock is per process: threads of one JVM also serialize on a monitor per file
+    private static final ConcurrentHashMap<Path, Object> WRITERS = new ConcurrentHashMap<>();
+
+    private record Loc(int offset, int length) {}
+
+    // one entry of a fold that is not taken from the base: payload and crc at src[offset..]
+    private static final class Rec {
+        final ObjectId id;
+        final ByteBuffer src;
+        final int offset, length;
+        long rank;
+
+        Rec(ObjectId id, ByteBuffer src, int offset, int length, long rank) {
+            this.id = id;
+            this.src = src;
+            this.offset = offset;
+            this.length = length;
+            this.rank = rank;
+        }
+    }
+
+    private final Path file, log, lock;
+    private final int valueVersion;
+    private final long maxBytes;
+    private final Codec<V> codec;
+
+    // the files as of open or the last flush
+    private ByteBuffer base;                 // null: no usable base
+    private int baseCount;
+    private byte[] logBuf = new byte[0];
+    private int logEnd;                      // end of the last whole log record, 0 without a usable log
+    private final HashMap<ObjectId, Loc> logged = new HashMap<>(); // latest PUT per id in the log
+    private int logOnly = -1;                // ids the log adds to the base, counted on demand
+    private long logOnlyBytes;
+
+    // this process, not yet on disk
+    private final HashMap<ObjectId, V> decoded = new HashMap<>();
+    // one per id in order of last use: the payload to PUT, or null for a TOUCH
+    private final LinkedHashMap<ObjectId, byte[]> pending = new LinkedHashMap<>();
+    private final Set<ObjectId> dropped = new HashSet<>();
+    private long pendingBytes;
+    private boolean rewrite;
+    private long hits, misses;
+
+    private BlobKeyedCache(Path file, int valueVersion, long maxBytes, Codec<V> codec) {
+        this.file = file;
+        this.log = file.resolveSibling(file.getFileName() + ".log");
+        this.lock = file.resolveSibling(file.getFileName() + ".lock");
+        this.valueVersion = valueVersion;
+        this.maxBytes = maxBytes;
+        this.codec = codec;
+    }
+
+    /** Open (or create lazily) a cache file; a version mismatch or corrupt file just starts fresh. */
+    public static <V> BlobKeyedCache<V> open(Path file, int valueVersion, long maxBytes, Codec<V> codec) {
+        BlobKeyedCache<V> c = new BlobKeyedCache<>(file, valueVersion, maxBytes, codec);
+        c.reload();
+        return c;
+    }
+
+    public synchronized V get(ObjectId id) {
+        V v = lookup(id);
+        if (v == null) { misses++; return null; }
+        hits++;
+        ObjectId key = id.copy();
+        if (!pending.containsKey(key)) pendingBytes += TOUCH_BYTES;
+        pending.put(key, pending.remove(key)); // a PUT not yet written stays one
+        return v;
+    }
+
+    public synchronized void put(ObjectId id, V value) {
+        if (maxBytes <= 0) return;
+        byte[] payload;
+        try {
+            ByteArrayOutputStream bo = new ByteArrayOutputStream(32);
+            codec.write(new DataOutputStream(bo), value);
+            payload = bo.toByteArray();
+        } catch (IOException e) {
+            return; // not cacheable; caller keeps the computed value
+        }
+        ObjectId key = id.copy();
+        dropped.remove(key);
+        decoded.put(key, value);
+        boolean wasPending = pending.containsKey(key);
+        byte[] old = pending.remove(key);
+        pendingBytes += putBytes(payload.length) - (old != null ? putBytes(old.length) : wasPending ? TOUCH_BYTES : 0);
+        pending.put(key, payload);
+        if (pendingBytes > logLimit()) {
+            try { flush(); } catch (IOException ignored) { /* cache is best-effort; retried on the next flush */ }
+        }
+    }
+
+    /** Drop entries whose blob no longer satisfies {@code keep} (e.g. pruned from the object store). */
+    public synchronized int retainIf(Predicate<ObjectId> keep) {
+        Set<ObjectId> ids = new HashSet<>(logged.keySet());
+        for (var e : pending.entrySet()) if (e.getValue() != null) ids.add(e.getKey());
+        byte[] raw = new byte[20];
+        for (int s = 0; s < baseCount; s++) {
+            base.get(HEADER + SLOT * s, raw);
+            ids.add(ObjectId.fromRaw(raw));
+        }
+        int removed = 0;
+        for (ObjectId id : ids) {
+            if (dropped.contains(id) || keep.test(id)) continue;
+            dropped.add(id);
+            decoded.remove(id);
+            pending.remove(id);
+            removed++;
+        }
+        if (removed > 0) rewrite = true;
+        return removed;
+    }
+
+    /** Entries as of open or the last flush. */
+    public synchronized int size() { countLogOnly(); return baseCount + logOnly; }
+    public synchronized long liveBytes() { countLogOnly(); return (base == null ? 0 : base.capacity() - HEADER) + logOnlyBytes; }
+    /** Base plus log, as of open or the last flush. */
+    public synchronized long fileBytes() { return (base == null ? 0 : base.capacity()) + logBuf.length; }
+    public synchronized long hits() { return hits; }
+    public synchronized long misses() { return misses; }
+    public long maxBytes() { return maxBytes; }
+    public Path file() { return file; }
+
+    /** Force a fold into a new base on the next flush (used by gc). */
+    public synchronized void compactOnFlush() { rewrite = true; }
+
+    /** Persist pending records: append to the log when cheap, fold it into a new base when it outgrew its share. */
+    public synchronized void flush() throws IOException {
+        if (maxBytes <= 0) return;
+        if (!rewrite && pending.isEmpty() && dropped.isEmpty()) return;
+        Files.createDirectories(file.getParent());
+        synchronized (WRITERS.computeIfAbsent(file.toAbsolutePath().normalize(), k -> new Object())) {
+            try (FileChannel lockCh = FileChannel.open(lock, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockCh.lock()) {
+                boolean fold = rewrite || !dropped.isEmpty();
+                rewrite = false;
+                reload(); // the files as they are now, with what other processes wrote since we read them
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                for (var e : pending.entrySet()) {
+                    if (e.getValue() == null) appendTouch(out, e.getKey());
+                    else appendPut(out, e.getKey(), e.getValue());
+                }
+                if (fold || rewrite || logEnd + out.size() > logLimit()) compact();
+                else append(out.toByteArray());
+                pending.clear();
+                dropped.clear();
+                decoded.clear();
+                pendingBytes = 0;
+                rewrite = false;
+                reload();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    // ---------- internals ----------
+
+    private void countLogOnly() {
+        if (logOnly >= 0) return;
+        logOnly = 0;
+        logOnlyBytes = 0;
+        for (var e : logged.entrySet()) {
+            if (slot(e.getKey()) >= 0) continue;
+            logOnly++;
+            logOnlyBytes += SLOT + e.getValue().length() + 4;
+        }
+    }
+
+    private long logLimit() {
+        return Math.max(64 * 1024, maxBytes / 32);
+    }
+
+    private V lookup(ObjectId id) {
+        if (maxBytes <= 0 || dropped.contains(id)) return null;
+        V v = decoded.get(id);
+        if (v != null) return v;
+        Loc l = logged.get(id);
+        if (l != null) {
+            v = decode(id, ByteBuffer.wrap(logBuf), l.offset(), l.length());
+        } else {
+            int s = slot(id);
+            if (s >= 0) v = decode(id, base, base.getInt(HEADER + SLOT * s + 20), base.getInt(HEADER + SLOT * s + 24));
+        }
+        if (v != null) decoded.put(id.copy(), v);
+        return v;
+    }
+
+    // payload at buf[offset..offset+length) followed by its crc; null when it does not check out
+    private V decode(AnyObjectId id, ByteBuffer buf, int offset, int length) {
+        try {
+            byte[] payload = new byte[length];
+            buf.get(offset, payload);
+            if (crc(id, payload, 0, length) != buf.getInt(offset + length)) return null;
+            return codec.read(new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // base slot of an id, or -1
+    private int slot(AnyObjectId id) {
+        if (base == null) return -1;
+        byte[] key = new byte[20];
+        id.copyRawTo(key, 0);
+        int lo = 0, hi = baseCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareSlot(mid, key);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private int compareSlot(int slot, byte[] key) {
+        int at = HEADER + SLOT * slot;
+        for (int i = 0; i < 20; i++) {
+            int c = Integer.compare(base.get(at + i) & 0xff, key[i] & 0xff);
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    private void reload() {
+        base = null;
+        baseCount = 0;
+        logBuf = new byte[0];
+        logEnd = 0;
+        logged.clear();
+        logOnly = -1;
+        if (maxBytes <= 0) return;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer m = size >= HEADER && size <= MAX_FILE ? ch.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+            if (m != null && m.getInt(0) == MAGIC && m.getInt(4) == FORMAT && m.getInt(8) == valueVersion
+                    && m.getInt(12) >= 0 && HEADER + (long) SLOT * m.getInt(12) <= size) {
+                base = m;
+                baseCount = m.getInt(12);
+            } else {
+                rewrite = true; // stale analyzer/format: start over
+            }
+        } catch (NoSuchFileException e) {
+            // nothing cached yet
+        } catch (IOException e) {
+            rewrite = true;
+        }
+        readLog();
+    }
+
+    // records are only framed here; a payload's crc is checked when it is decoded
+    private void readLog() {
+        try {
+            logBuf = Files.readAllBytes(log);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            rewrite = true;
+            return;
+        }
+        ByteBuffer b = ByteBuffer.wrap(logBuf);
+        if (logBuf.length < LOG_HEADER || b.getInt(0) != MAGIC || b.getInt(4) != FORMAT || b.getInt(8) != valueVersion) {
+            rewrite = true;
+            return;
+        }
+        logEnd = LOG_HEADER;
+        for (int at = LOG_HEADER; at + TOUCH_BYTES <= logBuf.length; ) {
+            ObjectId id = ObjectId.fromRaw(logBuf, at + 1);
+            if (logBuf[at] == TOUCH) {
+                at += TOUCH_BYTES;
+            } else if (logBuf[at] == PUT) {
+                long lenAt = readVarint(logBuf, at + TOUCH_BYTES);
+                if (lenAt < 0) break;
+                int len = (int) (lenAt >>> 32), p = (int) lenAt;
+                if ((long) p + len + 4 > logBuf.length) break;
+                logged.put(id, new Loc(p, len));
+                at = p + len + 4;
+            } else {
+                break;
+            }
+            logEnd = at;
+        }
+    }
+
+    private void append(byte[] records) throws IOException {
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer head = null;
+            if (logEnd == 0) {
+                head = ByteBuffer.allocate(LOG_HEADER).putInt(MAGIC).putInt(FORMAT).putInt(valueVersion).flip();
+            }
+            ch.truncate(logEnd); // a torn tail left by a crashed writer would hide everything after it
+            ch.position(logEnd);
+            if (head != null) writeFully(ch, head);
+            writeFully(ch, ByteBuffer.wrap(records));
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    // base + log + pending -> one new base of the most recently used entries that fit the cap
+    private void compact() throws IOException {
+        // base slots keep their rank unless touched, replaced or dropped (-1)
+        long[] rank = new long[baseCount];
+        long next = 0;
+        for (int s = 0; s < baseCount; s++) {
+            rank[s] = Integer.toUnsignedLong(base.getInt(HEADER + SLOT * s + 28));
+            next = Math.max(next, rank[s] + 1);
+        }
+        // ids the base does not hold (or holds an older payload of)
+        Map<ObjectId, Rec> overlay = new HashMap<>();
+        ByteBuffer lb = ByteBuffer.wrap(logBuf);
+        for (int at = LOG_HEADER; at < logEnd; ) {
+            ObjectId id = ObjectId.fromRaw(logBuf, at + 1);
+            if (logBuf[at] == TOUCH) {
+                at += TOUCH_BYTES;
+                touch(id, rank, overlay, next++);
+            } else {
+                long lenAt = readVarint(logBuf, at + TOUCH_BYTES);
+                int len = (int) (lenAt >>> 32), p = (int) lenAt;
+                replace(id, new Rec(id, lb, p, len, next++), rank, overlay);
+                at = p + len + 4;
+            }
+        }
+        for (var e : pending.entrySet()) {
+            byte[] payload = e.getValue();
+            if (payload == null) {
+                touch(e.getKey(), rank, overlay, next++);
+                continue;
+            }
+            ByteBuffer withCrc = ByteBuffer.allocate(payload.length + 4).put(payload).putInt(crc(e.getKey(), payload, 0, payload.length));
+            replace(e.getKey(), new Rec(e.getKey(), withCrc, 0, payload.length, next++), rank, overlay);
+        }
+        for (ObjectId id : dropped) {
+            overlay.remove(id);
+            int s = slot(id);
+            if (s >= 0) rank[s] = -1;
+        }
+
+        // most recently used first until the cap; (rank << 32 | candidate), overlay candidates after the base slots
+        List<Rec> extra = new ArrayList<>(overlay.values());
+        long[] order = new long[baseCount + extra.size()];
+        int n = 0;
+        for (int s = 0; s < baseCount; s++) if (rank[s] >= 0) order[n++] = rank[s] << 32 | s;
+        for (int i = 0; i < extra.size(); i++) order[n++] = extra.get(i).rank << 32 | (baseCount + i);
+        Arrays.sort(order, 0, n);
+        long budget = Math.min(maxBytes, MAX_FILE - HEADER), used = 0;
+        boolean[] keepBase = new boolean[baseCount];
+        List<Rec> keptExtra = new ArrayList<>();
+        int kept = 0;
+        for (int i = n - 1; i >= 0; i--) {
+            int c = (int) order[i];
+            int length = c < baseCount ? base.getInt(HEADER + SLOT * c + 24) : extra.get(c - baseCount).length;
+            if (used + SLOT + length + 4 > budget) break;
+            used += SLOT + length + 4;
+            long newRank = i; // same order, renumbered
+            if (c < baseCount) { keepBase[c] = true; rank[c] = newRank; }
+            else { Rec r = extra.get(c - baseCount); r.rank = newRank; keptExtra.add(r); }
+            kept++;
+        }
+        keptExtra.sort((a, b) -> a.id.compareTo(b.id));
+
+        // merge base slots (already in id order) with the new entries
+        int[] merged = new int[kept];
+        byte[] key = new byte[20];
+        for (int s = 0, j = 0, k = 0; k < kept; ) {
+            while (s < baseCount && !keepBase[s]) s++;
+            boolean fromBase = s < baseCount;
+            if (fromBase && j < keptExtra.size()) {
+                keptExtra.get(j).id.copyRawTo(key, 0);
+                fromBase = compareSlot(s, key) < 0;
+            }
+            merged[k++] = fromBase ? s++ : baseCount + j++;
+        }
+
+        // built in memory (it is at most the cap) so base entries are bulk copies
+        ByteBuffer out = ByteBuffer.allocate((int) (HEADER + used));
+        out.putInt(MAGIC).putInt(FORMAT).putInt(valueVersion).putInt(kept);
+        int offset = HEADER + SLOT * kept;
+        for (int c : merged) {
+            int length;
+            if (c < baseCount) {
+                out.put(base.slice(HEADER + SLOT * c, 20));
+                length = base.getInt(HEADER + SLOT * c + 24);
+                out.putInt(offset).putInt(length).putInt((int) rank[c]);
+            } else {
+                Rec e = keptExtra.get(c - baseCount);
+                out.put(raw(e.id));
+                length = e.length;
+                out.putInt(offset).putInt(length).putInt((int) e.rank);
+            }
+            offset += length + 4;
+        }
+        for (int c : merged) {
+            if (c < baseCount) {
+                out.put(base.slice(base.getInt(HEADER + SLOT * c + 20), base.getInt(HEADER + SLOT * c + 24) + 4));
+            } else {
+                Rec e = keptExtra.get(c - baseCount);
+                out.put(e.src.slice(e.offset, e.length + 4));
+            }
+        }
+        out.flip();
+
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                writeFully(ch, out);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        // a crash before this only replays records the new base already holds
+        Files.deleteIfExists(log);
+    }
+
+    private void touch(ObjectId id, long[] rank, Map<ObjectId, Rec> overlay, long r) {
+        Rec e = overlay.get(id);
+        if (e != null) { e.rank = r; return; }
+        int s = slot(id);
+        if (s >= 0 && rank[s] >= 0) rank[s] = r;
+    }
+
+    private void replace(ObjectId id, Rec e, long[] rank, Map<ObjectId, Rec> overlay) {
+        int s = slot(id);
+        if (s >= 0) rank[s] = -1;
+        overlay.put(id, e);
+    }
+
+    private static void appendPut(ByteArrayOutputStream out, ObjectId id, byte[] payload) {
+        out.write(PUT);
+        out.writeBytes(raw(id));
+        writeVarint(out, payload.length);
+        out.write(payload, 0, payload.length);
+        int c = crc(id, payload, 0, payload.length);
+        out.write(c >>> 24); out.write(c >>> 16); out.write(c >>> 8); out.write(c);
+    }
+
+    private static void appendTouch(ByteArrayOutputStream out, ObjectId id) {
+        out.write(TOUCH);
+        out.writeBytes(raw(id));
+    }
+
+    private static byte[] raw(AnyObjectId id) {
+        byte[] raw = new byte[20];
+        id.copyRawTo(raw, 0);
+        return raw;
+    }
+
+    private static int crc(AnyObjectId id, byte[] payload, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(raw(id));
+        crc.update(payload, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static int putBytes(int length) {
+        return TOUCH_BYTES + varintSize(length) + length + 4;
+    }
+
+    // ---------- varints (shared with codecs) ----------
+
+    public static void writeVarint(DataOutput out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) { out.writeByte((v & 0x7F) | 0x80); v >>>= 7; }
+        out.writeByte(v);
+    }
+
+    public static int readVarint(DataInput in) throws IOException {
+        int v = 0, shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+            shift += 7;
+            if (shift > 28) throw new IOException("varint too long");
+        }
+    }
+
+    // (value << 32 | position after it), or -1 when buf ends first or the value is not a length
+    private static long readVarint(byte[] buf, int at) {
+        int v = 0;
+        for (int shift = 0; shift <= 28 && at < buf.length; shift += 7) {
+            int b = buf[at++] & 0xff;
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v < 0 || v > (1 << 24) ? -1 : (long) v << 32 | at;
+        }
+        return -1;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) { out.write((v & 0x7F) | 0x80); v >>>= 7; }
+        out.write(v);
+    }
+
+    private static int varintSize(int v) {
+        int n = 1;
+        while ((v & ~0x7F) != 0) { n++; v >>>= 7; }
+        return n;
+    }
+}
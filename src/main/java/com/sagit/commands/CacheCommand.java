@@ -0,0 +1,67 @@
+package com.sagit.commands;
+
+import com.sagit.cache.BlobKeyedCache;
+import com.sagit.config.Config;
+import com.sagit.git.GitService;
+import com.sagit.semantic.BlobAnalyzer;
+import com.sagit.semantic.JavaSemanticAnalyzer;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+
+@CommandLine.Command(name = "cache", description = "Inspect or garbage-collect the analysis cache")
+public class CacheCommand implements Runnable {
+
+    @CommandLine.Parameters(index = "0", arity = "0..1", defaultValue = "stats",
+            description = "Action: stats|gc (default: ${DEFAULT-VALUE})")
+    String action;
+
+    @Override public void run() {
+        try (GitService gs = GitService.openFromWorkingDir()) {
+            Config cfg = gs.config();
+            if (!"gc".equalsIgnoreCase(action) && !"stats".equalsIgnoreCase(action)) {
+                System.err.println("Unknown cache action: " + action + " (expected stats|gc)");
+                return;
+            }
+            if ("stats".equalsIgnoreCase(action)) {
+                System.out.println("Sagit analysis cache:");
+                System.out.println("  analyzer version: " + JavaSemanticAnalyzer.VERSION);
+            }
+            // one stats cache per analyzer mode, then the member tables and the type references
+            for (JavaSemanticAnalyzer.Mode mode : JavaSemanticAnalyzer.Mode.values()) {
+                forCache(gs, BlobAnalyzer.openCache(gs.workTree(), cfg, mode), mode.name().toLowerCase() + " mode");
+            }
+            forCache(gs, BlobAnalyzer.openMemberCache(gs.workTree(), cfg), "member tables");
+            forCache(gs, BlobAnalyzer.openRefsCache(gs.workTree(), cfg), "type references");
+        } catch (Exception e) {
+            System.err.println("cache failed: " + e.getMessage());
+        }
+    }
+
+    private void forCache(GitService gs, BlobKeyedCache<?> cache, String name) throws Exception {
+        if ("gc".equalsIgnoreCase(action)) {
+            int before = cache.size();
+            var odb = gs.repo().getObjectDatabase();
+            int pruned = cache.retainIf(id -> {
+                try { return odb.has(id); } catch (Exception e) { return true; }
+            });
+            cache.compactOnFlush();
+            cache.flush();
+            System.out.printf("cache gc (%s): %d entries -> %d (%d pruned), %s on disk%n",
+                    name, before, cache.size(), pruned, human(cache.fileBytes()));
+        } else {
+            boolean present = Files.exists(cache.file());
+            System.out.println("  " + name + ":");
+            System.out.println("    file: " + cache.file() + (present ? "" : "  (not created yet)"));
+            System.out.println("    entries: " + cache.size());
+            System.out.println("    live: " + human(cache.liveBytes()) + " / cap " + human(cache.maxBytes()));
+            System.out.println("    on disk: " + human(cache.fileBytes()));
+        }
+    }
+
+    private static String human(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KiB", bytes / 1024.0);
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,95 @@
+package com.sagit.commands;
+
+import com.sagit.coverage.CoverageIndex;
+import com.sagit.git.GitService;
+import org.eclipse.jgit.lib.ObjectId;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@CommandLine.Command(name = "coverage", description = "Record per-test line coverage for `impacted --by-coverage` (JaCoCo XML)")
+public class CoverageCommand implements Runnable {
+
+    @CommandLine.Parameters(index = "0", defaultValue = "stats",
+            description = "Action: ingest|stats (default: ${DEFAULT-VALUE})")
+    String action;
+
+    @CommandLine.Parameters(index = "1..*", arity = "0..*", paramLabel = "REPORT",
+            description = "One JaCoCo XML report per test class, or directories searched for them")
+    List<Path> reports = new ArrayList<>();
+
+    @CommandLine.Option(names = "--test",
+            description = "Test name for a single report (default: the file name, or the directory name for jacoco.xml)")
+    String test;
+
+    @Override public void run() {
+        try (GitService gs = GitService.openFromWorkingDir()) {
+            Path root = gs.workTree();
+            if ("stats".equalsIgnoreCase(action)) {
+                CoverageIndex index = CoverageIndex.open(root);
+                System.out.println("Sagit coverage index:");
+                System.out.println("  dir: " + CoverageIndex.dir(root) + (index == null ? "  (not created yet)" : ""));
+                if (index == null) return;
+                StringBuilder at = new StringBuilder();
+                for (CoverageIndex.Recorded r : index.recorded()) {
+                    if (at.length() > 0) at.append(", ");
+                    at.append(r.commit().abbreviate(7).name()).append(" (").append(r.tests()).append(" tests)");
+                }
+                System.out.println("  recorded at: " + at);
+                System.out.println("  tests: " + index.tests());
+                System.out.println("  source files: " + index.files());
+                System.out.println("  segments: " + index.segments());
+            } else if ("ingest".equalsIgnoreCase(action)) {
+                ingest(gs, root);
+            } else {
+                System.err.println("Unknown coverage action: " + action + " (expected ingest|stats)");
+            }
+        } catch (Exception e) {
+            System.err.println("coverage failed: " + e.getMessage());
+        }
+    }
+
+    private void ingest(GitService gs, Path root) throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (Path p : reports) {
+            if (!Files.isDirectory(p)) { files.add(p); continue; }
+            try (Stream<Path> s = Files.walk(p)) {
+                s.filter(f -> Files.isRegularFile(f) && f.getFileName().toString().endsWith(".xml")).sorted().forEach(files::add);
+            }
+        }
+        if (files.isEmpty()) { System.err.println("coverage: no reports given"); return; }
+        if (test != null && files.size() > 1) { System.err.println("coverage: --test needs exactly one report"); return; }
+
+        // one entry per test; a later report for the same test wins
+        Map<String, CoverageIndex.TestCoverage> byTest = new LinkedHashMap<>();
+        for (Path f : files) {
+            String name = test != null ? test : testName(f);
+            try {
+                byTest.put(name, CoverageIndex.readReport(name, f));
+            } catch (Exception e) {
+                System.err.println("coverage: skipped " + f + ": " + e.getMessage());
+            }
+        }
+        if (byTest.isEmpty()) return;
+
+        ObjectId head = gs.repo().resolve("HEAD^{commit}");
+        if (head == null) { System.err.println("coverage: no commit yet to record the coverage against"); return; }
+        CoverageIndex.Ingest r = CoverageIndex.ingest(root, head, new ArrayList<>(byTest.values()));
+        System.out.println("coverage " + r.action() + ": " + r.tests() + " test(s), " + r.segments() + " segment(s)");
+    }
+
+    // com.acme.FooTest.xml -> com.acme.FooTest; com.acme.FooTest/jacoco.xml -> com.acme.FooTest
+    private static String testName(Path report) {
+        String name = report.getFileName().toString();
+        String stem = name.endsWith(".xml") ? name.substring(0, name.length() - 4) : name;
+        Path parent = report.toAbsolutePath().getParent();
+        if (stem.equals("jacoco") && parent != null && parent.getFileName() != null) return parent.getFileName().toString();
+        return stem;
+    }
+}
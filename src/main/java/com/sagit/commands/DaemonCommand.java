@@ -0,0 +1,90 @@
+package com.sagit.commands;
+
+import com.sagit.SagitCLI;
+import com.sagit.config.Config;
+import com.sagit.daemon.DaemonClient;
+import com.sagit.daemon.DaemonServer;
+import com.sagit.utils.FS;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+@CommandLine.Command(name = "daemon", description = "Run a warm per-repo process that serves git hooks over .sagit/daemon.sock")
+public class DaemonCommand implements Runnable {
+
+    @CommandLine.Parameters(index = "0", arity = "0..1", defaultValue = "run",
+            description = "Action: run|start|stop|status (default: ${DEFAULT-VALUE}; start = run detached)")
+    String action;
+
+    @CommandLine.Option(names = "--idle-timeout", description = "Exit after this many idle seconds (default: config daemonIdleSeconds)")
+    Long idleSeconds;
+
+    @Override public void run() {
+        try {
+            Path root = FS.repoRoot();
+            Path sock = DaemonServer.socketPath(root);
+
+            switch (action.toLowerCase()) {
+                case "status" -> {
+                    String r = DaemonClient.request(sock, "!ping");
+                    if (r != null && r.startsWith("pong")) {
+                        System.out.println("sagit daemon: running (pid " + r.split("\\s+")[1] + ") on " + sock);
+                    } else {
+                        System.out.println("sagit daemon: not running" + (Files.exists(sock) ? " (stale socket)" : ""));
+                    }
+                }
+                case "stop" -> System.out.println(DaemonClient.stop(sock) ? "sagit daemon: stopped" : "sagit daemon: not running");
+                case "start" -> start(root, sock);
+                case "run" -> {
+                    // the resident Repository is opened from the cwd, like every other command
+                    if (!root.equals(Path.of("").toAbsolutePath().normalize())) {
+                        throw new IllegalStateException("run the daemon from the repository root (" + root + ")");
+                    }
+                    long idle = idleSeconds != null ? idleSeconds : Config.load().daemonIdleSeconds;
+                    new DaemonServer(sock, idle).serve();
+                }
+                default -> System.err.println("Unknown daemon action: " + action + " (expected run|start|stop|status)");
+            }
+        } catch (Exception e) {
+            System.err.println("daemon failed: " + e.getMessage());
+        }
+    }
+
+    private void start(Path root, Path sock) throws Exception {
+        if (DaemonClient.ping(sock)) {
+            System.out.println("sagit daemon: already running on " + sock);
+            return;
+        }
+        var self = SagitCLI.class.getProtectionDomain().getCodeSource().getLocation();
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        cmd.add("-cp");
+        cmd.add(Path.of(self.toURI()).toString());
+        cmd.add(SagitCLI.class.getName());
+        cmd.add("daemon");
+        if (idleSeconds != null) { cmd.add("--idle-timeout"); cmd.add(String.valueOf(idleSeconds)); }
+
+        Path log = root.resolve(".sagit/daemon.log");
+        Files.createDirectories(log.getParent());
+        Process p = new ProcessBuilder(cmd)
+                .directory(root.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile()))
+                .start();
+        p.getOutputStream().close();
+
+        // wait until it answers (or dies) so callers can rely on it right away
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (System.currentTimeMillis() < deadline && p.isAlive()) {
+            if (DaemonClient.ping(sock)) {
+                System.out.println("sagit daemon: started (pid " + p.pid() + "), log " + log);
+                return;
+            }
+            Thread.sleep(50);
+        }
+        System.err.println("sagit daemon: did not come up, see " + log);
+    }
+}
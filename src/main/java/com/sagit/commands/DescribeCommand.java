@@ -2,7 +2,11 @@ package com.sagit.commands;
 
 import com.sagit.config.Config;
 import com.sagit.git.GitService;
-import com.sagit.semantic.JavaSemanticAnalyzer;
+import com.sagit.git.RenameDetection;
+import com.sagit.meta.RangeDeltas;
+import com.sagit.semantic.AnalysisPipeline;
+import com.sagit.semantic.BlobAnalyzer;
+import com.sagit.semantic.MemberDiff;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.lib.ObjectId;
 import picocli.CommandLine;
@@ -20,6 +24,18 @@ public class DescribeCommand implements Runnable {
             description = "Output format: md|json (default: ${DEFAULT-VALUE})")
     String format;
 
+    @CommandLine.Option(names = {"--jobs"}, description = "Parallel analysis workers (default: config 'jobs', 0 = all cores)")
+    Integer jobs;
+
+    @CommandLine.Option(names = "--renames", description = "Rename detection: off|exact|full (default: config 'renameMode', full)")
+    String renames;
+
+    @CommandLine.Option(names = "--members", description = "Also report added/removed/changed members (parses the changed files)")
+    boolean members;
+
+    @CommandLine.Option(names = "--live", description = "Re-analyze the changed files instead of summing recorded per-commit Java deltas")
+    boolean live;
+
     @Override public void run() {
         try (GitService gs = GitService.openFromWorkingDir()) {
             ObjectId toTree   = gs.repo().resolve("HEAD^{tree}");
@@ -27,17 +43,20 @@ public class DescribeCommand implements Runnable {
             if (toTree == null) { System.err.println("describe: no HEAD"); return; }
             if (fromTree == null) { fromTree = ObjectId.zeroId(); } // first-commit safe
 
-            List<DiffEntry> diffs = gs.diffBetween(fromTree, toTree);
+            RenameDetection.Options ro = gs.renameOptions();
+            if (renames != null) ro = ro.withMode(RenameDetection.Mode.parse(renames, ro.mode()));
+            RenameDetection.Result scan = gs.scanBetween(fromTree, toTree, ro);
+            List<DiffEntry> diffs = scan.entries();
 
             int add=0, mod=0, del=0;
             int deltaTypes=0, deltaMethods=0;
             Map<String,Integer> byLang = new LinkedHashMap<>();
             Map<String,Integer> byDir  = new LinkedHashMap<>();
 
-            Config cfg = Config.load();
+            Config cfg = gs.config();
             boolean javaAllowed = cfg.languages.isEmpty() || cfg.languages.contains("java");
-            JavaSemanticAnalyzer analyzer = javaAllowed ? new JavaSemanticAnalyzer() : null;
 
+            List<DiffEntry> javaEntries = new ArrayList<>();
             for (DiffEntry de : diffs) {
                 switch (de.getChangeType()) {
                     case ADD -> add++;
@@ -53,18 +72,42 @@ public class DescribeCommand implements Runnable {
                 String dir = topDir(path);
                 byDir.put(dir, byDir.getOrDefault(dir, 0) + 1);
 
-                if (javaAllowed && path.endsWith(".java")) {
-                    ObjectId oldObj = (de.getOldId() != null) ? de.getOldId().toObjectId() : null;
-                    ObjectId newObj = (de.getNewId() != null) ? de.getNewId().toObjectId() : null;
+                if (javaAllowed && path.endsWith(".java")) javaEntries.add(de);
+            }
 
-                    byte[] ob = (oldObj != null && !ObjectId.zeroId().equals(oldObj)) ? gs.loadBlob(oldObj) : null;
-                    byte[] nb = (newObj != null && !ObjectId.zeroId().equals(newObj)) ? gs.loadBlob(newObj) : null;
+            // the net delta telescopes over first-parent history, so recorded per-commit deltas sum to it
+            RangeDeltas.Totals recorded = null;
+            ObjectId headCommit = gs.repo().resolve("HEAD^{commit}");
+            ObjectId sinceCommit = gs.repo().resolve(since + "^{commit}");
+            boolean sinceIsCommit = sinceCommit != null || gs.repo().resolve(since) == null;
+            if (javaAllowed && !live && !javaEntries.isEmpty() && headCommit != null && sinceIsCommit) {
+                recorded = RangeDeltas.between(gs, cfg, sinceCommit, headCommit);
+            }
+            MemberDiff memberDiff = null;
+            if (recorded != null) {
+                deltaTypes   = (int) recorded.types();
+                deltaMethods = (int) recorded.methods();
+            } else {
+                try (BlobAnalyzer analyzer = BlobAnalyzer.open(gs, cfg)) {
+                    int workers = jobs != null ? jobs : cfg.jobs;
+                    AnalysisPipeline.Result r;
+                    if (members && javaAllowed) {
+                        // both from one parse per blob
+                        var detailed = AnalysisPipeline.runWithMembers(gs, analyzer, javaEntries, workers);
+                        r = detailed.result();
+                        memberDiff = detailed.members();
+                    } else {
+                        r = AnalysisPipeline.run(gs, analyzer, javaEntries, workers);
+                    }
+                    var d = r.total();
+                    deltaTypes   = d.classes + d.interfaces_ + d.enums_;
+                    deltaMethods = d.methods;
+                }
+            }
 
-                    var os = analyzer.analyze(ob == null ? "" : new String(ob));
-                    var ns = analyzer.analyze(nb == null ? "" : new String(nb));
-                    var d  = ns.diff(os);
-                    deltaTypes   += d.classes + d.interfaces_ + d.enums_;
-                    deltaMethods += d.methods;
+            if (memberDiff == null && members && javaAllowed) {
+                try (BlobAnalyzer analyzer = BlobAnalyzer.open(gs, cfg)) {
+                    memberDiff = AnalysisPipeline.members(gs, analyzer, javaEntries, jobs != null ? jobs : cfg.jobs);
                 }
             }
 
@@ -73,7 +116,16 @@ public class DescribeCommand implements Runnable {
                 System.out.println("{");
                 System.out.println("  \"range\": {\"since\": \"" + escape(since) + "\", \"to\": \"HEAD\"},");
                 System.out.println("  \"files\": {\"added\": " + add + ", \"modified\": " + mod + ", \"deleted\": " + del + "},");
+                System.out.println("  \"renames\": \"" + escape(scan.describe()) + "\",");
                 System.out.println("  \"java_delta\": {\"types\": " + deltaTypes + ", \"methods\": " + deltaMethods + "},");
+                if (memberDiff != null) {
+                    System.out.println("  \"members\": {");
+                    System.out.println("    \"added\": " + jsonMembers(memberDiff.added) + ",");
+                    System.out.println("    \"removed\": " + jsonMembers(memberDiff.removed) + ",");
+                    System.out.println("    \"changed\": " + jsonMembers(memberDiff.changed) + ",");
+                    System.out.println("    \"moved\": " + jsonMoves(memberDiff.moves()));
+                    System.out.println("  },");
+                }
                 System.out.println("  \"by_language\": {");
                 printMap(byLang, 4);
                 System.out.println("  },");
@@ -85,7 +137,9 @@ public class DescribeCommand implements Runnable {
                 System.out.println("# Change Summary");
                 System.out.println("- Range: `" + since + "` → `HEAD`");
                 System.out.println("- Files: +" + add + " ~" + mod + " -" + del);
+                System.out.println("- Renames: " + scan.describe());
                 System.out.println("- Java Δ: types=" + deltaTypes + ", methods=" + deltaMethods);
+                if (memberDiff != null) System.out.println("- Members: " + memberDiff.counts());
                 if (!byLang.isEmpty()) {
                     System.out.println("\n## Files by language");
                     byLang.forEach((k,v) -> System.out.println("- " + k + ": " + v));
@@ -94,6 +148,16 @@ public class DescribeCommand implements Runnable {
                     System.out.println("\n## Top-level directories touched");
                     byDir.forEach((k,v) -> System.out.println("- " + k + ": " + v));
                 }
+                if (memberDiff != null && !memberDiff.isEmpty()) {
+                    System.out.println("\n## Members");
+                    for (MemberDiff.Entry e : memberDiff.all()) {
+                        System.out.println("- " + MemberDiff.symbol(e.change()) + " `" + e.member().display() + "`");
+                    }
+                    for (MemberDiff.Move m : memberDiff.moves()) {
+                        System.out.println("- > `" + m.from().member().display() + "` → `" + m.to().member().display()
+                                + "` (" + m.kind() + (m.similarity() < 100 ? ", " + m.similarity() + "% similar" : "") + ")");
+                    }
+                }
             }
         } catch (Exception e) {
             System.err.println("describe failed: " + e.getMessage());
@@ -118,6 +182,19 @@ public class DescribeCommand implements Runnable {
         int s = path.indexOf('/');
         return s > 0 ? path.substring(0, s) : ".";
     }
+    private static String jsonMembers(List<MemberDiff.Entry> entries) {
+        StringJoiner j = new StringJoiner(", ", "[", "]");
+        for (MemberDiff.Entry e : entries) j.add("\"" + escape(e.member().display()) + "\"");
+        return j.toString();
+    }
+    private static String jsonMoves(List<MemberDiff.Move> moves) {
+        StringJoiner j = new StringJoiner(", ", "[", "]");
+        for (MemberDiff.Move m : moves) {
+            j.add("{\"from\": \"" + escape(m.from().member().display()) + "\", \"to\": \"" + escape(m.to().member().display())
+                    + "\", \"kind\": \"" + m.kind() + "\", \"similarity\": " + m.similarity() + "}");
+        }
+        return j.toString();
+    }
     private static String escape(String s) { return s.replace("\\","\\\\").replace("\"","\\\""); }
     private static void printMap(Map<String,Integer> m, int indent) {
         int i = 0, n = m.size();
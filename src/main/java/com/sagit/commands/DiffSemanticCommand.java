@@ -1,12 +1,17 @@
 package com.sagit.commands;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.lib.ObjectId;
 
+import com.sagit.config.Config;
 import com.sagit.git.GitService;
-import com.sagit.semantic.JavaSemanticAnalyzer;
+import com.sagit.git.RenameDetection;
+import com.sagit.semantic.AnalysisPipeline;
+import com.sagit.semantic.BlobAnalyzer;
+import com.sagit.semantic.MemberDiff;
 
 import picocli.CommandLine;
 
@@ -19,22 +24,33 @@ public class DiffSemanticCommand implements Runnable {
     @CommandLine.Option(names = "--since", description = "Compare since ref (e.g., HEAD~1)")
     String since;
 
+    @CommandLine.Option(names = "--jobs", description = "Parallel analysis workers (default: config 'jobs', 0 = all cores)")
+    Integer jobs;
+
+    @CommandLine.Option(names = "--renames", description = "Rename detection: off|exact|full (default: config 'renameMode', full)")
+    String renames;
+
+    @CommandLine.Option(names = "--members", defaultValue = "20",
+            description = "List up to this many added/removed/changed/moved members (default: ${DEFAULT-VALUE}, 0 = counts only)")
+    int members;
+
     @Override public void run() {
         try (GitService gs = GitService.openFromWorkingDir()) {
-            List<DiffEntry> diffs;
-            if (since != null && !since.isBlank()) {
-                ObjectId a = gs.repo().resolve(since + "^{tree}");
-                ObjectId b = gs.writeIndexTree(); // current index tree (or use HEAD if you prefer commits only)
-                diffs = gs.diffBetween(a, b);
-            } else {
-                diffs = gs.diffStagedAgainstHead();
-            }
+            RenameDetection.Options ro = gs.renameOptions();
+            if (renames != null) ro = ro.withMode(RenameDetection.Mode.parse(renames, ro.mode()));
+            ObjectId a = (since != null && !since.isBlank())
+                    ? gs.repo().resolve(since + "^{tree}")
+                    : gs.repo().resolve("HEAD^{tree}");
+            // current index (or use HEAD if you prefer commits only)
+            RenameDetection.Result scan = gs.scanIndex(a, gs.readIndex(), ro);
+            List<DiffEntry> diffs = scan.entries();
 
             int filesAdded=0, filesModified=0, filesDeleted=0;
             int deltaClasses=0, deltaInterfaces=0, deltaEnums=0, deltaMethods=0, deltaFields=0;
+            int deltaCtors=0, deltaRecords=0, deltaAnnotations=0;
+            MemberDiff memberDiff = null;
 
-            JavaSemanticAnalyzer analyzer = new JavaSemanticAnalyzer();
-
+            List<DiffEntry> javaEntries = new ArrayList<>();
             for (DiffEntry de : diffs) {
                 switch (de.getChangeType()) {
                     case ADD -> filesAdded++;
@@ -49,30 +65,40 @@ public class DiffSemanticCommand implements Runnable {
                 boolean isJava = (pathNew != null && pathNew.endsWith(".java"))
                               || (pathOld != null && pathOld.endsWith(".java"));
 
-                if (!isJava) continue;
+                if (isJava) javaEntries.add(de);
+            }
 
-                byte[] oldBytes = null, newBytes = null;
-                if (de.getOldMode() != null && de.getOldId() != null && de.getOldId().toObjectId() != null) {
-                    oldBytes = gs.loadBlob(de.getOldId().toObjectId());
-                }
-                if (de.getNewMode() != null && de.getNewId() != null && de.getNewId().toObjectId() != null) {
-                    newBytes = gs.loadBlob(de.getNewId().toObjectId());
+            if (semantic) {
+                Config cfg = gs.config();
+                try (BlobAnalyzer analyzer = BlobAnalyzer.open(gs, cfg)) {
+                    // one parse per blob yields both the counters and the member table
+                    var detailed = AnalysisPipeline.runWithMembers(gs, analyzer, javaEntries, jobs != null ? jobs : cfg.jobs);
+                    var diff = detailed.result().total();
+                    deltaClasses    = diff.classes;
+                    deltaInterfaces = diff.interfaces_;
+                    deltaEnums      = diff.enums_;
+                    deltaMethods    = diff.methods;
+                    deltaFields     = diff.fields;
+                    deltaCtors       = diff.constructors;
+                    deltaRecords     = diff.records;
+                    deltaAnnotations = diff.annotations;
+                    memberDiff = detailed.members();
                 }
-
-                var oldStats = analyzer.analyze(oldBytes == null ? "" : new String(oldBytes));
-                var newStats = analyzer.analyze(newBytes == null ? "" : new String(newBytes));
-                var diff = newStats.diff(oldStats);
-                deltaClasses    += diff.classes;
-                deltaInterfaces += diff.interfaces_;
-                deltaEnums      += diff.enums_;
-                deltaMethods    += diff.methods;
-                deltaFields     += diff.fields;
             }
 
             System.out.printf("Files: +%d ~%d -%d%n", filesAdded, filesModified, filesDeleted);
+            System.out.println("Renames: " + scan.describe());
             if (semantic) {
                 System.out.printf("Java: Δclasses=%d, Δinterfaces=%d, Δenums=%d, Δmethods=%d, Δfields=%d%n",
                         deltaClasses, deltaInterfaces, deltaEnums, deltaMethods, deltaFields);
+                System.out.printf("      Δconstructors=%d, Δrecords=%d, Δannotations=%d%n",
+                        deltaCtors, deltaRecords, deltaAnnotations);
+                System.out.println("Members: " + memberDiff.counts());
+                List<String> all = new ArrayList<>();
+                for (MemberDiff.Entry e : memberDiff.all()) all.add(MemberDiff.symbol(e.change()) + " " + e.member().display());
+                for (MemberDiff.Move m : memberDiff.moves()) all.add("> " + m.display());
+                for (int i = 0; i < Math.min(members, all.size()); i++) System.out.println("  " + all.get(i));
+                if (members > 0 && all.size() > members) System.out.println("  ... " + (all.size() - members) + " more");
             }
         } catch (Exception e) {
             System.err.println("diff failed: " + e.getMessage());
@@ -1,17 +1,25 @@
 package com.sagit.commands;
 
 import com.sagit.config.Config;
+import com.sagit.coverage.CoverageIndex;
 import com.sagit.git.GitService;
-import com.sagit.utils.FS;
+import com.sagit.git.RenameDetection;
+import com.sagit.rules.RuleMatcher;
+import com.sagit.semantic.MemberTable;
+import com.sagit.symbols.DependencyGraph;
+import com.sagit.symbols.SymbolIndex;
+import com.sagit.timing.ShardPlanner;
+import com.sagit.timing.TestHistory;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
 import org.eclipse.jgit.lib.ObjectId;
 import picocli.CommandLine;
 
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Pattern;
 
 @CommandLine.Command(name = "impacted", description = "List likely impacted tests since a ref")
 public class ImpactedCommand implements Runnable {
@@ -23,61 +31,187 @@ public class ImpactedCommand implements Runnable {
     @CommandLine.Option(names = {"--only-changed-tests"}, description = "Only list tests that actually exist")
     boolean onlyExisting;
 
+    @CommandLine.Option(names = "--renames", description = "Rename detection: off|exact|full (default: config 'renameMode', full)")
+    String renames;
+
+    @CommandLine.Option(names = "--transitive",
+            description = "Also list every test that depends on a changed file, directly or through other files (needs `sagit index --symbols`)")
+    boolean transitive;
+
+    @CommandLine.Option(names = "--depth", defaultValue = "-1",
+            description = "With --transitive: follow at most this many dependency hops (default: unbounded)")
+    int depth;
+
+    @CommandLine.Option(names = "--by-coverage",
+            description = "Also list every test whose recorded coverage touches a changed line (needs `sagit coverage ingest`)")
+    boolean byCoverage;
+
+    @CommandLine.Option(names = "--order", defaultValue = "selection",
+            description = "Output order: selection|fail-first (recently failing tests first; needs `sagit tests ingest`)")
+    String order;
+
+    @CommandLine.Option(names = "--shards", defaultValue = "1",
+            description = "Split the selected tests into this many shards balanced by recorded durations")
+    int shards;
+
+    @CommandLine.Option(names = "--shard-index", defaultValue = "0",
+            description = "With --shards: list only this shard (0-based, default: ${DEFAULT-VALUE})")
+    int shardIndex;
+
     @Override public void run() {
+        if (!order.equals("selection") && !order.equals("fail-first")) {
+            System.err.println("impacted: unknown --order " + order + " (expected selection|fail-first)");
+            return;
+        }
+        if (shards < 1 || shardIndex < 0 || shardIndex >= shards) {
+            System.err.println("impacted: --shard-index must be in 0.." + (shards - 1) + " (--shards " + shards + ")");
+            return;
+        }
         try (GitService gs = GitService.openFromWorkingDir()) {
             ObjectId toTree   = gs.repo().resolve("HEAD^{tree}");
             ObjectId fromTree = gs.repo().resolve(since + "^{tree}");
             if (toTree == null) { System.err.println("impacted: no HEAD"); return; }
             if (fromTree == null) { fromTree = ObjectId.zeroId(); } // first-commit safe
 
+            if (renames != null) gs.setRenameMode(RenameDetection.Mode.parse(renames, gs.renameOptions().mode()));
             List<DiffEntry> diffs = gs.diffBetween(fromTree, toTree);
             Set<String> tests = new LinkedHashSet<>();
+            List<String> changed = new ArrayList<>();
 
-            Config cfg = Config.load();
-            Path rulesPath = FS.repoRoot().resolve(cfg.impactedRules);
-            List<Rule> rules = loadRules(rulesPath);
+            Config cfg = gs.config();
+            Path root = gs.workTree();
+            Path rulesPath = root.resolve(cfg.impactedRules);
+            RuleMatcher rules = RuleMatcher.load(rulesPath, RuleMatcher.cacheFile(root));
+            SymbolIndex symbols = SymbolIndex.open(root); // null until `sagit index --symbols`
 
             for (DiffEntry de : diffs) {
                 String path = de.getChangeType()==DiffEntry.ChangeType.DELETE ? de.getOldPath() : de.getNewPath();
                 if (path == null) continue;
+                changed.add(path);
 
-                String mapped = applyRules(path, rules);
+                String mapped = rules.apply(path);
+                if (mapped == null && symbols != null) mapped = indexedTest(path, symbols);
                 if (mapped == null) mapped = defaultJavaMap(path);
 
                 if (mapped != null) {
-                    if (!onlyExisting || Files.exists(FS.repoRoot().resolve(mapped))) {
+                    if (!onlyExisting || Files.exists(root.resolve(mapped))) {
                         tests.add(mapped);
                     }
                 }
             }
 
-            if (tests.isEmpty()) System.out.println("(no obvious tests)");
-            else tests.forEach(System.out::println);
+            if (transitive) addTransitive(symbols, gs.repo().resolve("HEAD^{commit}"), changed, root, tests);
+            if (byCoverage) addCovered(gs, diffs, root, symbols, tests);
+
+            List<String> selected = arrange(root, new ArrayList<>(tests));
+            if (selected.isEmpty()) System.out.println("(no obvious tests)");
+            else selected.forEach(System.out::println);
         } catch (Exception e) {
             System.err.println("impacted failed: " + e.getMessage());
         }
     }
 
-    // ---------- rules ----------
-    private static List<Rule> loadRules(Path file) {
-        if (!Files.exists(file)) return List.of();
-        List<Rule> out = new ArrayList<>();
-        try {
-            for (String raw : Files.readAllLines(file, StandardCharsets.UTF_8)) {
-                String line = raw.trim();
-                if (line.isEmpty() || line.startsWith("#")) continue;
-                String[] parts = line.split("=>", 2);
-                if (parts.length != 2) continue;
-                out.add(new Rule(Pattern.compile(parts[0].trim()), parts[1].trim()));
+    // ---------- order and shards ----------
+    private List<String> arrange(Path root, List<String> tests) throws IOException {
+        if (shards == 1 && order.equals("selection")) return tests;
+        TestHistory history = TestHistory.load(root);
+        if (history.size() == 0) {
+            System.err.println("impacted: no test history yet (run: sagit tests ingest <surefire-reports>); assuming equal durations");
+        }
+        if (order.equals("fail-first")) tests = history.failFirst(tests);
+        if (shards == 1) return tests;
+
+        List<ShardPlanner.Shard> plan = ShardPlanner.plan(tests, history::estimate, shards);
+        ShardPlanner.Shard mine = plan.get(shardIndex);
+        double total = plan.stream().mapToDouble(ShardPlanner.Shard::seconds).sum();
+        System.err.printf(Locale.ROOT, "impacted: shard %d/%d: %d of %d test(s), ~%.1fs of ~%.1fs%n",
+                shardIndex, shards, mine.tests().size(), tests.size(), mine.seconds(), total);
+        return mine.tests();
+    }
+
+    // ---------- dependency graph ----------
+    private void addTransitive(SymbolIndex symbols, ObjectId head, List<String> changed, Path root, Set<String> tests) {
+        if (symbols == null) {
+            System.err.println("impacted: no dependency graph yet (run: sagit index --symbols); listing direct mappings only");
+            return;
+        }
+        DependencyGraph graph = symbols.graph();
+        if (!symbols.commit().equals(head)) {
+            System.err.println("impacted: dependency graph is at " + symbols.commit().abbreviate(7).name()
+                    + ", not HEAD (run: sagit index --symbols)");
+        }
+        for (DependencyGraph.Reached r : graph.dependentsOf(changed, depth)) {
+            if (isTest(r.path()) && (!onlyExisting || Files.exists(root.resolve(r.path())))) tests.add(r.path());
+        }
+    }
+
+    // ---------- coverage ----------
+    private void addCovered(GitService gs, List<DiffEntry> diffs, Path root, SymbolIndex symbols, Set<String> tests)
+            throws IOException {
+        CoverageIndex coverage = CoverageIndex.open(root);
+        if (coverage == null) {
+            System.err.println("impacted: no coverage recorded yet (run: sagit coverage ingest <jacoco.xml>...)");
+            return;
+        }
+        ObjectId base = gs.repo().resolve(since + "^{commit}");
+        // each ingest keeps its own commit, so one fresh re-ingest cannot hide older coverage
+        int stale = 0;
+        String at = null;
+        for (CoverageIndex.Recorded r : coverage.recorded()) {
+            if (r.commit().equals(base)) continue;
+            stale += r.tests();
+            at = at == null ? r.commit().abbreviate(7).name() : at + ", " + r.commit().abbreviate(7).name();
+        }
+        if (stale > 0) {
+            System.err.println("impacted: coverage of " + stale + " of " + coverage.tests() + " test(s) was recorded at "
+                    + at + ", not at " + since + "; line numbers may have moved since");
+        }
+        for (DiffEntry de : diffs) {
+            if (de.getChangeType() == DiffEntry.ChangeType.ADD) continue; // nothing ran a new file yet
+            String path = de.getOldPath();
+            EditList edits = de.getChangeType() == DiffEntry.ChangeType.DELETE ? null : gs.editList(de);
+            Set<String> hit = new TreeSet<>();
+            if (edits == null || edits.isEmpty()) {
+                hit.addAll(coverage.testsFor(path)); // deleted, binary or content-identical: any line counts
+            } else {
+                for (Edit e : edits) {
+                    // old-side lines, 1-based; a pure insertion touches the lines on either side
+                    int first = e.getBeginA() + 1, last = e.getEndA();
+                    if (first > last) { first = e.getBeginA(); last = e.getBeginA() + 1; }
+                    hit.addAll(coverage.testsFor(path, first, last));
+                }
             }
-        } catch (Exception ignored) {}
-        return out;
+            for (String t : hit) {
+                String p = testPath(t, symbols);
+                if (onlyExisting && p != null && !Files.exists(root.resolve(p))) continue;
+                tests.add(p != null ? p : t);
+            }
+        }
     }
 
-    private static String applyRules(String path, List<Rule> rules) {
-        for (Rule r : rules) {
-            var m = r.pattern.matcher(path);
-            if (m.find()) return m.replaceAll(r.replacement);
+    // a test class name from the coverage index -> its file, when the symbol index knows it
+    private static String testPath(String test, SymbolIndex symbols) {
+        if (symbols == null) return null;
+        for (SymbolIndex.Symbol s : symbols.lookup(test)) {
+            if (s.kind() == MemberTable.Kind.TYPE) return s.path();
+        }
+        return null;
+    }
+
+    private static boolean isTest(String path) {
+        if (!path.endsWith(".java")) return false;
+        if (path.startsWith("src/test/") || path.contains("/src/test/")) return true;
+        String name = path.substring(path.lastIndexOf('/') + 1, path.length() - ".java".length());
+        return name.endsWith("Test") || name.endsWith("Tests") || name.endsWith("IT") || name.startsWith("Test");
+    }
+
+    // pkg.FooTest wherever it lives (another module, a differently laid out test root)
+    private static String indexedTest(String srcPath, SymbolIndex symbols) {
+        int at = srcPath.indexOf("src/main/java/");
+        if (at < 0 || !srcPath.endsWith(".java")) return null;
+        String type = srcPath.substring(at + "src/main/java/".length(), srcPath.length() - ".java".length()).replace('/', '.');
+        for (SymbolIndex.Symbol s : symbols.lookup(type + "Test")) {
+            if (s.kind() == MemberTable.Kind.TYPE) return s.path();
         }
         return null;
     }
@@ -87,6 +221,4 @@ public class ImpactedCommand implements Runnable {
         String rest = srcPath.substring("src/main/java/".length(), srcPath.length() - ".java".length());
         return "src/test/java/" + rest + "Test.java";
     }
-
-    private record Rule(Pattern pattern, String replacement) {}
 }
@@ -0,0 +1,237 @@
+package com.sagit.commands;
+
+import com.sagit.config.Config;
+import com.sagit.git.GitService;
+import com.sagit.meta.MetaRecord;
+import com.sagit.meta.MetaStore;
+import com.sagit.semantic.AnalysisPipeline;
+import com.sagit.semantic.BlobAnalyzer;
+import com.sagit.semantic.StagedAnalysis;
+import com.sagit.symbols.SymbolIndex;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Backfill metadata for history made before the post-commit hook was installed.
+ *
+ * Commits are walked parents-first, summarized on a worker pool exactly as post-commit does
+ * (first parent, hook analyzer and rename modes) and written to the store in walk order,
+ * in batches. After each batch a checkpoint records how far the walk got, so an interrupted
+ * run resumes there; commits that already have metadata from the current analyzer are skipped
+ * either way.
+ *
+ * Every run also brings the symbol index ({@link SymbolIndex}) up to HEAD, building it if
+ * missing; `--symbols` alone does only that.
+ */
+@CommandLine.Command(name = "index", description = "Record metadata for existing history (backfill) and index symbols at HEAD")
+public class IndexCommand implements Runnable {
+
+    private static final int BATCH = 256;
+
+    @CommandLine.Option(names = "--all", description = "Every commit reachable from any ref")
+    boolean all;
+
+    @CommandLine.Option(names = "--range", paramLabel = "A..B", description = "Commits reachable from B but not from A")
+    String range;
+
+    @CommandLine.Option(names = "--symbols", description = "Build or update the symbol index at HEAD (implied by --all/--range)")
+    boolean symbols;
+
+    @CommandLine.Option(names = "--rebuild-symbols", description = "Rebuild the symbol index from scratch instead of updating it")
+    boolean rebuildSymbols;
+
+    @CommandLine.Option(names = {"--jobs"}, description = "Parallel workers (default: config 'jobs', 0 = all cores)")
+    Integer jobs;
+
+    private record Work(ObjectId commit, ObjectId parentTree, ObjectId tree, int time) {}
+
+    @Override public void run() {
+        if (all && range != null || !all && range == null && !symbols && !rebuildSymbols) {
+            System.err.println("index: pass one of --all or --range A..B, and/or --symbols");
+            return;
+        }
+        try (GitService gs = GitService.openFromWorkingDir()) {
+            Config cfg = gs.config();
+            if (all || range != null) backfill(gs, cfg);
+            indexSymbols(gs, cfg);
+        } catch (Exception e) {
+            System.err.println("index failed: " + e.getMessage());
+        }
+    }
+
+    private void backfill(GitService gs, Config cfg) throws IOException {
+        Path root = gs.workTree();
+        MetaStore store = MetaStore.forRepo(root);
+        String spec = all ? "--all" : range;
+
+        List<Work> work = walk(gs, spec);
+        Path ckpt = checkpointFile(root);
+        int resumeAt = readCheckpoint(ckpt, spec, work);
+        Set<ObjectId> recorded = store.commitIds();
+        List<ObjectId> candidates = new ArrayList<>();
+        for (int i = resumeAt; i < work.size(); i++) {
+            if (recorded.contains(work.get(i).commit())) candidates.add(work.get(i).commit());
+        }
+        // records from an older analyzer (or none) are redone, so range sums can trust them
+        Map<ObjectId, String> existing = store.getAll(candidates);
+
+        List<Work> todo = new ArrayList<>();
+        for (int i = resumeAt; i < work.size(); i++) {
+            String rec = existing.get(work.get(i).commit());
+            if (rec == null || !MetaRecord.isCurrent(rec)) todo.add(work.get(i));
+        }
+        System.out.printf("index: %d commits in range, %d already indexed%s, %d to do%n",
+                work.size(), work.size() - todo.size(),
+                resumeAt > 0 ? " (resuming after " + resumeAt + ")" : "", todo.size());
+
+        long t0 = System.nanoTime();
+        int written = index(gs, cfg, store, todo, ckpt, spec);
+        Files.deleteIfExists(ckpt);
+        long ms = (System.nanoTime() - t0) / 1_000_000;
+        System.out.printf("index: recorded %d commits in %d ms%n", written, ms);
+    }
+
+    private void indexSymbols(GitService gs, Config cfg) throws IOException {
+        RevCommit head = gs.headCommit();
+        if (head == null) return;
+        long t0 = System.nanoTime();
+        SymbolIndex.Refresh r;
+        try (BlobAnalyzer analyzer = BlobAnalyzer.open(gs, cfg)) {
+            r = SymbolIndex.refresh(gs, analyzer, head, jobs != null ? jobs : cfg.jobs, true, rebuildSymbols);
+        }
+        long ms = (System.nanoTime() - t0) / 1_000_000;
+        System.out.printf("index: symbols %s at %s (%d files, %d segments) in %d ms%n",
+                r.action(), head.abbreviate(7).name(), r.files(), r.segments(), ms);
+    }
+
+    // parents before children; trees are resolved here because RevWalk is single-threaded
+    private static List<Work> walk(GitService gs, String spec) throws IOException {
+        List<Work> out = new ArrayList<>();
+        try (RevWalk rw = new RevWalk(gs.repo())) {
+            rw.sort(RevSort.TOPO, true);
+            rw.sort(RevSort.REVERSE, true);
+            if ("--all".equals(spec)) {
+                for (Ref ref : gs.repo().getRefDatabase().getRefs()) {
+                    ObjectId id = ref.getPeeledObjectId() != null ? ref.getPeeledObjectId() : ref.getObjectId();
+                    if (id == null) continue;
+                    if (rw.parseAny(id) instanceof RevCommit c) rw.markStart(c);
+                }
+            } else {
+                int dots = spec.indexOf("..");
+                String from = dots >= 0 ? spec.substring(0, dots) : null;
+                String to = dots >= 0 ? spec.substring(dots + 2) : spec;
+                rw.markStart(rw.parseCommit(resolve(gs, to.isEmpty() ? "HEAD" : to)));
+                if (from != null && !from.isEmpty()) rw.markUninteresting(rw.parseCommit(resolve(gs, from)));
+            }
+            for (RevCommit c : rw) {
+                ObjectId parentTree = ObjectId.zeroId(); // first-commit safe
+                if (c.getParentCount() > 0) {
+                    RevCommit p = c.getParent(0);
+                    rw.parseHeaders(p);
+                    parentTree = p.getTree();
+                }
+                out.add(new Work(c.copy(), parentTree.copy(), c.getTree().copy(), c.getCommitTime()));
+            }
+        }
+        return out;
+    }
+
+    private static ObjectId resolve(GitService gs, String rev) throws IOException {
+        ObjectId id = gs.repo().resolve(rev + "^{commit}");
+        if (id == null) throw new IOException("unknown revision: " + rev);
+        return id;
+    }
+
+    // workers summarize ahead of the writer; results are drained strictly in order
+    private int index(GitService gs, Config cfg, MetaStore store, List<Work> todo, Path ckpt, String spec)
+            throws IOException {
+        if (todo.isEmpty()) return 0;
+        int workers = Math.min(AnalysisPipeline.effectiveJobs(jobs != null ? jobs : cfg.jobs), todo.size());
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "sagit-index");
+            t.setDaemon(true);
+            return t;
+        });
+        int written = 0;
+        try (BlobAnalyzer analyzer = BlobAnalyzer.openForHook(gs, cfg)) {
+            ArrayDeque<Future<MetaRecord>> inFlight = new ArrayDeque<>();
+            List<MetaRecord> batch = new ArrayList<>(BATCH);
+            int next = 0;
+            while (next < todo.size() || !inFlight.isEmpty()) {
+                while (next < todo.size() && inFlight.size() < workers * 8) {
+                    Work w = todo.get(next++);
+                    inFlight.add(pool.submit(() -> {
+                        // one commit per worker at a time: the per-file pipeline stays on this thread
+                        StagedAnalysis change = StagedAnalysis.compute(gs, analyzer, cfg, w.parentTree(), w.tree(), 1);
+                        return MetaRecord.of(w.commit().name(), Instant.ofEpochSecond(w.time()), change);
+                    }));
+                }
+                batch.add(inFlight.poll().get());
+                if (batch.size() == BATCH || inFlight.isEmpty()) {
+                    store.appendAll(batch);
+                    written += batch.size();
+                    writeCheckpoint(ckpt, spec, ObjectId.fromString(batch.get(batch.size() - 1).commitId));
+                    batch.clear();
+                    if (written % (BATCH * 8) == 0) System.out.printf("index: %d/%d%n", written, todo.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("index interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof IOException io) throw io;
+            if (c instanceof RuntimeException re) throw re;
+            throw new IOException(c);
+        } finally {
+            pool.shutdownNow();
+        }
+        return written;
+    }
+
+    // ---------- checkpoint ----------
+
+    static Path checkpointFile(Path root) {
+        return root.resolve(".sagit/meta/index.ckpt");
+    }
+
+    // index in the walk just past the checkpointed commit, or 0 (other range / walk changed / none)
+    private static int readCheckpoint(Path ckpt, String spec, List<Work> work) {
+        try {
+            if (!Files.exists(ckpt)) return 0;
+            String[] f = Files.readString(ckpt, StandardCharsets.UTF_8).trim().split("\t");
+            if (f.length != 2 || !f[0].equals(spec) || !ObjectId.isId(f[1])) return 0;
+            ObjectId last = ObjectId.fromString(f[1]);
+            for (int i = 0; i < work.size(); i++) {
+                if (work.get(i).commit().equals(last)) return i + 1;
+            }
+        } catch (IOException ignored) { /* start over; indexed commits are skipped anyway */ }
+        return 0;
+    }
+
+    private static void writeCheckpoint(Path ckpt, String spec, ObjectId last) throws IOException {
+        Path tmp = ckpt.resolveSibling(ckpt.getFileName() + ".tmp");
+        Files.writeString(tmp, spec + "\t" + last.name() + "\n", StandardCharsets.UTF_8);
+        Files.move(tmp, ckpt, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
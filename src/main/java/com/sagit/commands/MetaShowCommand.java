@@ -1,37 +1,49 @@
 package com.sagit.commands;
 
+import com.sagit.git.GitService;
+import com.sagit.meta.MetaStore;
 import com.sagit.utils.FS;
+import org.eclipse.jgit.lib.ObjectId;
 import picocli.CommandLine;
 
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-@CommandLine.Command(name = "meta", description = "Show/export Sagit metadata")
+@CommandLine.Command(name = "meta", description = "Show/export/import Sagit metadata")
 public class MetaShowCommand implements Runnable {
 
     @CommandLine.Parameters(index = "0", arity = "0..1",
-            description = "What to show (last|all). Default: last",
+            description = "What to do (last|all|show|import). Default: last",
             defaultValue = "last")
     String what;
 
+    @CommandLine.Parameters(index = "1", arity = "0..1",
+            description = "Commit for 'show' (any revision), jsonl file for 'import'")
+    String arg;
+
     @CommandLine.Option(names = {"--export"}, description = "Export format: jsonl|csv")
     String export;
 
     @Override public void run() {
         try {
-            Path f = FS.repoRoot().resolve(".sagit/meta.jsonl");
-            if (!Files.exists(f)) { System.out.println("No metadata yet."); return; }
+            Path root = FS.repoRoot();
+            MetaStore store = MetaStore.forRepo(root);
+
+            if ("import".equalsIgnoreCase(what)) {
+                if (arg == null) { System.err.println("meta import needs a .jsonl file"); return; }
+                int n = store.importJsonl(Path.of(arg));
+                System.out.println("Imported " + n + " record(s).");
+                return;
+            }
 
             if (export != null) {
                 if ("jsonl".equalsIgnoreCase(export)) {
-                    Files.lines(f, StandardCharsets.UTF_8).forEach(System.out::println);
+                    store.forEach(System.out::println);
                     return;
                 } else if ("csv".equalsIgnoreCase(export)) {
-                    exportCsv(f);
+                    exportCsv(store);
                     return;
                 } else {
                     System.err.println("Unknown export format: " + export);
@@ -40,35 +52,47 @@ public class MetaShowCommand implements Runnable {
             }
 
             if ("all".equalsIgnoreCase(what)) {
-                Files.lines(f, StandardCharsets.UTF_8).forEach(System.out::println);
+                store.forEach(System.out::println);
                 return;
             }
 
-            // default: last
-            List<String> lines = Files.readAllLines(f, StandardCharsets.UTF_8);
-            for (int i = lines.size() - 1; i >= 0; i--) {
-                String line = lines.get(i).trim();
-                if (!line.isEmpty()) { System.out.println(line); return; }
+            if ("show".equalsIgnoreCase(what)) {
+                if (arg == null) { System.err.println("meta show needs a commit"); return; }
+                ObjectId id = resolveCommit(arg);
+                if (id == null) { System.err.println("Unknown commit: " + arg); return; }
+                String rec = store.get(id);
+                System.out.println(rec != null ? rec : "No metadata for " + id.name());
+                return;
             }
-            System.out.println("No metadata yet.");
+
+            // default: last
+            String last = store.last();
+            System.out.println(last != null ? last : "No metadata yet.");
         } catch (Exception e) {
             System.err.println("meta failed: " + e.getMessage());
         }
     }
 
+    private static ObjectId resolveCommit(String rev) throws Exception {
+        // records can outlive their commits (rebased away, gc'd); take a full id as-is
+        if (ObjectId.isId(rev)) return ObjectId.fromString(rev);
+        try (GitService gs = GitService.openFromWorkingDir()) {
+            return gs.repo().resolve(rev + "^{commit}");
+        }
+    }
+
     // Very small CSV exporter for our known JSON shape
-    private static void exportCsv(Path f) throws Exception {
+    private static void exportCsv(MetaStore store) throws Exception {
         System.out.println("commitId,timestamp,files_added,files_modified,files_deleted,java_types_delta,java_methods_delta");
         Pattern cid = Pattern.compile("\"commitId\"\\s*:\\s*\"([^\"]+)\"");
         Pattern ts  = Pattern.compile("\"timestamp\"\\s*:\\s*\"([^\"]+)\"");
-        Pattern fa  = Pattern.compile("\"files_added\"\\s*:\\s*(\\d+)");
-        Pattern fm  = Pattern.compile("\"files_modified\"\\s*:\\s*(\\d+)");
-        Pattern fd  = Pattern.compile("\"files_deleted\"\\s*:\\s*(\\d+)");
-        Pattern jt  = Pattern.compile("\"java_types_delta\"\\s*:\\s*(\\d+)");
-        Pattern jm  = Pattern.compile("\"java_methods_delta\"\\s*:\\s*(\\d+)");
+        Pattern fa  = Pattern.compile("\"files_added\"\\s*:\\s*(-?\\d+)");
+        Pattern fm  = Pattern.compile("\"files_modified\"\\s*:\\s*(-?\\d+)");
+        Pattern fd  = Pattern.compile("\"files_deleted\"\\s*:\\s*(-?\\d+)");
+        Pattern jt  = Pattern.compile("\"java_types_delta\"\\s*:\\s*(-?\\d+)");
+        Pattern jm  = Pattern.compile("\"java_methods_delta\"\\s*:\\s*(-?\\d+)");
 
-        for (String line : Files.readAllLines(f, StandardCharsets.UTF_8)) {
-            if (line.trim().isEmpty()) continue;
+        store.forEach(line -> {
             String c  = group(cid, line);
             String t  = group(ts,  line);
             String sfa = def(group(fa, line), "0");
@@ -77,7 +101,7 @@ public class MetaShowCommand implements Runnable {
             String sjt = def(group(jt, line), "0");
             String sjm = def(group(jm, line), "0");
             System.out.println(String.join(",", List.of(csv(c), csv(t), sfa, sfm, sfd, sjt, sjm)));
-        }
+        });
     }
     private static String group(Pattern p, String s) { Matcher m = p.matcher(s); return m.find() ? m.group(1) : null; }
     private static String def(String v, String d) { return v == null ? d : v; }
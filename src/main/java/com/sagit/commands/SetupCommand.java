@@ -1,6 +1,8 @@
 package com.sagit.commands;
 
 import com.sagit.SagitCLI;
+import com.sagit.daemon.DaemonClient;
+import com.sagit.daemon.DaemonServer;
 import com.sagit.utils.FS;
 import picocli.CommandLine;
 
@@ -8,6 +10,7 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 @CommandLine.Command(
@@ -16,6 +19,14 @@ import java.util.List;
 )
 public class SetupCommand implements Runnable {
 
+    @CommandLine.Option(names = "--cds",
+            description = "Also build a class-data-sharing archive (.sagit/sagit.jsa) with a training run; hooks then start with it")
+    boolean cds;
+
+    // startup-oriented profile for short-lived hook JVMs (used together with the archive)
+    public static final List<String> STARTUP_FLAGS =
+            List.of("-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-Xms16m", "-Xmx512m", "-XX:-UsePerfData");
+
     @Override
     public void run() {
         try {
@@ -28,6 +39,10 @@ public class SetupCommand implements Runnable {
             // 1) copy the running jar to .sagit/sagit.jar
             final Path sagitDir = root.resolve(".sagit");
             Files.createDirectories(sagitDir);
+            // a running daemon still has the old classes loaded
+            if (DaemonClient.stop(DaemonServer.socketPath(root))) {
+                System.out.println("Stopped running sagit daemon (restart with: sagit daemon start)");
+            }
             final Path destJar = sagitDir.resolve("sagit.jar");
             final Path srcJar  = runningJar();
             Files.copy(srcJar, destJar, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
@@ -37,17 +52,7 @@ public class SetupCommand implements Runnable {
             Files.createDirectories(hooks);
 
             // prepare-commit-msg
-            String unixPrepare = """
-                    #!/bin/sh
-                    set -e
-                    ROOT=$(git rev-parse --show-toplevel)
-                    LOG="$ROOT/.sagit/hook.log"
-                    JAR="$ROOT/.sagit/sagit.jar"
-                    mkdir -p "$ROOT/.sagit"
-                    echo "[sagit] $(date) prepare-commit-msg $1 $2 $3" >> "$LOG"
-                    if [ ! -f "$JAR" ]; then echo "[sagit] JAR missing: $JAR" >> "$LOG"; exit 0; fi
-                    exec java -jar "$JAR" hook prepare-commit-msg "$1" "$2" "$3" >> "$LOG" 2>&1
-                    """;
+            String unixPrepare = unixHook("prepare-commit-msg", 3);
             String winPrepare = """
                     @echo off
                     for /f "delims=" %%i in ('git rev-parse --show-toplevel') do set ROOT=%%i
@@ -60,17 +65,7 @@ public class SetupCommand implements Runnable {
                     """;
 
             // commit-msg
-            String unixCommit = """
-                    #!/bin/sh
-                    set -e
-                    ROOT=$(git rev-parse --show-toplevel)
-                    LOG="$ROOT/.sagit/hook.log"
-                    JAR="$ROOT/.sagit/sagit.jar"
-                    mkdir -p "$ROOT/.sagit"
-                    echo "[sagit] $(date) commit-msg $1" >> "$LOG"
-                    if [ ! -f "$JAR" ]; then echo "[sagit] JAR missing: $JAR" >> "$LOG"; exit 0; fi
-                    exec java -jar "$JAR" hook commit-msg "$1" >> "$LOG" 2>&1
-                    """;
+            String unixCommit = unixHook("commit-msg", 1);
             String winCommit = """
                     @echo off
                     for /f "delims=" %%i in ('git rev-parse --show-toplevel') do set ROOT=%%i
@@ -83,17 +78,7 @@ public class SetupCommand implements Runnable {
                     """;
 
             // post-commit
-            String unixPost = """
-                    #!/bin/sh
-                    set -e
-                    ROOT=$(git rev-parse --show-toplevel)
-                    LOG="$ROOT/.sagit/hook.log"
-                    JAR="$ROOT/.sagit/sagit.jar"
-                    mkdir -p "$ROOT/.sagit"
-                    echo "[sagit] $(date) post-commit" >> "$LOG"
-                    if [ ! -f "$JAR" ]; then echo "[sagit] JAR missing: $JAR" >> "$LOG"; exit 0; fi
-                    exec java -jar "$JAR" hook post-commit >> "$LOG" 2>&1
-                    """;
+            String unixPost = unixHook("post-commit", 0);
             String winPost = """
                     @echo off
                     for /f "delims=" %%i in ('git rev-parse --show-toplevel') do set ROOT=%%i
@@ -150,12 +135,159 @@ public class SetupCommand implements Runnable {
             ensureLine(gitignore, ".sagit/");
             ensureLine(gitignore, "sagit.jar");
 
+            // 4) class-data-sharing archive: rebuilt for this jar, or dropped so it cannot go stale
+            if (cds) {
+                buildCdsArchive(root, destJar);
+            } else {
+                Files.deleteIfExists(cdsArchive(root));
+                Files.deleteIfExists(cdsStamp(root));
+            }
+
             System.out.println("✅ Sagit hooks installed. Jar copied to .sagit/sagit.jar");
+            if (!isWindows() && hookSocketClient() == null) {
+                System.out.println("warning: no `nc -U` (OpenBSD netcat, ncat) or socat on PATH: "
+                        + "hooks cannot reach `sagit daemon` and start java every time");
+            }
         } catch (Exception e) {
             System.err.println("setup failed: " + e.getMessage());
         }
     }
 
+    // POSIX hook: hand the call to a running `sagit daemon` through `nc -U` or socat, else start the jar.
+    // GNU and busybox netcat have no -U, so nc is only used when its usage text lists the option.
+    private static String unixHook(String hook, int argc) {
+        StringBuilder fmt = new StringBuilder(), args = new StringBuilder(), logArgs = new StringBuilder();
+        for (int i = 1; i <= argc; i++) {
+            fmt.append("\\t%s");
+            args.append(" \"$").append(i).append('"');
+            logArgs.append(" $").append(i);
+        }
+        return """
+                #!/bin/sh
+                set -e
+                ROOT=$(git rev-parse --show-toplevel)
+                cd "$ROOT"
+                LOG="$ROOT/.sagit/hook.log"
+                JAR="$ROOT/.sagit/sagit.jar"
+                JSA="$ROOT/.sagit/sagit.jsa"
+                SOCK=".sagit/daemon.sock"
+                mkdir -p "$ROOT/.sagit"
+                echo "[sagit] $(date) @HOOK@@LOGARGS@" >> "$LOG"
+                send() {
+                  if command -v nc >/dev/null 2>&1 && nc -h 2>&1 | grep -q -e '-U'; then nc -U "$SOCK"
+                  elif command -v socat >/dev/null 2>&1; then socat -t 60 - "UNIX-CONNECT:$SOCK"
+                  else echo "[sagit] daemon socket present but no nc -U or socat on PATH" >> "$LOG"; return 1
+                  fi
+                }
+                if [ -S "$SOCK" ]; then
+                  if printf 'env:GIT_INDEX_FILE=%s\\thook\\t@HOOK@@FMT@\\n' "$GIT_INDEX_FILE"@ARGS@ \\
+                      | send 2>/dev/null | tee -a "$LOG" | grep -q '^\\[sagit-daemon\\] done'; then exit 0; fi
+                fi
+                if [ ! -f "$JAR" ]; then echo "[sagit] JAR missing: $JAR" >> "$LOG"; exit 0; fi
+                if [ -f "$JSA" ]; then exec java -XX:SharedArchiveFile="$JSA" -Xshare:auto @FLAGS@ -jar "$JAR" hook @HOOK@@ARGS@ >> "$LOG" 2>&1; fi
+                exec java -jar "$JAR" hook @HOOK@@ARGS@ >> "$LOG" 2>&1
+                """
+                .replace("@FLAGS@", String.join(" ", STARTUP_FLAGS))
+                .replace("@HOOK@", hook)
+                .replace("@FMT@", fmt)
+                .replace("@ARGS@", args)
+                .replace("@LOGARGS@", logArgs);
+    }
+
+    // ---------- daemon client ----------
+
+    /** The client the POSIX hooks would use for the daemon socket ("nc -U" or "socat"), or null if there is none. */
+    public static String hookSocketClient() {
+        if (onPath("nc") && ncHasUnixSockets()) return "nc -U";
+        return onPath("socat") ? "socat" : null;
+    }
+
+    static boolean isWindows() {
+        return System.getProperty("os.name", "").startsWith("Windows");
+    }
+
+    private static boolean onPath(String command) {
+        String path = System.getenv("PATH");
+        if (path == null) return false;
+        for (String dir : path.split(java.io.File.pathSeparator)) {
+            if (!dir.isEmpty() && Files.isExecutable(Path.of(dir, command))) return true;
+        }
+        return false;
+    }
+
+    // same test as the hook: the usage text of netcats with unix-socket support lists -U
+    private static boolean ncHasUnixSockets() {
+        try {
+            Process p = new ProcessBuilder("nc", "-h").redirectErrorStream(true).start();
+            String usage = new String(p.getInputStream().readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
+            p.waitFor();
+            return usage.contains("-U");
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // ---------- class-data sharing ----------
+
+    public static Path cdsArchive(Path root) { return root.resolve(".sagit/sagit.jsa"); }
+    public static Path cdsStamp(Path root)   { return root.resolve(".sagit/sagit.jsa.sha256"); }
+
+    /** null = no archive, true = archive built from the current jar, false = stale. */
+    public static Boolean cdsInSync(Path root) throws IOException {
+        Path jsa = cdsArchive(root), stamp = cdsStamp(root), jar = root.resolve(".sagit/sagit.jar");
+        if (Files.notExists(jsa)) return null;
+        if (Files.notExists(stamp) || Files.notExists(jar)) return false;
+        return Files.readString(stamp).trim().equals(FS.sha256(jar));
+    }
+
+    // Dump a dynamic archive at the exit of a training run, using the same `java` (PATH) and flags as the hooks.
+    private static void buildCdsArchive(Path root, Path jar) throws IOException, InterruptedException {
+        Path jsa = cdsArchive(root);
+        Files.deleteIfExists(jsa);
+        Files.deleteIfExists(cdsStamp(root));
+        long before = timeCommitMsg(root, jar, List.of());
+
+        List<String> train = new ArrayList<>(List.of("java", "-XX:ArchiveClassesAtExit=" + jsa));
+        train.addAll(STARTUP_FLAGS);
+        train.addAll(List.of("-jar", jar.toString(), "hook", "cds-train"));
+        Process p = new ProcessBuilder(train).directory(root.toFile())
+                .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        if (p.waitFor() != 0 || Files.notExists(jsa)) {
+            System.err.println("CDS archive not created (training run exit " + p.exitValue() + "); hooks use the plain jar");
+            return;
+        }
+        Files.writeString(cdsStamp(root), FS.sha256(jar) + System.lineSeparator());
+
+        List<String> flags = new ArrayList<>(List.of("-XX:SharedArchiveFile=" + jsa, "-Xshare:auto"));
+        flags.addAll(STARTUP_FLAGS);
+        long after = timeCommitMsg(root, jar, flags);
+        System.out.printf("CDS archive written to .sagit/sagit.jsa (hook commit-msg: %d ms -> %d ms)%n", before, after);
+    }
+
+    // Median wall time of `hook commit-msg` on a scratch message file (JVM start through the drafted message).
+    private static long timeCommitMsg(Path root, Path jar, List<String> jvmFlags) throws IOException, InterruptedException {
+        long[] ms = new long[3];
+        for (int i = 0; i < ms.length; i++) {
+            Path msg = Files.createTempFile("sagit-cds", ".msg");
+            try {
+                List<String> cmd = new ArrayList<>(List.of("java"));
+                cmd.addAll(jvmFlags);
+                cmd.addAll(List.of("-jar", jar.toString(), "hook", "commit-msg", msg.toString()));
+                long t0 = System.nanoTime();
+                new ProcessBuilder(cmd).directory(root.toFile())
+                        .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor();
+                ms[i] = (System.nanoTime() - t0) / 1_000_000;
+            } finally {
+                Files.deleteIfExists(msg);
+            }
+        }
+        java.util.Arrays.sort(ms);
+        return ms[1];
+    }
+
     private static void ensureLine(Path file, String line) throws IOException {
         if (Files.notExists(file)) {
             Files.writeString(file, line + System.lineSeparator());
@@ -0,0 +1,130 @@
+package com.sagit.commands;
+
+import com.sagit.metrics.Histogram;
+import com.sagit.metrics.Metrics;
+import com.sagit.metrics.MetricsStore;
+import com.sagit.utils.FS;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+@CommandLine.Command(name = "stats", description = "Phase timings recorded by every sagit command (.sagit/metrics): percentiles or OpenMetrics")
+public class StatsCommand implements Runnable {
+
+    @CommandLine.Parameters(index = "0", arity = "0..1", defaultValue = "show",
+            description = "Action: show|openmetrics|reset (default: ${DEFAULT-VALUE})")
+    String action;
+
+    @CommandLine.Option(names = "--command", description = "show: only this command (e.g. \"hook commit-msg\")")
+    String command;
+
+    @CommandLine.Option(names = "--out", description = "openmetrics: write to this file instead of stdout")
+    Path out;
+
+    // histogram buckets of the export, in seconds (OpenMetrics canonical form)
+    private static final String[] LE = {"0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025",
+            "0.05", "0.1", "0.25", "0.5", "1.0", "2.5", "5.0", "10.0", "30.0"};
+
+    @Override public void run() {
+        try {
+            Path root = FS.repoRoot();
+            switch (action.toLowerCase()) {
+                case "show" -> show(root);
+                case "openmetrics" -> {
+                    String text = openMetrics(MetricsStore.load(root));
+                    if (out == null) System.out.print(text);
+                    else {
+                        Files.writeString(out, text);
+                        System.out.println("Wrote " + out);
+                    }
+                }
+                case "reset" -> System.out.println(MetricsStore.reset(root) ? "Sagit metrics cleared" : "Sagit metrics: nothing recorded");
+                default -> System.err.println("Unknown stats action: " + action + " (expected show|openmetrics|reset)");
+            }
+        } catch (Exception e) {
+            System.err.println("stats failed: " + e.getMessage());
+        }
+    }
+
+    private void show(Path root) throws Exception {
+        Map<String, Map<String, Histogram>> all = MetricsStore.load(root);
+        System.out.println("Sagit timings (" + MetricsStore.dir(root) + "), milliseconds:");
+        if (all.isEmpty()) {
+            System.out.println("  nothing recorded yet (config 'metrics' records every command once .sagit exists)");
+            return;
+        }
+        Map<String, Histogram> byPhase = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Histogram>> c : all.entrySet()) {
+            for (Map.Entry<String, Histogram> p : c.getValue().entrySet()) {
+                byPhase.computeIfAbsent(p.getKey(), k -> new Histogram()).add(p.getValue());
+            }
+            if (command != null && !command.equals(c.getKey())) continue;
+            Histogram total = c.getValue().get(Metrics.Phase.COMMAND.key);
+            System.out.printf("%n%s  (%d run(s))%n", c.getKey(), total == null ? 0 : total.count());
+            table(c.getValue());
+        }
+        if (command == null) {
+            System.out.printf("%nall commands, per phase%n");
+            table(byPhase);
+        } else if (!all.containsKey(command)) {
+            System.out.println("  no runs of '" + command + "' recorded (commands: " + String.join(", ", all.keySet()) + ")");
+        }
+    }
+
+    private static void table(Map<String, Histogram> phases) {
+        System.out.printf(Locale.ROOT, "  %-18s %9s %9s %9s %9s %9s %9s%n", "phase", "count", "p50", "p90", "p99", "max", "mean");
+        for (String phase : ordered(phases)) {
+            Histogram h = phases.get(phase);
+            System.out.printf(Locale.ROOT, "  %-18s %9d %9.2f %9.2f %9.2f %9.2f %9.2f%n", phase, h.count(),
+                    ms(h.quantileNanos(0.50)), ms(h.quantileNanos(0.90)), ms(h.quantileNanos(0.99)),
+                    ms(h.maxNanos()), h.meanNanos() / 1e6);
+        }
+    }
+
+    // phases in instrumentation order, then any the running version does not know
+    private static List<String> ordered(Map<String, Histogram> phases) {
+        List<String> out = new ArrayList<>();
+        for (Metrics.Phase p : Metrics.Phase.values()) if (phases.containsKey(p.key)) out.add(p.key);
+        for (String k : phases.keySet()) if (!out.contains(k)) out.add(k);
+        return out;
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    // ---------- OpenMetrics ----------
+
+    static String openMetrics(Map<String, Map<String, Histogram>> all) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP sagit_phase_seconds Time per phase of sagit commands, accumulated over recorded runs.\n");
+        sb.append("# TYPE sagit_phase_seconds histogram\n");
+        sb.append("# UNIT sagit_phase_seconds seconds\n");
+        for (Map.Entry<String, Map<String, Histogram>> c : all.entrySet()) {
+            for (String phase : ordered(c.getValue())) {
+                Histogram h = c.getValue().get(phase);
+                String labels = "command=\"" + escape(c.getKey()) + "\",phase=\"" + escape(phase) + "\"";
+                for (String le : LE) {
+                    long bound = Math.round(Double.parseDouble(le) * 1e9);
+                    sb.append("sagit_phase_seconds_bucket{").append(labels).append(",le=\"").append(le).append("\"} ")
+                            .append(h.countAtOrBelow(bound)).append('\n');
+                }
+                sb.append("sagit_phase_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(h.count()).append('\n');
+                sb.append("sagit_phase_seconds_count{").append(labels).append("} ").append(h.count()).append('\n');
+                sb.append("sagit_phase_seconds_sum{").append(labels).append("} ")
+                        .append(String.format(Locale.ROOT, "%.9f", h.sumNanos() / 1e9)).append('\n');
+            }
+        }
+        return sb.append("# EOF\n").toString();
+    }
+
+    private static String escape(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
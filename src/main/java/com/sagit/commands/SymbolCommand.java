@@ -0,0 +1,43 @@
+package com.sagit.commands;
+
+import com.sagit.git.GitService;
+import com.sagit.symbols.SymbolIndex;
+import org.eclipse.jgit.lib.ObjectId;
+import picocli.CommandLine;
+
+import java.util.List;
+import java.util.Locale;
+
+@CommandLine.Command(name = "symbol", description = "Find where a type or member is declared (symbol index)")
+public class SymbolCommand implements Runnable {
+
+    @CommandLine.Parameters(index = "0", paramLabel = "NAME",
+            description = "Fully qualified name, e.g. pkg.Type or pkg.Type#method(String)")
+    String name;
+
+    @CommandLine.Option(names = "--prefix", description = "Match every symbol starting with NAME (e.g. pkg.Type# for its members)")
+    boolean prefix;
+
+    @Override public void run() {
+        try (GitService gs = GitService.openFromWorkingDir()) {
+            SymbolIndex index = SymbolIndex.open(gs.workTree());
+            if (index == null) {
+                System.err.println("symbol: no symbol index yet (run: sagit index --symbols)");
+                return;
+            }
+            ObjectId head = gs.repo().resolve("HEAD^{commit}");
+            if (head != null && !head.equals(index.commit())) {
+                System.err.println("symbol: index is at " + index.commit().abbreviate(7).name()
+                        + ", HEAD is " + head.abbreviate(7).name() + " (run: sagit index --symbols)");
+            }
+            List<SymbolIndex.Symbol> found = prefix ? index.prefix(name) : index.lookup(name);
+            if (found.isEmpty()) System.out.println("(not found)");
+            for (SymbolIndex.Symbol s : found) {
+                System.out.printf("%-11s %s  %s  %s%n", s.kind().name().toLowerCase(Locale.ROOT), s.name(),
+                        s.path(), s.blob().abbreviate(7).name());
+            }
+        } catch (Exception e) {
+            System.err.println("symbol failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.sagit.commands;
+
+import com.sagit.timing.SurefireXml;
+import com.sagit.timing.TestHistory;
+import com.sagit.utils.FS;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@CommandLine.Command(name = "tests", description = "Record test durations and failures for `impacted --shards/--order` (Surefire/JUnit XML)")
+public class TestsCommand implements Runnable {
+
+    @CommandLine.Parameters(index = "0", defaultValue = "stats",
+            description = "Action: ingest|stats (default: ${DEFAULT-VALUE})")
+    String action;
+
+    @CommandLine.Parameters(index = "1..*", arity = "0..*", paramLabel = "REPORT",
+            description = "TEST-*.xml reports of one run, or directories searched for them (e.g. target/surefire-reports)")
+    List<Path> reports = new ArrayList<>();
+
+    @CommandLine.Option(names = "--top", defaultValue = "10", description = "stats: list this many slowest classes (default: ${DEFAULT-VALUE})")
+    int top;
+
+    @Override public void run() {
+        try {
+            Path root = FS.repoRoot();
+            if ("stats".equalsIgnoreCase(action)) {
+                TestHistory h = TestHistory.load(root);
+                System.out.println("Sagit test history:");
+                System.out.println("  dir: " + TestHistory.dir(root) + (h.size() == 0 ? "  (nothing ingested yet)" : ""));
+                System.out.println("  classes: " + h.size());
+                for (TestHistory.Entry e : h.slowest(top)) {
+                    System.out.printf(Locale.ROOT, "  %9.3fs  %4d run(s)%s  %s%n", e.seconds(), e.runs(),
+                            e.failedRecently() ? "  FAILED " + Long.bitCount(e.failures()) + "x" : "", e.test());
+                }
+            } else if ("ingest".equalsIgnoreCase(action)) {
+                ingest(root);
+            } else {
+                System.err.println("Unknown tests action: " + action + " (expected ingest|stats)");
+            }
+        } catch (Exception e) {
+            System.err.println("tests failed: " + e.getMessage());
+        }
+    }
+
+    // all reports given make up one run: a class in several of them is summed
+    private void ingest(Path root) throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (Path p : reports) {
+            if (!Files.isDirectory(p)) { files.add(p); continue; }
+            try (Stream<Path> s = Files.walk(p)) {
+                s.filter(f -> {
+                    String n = f.getFileName().toString();
+                    return Files.isRegularFile(f) && n.startsWith("TEST-") && n.endsWith(".xml");
+                }).sorted().forEach(files::add);
+            }
+        }
+        if (files.isEmpty()) { System.err.println("tests: no reports given"); return; }
+
+        Map<String, TestHistory.Result> run = new LinkedHashMap<>();
+        for (Path f : files) {
+            try {
+                SurefireXml.read(f).forEach((c, r) -> run.merge(c, r,
+                        (a, b) -> new TestHistory.Result(a.seconds() + b.seconds(), a.failed() || b.failed())));
+            } catch (Exception e) {
+                System.err.println("tests: skipped " + f + ": " + e.getMessage());
+            }
+        }
+        if (run.isEmpty()) return;
+        long failed = run.values().stream().filter(TestHistory.Result::failed).count();
+        int known = TestHistory.record(root, run);
+        System.out.println("tests ingested: " + run.size() + " class(es), " + failed + " failed; " + known + " in history");
+    }
+}
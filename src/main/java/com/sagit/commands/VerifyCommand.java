@@ -43,11 +43,22 @@ public class VerifyCommand implements Runnable {
             System.out.println("  hook post-commit: " + (okPC ? "OK" : "MISSING"));
             System.out.println("  .sagit/config.json: " + (Files.exists(config) ? "present" : "optional (not found)"));
             System.out.println("  .sagit/tests.map: " + (Files.exists(rules) ? "present" : "optional (not found)"));
+            Boolean cds = SetupCommand.cdsInSync(root);
+            System.out.println("  .sagit/sagit.jsa (CDS): " + (cds == null ? "optional (not found)" : cds ? "OK" : "STALE"));
+            boolean posix = !SetupCommand.isWindows();
+            String client = posix ? SetupCommand.hookSocketClient() : null;
+            if (posix) {
+                System.out.println("  daemon client for hooks: " + (client != null ? client : "MISSING (hooks start java every time)"));
+            }
 
             if (!okJar)      System.out.println("  > Run: sagit setup (to copy .sagit/sagit.jar)");
             if (!okHooksDir) System.out.println("  > Run: sagit setup (to create .git/hooks)");
             if (!okPCM || !okCM || !okPC)
                 System.out.println("  > Re-run: sagit setup (to reinstall hooks)");
+            if (Boolean.FALSE.equals(cds))
+                System.out.println("  > Re-run: sagit setup --cds (archive was built for a different jar)");
+            if (posix && client == null)
+                System.out.println("  > Install socat or OpenBSD netcat (nc -U) to use `sagit daemon` from the hooks");
 
         } catch (Exception e) {
             System.err.println("verify failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
@@ -0,0 +1,66 @@
+package com.sagit.commands.hooks;
+
+import com.sagit.config.Config;
+import com.sagit.git.GitService;
+import com.sagit.semantic.AnalysisPipeline;
+import com.sagit.semantic.BlobAnalyzer;
+import com.sagit.semantic.JavaSemanticAnalyzer;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Training run for `setup --cds`: exercises the hook code paths against this repo
+ * (message hooks on scratch files, HEAD's diff in both analyzer modes) without
+ * touching the real commit message or metadata, so the JVM archives the classes they load.
+ */
+@CommandLine.Command(name = "cds-train", hidden = true, description = "Exercise hook code paths (class-data-sharing training run)")
+public class CdsTrainingCommand implements Runnable {
+
+    @Override public void run() {
+        try {
+            Path scratch = Files.createTempFile("sagit-cds", ".msg");
+            try {
+                PrepareCommitMsgHookCommand prepare = new PrepareCommitMsgHookCommand();
+                prepare.msgFile = scratch;
+                prepare.run();
+
+                Files.writeString(scratch, "");
+                CommitMsgHookCommand commit = new CommitMsgHookCommand();
+                commit.msgFile = scratch;
+                commit.run();
+            } finally {
+                Files.deleteIfExists(scratch);
+            }
+
+            // what post-commit does, minus the metadata append
+            try (GitService gs = GitService.openFromWorkingDir()) {
+                RevCommit head = gs.headCommit();
+                if (head == null) return;
+                ObjectId aTree = head.getParentCount() > 0
+                        ? gs.repo().parseCommit(head.getParent(0)).getTree() : ObjectId.zeroId();
+                List<DiffEntry> javaEntries = new ArrayList<>();
+                for (DiffEntry de : gs.diffBetween(aTree, head.getTree())) {
+                    String path = de.getChangeType() == DiffEntry.ChangeType.DELETE ? de.getOldPath() : de.getNewPath();
+                    if (path != null && path.endsWith(".java")) javaEntries.add(de);
+                }
+                Config cfg = gs.config();
+                for (JavaSemanticAnalyzer.Mode mode : JavaSemanticAnalyzer.Mode.values()) {
+                    try (BlobAnalyzer analyzer = BlobAnalyzer.open(gs, cfg, mode)) {
+                        AnalysisPipeline.run(gs, analyzer, javaEntries, cfg.jobs);
+                    }
+                }
+            }
+            // the analysis above may be all cache hits; parse once so the parser classes are archived too
+            new JavaSemanticAnalyzer(JavaSemanticAnalyzer.Mode.FULL).analyze("class T { void m() { new Object() {}; } }");
+        } catch (Exception e) {
+            System.err.println("cds-train failed: " + e.getMessage());
+        }
+    }
+}
@@ -3,13 +3,13 @@ package com.sagit.commands.hooks;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.LinkedHashSet;
-import java.util.List;
 import java.util.Set;
 
 import org.eclipse.jgit.diff.DiffEntry;
 
+import com.sagit.config.Config;
 import com.sagit.git.GitService;
-import com.sagit.semantic.JavaSemanticAnalyzer;
+import com.sagit.semantic.StagedAnalysis;
 
 import picocli.CommandLine;
 
@@ -30,41 +30,24 @@ public class CommitMsgHookCommand implements Runnable {
             String trailer = "";
 
             try (GitService gs = GitService.openFromWorkingDir()) {
-                List<DiffEntry> diffs = gs.diffStagedAgainstHead();
+                Config cfg = gs.config();
+                // usually already computed by prepare-commit-msg for this index
+                StagedAnalysis staged = StagedAnalysis.ofIndex(gs, cfg);
 
-                int add = 0, mod = 0, del = 0;
+                int add = staged.count(DiffEntry.ChangeType.ADD);
+                int mod = staged.count(DiffEntry.ChangeType.MODIFY);
+                int del = staged.count(DiffEntry.ChangeType.DELETE);
                 Set<String> scopes = new LinkedHashSet<>();
-                int deltaTypes = 0, deltaMethods = 0;
-
-                JavaSemanticAnalyzer analyzer = new JavaSemanticAnalyzer();
-
-                for (DiffEntry de : diffs) {
-                    switch (de.getChangeType()) {
-                        case ADD -> add++;
-                        case MODIFY -> mod++;
-                        case DELETE -> del++;
-                        default -> {}
-                    }
-                    String path = de.getChangeType() == DiffEntry.ChangeType.DELETE
-                                  ? de.getOldPath() : de.getNewPath();
 
+                for (String path : staged.paths) {
                     String scope = scopeFromPath(path);
                     if (scope != null && !scope.isBlank()) scopes.add(scope);
-
-                    if (path != null && path.endsWith(".java")) {
-                        byte[] ob = (de.getOldId() != null && de.getOldId().toObjectId() != null)
-                                ? gs.loadBlob(de.getOldId().toObjectId()) : null;
-                        byte[] nb = (de.getNewId() != null && de.getNewId().toObjectId() != null)
-                                ? gs.loadBlob(de.getNewId().toObjectId()) : null;
-
-                        var os = analyzer.analyze(ob == null ? "" : new String(ob));
-                        var ns = analyzer.analyze(nb == null ? "" : new String(nb));
-                        var d  = ns.diff(os);
-                        deltaTypes   += d.classes + d.interfaces_ + d.enums_;
-                        deltaMethods += d.methods;
-                    }
                 }
 
+                var d = staged.javaDelta;
+                int deltaTypes   = d.classes + d.interfaces_ + d.enums_;
+                int deltaMethods = d.methods;
+
                 // Build a nicer header if we could read diffs
                 String type = guessType(add, mod, del, scopes);
                 String scope = scopes.isEmpty() ? "core" : String.join(",", scopes);
@@ -8,7 +8,8 @@ import picocli.CommandLine;
         subcommands = {
                 PrepareCommitMsgHookCommand.class,
                 CommitMsgHookCommand.class,
-                PostCommitHookCommand.class
+                PostCommitHookCommand.class,
+                CdsTrainingCommand.class
         }
 )
 public class HookCommand implements Runnable {
@@ -3,10 +3,11 @@ package com.sagit.commands.hooks;
 import com.sagit.git.GitService;
 import com.sagit.meta.MetaRecord;
 import com.sagit.meta.MetaStore;
-import com.sagit.semantic.JavaSemanticAnalyzer;
-import com.sagit.utils.FS; // change if your utils pkg differs
+import com.sagit.config.Config;
+import com.sagit.semantic.BlobAnalyzer;
+import com.sagit.semantic.StagedAnalysis;
+import com.sagit.symbols.SymbolIndex;
 
-import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.RevCommit;
 import picocli.CommandLine;
@@ -14,9 +15,6 @@ import picocli.CommandLine;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 @CommandLine.Command(name = "post-commit", description = "Append metadata for the latest commit")
 public class PostCommitHookCommand implements Runnable {
@@ -27,76 +25,31 @@ public class PostCommitHookCommand implements Runnable {
             if (head == null) return;
 
             // First-commit safe parent handling
-            RevCommit parent = head.getParentCount() > 0 ? head.getParent(0) : null;
+            // parents of a parsed commit are unparsed stubs (getTree() == null) until parsed themselves
+            RevCommit parent = head.getParentCount() > 0 ? gs.repo().parseCommit(head.getParent(0)) : null;
             ObjectId aTree = (parent == null) ? ObjectId.zeroId() : parent.getTree();
             ObjectId bTree = head.getTree();
 
-            List<DiffEntry> diffs = gs.diffBetween(aTree, bTree);
+            // same (parent tree, tree) as the index the message hooks analyzed -> reused, not recomputed
+            Config cfg = gs.config();
+            StagedAnalysis change = StagedAnalysis.of(gs, cfg, aTree, bTree);
 
-            int filesAdded = 0, filesModified = 0, filesDeleted = 0;
-            int deltaTypes = 0, deltaMethods = 0;
+            MetaRecord rec = MetaRecord.of(head.getId().name(), Instant.ofEpochSecond(head.getCommitTime()), change);
 
-            JavaSemanticAnalyzer analyzer = new JavaSemanticAnalyzer();
-
-            for (DiffEntry de : diffs) {
-                // Never throw on rename/copy – count them as modify
-                switch (de.getChangeType()) {
-                    case ADD    -> filesAdded++;
-                    case MODIFY -> filesModified++;
-                    case RENAME -> filesModified++;
-                    case COPY   -> filesModified++;
-                    case DELETE -> filesDeleted++;
-                    default     -> filesModified++;
-                }
+            Path root = gs.workTree();
+            Files.createDirectories(root.resolve(".sagit")); // ensure folder
+            MetaStore.forRepo(root).append(rec);
 
-                String path = de.getChangeType() == DiffEntry.ChangeType.DELETE ? de.getOldPath() : de.getNewPath();
-                if (path != null && path.endsWith(".java")) {
-                    // GUARDED loads – skip zero/absent blobs
-                    byte[] ob = loadIfPresent(gs, de, true);
-                    byte[] nb = loadIfPresent(gs, de, false);
+            System.out.println("[sagit] post-commit: metadata appended" + (change.reused ? " (staged analysis reused)" : ""));
 
-                    var os = analyzer.analyze(ob == null ? "" : new String(ob));
-                    var ns = analyzer.analyze(nb == null ? "" : new String(nb));
-                    var d  = ns.diff(os);
-                    deltaTypes   += d.classes + d.interfaces_ + d.enums_;
-                    deltaMethods += d.methods;
-                }
+            // only the blobs this commit changed are parsed; no index yet -> `sagit index --symbols` builds it
+            try (BlobAnalyzer analyzer = BlobAnalyzer.openForHook(gs, cfg)) {
+                SymbolIndex.Refresh r = SymbolIndex.refresh(gs, analyzer, head, cfg.jobs, false, false);
+                if (r != null) System.out.println("[sagit] post-commit: symbols " + r.action() + " (" + r.files() + " files)");
             }
-
-            Map<String, Integer> summary = new HashMap<>();
-            summary.put("files_added", filesAdded);
-            summary.put("files_modified", filesModified);
-            summary.put("files_deleted", filesDeleted);
-            summary.put("java_types_delta", deltaTypes);
-            summary.put("java_methods_delta", deltaMethods);
-
-            MetaRecord rec = new MetaRecord();
-            rec.commitId  = head.getId().name();
-            rec.timestamp = Instant.now().toString();
-            rec.summary   = summary;
-
-            Path root = FS.repoRoot();
-            Files.createDirectories(root.resolve(".sagit")); // ensure folder
-            new MetaStore(root.resolve(".sagit/meta.jsonl")).append(rec);
-
-            System.out.println("[sagit] post-commit: metadata appended");
         } catch (Exception e) {
             // Show cause in .sagit/hook.log so we can diagnose if anything else happens
             e.printStackTrace();
         }
     }
-
-    /** Return blob bytes for the selected side, or null if the object id is zero/absent. */
-    private static byte[] loadIfPresent(GitService gs, DiffEntry de, boolean oldSide) throws Exception {
-        var abbr = oldSide ? de.getOldId() : de.getNewId();
-        if (abbr == null) return null;
-        ObjectId oid;
-        try {
-            oid = abbr.toObjectId();
-        } catch (IllegalArgumentException ex) {
-            return null; // invalid/abbrev id
-        }
-        if (oid == null || ObjectId.zeroId().equals(oid)) return null;
-        return gs.loadBlob(oid);
-    }
 }
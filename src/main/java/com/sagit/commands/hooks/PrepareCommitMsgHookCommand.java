@@ -3,13 +3,13 @@ package com.sagit.commands.hooks;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.LinkedHashSet;
-import java.util.List;
 import java.util.Set;
 
 import org.eclipse.jgit.diff.DiffEntry;
 
+import com.sagit.config.Config;
 import com.sagit.git.GitService;
-import com.sagit.semantic.JavaSemanticAnalyzer;
+import com.sagit.semantic.StagedAnalysis;
 
 import picocli.CommandLine;
 
@@ -30,31 +30,21 @@ public class PrepareCommitMsgHookCommand implements Runnable {
             Set<String> scopes = new LinkedHashSet<>();
 
             try (GitService gs = GitService.openFromWorkingDir()) {
-                List<DiffEntry> diffs = gs.diffStagedAgainstHead();  // may throw for weird states
-                JavaSemanticAnalyzer analyzer = new JavaSemanticAnalyzer();
-
-                for (DiffEntry de : diffs) {
-                    switch (de.getChangeType()) {
-                        case ADD -> add++;
-                        case MODIFY -> mod++;
-                        case DELETE -> del++;
-                        default -> {}
-                    }
-                    String path = de.getChangeType() == DiffEntry.ChangeType.DELETE ? de.getOldPath() : de.getNewPath();
-                    if (path != null) {
-                        String scope = scopeFromPath(path);
-                        if (scope != null && !scope.isBlank()) scopes.add(scope);
-                        if (path.endsWith(".java")) {
-                            byte[] ob = (de.getOldId() != null && de.getOldId().toObjectId() != null) ? gs.loadBlob(de.getOldId().toObjectId()) : null;
-                            byte[] nb = (de.getNewId() != null && de.getNewId().toObjectId() != null) ? gs.loadBlob(de.getNewId().toObjectId()) : null;
-                            var os = analyzer.analyze(ob == null ? "" : new String(ob));
-                            var ns = analyzer.analyze(nb == null ? "" : new String(nb));
-                            var d  = ns.diff(os);
-                            deltaTypes   += d.classes + d.interfaces_ + d.enums_;
-                            deltaMethods += d.methods;
-                        }
-                    }
+                Config cfg = gs.config();
+                // persisted for commit-msg/post-commit of the same commit
+                StagedAnalysis staged = StagedAnalysis.ofIndex(gs, cfg);  // may throw for weird states
+                add = staged.count(DiffEntry.ChangeType.ADD);
+                mod = staged.count(DiffEntry.ChangeType.MODIFY);
+                del = staged.count(DiffEntry.ChangeType.DELETE);
+
+                for (String path : staged.paths) {
+                    String scope = scopeFromPath(path);
+                    if (scope != null && !scope.isBlank()) scopes.add(scope);
                 }
+
+                var d = staged.javaDelta;
+                deltaTypes   = d.classes + d.interfaces_ + d.enums_;
+                deltaMethods = d.methods;
             } catch (Exception ignored) {
                 // diff collection can fail on weird states; we'll still prefill a generic header below
             }
@@ -12,9 +12,33 @@ public class Config {
     public String commitTemplate = null;              // optional single-line override
     public String impactedRules = ".sagit/tests.map"; // default path
     public Set<String> languages = Set.of();          // e.g., ["java"] to filter semantic ops
+    public long cacheMaxBytes = 16L << 20;            // analysis cache cap (.sagit/cache), 0 disables
+    public int jobs = 0;                              // analysis workers, 0 = one per core
+    public String analyzerMode = "full";              // full|fast for describe/diff
+    public String hookAnalyzerMode = "fast";          // full|fast for git hooks (declaration counts only)
+    public long daemonIdleSeconds = 1800;             // `sagit daemon` exits after this long without requests
+    // rename detection: off|exact|full (exact = same blob id only; full adds bounded similarity)
+    public String renameMode = "full";
+    public String hookRenameMode = "exact";
+    public long renamePairBudget = 160_000;           // max adds x deletes scored for similarity
+    public long renameTimeoutMillis = 2_000;          // similarity tier gives up after this
+    // object access (GitService)
+    public long blobCacheBytes = 32L << 20;           // in-memory LRU of loaded blobs, 0 disables
+    public long maxBlobBytes = 16L << 20;             // larger blobs are only streamed, never loaded whole
+    public long packedGitWindowSize = 64L << 10;      // JGit core.packedGitWindowSize
+    public long packedGitLimit = 64L << 20;           // JGit core.packedGitLimit
+    public boolean packedGitMMAP = false;             // JGit core.packedGitMMAP
+    public long deltaBaseCacheLimit = 32L << 20;      // JGit core.deltaBaseCacheLimit
+    public long streamFileThreshold = 16L << 20;      // JGit core.streamFileThreshold
+    public boolean metaFsync = true;                  // fsync each metadata group commit (.sagit/meta)
+    public boolean metrics = true;                    // record phase timings in .sagit/metrics (`sagit stats`)
 
-    public static Config load() throws IOException, InterruptedException {
-        Path root = FS.repoRoot();
+    public static Config load() throws IOException {
+        return load(FS.repoRoot());
+    }
+
+    /** Load .sagit/config.json under a known work tree (missing file = defaults). */
+    public static Config load(Path root) {
         Path f = root.resolve(".sagit/config.json");
         Config c = new Config();
         if (!Files.exists(f)) return c;
@@ -24,6 +48,24 @@ public class Config {
             // minimal parsing (no external deps). tolerate missing fields.
             c.commitTemplate = extractString(json, "commitTemplate", null);
             c.impactedRules  = extractString(json, "impactedRules", c.impactedRules);
+            c.cacheMaxBytes  = extractLong(json, "cacheMaxBytes", c.cacheMaxBytes);
+            c.jobs           = (int) extractLong(json, "jobs", c.jobs);
+            c.analyzerMode     = extractString(json, "analyzerMode", c.analyzerMode);
+            c.hookAnalyzerMode = extractString(json, "hookAnalyzerMode", c.hookAnalyzerMode);
+            c.daemonIdleSeconds = extractLong(json, "daemonIdleSeconds", c.daemonIdleSeconds);
+            c.renameMode          = extractString(json, "renameMode", c.renameMode);
+            c.hookRenameMode      = extractString(json, "hookRenameMode", c.hookRenameMode);
+            c.renamePairBudget    = extractLong(json, "renamePairBudget", c.renamePairBudget);
+            c.renameTimeoutMillis = extractLong(json, "renameTimeoutMillis", c.renameTimeoutMillis);
+            c.blobCacheBytes      = extractLong(json, "blobCacheBytes", c.blobCacheBytes);
+            c.maxBlobBytes        = extractLong(json, "maxBlobBytes", c.maxBlobBytes);
+            c.packedGitWindowSize = extractLong(json, "packedGitWindowSize", c.packedGitWindowSize);
+            c.packedGitLimit      = extractLong(json, "packedGitLimit", c.packedGitLimit);
+            c.packedGitMMAP       = extractBool(json, "packedGitMMAP", c.packedGitMMAP);
+            c.deltaBaseCacheLimit = extractLong(json, "deltaBaseCacheLimit", c.deltaBaseCacheLimit);
+            c.streamFileThreshold = extractLong(json, "streamFileThreshold", c.streamFileThreshold);
+            c.metaFsync           = extractBool(json, "metaFsync", c.metaFsync);
+            c.metrics             = extractBool(json, "metrics", c.metrics);
             String langs = extractArray(json, "languages"); // comma-separated raw list
             if (langs != null && !langs.isBlank()) {
                 Set<String> s = new LinkedHashSet<>();
@@ -49,6 +91,34 @@ public class Config {
         return json.substring(q1 + 1, q2);
     }
 
+    private static long extractLong(String json, String key, long dflt) {
+        String raw = extractRaw(json, key);
+        if (raw == null) return dflt;
+        try { return Long.parseLong(raw); } catch (NumberFormatException e) { return dflt; }
+    }
+
+    private static boolean extractBool(String json, String key, boolean dflt) {
+        String raw = extractRaw(json, key);
+        if ("true".equals(raw)) return true;
+        if ("false".equals(raw)) return false;
+        return dflt;
+    }
+
+    // raw scalar token after the key (number/true/false/null), or null
+    private static String extractRaw(String json, String key) {
+        String needle = "\"" + key + "\"";
+        int i = json.indexOf(needle);
+        if (i < 0) return null;
+        int colon = json.indexOf(':', i + needle.length());
+        if (colon < 0) return null;
+        int s = colon + 1;
+        while (s < json.length() && Character.isWhitespace(json.charAt(s))) s++;
+        int e = s;
+        while (e < json.length() && ",}\n\r".indexOf(json.charAt(e)) < 0) e++;
+        String raw = json.substring(s, e).trim();
+        return raw.isEmpty() ? null : raw;
+    }
+
     // returns inner raw content of the array (e.g., "\"java\",\"ts\""), or null
     private static String extractArray(String json, String key) {
         String needle = "\"" + key + "\"";
@@ -0,0 +1,257 @@
+package com.sagit.coverage;
+
+import com.sagit.utils.SegmentDir;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Per-test line coverage in .sagit/coverage/: source file and line -> the tests that ran it,
+ * inverted from per-test JaCoCo reports.
+ *
+ * cov-NNNNNN.seg  immutable segments ({@link CoverageSegment}), one per ingest; a test found
+ *                 in a newer segment hides its older coverage, so re-ingesting one test class
+ *                 writes only that class's data.
+ * MANIFEST        the live segments (oldest first), each with the commit its ingest ran at ({@link SegmentDir}).
+ * LOCK            held by writers only.
+ *
+ * Paths are package-relative as JaCoCo reports them ("com/acme/Foo.java"); a repo path is
+ * matched by its longest suffix that names an indexed file. Past {@link #MAX_SEGMENTS} the
+ * live coverage is merged into one segment, recorded at the commit of its oldest ingest so
+ * it never looks fresher than the line numbers it holds.
+ */
+public final class CoverageIndex {
+
+    /** Covered lines (ascending) per package-relative source path, for one test. */
+    public record TestCoverage(String test, Map<String, int[]> lines) {}
+
+    /** What an ingest did: "updated" or "compacted", with counts. */
+    public record Ingest(String action, int tests, int segments) {}
+
+    /** How many live tests were recorded at a commit. */
+    public record Recorded(ObjectId commit, int tests) {}
+
+    private static final String MANIFEST_HEADER = "sagit-coverage 1";
+    static final int MAX_SEGMENTS = 8;
+
+    private final List<CoverageSegment> segments; // newest first
+    private final List<ObjectId> commits;         // per segment: HEAD when it was ingested
+    private final List<boolean[]> live;           // per segment: test not superseded by a newer one
+
+    private CoverageIndex(List<CoverageSegment> segments, List<ObjectId> commits) {
+        this.segments = segments;
+        this.commits = commits;
+        this.live = new ArrayList<>(segments.size());
+        Set<String> seen = new HashSet<>();
+        for (CoverageSegment s : segments) {
+            boolean[] l = new boolean[s.tests()];
+            for (int t = 0; t < l.length; t++) l[t] = !seen.contains(s.test(t));
+            for (int t = 0; t < l.length; t++) seen.add(s.test(t));
+            live.add(l);
+        }
+    }
+
+    public static Path dir(Path root) {
+        return root.resolve(".sagit/coverage");
+    }
+
+    private static SegmentDir store(Path root) {
+        return new SegmentDir(dir(root), MANIFEST_HEADER, "cov-");
+    }
+
+    /**
+     * The commits the live coverage was recorded at (its line numbers refer to them), newest
+     * ingest first, with the number of tests each one holds.
+     */
+    public List<Recorded> recorded() {
+        Map<ObjectId, Integer> byCommit = new LinkedHashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            int n = liveTests(i);
+            if (n > 0) byCommit.merge(commits.get(i), n, Integer::sum);
+        }
+        List<Recorded> out = new ArrayList<>(byCommit.size());
+        byCommit.forEach((c, n) -> out.add(new Recorded(c, n)));
+        return out;
+    }
+
+    /** Tests with live coverage. */
+    public int tests() {
+        int n = 0;
+        for (int i = 0; i < segments.size(); i++) n += liveTests(i);
+        return n;
+    }
+
+    private int liveTests(int segment) {
+        int n = 0;
+        for (boolean b : live.get(segment)) if (b) n++;
+        return n;
+    }
+
+    /** Indexed source files (distinct across segments). */
+    public int files() {
+        Set<String> paths = new HashSet<>();
+        for (CoverageSegment s : segments) for (int f = 0; f < s.files(); f++) paths.add(s.path(f));
+        return paths.size();
+    }
+
+    public int segments() {
+        return segments.size();
+    }
+
+    // ---------- reads ----------
+
+    /** Snapshot of the current index, or null when there is none. */
+    public static CoverageIndex open(Path root) throws IOException {
+        SegmentDir store = store(root);
+        return store.open(lines -> {
+            Manifest m = Manifest.parse(lines);
+            if (m == null) return null;
+            List<CoverageSegment> segs = new ArrayList<>(m.segments().size());
+            List<ObjectId> commits = new ArrayList<>(m.segments().size());
+            for (int i = m.segments().size() - 1; i >= 0; i--) {
+                segs.add(CoverageSegment.open(store.resolve(m.segments().get(i).name())));
+                commits.add(m.segments().get(i).commit());
+            }
+            return new CoverageIndex(segs, commits);
+        });
+    }
+
+    /** Tests that ran any of lines {@code first..last} (1-based, inclusive) of a repo path. */
+    public Set<String> testsFor(String repoPath, int first, int last) {
+        Set<String> out = new TreeSet<>();
+        String key = indexedPath(repoPath);
+        if (key == null) return out;
+        for (int i = 0; i < segments.size(); i++) {
+            CoverageSegment s = segments.get(i);
+            boolean[] l = live.get(i);
+            int f = s.file(key);
+            if (f >= 0) s.testsFor(f, first, last, t -> { if (l[t]) out.add(s.test(t)); });
+        }
+        return out;
+    }
+
+    /** Tests that ran any line of a repo path. */
+    public Set<String> testsFor(String repoPath) {
+        return testsFor(repoPath, 1, Integer.MAX_VALUE);
+    }
+
+    // longest suffix of the path (at a '/') that some segment indexes
+    private String indexedPath(String repoPath) {
+        for (int at = 0; ; ) {
+            String key = repoPath.substring(at);
+            for (CoverageSegment s : segments) if (s.file(key) >= 0) return key;
+            int slash = repoPath.indexOf('/', at);
+            if (slash < 0) return null;
+            at = slash + 1;
+        }
+    }
+
+    // every live test's coverage, for compaction
+    private List<TestCoverage> liveCoverage() {
+        Map<String, Map<String, BitSet>> byTest = new LinkedHashMap<>();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            CoverageSegment s = segments.get(i);
+            boolean[] l = live.get(i);
+            for (int f = 0; f < s.files(); f++) {
+                String path = s.path(f);
+                s.forEachRun(f, (first, last, tests) -> {
+                    for (int t : tests) {
+                        if (!l[t]) continue;
+                        byTest.computeIfAbsent(s.test(t), k -> new HashMap<>())
+                                .computeIfAbsent(path, k -> new BitSet()).set(first, last + 1);
+                    }
+                });
+            }
+        }
+        List<TestCoverage> out = new ArrayList<>(byTest.size());
+        for (Map.Entry<String, Map<String, BitSet>> e : byTest.entrySet()) {
+            Map<String, int[]> lines = new HashMap<>();
+            e.getValue().forEach((p, bits) -> lines.put(p, bits.stream().toArray()));
+            out.add(new TestCoverage(e.getKey(), lines));
+        }
+        return out;
+    }
+
+    // ---------- writes ----------
+
+    /** One test's coverage from its JaCoCo XML report; .exec data is refused (it needs the class files). */
+    public static TestCoverage readReport(String test, Path report) throws IOException {
+        if (JacocoXml.isExecData(report)) {
+            throw new IOException(report.getFileName() + " is JaCoCo execution data; convert it with jacoco:report (XML) first");
+        }
+        return new TestCoverage(test, JacocoXml.read(report));
+    }
+
+    /**
+     * Add (or replace) the coverage of the given tests as one new segment, recorded against
+     * {@code commit}; merges all segments once there are more than {@link #MAX_SEGMENTS}.
+     */
+    public static Ingest ingest(Path root, ObjectId commit, List<TestCoverage> coverage) throws IOException {
+        SegmentDir dir = store(root);
+        return dir.locked(() -> {
+            Manifest m = Manifest.read(dir);
+            List<Segment> segs = new ArrayList<>(m == null ? List.of() : m.segments());
+            String seg = dir.nextFile("cov-", ".seg");
+            CoverageSegment.write(dir.resolve(seg), coverage);
+            segs.add(new Segment(seg, commit));
+            Manifest.write(dir, new Manifest(segs));
+
+            Ingest r = new Ingest("updated", coverage.size(), segs.size());
+            if (segs.size() > MAX_SEGMENTS) {
+                CoverageIndex snapshot = open(root);
+                String base = dir.nextFile("cov-", ".seg");
+                CoverageSegment.write(dir.resolve(base), snapshot.liveCoverage());
+                Manifest.write(dir, new Manifest(List.of(new Segment(base, snapshot.oldestCommit()))));
+                r = new Ingest("compacted", coverage.size(), 1);
+            }
+            dir.deleteUnlisted();
+            return r;
+        });
+    }
+
+    // the commit of the oldest ingest that still has live coverage (the newest when none has)
+    private ObjectId oldestCommit() {
+        for (int i = segments.size() - 1; i >= 0; i--) if (liveTests(i) > 0) return commits.get(i);
+        return commits.get(0);
+    }
+
+    // ---------- manifest ----------
+
+    private record Segment(String name, ObjectId commit) {}
+
+    private record Manifest(List<Segment> segments) {
+
+        static Manifest read(SegmentDir dir) throws IOException {
+            return parse(dir.readManifest());
+        }
+
+        // "seg <file> <commit>" per segment
+        static Manifest parse(List<String> lines) {
+            if (lines == null) return null;
+            List<Segment> out = new ArrayList<>();
+            for (String l : lines) {
+                String[] f = l.split(" ");
+                if (f.length == 3 && f[0].equals("seg") && ObjectId.isId(f[2])) out.add(new Segment(f[1], ObjectId.fromString(f[2])));
+            }
+            return out.isEmpty() ? null : new Manifest(out);
+        }
+
+        static void write(SegmentDir dir, Manifest m) throws IOException {
+            List<String> lines = new ArrayList<>();
+            for (Segment s : m.segments()) {
+                lines.add("seg " + s.name() + ' ' + s.commit().name());
+            }
+            dir.writeManifest(lines);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.sagit.coverage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * One immutable, memory-mapped slice of the coverage index: source file -> line runs -> set of
+ * tests, for the tests ingested together.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header  magic "SGC1", format, tests, files, sets
+ * tests   u32 offset per test -> [u16 len][utf-8 name]
+ * files   u32 offset per file (sorted by UTF-8 path bytes) -> [u16 len][utf-8 path][u32 runs][runs x (u32 first, u32 last, u32 set)]
+ * sets    u32 offset per distinct test set -> {@link TestBitmap}
+ * </pre>
+ * A run covers consecutive recorded lines with the same test set, gaps included (blank lines and
+ * comments between them have no coverage of their own), so a method body is usually one run.
+ */
+final class CoverageSegment {
+
+    private static final int MAGIC = 0x53474331; // "SGC1"
+    private static final int FORMAT = 1;
+    private static final int HEADER = 20;
+
+    /** Called per run: lines first..last (1-based, inclusive) are covered by {@code tests}. */
+    interface RunVisitor {
+        void run(int first, int last, int[] tests);
+    }
+
+    private final ByteBuffer buf;
+    private final int tests, files, sets;
+    private final int testTable, fileTable, setTable;
+
+    private CoverageSegment(Path file, ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.capacity() < HEADER || buf.getInt(0) != MAGIC || buf.getInt(4) != FORMAT) {
+            throw new IOException("not a coverage segment: " + file.getFileName());
+        }
+        tests = buf.getInt(8);
+        files = buf.getInt(12);
+        sets = buf.getInt(16);
+        testTable = HEADER;
+        fileTable = testTable + 4 * tests;
+        setTable = fileTable + 4 * files;
+    }
+
+    static CoverageSegment open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new CoverageSegment(file, map);
+        }
+    }
+
+    int tests() { return tests; }
+
+    int files() { return files; }
+
+    String test(int t) {
+        return string(buf.getInt(testTable + 4 * t));
+    }
+
+    String path(int f) {
+        return string(buf.getInt(fileTable + 4 * f));
+    }
+
+    /** File index of a path, or -1. */
+    int file(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = files - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(buf.getInt(fileTable + 4 * mid), key);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /** Tests covering any line of {@code first..last} in file {@code f} (ids may repeat). */
+    void testsFor(int f, int first, int last, IntConsumer out) {
+        int runs = runsAt(f);
+        int n = buf.getInt(runs - 4);
+        // first run that ends at or after `first`
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (buf.getInt(runs + 12 * mid + 4) < first) lo = mid + 1;
+            else hi = mid;
+        }
+        for (int r = lo; r < n && buf.getInt(runs + 12 * r) <= last; r++) {
+            TestBitmap.forEach(buf, setAt(buf.getInt(runs + 12 * r + 8)), out);
+        }
+    }
+
+    void forEachRun(int f, RunVisitor v) {
+        int runs = runsAt(f);
+        int n = buf.getInt(runs - 4);
+        List<Integer> ids = new ArrayList<>();
+        for (int r = 0; r < n; r++) {
+            ids.clear();
+            TestBitmap.forEach(buf, setAt(buf.getInt(runs + 12 * r + 8)), ids::add);
+            v.run(buf.getInt(runs + 12 * r), buf.getInt(runs + 12 * r + 4),
+                    ids.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    // first run record of file f (its count is the u32 just before)
+    private int runsAt(int f) {
+        int at = buf.getInt(fileTable + 4 * f);
+        return at + 2 + (buf.getShort(at) & 0xffff) + 4;
+    }
+
+    private int setAt(int s) {
+        return buf.getInt(setTable + 4 * s);
+    }
+
+    private String string(int at) {
+        byte[] b = new byte[buf.getShort(at) & 0xffff];
+        buf.get(at + 2, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private int compare(int at, byte[] key) {
+        int len = buf.getShort(at) & 0xffff;
+        int m = Math.min(len, key.length);
+        for (int j = 0; j < m; j++) {
+            int c = (buf.get(at + 2 + j) & 0xff) - (key[j] & 0xff);
+            if (c != 0) return c;
+        }
+        return Integer.compare(len, key.length);
+    }
+
+    // ---------- building ----------
+
+    /** Invert per-test coverage (covered lines per path, ascending) into a segment. */
+    static void write(Path file, List<CoverageIndex.TestCoverage> coverage) throws IOException {
+        // path -> line -> ascending test ids
+        Map<String, TreeMap<Integer, IdList>> byPath = new HashMap<>();
+        for (int t = 0; t < coverage.size(); t++) {
+            for (Map.Entry<String, int[]> e : coverage.get(t).lines().entrySet()) {
+                TreeMap<Integer, IdList> lines = byPath.computeIfAbsent(e.getKey(), k -> new TreeMap<>());
+                for (int line : e.getValue()) lines.computeIfAbsent(line, k -> new IdList()).add(t);
+            }
+        }
+
+        List<byte[]> testNames = new ArrayList<>();
+        for (CoverageIndex.TestCoverage c : coverage) testNames.add(utf8(c.test()));
+        List<byte[]> paths = new ArrayList<>();
+        for (String p : byPath.keySet()) paths.add(utf8(p));
+        paths.sort(Arrays::compareUnsigned);
+
+        // runs per file, with test sets deduplicated across the segment
+        Map<IdList, Integer> setIds = new HashMap<>();
+        List<byte[]> setBytes = new ArrayList<>();
+        List<int[]> runs = new ArrayList<>(paths.size());
+        for (byte[] p : paths) {
+            TreeMap<Integer, IdList> lines = byPath.get(new String(p, StandardCharsets.UTF_8));
+            int[] r = new int[3 * lines.size()];
+            int n = 0;
+            IdList open = null;
+            for (Map.Entry<Integer, IdList> e : lines.entrySet()) {
+                if (open != null && open.equals(e.getValue())) {
+                    r[n - 2] = e.getKey();
+                    continue;
+                }
+                open = e.getValue();
+                Integer set = setIds.get(open);
+                if (set == null) {
+                    set = setBytes.size();
+                    setIds.put(open, set);
+                    setBytes.add(TestBitmap.encode(open.toArray()));
+                }
+                r[n++] = e.getKey();
+                r[n++] = e.getKey();
+                r[n++] = set;
+            }
+            runs.add(Arrays.copyOf(r, n));
+        }
+
+        long size = HEADER + 4L * (testNames.size() + paths.size() + setBytes.size());
+        for (byte[] t : testNames) size += 2 + t.length;
+        for (int i = 0; i < paths.size(); i++) size += 2 + paths.get(i).length + 4 + 4L * runs.get(i).length;
+        for (byte[] s : setBytes) size += s.length;
+        if (size > Integer.MAX_VALUE) throw new IOException("coverage segment too large");
+
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC).putInt(FORMAT).putInt(testNames.size()).putInt(paths.size()).putInt(setBytes.size());
+        int at = HEADER + 4 * (testNames.size() + paths.size() + setBytes.size());
+        for (byte[] t : testNames) { out.putInt(at); at += 2 + t.length; }
+        for (int i = 0; i < paths.size(); i++) { out.putInt(at); at += 2 + paths.get(i).length + 4 + 4 * runs.get(i).length; }
+        for (byte[] s : setBytes) { out.putInt(at); at += s.length; }
+        for (byte[] t : testNames) out.putShort((short) t.length).put(t);
+        for (int i = 0; i < paths.size(); i++) {
+            out.putShort((short) paths.get(i).length).put(paths.get(i));
+            out.putInt(runs.get(i).length / 3);
+            for (int v : runs.get(i)) out.putInt(v);
+        }
+        for (byte[] s : setBytes) out.put(s);
+        out.flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) ch.write(out);
+            ch.force(false);
+        }
+    }
+
+    private static byte[] utf8(String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xffff) throw new IOException("name too long: " + s);
+        return b;
+    }
+
+    // ascending test ids of one line; also the dedup key of a set
+    private static final class IdList {
+        private int[] ids = new int[2];
+        private int n;
+
+        void add(int id) {
+            if (n > 0 && ids[n - 1] == id) return;
+            if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+            ids[n++] = id;
+        }
+
+        int[] toArray() { return Arrays.copyOf(ids, n); }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof IdList l && Arrays.equals(ids, 0, n, l.ids, 0, l.n);
+        }
+
+        @Override public int hashCode() {
+            int h = 1;
+            for (int i = 0; i < n; i++) h = 31 * h + ids[i];
+            return h;
+        }
+    }
+}
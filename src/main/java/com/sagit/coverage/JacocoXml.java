@@ -0,0 +1,100 @@
+package com.sagit.coverage;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Covered lines from a JaCoCo XML report (jacoco:report / ReportTask output), streamed with
+ * StAX: {@code package/sourcefile/line} elements, a line counting as covered when its
+ * {@code ci} (covered instructions) is positive. Paths are package-relative, as in the
+ * report ("com/acme/Foo.java"). The report DTD is never fetched.
+ */
+final class JacocoXml {
+
+    private JacocoXml() {}
+
+    /** Covered lines per source file, ascending. */
+    static Map<String, int[]> read(Path file) throws IOException {
+        XMLInputFactory f = XMLInputFactory.newFactory();
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        Map<String, int[]> out = new HashMap<>();
+        try (InputStream in = Files.newInputStream(file)) {
+            XMLStreamReader r = f.createXMLStreamReader(in);
+            String pkg = "", source = null;
+            int[] lines = new int[64];
+            int n = 0;
+            while (r.hasNext()) {
+                int ev = r.next();
+                if (ev == XMLStreamConstants.START_ELEMENT) {
+                    switch (r.getLocalName()) {
+                        case "package" -> pkg = attr(r, "name");
+                        case "sourcefile" -> {
+                            String name = attr(r, "name");
+                            source = pkg.isEmpty() ? name : pkg + "/" + name;
+                            n = 0;
+                        }
+                        case "line" -> {
+                            if (source == null || parse(attr(r, "ci")) <= 0) break;
+                            if (n == lines.length) lines = Arrays.copyOf(lines, n * 2);
+                            lines[n++] = parse(attr(r, "nr"));
+                        }
+                        default -> { }
+                    }
+                } else if (ev == XMLStreamConstants.END_ELEMENT) {
+                    if ("sourcefile".equals(r.getLocalName()) && source != null) {
+                        if (n > 0) out.merge(source, sorted(Arrays.copyOf(lines, n)), JacocoXml::union);
+                        source = null;
+                    } else if ("package".equals(r.getLocalName())) {
+                        pkg = "";
+                    }
+                }
+            }
+            r.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(file.getFileName() + ": not a JaCoCo XML report (" + e.getMessage() + ")", e);
+        }
+        return out;
+    }
+
+    /** JaCoCo execution data (.exec) rather than a report: it starts with block 0x01 and magic 0xC0C0. */
+    static boolean isExecData(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.read() == 0x01 && in.read() == 0xC0 && in.read() == 0xC0;
+        }
+    }
+
+    private static String attr(XMLStreamReader r, String name) {
+        String v = r.getAttributeValue(null, name);
+        return v == null ? "" : v;
+    }
+
+    private static int parse(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int[] sorted(int[] a) {
+        Arrays.sort(a);
+        return a;
+    }
+
+    // the same source file in two groups (modules) of one report
+    private static int[] union(int[] a, int[] b) {
+        int[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return Arrays.stream(c).sorted().distinct().toArray();
+    }
+}
@@ -0,0 +1,88 @@
+package com.sagit.coverage;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of test ids, in whichever of two forms is smaller:
+ * <pre>
+ * sparse  [0][varint count][varint gap...]     ids as gaps from the previous one (first from -1)
+ * dense   [1][u16 words][u64 word...]          plain bitset, big-endian words
+ * </pre>
+ * A handful of tests per line is the common case (sparse, a few bytes); lines run by most of
+ * the suite (shared setup code) switch to one bit per test.
+ */
+final class TestBitmap {
+
+    private static final byte SPARSE = 0, DENSE = 1;
+
+    private TestBitmap() {}
+
+    /** Encode ascending, distinct ids. */
+    static byte[] encode(int[] ids) {
+        int sparse = 1 + varintSize(ids.length);
+        int prev = -1;
+        for (int id : ids) { sparse += varintSize(id - prev); prev = id; }
+        int words = ids.length == 0 ? 0 : ids[ids.length - 1] / 64 + 1;
+        int dense = words <= 0xffff ? 3 + 8 * words : Integer.MAX_VALUE;
+
+        ByteBuffer out = ByteBuffer.allocate(Math.min(sparse, dense));
+        if (sparse <= dense) {
+            out.put(SPARSE);
+            putVarint(out, ids.length);
+            prev = -1;
+            for (int id : ids) { putVarint(out, id - prev); prev = id; }
+        } else {
+            long[] bits = new long[words];
+            for (int id : ids) bits[id >>> 6] |= 1L << (id & 63);
+            out.put(DENSE).putShort((short) words);
+            for (long w : bits) out.putLong(w);
+        }
+        return out.array();
+    }
+
+    /** Every id in the bitmap stored at {@code at}, ascending. */
+    static void forEach(ByteBuffer buf, int at, IntConsumer f) {
+        if (buf.get(at) == DENSE) {
+            int words = buf.getShort(at + 1) & 0xffff;
+            for (int w = 0; w < words; w++) {
+                long bits = buf.getLong(at + 3 + 8 * w);
+                while (bits != 0) {
+                    f.accept(w * 64 + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return;
+        }
+        int[] pos = {at + 1};
+        int n = getVarint(buf, pos);
+        int id = -1;
+        for (int i = 0; i < n; i++) {
+            id += getVarint(buf, pos);
+            f.accept(id);
+        }
+    }
+
+    private static int varintSize(int v) {
+        int n = 1;
+        while ((v >>>= 7) != 0) n++;
+        return n;
+    }
+
+    private static void putVarint(ByteBuffer out, int v) {
+        while ((v & ~0x7f) != 0) {
+            out.put((byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    private static int getVarint(ByteBuffer buf, int[] pos) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get(pos[0]++);
+            v |= (b & 0x7f) << shift;
+            if (b >= 0) return v;
+        }
+    }
+}
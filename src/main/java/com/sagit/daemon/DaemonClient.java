@@ -0,0 +1,54 @@
+package com.sagit.daemon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Minimal client for control requests (status/stop); hooks talk to the socket from sh. */
+public final class DaemonClient {
+
+    private DaemonClient() {}
+
+    /** True if a daemon answers on {@code socket}. */
+    public static boolean ping(Path socket) {
+        String r = request(socket, "!ping");
+        return r != null && r.startsWith("pong");
+    }
+
+    /** Ask the daemon to exit after the current request; false if none was running. */
+    public static boolean stop(Path socket) {
+        return request(socket, "!stop") != null;
+    }
+
+    // sun_path is ~100 bytes; a cwd-relative path keeps deep repositories bindable
+    static UnixDomainSocketAddress address(Path socket) {
+        Path abs = socket.toAbsolutePath().normalize();
+        try {
+            Path rel = Path.of("").toAbsolutePath().relativize(abs);
+            if (rel.toString().length() < abs.toString().length()) return UnixDomainSocketAddress.of(rel);
+        } catch (IllegalArgumentException ignored) { /* different root */ }
+        return UnixDomainSocketAddress.of(abs);
+    }
+
+    /** Send one request line and return the full response, or null if nothing is listening. */
+    public static String request(Path socket, String line) {
+        if (!Files.exists(socket)) return null;
+        try (SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            ch.connect(address(socket));
+            ByteBuffer req = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+            while (req.hasRemaining()) ch.write(req);
+            ch.shutdownOutput();
+            InputStream in = Channels.newInputStream(ch);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.sagit.daemon;
+
+import com.sagit.SagitCLI;
+import com.sagit.config.Config;
+import com.sagit.git.GitService;
+import com.sagit.semantic.BlobAnalyzer;
+import com.sagit.semantic.JavaSemanticAnalyzer;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Long-lived per-repo process that runs hook commands without a JVM cold start.
+ *
+ * Protocol (one request per connection, UTF-8):
+ *   request  = fields separated by TAB, terminated by LF.
+ *              Leading "env:NAME=value" fields carry the hook's environment
+ *              (only GIT_INDEX_FILE is honored); the rest is the sagit argv.
+ *              "!ping" and "!stop" are control requests.
+ *   response = the command's stdout/stderr, then a final line "[sagit-daemon] done <exit code>".
+ * Requests are served one at a time; the Repository and analysis cache stay resident.
+ */
+public class DaemonServer {
+
+    public static final String DONE = "[sagit-daemon] done";
+    private static final int MAX_REQUEST = 64 * 1024;
+
+    private final Path socket;
+    private final long idleMillis;
+    private volatile boolean running = true;
+
+    public DaemonServer(Path socket, long idleSeconds) {
+        this.socket = socket;
+        this.idleMillis = Math.max(1, idleSeconds) * 1000L;
+    }
+
+    /** Socket location for the repository rooted at {@code root}. */
+    public static Path socketPath(Path root) {
+        return root.resolve(".sagit/daemon.sock");
+    }
+
+    /** Serve until idle for the configured timeout or asked to stop. Must run with the repo root as cwd. */
+    public void serve() throws IOException {
+        Files.createDirectories(socket.getParent());
+        if (Files.exists(socket)) {
+            if (DaemonClient.ping(socket)) throw new IOException("daemon already running on " + socket);
+            Files.delete(socket); // stale: previous daemon died without cleanup
+        }
+
+        Repository repo = GitService.buildFromWorkingDir();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            server.bind(DaemonClient.address(socket));
+            Thread cleanup = new Thread(this::deleteSocket, "sagit-daemon-cleanup");
+            Runtime.getRuntime().addShutdownHook(cleanup);
+
+            GitService.setResident(repo);
+            BlobAnalyzer.keepCacheResident(repo.getWorkTree().toPath(), Config.load(repo.getWorkTree().toPath()));
+            warmUp();
+
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("[sagit] daemon listening on " + socket + " (idle timeout " + idleMillis / 1000 + "s)");
+
+            while (running) {
+                if (selector.select(idleMillis) == 0) {
+                    System.out.println("[sagit] daemon idle, shutting down");
+                    break;
+                }
+                selector.selectedKeys().clear();
+                SocketChannel ch = server.accept();
+                if (ch == null) continue;
+                try (ch) {
+                    ch.configureBlocking(true);
+                    handle(ch);
+                } catch (Exception e) {
+                    System.err.println("[sagit] daemon request failed: " + e.getMessage());
+                }
+            }
+        } finally {
+            GitService.setResident(null);
+            repo.close();
+            deleteSocket();
+        }
+    }
+
+    // ---------- request handling ----------
+
+    private void handle(SocketChannel ch) throws IOException {
+        InputStream in = Channels.newInputStream(ch);
+        OutputStream out = Channels.newOutputStream(ch);
+        String line = readLine(in);
+        PrintStream ps = new PrintStream(out, true, StandardCharsets.UTF_8);
+
+        if (line == null || line.isEmpty()) { ps.println(DONE + " 2"); return; }
+        if (line.equals("!ping")) { ps.println("pong " + ProcessHandle.current().pid()); ps.println(DONE + " 0"); return; }
+        if (line.equals("!stop")) { running = false; ps.println("stopping"); ps.println(DONE + " 0"); return; }
+
+        File indexFile = null;
+        List<String> args = new ArrayList<>();
+        for (String f : line.split("\t", -1)) {
+            if (args.isEmpty() && f.startsWith("env:")) {
+                String kv = f.substring(4);
+                if (kv.startsWith("GIT_INDEX_FILE=") && kv.length() > "GIT_INDEX_FILE=".length()) {
+                    indexFile = new File(kv.substring("GIT_INDEX_FILE=".length()));
+                }
+            } else {
+                args.add(f);
+            }
+        }
+        // only hooks: they never call System.exit and are what the scripts forward
+        if (args.isEmpty() || !args.get(0).equals("hook")) {
+            ps.println("[sagit] daemon only serves 'hook' commands");
+            ps.println(DONE + " 2");
+            return;
+        }
+
+        PrintStream oldOut = System.out, oldErr = System.err;
+        int code;
+        System.setOut(ps);
+        System.setErr(ps);
+        GitService.setRequestIndexFile(indexFile);
+        try {
+            code = SagitCLI.execute(args.toArray(new String[0]));
+        } finally {
+            GitService.setRequestIndexFile(null);
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+        }
+        ps.println(DONE + " " + code);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            if (buf.size() >= MAX_REQUEST) throw new IOException("request too large");
+            buf.write(b);
+        }
+        if (b < 0 && buf.size() == 0) return null;
+        String s = buf.toString(StandardCharsets.UTF_8);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    // Load and JIT the parser/scanner paths once so the first commit is not the slow one.
+    private static void warmUp() {
+        String src = "package w; public class W { int f; W() {} void m() { new Object() {}; } enum E { A } }";
+        for (int i = 0; i < 50; i++) {
+            new JavaSemanticAnalyzer(JavaSemanticAnalyzer.Mode.FULL).analyze(src);
+            new JavaSemanticAnalyzer(JavaSemanticAnalyzer.Mode.FAST).analyze(src);
+        }
+    }
+
+    private void deleteSocket() {
+        try { Files.deleteIfExists(socket); } catch (IOException ignored) {}
+    }
+}
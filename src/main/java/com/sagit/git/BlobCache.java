@@ -0,0 +1,53 @@
+package com.sagit.git;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Byte-weighted LRU of recently loaded blob contents.
+ * Keys are content hashes, so one instance can safely serve every repository in the process.
+ * Cached arrays are shared: callers must not modify them.
+ */
+final class BlobCache {
+
+    private final LinkedHashMap<ObjectId, byte[]> map = new LinkedHashMap<>(256, 0.75f, true);
+    private long maxBytes;
+    private long bytes;
+
+    BlobCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized byte[] get(AnyObjectId id) {
+        return map.get(id);
+    }
+
+    synchronized void put(AnyObjectId id, byte[] data) {
+        // one blob may not take over the whole cache
+        if (data.length > maxBytes / 4) return;
+        byte[] old = map.put(id.copy(), data);
+        if (old != null) bytes -= old.length;
+        bytes += data.length;
+        evict();
+    }
+
+    synchronized void resize(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    synchronized long bytes() { return bytes; }
+    synchronized int size() { return map.size(); }
+
+    private void evict() {
+        Iterator<Map.Entry<ObjectId, byte[]>> it = map.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+}
@@ -1,47 +1,152 @@
 package com.sagit.git;
 
+import com.sagit.config.Config;
+import com.sagit.metrics.Metrics;
+import com.sagit.utils.FS;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
 import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectStream;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
 
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 public class GitService implements Closeable, AutoCloseable {
 
     private final Repository repo;
+    private final boolean owned;
+    private final Config cfg;
+    private RenameDetection.Options renames;
 
-    private GitService(Repository repo) {
+    // One reader per thread for this service; readers keep pack indexes and inflaters warm between calls.
+    private final ThreadLocal<ObjectReader> readers = new ThreadLocal<>();
+    private final List<ObjectReader> openReaders = new ArrayList<>();
+
+    // Recently loaded blobs, shared by every GitService in the process (blob ids are content hashes).
+    private static final BlobCache blobs = new BlobCache(0);
+    private static WindowCacheConfig installedWindows;
+
+    // Set by the daemon: a long-lived Repository (and its object caches) shared by every request.
+    private static volatile Repository resident;
+    // Per-request index override (hooks forward GIT_INDEX_FILE to the daemon).
+    private static final ThreadLocal<File> requestIndexFile = new ThreadLocal<>();
+
+    private GitService(Repository repo, boolean owned, Config cfg) {
         this.repo = repo;
+        this.owned = owned;
+        this.cfg = cfg;
+        this.renames = RenameDetection.Options.interactive(cfg);
+        blobs.resize(cfg.blobCacheBytes);
     }
 
     public static GitService openFromWorkingDir() throws IOException {
+        long t = Metrics.start();
+        try {
+            Repository r = resident;
+            if (r != null) return new GitService(r, false, Config.load(r.getWorkTree().toPath()));
+            FileRepositoryBuilder b = builderFromWorkingDir();
+            Config cfg = Config.load(b.getWorkTree().toPath());
+            applyWindowCache(cfg);
+            return new GitService(b.build(), true, cfg);
+        } finally {
+            Metrics.stop(Metrics.Phase.REPO_OPEN, t);
+        }
+    }
+
+    public static Repository buildFromWorkingDir() throws IOException {
+        FileRepositoryBuilder b = builderFromWorkingDir();
+        applyWindowCache(Config.load(b.getWorkTree().toPath()));
+        return b.build();
+    }
+
+    private static FileRepositoryBuilder builderFromWorkingDir() throws IOException {
+        File root = FS.repoRoot().toFile(); // top-level even when run from a subdirectory
         FileRepositoryBuilder b = new FileRepositoryBuilder()
-                .setWorkTree(new File("."))
-                .findGitDir(new File("."))
+                .setWorkTree(root)
+                .findGitDir(root)
                 .readEnvironment();
+        b.setup();
+        return b;
+    }
+
+    // Pack window/mmap settings are JVM-global in JGit; (re)install only when the config changes.
+    private static synchronized void applyWindowCache(Config cfg) {
+        WindowCacheConfig w = new WindowCacheConfig();
+        w.setPackedGitWindowSize((int) Math.min(Integer.MAX_VALUE, cfg.packedGitWindowSize));
+        w.setPackedGitLimit(cfg.packedGitLimit);
+        w.setPackedGitMMAP(cfg.packedGitMMAP);
+        w.setDeltaBaseCacheLimit((int) Math.min(Integer.MAX_VALUE, cfg.deltaBaseCacheLimit));
+        w.setStreamFileThreshold((int) Math.min(Integer.MAX_VALUE, cfg.streamFileThreshold));
+        if (installedWindows != null
+                && installedWindows.getPackedGitWindowSize() == w.getPackedGitWindowSize()
+                && installedWindows.getPackedGitLimit() == w.getPackedGitLimit()
+                && installedWindows.isPackedGitMMAP() == w.isPackedGitMMAP()
+                && installedWindows.getDeltaBaseCacheLimit() == w.getDeltaBaseCacheLimit()
+                && installedWindows.getStreamFileThreshold() == w.getStreamFileThreshold()) {
+            return;
+        }
+        w.install();
+        installedWindows = w;
+    }
+
+    /** Keep {@code r} open across commands in this JVM; GitService.close() will not close it. */
+    public static void setResident(Repository r) { resident = r; }
+
+    /** Read the index from {@code f} (instead of the repository default) on this thread; null resets. */
+    public static void setRequestIndexFile(File f) {
+        if (f == null) requestIndexFile.remove(); else requestIndexFile.set(f);
+    }
 
-        Repository r = b.build();
-        return new GitService(r);
+    /** Current index (GIT_INDEX_FILE aware), read fresh from disk. */
+    public DirCache readIndex() throws IOException {
+        File f = requestIndexFile.get();
+        if (f == null) return DirCache.read(repo);
+        return DirCache.read(f.isAbsolute() ? f : new File(repo.getWorkTree(), f.getPath()), repo.getFS());
     }
 
     public Repository repo() { return repo; }
 
+    /** Settings this service was opened with (.sagit/config.json of its work tree). */
+    public Config config() { return cfg; }
+
+    /** Rename detection used by the List-returning diff methods (default: config 'renameMode'). */
+    public RenameDetection.Options renameOptions() { return renames; }
+    public void setRenameOptions(RenameDetection.Options o) { this.renames = o; }
+    public void setRenameMode(RenameDetection.Mode m) { this.renames = renames.withMode(m); }
+
+    /** Reader owned by this service and confined to the calling thread; closed with the service. */
+    public ObjectReader reader() {
+        ObjectReader r = readers.get();
+        if (r == null) {
+            r = repo.newObjectReader();
+            readers.set(r);
+            synchronized (openReaders) { openReaders.add(r); }
+        }
+        return r;
+    }
+
     /** Latest commit on HEAD (or null if none). */
     public RevCommit headCommit() throws IOException {
         ObjectId head = repo.resolve("HEAD");
@@ -51,76 +156,135 @@ public class GitService implements Closeable, AutoCloseable {
         }
     }
 
-    /** Read blob bytes by id. */
+    /** Read blob bytes by id (cached; the array is shared, do not modify). */
     public byte[] loadBlob(ObjectId id) throws IOException {
-        try (ObjectReader reader = repo.newObjectReader()) {
-            ObjectLoader loader = reader.open(id);
-            return loader.getBytes();
-        }
+        return loadBlob(reader(), id);
     }
 
-    /** Create a tree object for the current index (staged content). */
-    public ObjectId writeIndexTree() throws IOException {
-        DirCache index = DirCache.read(repo); // current index
-        try (ObjectInserter ins = repo.newObjectInserter()) {
-            ObjectId treeId = index.writeTree(ins);
-            ins.flush();
-            return treeId;
+    /**
+     * Read blob bytes through a caller-owned (thread-confined) reader.
+     * Blobs over config 'maxBlobBytes' throw {@link LargeObjectException}; use {@link #openBlob} for those.
+     */
+    public byte[] loadBlob(ObjectReader reader, ObjectId id) throws IOException {
+        long t = Metrics.start();
+        byte[] hit = blobs.get(id);
+        if (hit != null) {
+            Metrics.stop(Metrics.Phase.BLOB_LOAD, t);
+            return hit;
         }
+        ObjectLoader loader = reader.open(id, Constants.OBJ_BLOB);
+        long cap = Math.min(Integer.MAX_VALUE - 8, cfg.maxBlobBytes);
+        if (loader.getSize() > cap) throw new LargeObjectException.ExceedsLimit(cap, loader.getSize());
+        byte[] bytes = loader.getBytes((int) cap);
+        blobs.put(id, bytes);
+        Metrics.stop(Metrics.Phase.BLOB_LOAD, t);
+        return bytes;
     }
 
-    /** Diff: STAGED vs HEAD (first-commit safe). */
-    public List<DiffEntry> diffStagedAgainstHead() throws Exception {
-        ObjectId indexTree = writeIndexTree();
+    /** Inflated size of a blob without loading it. */
+    public long blobSize(ObjectId id) throws IOException {
+        return reader().getObjectSize(id, Constants.OBJ_BLOB);
+    }
 
-        try (ObjectReader reader = repo.newObjectReader();
-             DiffFormatter df = new DiffFormatter(new ByteArrayOutputStream())) {
-            df.setRepository(repo);
-            df.setDetectRenames(true);
+    /** Stream a blob of any size (not cached); the caller closes the stream. */
+    public ObjectStream openBlob(ObjectId id) throws IOException {
+        return reader().open(id, Constants.OBJ_BLOB).openStream();
+    }
 
-            AbstractTreeIterator oldIter;
-            ObjectId headTree = repo.resolve("HEAD^{tree}");
-            if (headTree == null) {
-                oldIter = new EmptyTreeIterator(); // empty repo
-            } else {
-                CanonicalTreeParser o = new CanonicalTreeParser();
-                o.reset(reader, headTree);
-                oldIter = o;
-            }
+    /**
+     * Id the current index would get as a tree, computed without writing any objects.
+     * Throws UnmergedPathException while conflicts are unresolved (like `git write-tree`).
+     */
+    public ObjectId indexTreeId(DirCache index) throws IOException {
+        long t = Metrics.start();
+        try (ObjectInserter ids = new IdOnlyInserter()) {
+            return index.writeTree(ids);
+        } finally {
+            Metrics.stop(Metrics.Phase.INDEX_TREE, t);
+        }
+    }
 
-            CanonicalTreeParser newIter = new CanonicalTreeParser();
-            newIter.reset(reader, indexTree);
+    /** Diff: STAGED vs HEAD (first-commit safe). Reads the index directly; writes nothing. */
+    public List<DiffEntry> diffStagedAgainstHead() throws IOException {
+        return diffIndexAgainst(repo.resolve("HEAD^{tree}"), readIndex());
+    }
 
-            return df.scan(oldIter, newIter);
-        }
+    /** Diff: a tree (null/zero = empty) vs the given index snapshot. */
+    public List<DiffEntry> diffIndexAgainst(ObjectId oldTree, DirCache index) throws IOException {
+        return scanIndex(oldTree, index, renames).entries();
     }
 
     /** Diff: arbitrary trees (first-commit safe on oldTree). */
     public List<DiffEntry> diffBetween(ObjectId oldTree, ObjectId newTree) throws IOException {
-        try (ObjectReader reader = repo.newObjectReader();
-             DiffFormatter df = new DiffFormatter(new ByteArrayOutputStream())) {
-            df.setRepository(repo);
-            df.setDetectRenames(true);
-
-            AbstractTreeIterator aIter;
-            if (oldTree == null || ObjectId.zeroId().equals(oldTree)) {
-                aIter = new EmptyTreeIterator();
-            } else {
-                CanonicalTreeParser a = new CanonicalTreeParser();
-                a.reset(reader, oldTree);
-                aIter = a;
-            }
-
-            CanonicalTreeParser b = new CanonicalTreeParser();
-            b.reset(reader, newTree);
-
-            return df.scan(aIter, b);
+        return scanBetween(oldTree, newTree, renames).entries();
+    }
+
+    /** Like {@link #diffIndexAgainst} with explicit rename options; the result reports the rename tier reached. */
+    public RenameDetection.Result scanIndex(ObjectId oldTree, DirCache index, RenameDetection.Options opts)
+            throws IOException {
+        ObjectReader reader = reader();
+        return scan(reader, treeIterator(reader, oldTree), new DirCacheIterator(index), opts);
+    }
+
+    /** Like {@link #diffBetween} with explicit rename options; the result reports the rename tier reached. */
+    public RenameDetection.Result scanBetween(ObjectId oldTree, ObjectId newTree, RenameDetection.Options opts)
+            throws IOException {
+        ObjectReader reader = reader();
+        return scan(reader, treeIterator(reader, oldTree), treeIterator(reader, newTree), opts);
+    }
+
+    /** Line edits of one entry (A = old side, B = new side; 0-based, end exclusive). Empty for binary content. */
+    public EditList editList(DiffEntry entry) throws IOException {
+        try (DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            df.setReader(reader(), repo.getConfig());
+            return df.toFileHeader(entry).toEditList();
+        }
+    }
+
+    // raw tree diff (no renames), then the tiered detector
+    private RenameDetection.Result scan(ObjectReader reader, AbstractTreeIterator a, AbstractTreeIterator b,
+                                        RenameDetection.Options opts) throws IOException {
+        List<DiffEntry> raw;
+        long t = Metrics.start();
+        try (DiffFormatter df = new DiffFormatter(new ByteArrayOutputStream())) {
+            df.setReader(reader, repo.getConfig());
+            df.setDetectRenames(false);
+            raw = df.scan(a, b);
+        }
+        Metrics.stop(Metrics.Phase.DIFF_SCAN, t);
+        t = Metrics.start();
+        RenameDetection.Result r = RenameDetection.apply(repo, reader, raw, opts);
+        Metrics.stop(Metrics.Phase.RENAMES, t);
+        return r;
+    }
+
+    private static AbstractTreeIterator treeIterator(ObjectReader reader, ObjectId tree) throws IOException {
+        if (tree == null || ObjectId.zeroId().equals(tree)) return new EmptyTreeIterator();
+        CanonicalTreeParser p = new CanonicalTreeParser();
+        p.reset(reader, tree);
+        return p;
+    }
+
+    // Hashes what DirCache.writeTree would store, without touching .git/objects.
+    private static final class IdOnlyInserter extends ObjectInserter.Formatter {
+        @Override
+        public ObjectId insert(int type, byte[] data, int off, int len) {
+            return idFor(type, data, off, len);
+        }
+
+        @Override
+        public ObjectId insert(int type, long len, java.io.InputStream in) throws IOException {
+            return idFor(type, len, in);
         }
     }
 
     @Override
     public void close() throws IOException {
-        repo.close();
+        synchronized (openReaders) {
+            for (ObjectReader r : openReaders) r.close();
+            openReaders.clear();
+        }
+        if (owned) repo.close();
     }
 
     // Convenience: repo root for external code, if needed
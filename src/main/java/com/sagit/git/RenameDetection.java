@@ -0,0 +1,194 @@
+package com.sagit.git;
+
+import com.sagit.config.Config;
+import org.eclipse.jgit.api.errors.CanceledException;
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tiered rename detection over a raw (rename-free) tree diff.
+ *
+ * Tier 1 (exact): deleted and added paths with the same blob id are paired through a
+ * hash join, linear in the number of entries.
+ * Tier 2 (similarity): JGit content scoring over what is left, only when
+ * adds x deletes fits the pair budget, and abandoned at the deadline.
+ * The result says which tier completed, so callers can report it.
+ */
+public final class RenameDetection {
+
+    public enum Mode {
+        OFF, EXACT, FULL;
+
+        public static Mode parse(String s, Mode dflt) {
+            if (s == null) return dflt;
+            return switch (s.trim().toLowerCase()) {
+                case "off", "none" -> OFF;
+                case "exact" -> EXACT;
+                case "full", "similarity" -> FULL;
+                default -> dflt;
+            };
+        }
+    }
+
+    public enum Tier { NONE, EXACT, SIMILARITY }
+
+    /** Mode plus the bounds of the similarity tier. */
+    public record Options(Mode mode, long pairBudget, long timeoutMillis) {
+        /** Interactive commands: config 'renameMode' (default full). */
+        public static Options interactive(Config cfg) {
+            return new Options(Mode.parse(cfg.renameMode, Mode.FULL), cfg.renamePairBudget, cfg.renameTimeoutMillis);
+        }
+
+        /** Git hooks: config 'hookRenameMode' (default exact). */
+        public static Options hook(Config cfg) {
+            return new Options(Mode.parse(cfg.hookRenameMode, Mode.EXACT), cfg.renamePairBudget, cfg.renameTimeoutMillis);
+        }
+
+        public Options withMode(Mode m) { return new Options(m, pairBudget, timeoutMillis); }
+    }
+
+    /** Entries with renames applied, the tier that completed, and why it stopped there (or null). */
+    public record Result(List<DiffEntry> entries, Tier tier, String note) {
+        public String describe() {
+            String t = switch (tier) {
+                case NONE -> "off";
+                case EXACT -> "exact";
+                case SIMILARITY -> "similarity";
+            };
+            return note == null ? t : t + " (" + note + ")";
+        }
+    }
+
+    private RenameDetection() {}
+
+    public static Result apply(Repository repo, ObjectReader reader, List<DiffEntry> raw, Options opts)
+            throws IOException {
+        if (opts.mode() == Mode.OFF) return new Result(raw, Tier.NONE, null);
+
+        // ---------- tier 1: exact blob id ----------
+        Map<ObjectId, ArrayDeque<DiffEntry>> deletedById = new HashMap<>();
+        for (DiffEntry de : raw) {
+            if (de.getChangeType() == ChangeType.DELETE && renameable(de.getOldMode(), de.getOldId())) {
+                deletedById.computeIfAbsent(de.getOldId().toObjectId(), k -> new ArrayDeque<>()).add(de);
+            }
+        }
+        List<DiffEntry> out = new ArrayList<>(raw.size());
+        List<DiffEntry> adds = new ArrayList<>(), deletes = new ArrayList<>();
+        Map<DiffEntry, Boolean> paired = new IdentityHashMap<>();
+        for (DiffEntry de : raw) {
+            if (de.getChangeType() != ChangeType.ADD) continue;
+            ArrayDeque<DiffEntry> q = renameable(de.getNewMode(), de.getNewId())
+                    ? deletedById.get(de.getNewId().toObjectId()) : null;
+            if (q == null || q.isEmpty()) continue;
+            DiffEntry src = takeBestSource(q, de.getNewPath());
+            out.add(new Renamed(src, de, 100));
+            paired.put(src, Boolean.TRUE);
+            paired.put(de, Boolean.TRUE);
+        }
+        for (DiffEntry de : raw) {
+            if (paired.containsKey(de)) continue;
+            switch (de.getChangeType()) {
+                case ADD -> adds.add(de);
+                case DELETE -> deletes.add(de);
+                default -> out.add(de);
+            }
+        }
+
+        Tier tier = Tier.EXACT;
+        String note = null;
+        List<DiffEntry> rest = new ArrayList<>(adds.size() + deletes.size());
+        rest.addAll(adds);
+        rest.addAll(deletes);
+
+        // ---------- tier 2: content similarity, bounded ----------
+        long pairs = (long) adds.size() * deletes.size();
+        if (opts.mode() == Mode.FULL && pairs > 0) {
+            if (pairs > opts.pairBudget()) {
+                note = "similarity skipped: " + pairs + " pairs > budget " + opts.pairBudget();
+            } else {
+                RenameDetector rd = new RenameDetector(reader, repo.getConfig().get(DiffConfig.KEY));
+                rd.setRenameLimit(0); // bounded by the pair budget above instead
+                rd.addAll(rest);
+                try {
+                    rest = rd.compute(reader, new Deadline(opts.timeoutMillis()));
+                    tier = Tier.SIMILARITY;
+                } catch (CanceledException e) {
+                    note = "similarity stopped after " + opts.timeoutMillis() + " ms";
+                }
+            }
+        }
+        out.addAll(rest);
+        out.sort(Comparator.comparing(RenameDetection::pathOf));
+        return new Result(out, tier, note);
+    }
+
+    // ---------- internals ----------
+
+    private static boolean renameable(FileMode mode, AbbreviatedObjectId id) {
+        return id != null && id.isComplete() && !ObjectId.zeroId().equals(id.toObjectId())
+                && (mode.getObjectType() == Constants.OBJ_BLOB);
+    }
+
+    // among identical blobs, prefer the source with the same file name (a move rather than a copy-and-delete)
+    private static DiffEntry takeBestSource(ArrayDeque<DiffEntry> q, String newPath) {
+        if (q.size() > 1) {
+            String name = newPath.substring(newPath.lastIndexOf('/') + 1);
+            for (DiffEntry d : q) {
+                String old = d.getOldPath();
+                if (old.substring(old.lastIndexOf('/') + 1).equals(name)) {
+                    q.remove(d);
+                    return d;
+                }
+            }
+        }
+        return q.poll();
+    }
+
+    private static String pathOf(DiffEntry de) {
+        return de.getChangeType() == ChangeType.DELETE ? de.getOldPath() : de.getNewPath();
+    }
+
+    /** A RENAME built from a DELETE/ADD pair (DiffEntry only exposes its fields to subclasses). */
+    private static final class Renamed extends DiffEntry {
+        Renamed(DiffEntry src, DiffEntry dst, int score) {
+            oldPath = src.getOldPath();
+            oldMode = src.getOldMode();
+            oldId = src.getOldId();
+            newPath = dst.getNewPath();
+            newMode = dst.getNewMode();
+            newId = dst.getNewId();
+            changeType = ChangeType.RENAME;
+            this.score = score;
+        }
+    }
+
+    /** Cancels the similarity scan once the wall-clock budget is spent. */
+    private static final class Deadline implements ProgressMonitor {
+        private final long end;
+        Deadline(long millis) { this.end = System.nanoTime() + Math.max(0, millis) * 1_000_000L; }
+        @Override public void start(int totalTasks) {}
+        @Override public void beginTask(String title, int totalWork) {}
+        @Override public void update(int completed) {}
+        @Override public void endTask() {}
+        @Override public boolean isCancelled() { return System.nanoTime() > end; }
+        @Override public void showDuration(boolean enabled) {}
+    }
+}
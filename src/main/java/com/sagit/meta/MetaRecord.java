@@ -1,12 +1,69 @@
 package com.sagit.meta;
 
+import com.sagit.semantic.JavaSemanticAnalyzer;
+import com.sagit.semantic.StagedAnalysis;
+import org.eclipse.jgit.diff.DiffEntry;
+
+import java.time.Instant;
+import java.util.HashMap;
 import java.util.Map;
 
 public class MetaRecord {
     public String commitId;
-    public String timestamp;     // ISO-8601 string
+    public String timestamp;     // committer time of commitId, ISO-8601 string
     public Map<String, Integer> summary;
 
+    // summary key tagging the deltas with the analyzer that produced them; older records lack it
+    public static final String ANALYZER_VERSION = "analyzer_version";
+
+    /**
+     * The per-commit summary (post-commit hook and `sagit index` both record this); the timestamp
+     * is the commit's, not the time of recording, so a backfilled record matches a hook's.
+     */
+    public static MetaRecord of(String commitId, Instant commitTime, StagedAnalysis change) {
+        // Never throw on rename/copy – count them as modify
+        int filesAdded    = change.count(DiffEntry.ChangeType.ADD);
+        int filesDeleted  = change.count(DiffEntry.ChangeType.DELETE);
+        int filesModified = change.count(DiffEntry.ChangeType.MODIFY)
+                          + change.count(DiffEntry.ChangeType.RENAME)
+                          + change.count(DiffEntry.ChangeType.COPY);
+
+        // zero/absent blobs analyze as empty
+        var d = change.javaDelta;
+        int deltaTypes   = d.classes + d.interfaces_ + d.enums_;
+        int deltaMethods = d.methods;
+
+        Map<String, Integer> summary = new HashMap<>();
+        summary.put("files_added", filesAdded);
+        summary.put("files_modified", filesModified);
+        summary.put("files_deleted", filesDeleted);
+        summary.put("java_types_delta", deltaTypes);
+        summary.put("java_methods_delta", deltaMethods);
+        summary.put(ANALYZER_VERSION, JavaSemanticAnalyzer.VERSION);
+
+        MetaRecord rec = new MetaRecord();
+        rec.commitId  = commitId;
+        rec.timestamp = commitTime.toString();
+        rec.summary   = summary;
+        return rec;
+    }
+
+    /** Integer field of a stored record's JSON (keys are unique in our shape), or null. */
+    public static Integer intField(String json, String key) {
+        int i = json.indexOf("\"" + key + "\":");
+        if (i < 0) return null;
+        int from = i + key.length() + 3, to = from;
+        if (to < json.length() && json.charAt(to) == '-') to++;
+        while (to < json.length() && Character.isDigit(json.charAt(to))) to++;
+        try { return Integer.parseInt(json.substring(from, to)); } catch (NumberFormatException e) { return null; }
+    }
+
+    /** Whether a stored record's Java deltas come from the current analyzer (older ones may not be exact). */
+    public static boolean isCurrent(String json) {
+        Integer v = intField(json, ANALYZER_VERSION);
+        return v != null && v == JavaSemanticAnalyzer.VERSION;
+    }
+
     // Minimal JSON without extra deps.
     public String toJson() {
         StringBuilder sb = new StringBuilder();
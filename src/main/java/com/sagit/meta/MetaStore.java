@@ -1,26 +1,723 @@
 package com.sagit.meta;
 
+import com.sagit.config.Config;
+import com.sagit.metrics.Metrics;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
+/**
+ * Per-commit metadata in .sagit/meta/.
+ *
+ * seg-NNNNNN.log  append-only data segments: header (magic, format), then frames
+ *                 [u32 len][u32 crc32c][commit id (20)][json (len - 20)][u32 len]
+ *                 The trailing length lets the last record be read by seeking from the end.
+ * index.bin       open-addressing hash table commit id -> (segment, offset); the header keeps
+ *                 a watermark, so records past it (e.g. after a crash) are indexed on open.
+ *                 It is forced before the watermark moves, and a resize zeroes the magic
+ *                 first, so a crash leaves either a sound index or one that is rebuilt.
+ * LOCK            writers hold an exclusive lock on it, so worktrees and concurrent hooks
+ *                 never interleave frames; readers share it. A reader that finds records past
+ *                 the watermark takes the exclusive lock to index them first.
+ * spool/          frames of appends waiting for LOCK, one file per append (renamed into place
+ *                 complete), named so that listing order is arrival order.
+ *
+ * Appends are group-committed across threads and processes: an append that finds LOCK taken
+ * spools its frames and waits; whoever holds LOCK writes every spooled file plus its own
+ * frames in one write and one fsync, then deletes the files it wrote. A waiter whose file is
+ * gone by the time it gets LOCK is already durable and returns. A crash between the fsync and
+ * the deletes writes those frames again on the next append; the index keeps the later copy.
+ * On open, a torn or corrupt tail (a crash mid-write) is truncated back to the last frame
+ * whose checksum holds.
+ *
+ * A legacy .sagit/meta.jsonl is imported on first open and kept as meta.jsonl.imported.
+ */
 public class MetaStore {
-    private final Path file;
-
-    public MetaStore(Path file) {
-        this.file = file;
-    }
-
-    public void append(MetaRecord rec) throws Exception {
-        Files.createDirectories(file.getParent());
-        String line = rec.toJson() + System.lineSeparator();
-        Files.write(
-                file,
-                line.getBytes(StandardCharsets.UTF_8),
-                StandardOpenOption.CREATE,
-                StandardOpenOption.APPEND,
-                StandardOpenOption.WRITE
-        );
+
+    private static final int SEG_MAGIC = 0x53474d31;   // "SGM1"
+    private static final int IDX_MAGIC = 0x53474931;   // "SGI1"
+    private static final int FORMAT = 2;
+    private static final int SEG_HEADER = 8;
+    private static final int FRAME_OVERHEAD = 12;      // len, crc, trailing len
+    private static final int IDX_HEADER = 32;          // magic, format, slots, used, watermark seg, watermark off
+    private static final int SLOT = 32;                // id[20], seg u32, off u64 (seg 0 = empty)
+    static final long SEGMENT_BYTES = 64L << 20;
+
+    private static final Pattern COMMIT_ID = Pattern.compile("\"commitId\"\\s*:\\s*\"([0-9a-fA-F]{40})\"");
+
+    // one per store directory in this process: FileLock excludes other processes only
+    private static final ConcurrentHashMap<Path, DirLock> LOCKS = new ConcurrentHashMap<>();
+    private static final AtomicInteger SPOOLED = new AtomicInteger();
+
+    // frames to append and the commit ids they hold, in order
+    private record Pending(ByteBuffer frames, List<ObjectId> ids) {}
+
+    // FileLock is held per JVM, so the readers of one directory share a single shared lock:
+    // the first one in takes it, the last one out releases it. Writers hold rw's write lock,
+    // so no reader (and no shared FileLock of ours) is active while they lock exclusively.
+    private static final class DirLock {
+        final ReentrantReadWriteLock rw = new ReentrantReadWriteLock();
+        private int readers;
+        private FileChannel ch;
+        private FileLock shared;
+
+        synchronized void enterShared(Path lockFile) throws IOException {
+            if (readers == 0) {
+                FileChannel c = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try {
+                    shared = c.lock(0, Long.MAX_VALUE, true);
+                } catch (IOException | RuntimeException e) {
+                    c.close();
+                    throw e;
+                }
+                ch = c;
+            }
+            readers++;
+        }
+
+        synchronized void exitShared() throws IOException {
+            if (--readers > 0) return;
+            try {
+                shared.release();
+            } finally {
+                ch.close();
+                ch = null;
+                shared = null;
+            }
+        }
+    }
+
+    private final Path dir;
+    private final boolean fsync;
+    private final DirLock lock;
+
+    public MetaStore(Path dir) {
+        this(dir, true);
+    }
+
+    public MetaStore(Path dir, boolean fsync) {
+        this.dir = dir;
+        this.fsync = fsync;
+        this.lock = LOCKS.computeIfAbsent(dir.toAbsolutePath().normalize(), k -> new DirLock());
+    }
+
+    /** Store for the repository at {@code root}, importing a legacy meta.jsonl once. */
+    public static MetaStore forRepo(Path root) throws IOException {
+        MetaStore s = new MetaStore(root.resolve(".sagit/meta"), Config.load(root).metaFsync);
+        Path legacy = root.resolve(".sagit/meta.jsonl");
+        if (Files.exists(legacy)) s.importLegacy(legacy);
+        return s;
+    }
+
+    // check, import and rename under LOCK: a concurrent open finds the file gone, and an import
+    // interrupted before the rename skips the ids it already wrote when it runs again
+    private void importLegacy(Path legacy) throws IOException {
+        locked(idx -> {
+            if (Files.notExists(legacy)) return null;
+            List<ObjectId> ids = new ArrayList<>();
+            List<ByteBuffer> frames = new ArrayList<>();
+            readJsonl(legacy, ids, frames);
+            List<ObjectId> newIds = new ArrayList<>();
+            List<ByteBuffer> newFrames = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (find(idx, ids.get(i)) != null) continue;
+                newIds.add(ids.get(i));
+                newFrames.add(frames.get(i));
+            }
+            if (!newIds.isEmpty()) appendFrames(idx, List.of(new Pending(concat(newFrames), newIds)));
+            Files.move(legacy, legacy.resolveSibling("meta.jsonl.imported"), StandardCopyOption.REPLACE_EXISTING);
+            return null;
+        });
+    }
+
+    public Path dir() { return dir; }
+
+    // ---------- writes ----------
+
+    public void append(MetaRecord rec) throws IOException {
+        long t = Metrics.start();
+        ObjectId id = ObjectId.fromString(rec.commitId);
+        commit(new Pending(frame(id, rec.toJson()), List.of(id)));
+        Metrics.stop(Metrics.Phase.META_APPEND, t);
+    }
+
+    /** Several records in one batch: one write and one fsync. */
+    public void appendAll(List<MetaRecord> recs) throws IOException {
+        if (recs.isEmpty()) return;
+        long t = Metrics.start();
+        List<ObjectId> ids = new ArrayList<>(recs.size());
+        List<ByteBuffer> frames = new ArrayList<>(recs.size());
+        for (MetaRecord rec : recs) {
+            ObjectId id = ObjectId.fromString(rec.commitId);
+            ids.add(id);
+            frames.add(frame(id, rec.toJson()));
+        }
+        commit(new Pending(concat(frames), ids));
+        Metrics.stop(Metrics.Phase.META_APPEND, t);
+    }
+
+    /** Import records from jsonl (one record per line, as written by older versions / export); returns the count. */
+    public int importJsonl(Path jsonl) throws IOException {
+        List<ObjectId> ids = new ArrayList<>();
+        List<ByteBuffer> frames = new ArrayList<>();
+        readJsonl(jsonl, ids, frames);
+        if (ids.isEmpty()) return 0;
+        commit(new Pending(concat(frames), ids));
+        return ids.size();
+    }
+
+    private static void readJsonl(Path jsonl, List<ObjectId> ids, List<ByteBuffer> frames) throws IOException {
+        try (Stream<String> lines = Files.lines(jsonl, StandardCharsets.UTF_8)) {
+            for (String raw : (Iterable<String>) lines::iterator) {
+                String line = raw.trim();
+                if (line.isEmpty()) continue;
+                Matcher m = COMMIT_ID.matcher(line);
+                if (!m.find()) continue; // not a record we can key
+                ObjectId id = ObjectId.fromString(m.group(1));
+                ids.add(id);
+                frames.add(frame(id, line));
+            }
+        }
+    }
+
+    private static ByteBuffer concat(List<ByteBuffer> frames) {
+        int bytes = 0;
+        for (ByteBuffer f : frames) bytes += f.remaining();
+        ByteBuffer all = ByteBuffer.allocate(bytes);
+        for (ByteBuffer f : frames) all.put(f);
+        return all.flip();
+    }
+
+    private static ByteBuffer frame(ObjectId commit, String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        int len = 20 + body.length;
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_OVERHEAD + len);
+        frame.putInt(len).putInt(0);
+        commit.copyRawTo(frame);
+        frame.put(body);
+        frame.putInt(len);
+        CRC32C crc = new CRC32C();
+        crc.update(frame.array(), 8, len);
+        return frame.putInt(4, (int) crc.getValue()).flip();
+    }
+
+    // group commit: write at once when LOCK is free; otherwise spool, wait, and either find the
+    // spool file gone (the holder wrote it) or write everything spooled so far ourselves
+    private void commit(Pending p) throws IOException {
+        Files.createDirectories(dir);
+        Path spooled = null;
+        boolean own = lock.rw.writeLock().tryLock();
+        try (FileChannel lockCh = FileChannel.open(dir.resolve("LOCK"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock fl = own ? lockCh.tryLock() : null;
+            if (fl == null) {
+                spooled = spool(p);
+                if (!own) lock.rw.writeLock().lock();
+                own = true;
+                fl = lockCh.lock();
+            }
+            try (FileLock ignored = fl) {
+                if (spooled != null && Files.notExists(spooled)) return;
+                appendSpooled(spooled == null ? p : null);
+            }
+        } finally {
+            if (own) lock.rw.writeLock().unlock();
+        }
+    }
+
+    // caller holds LOCK: every spooled batch, then {@code own} (if any), in one write
+    private void appendSpooled(Pending own) throws IOException {
+        try (FileChannel idx = openIndex()) {
+            List<Path> files = spooled();
+            List<Pending> batch = new ArrayList<>(files.size() + 1);
+            for (Path f : files) {
+                try {
+                    batch.add(readSpooled(f));
+                } catch (IOException e) {
+                    // set aside rather than fail every later append on it
+                    Files.move(f, f.resolveSibling(f.getFileName() + ".bad"), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (own != null) batch.add(own);
+            if (!batch.isEmpty()) appendFrames(idx, batch);
+            for (Path f : files) Files.deleteIfExists(f);
+        }
+    }
+
+    private Path spoolDir() { return dir.resolve("spool"); }
+
+    private Path spool(Pending p) throws IOException {
+        Path d = Files.createDirectories(spoolDir());
+        String name = String.format("%013d-%d-%d", System.currentTimeMillis(), ProcessHandle.current().pid(),
+                SPOOLED.incrementAndGet());
+        Path tmp = d.resolve(name + ".tmp"), f = d.resolve(name + ".frm");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            writeFully(ch, p.frames().duplicate(), 0);
+        }
+        return Files.move(tmp, f, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Path> spooled() throws IOException {
+        List<Path> out = new ArrayList<>();
+        if (Files.notExists(spoolDir())) return out;
+        try (Stream<Path> s = Files.list(spoolDir())) {
+            s.filter(f -> f.getFileName().toString().endsWith(".frm")).sorted().forEach(out::add);
+        }
+        return out;
+    }
+
+    // a spool file holds whole frames (it is renamed into place only once written)
+    private static Pending readSpooled(Path f) throws IOException {
+        ByteBuffer frames = ByteBuffer.wrap(Files.readAllBytes(f));
+        List<ObjectId> ids = new ArrayList<>();
+        for (int pos = 0; pos < frames.limit(); ) {
+            int len = frames.getInt(pos);
+            if (len < 20 || pos + FRAME_OVERHEAD + len > frames.limit()) throw new IOException("bad spool file " + f.getFileName());
+            ids.add(ObjectId.fromRaw(frames.array(), pos + 8));
+            pos += FRAME_OVERHEAD + len;
+        }
+        return new Pending(frames, ids);
+    }
+
+    // caller holds LOCK
+    private void appendFrames(FileChannel idx, List<Pending> batch) throws IOException {
+        int total = 0;
+        for (Pending b : batch) total += b.frames().remaining();
+        int seg = currentSegment(total);
+        try (FileChannel ch = FileChannel.open(segmentPath(seg),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long start = ch.size();
+            if (start == 0) {
+                writeFully(ch, segHeader(), 0);
+                start = SEG_HEADER;
+            }
+            // one write for the whole batch
+            ByteBuffer all = ByteBuffer.allocate(total);
+            for (Pending b : batch) all.put(b.frames().duplicate());
+            writeFully(ch, all.flip(), start);
+            if (fsync) ch.force(false);
+
+            long off = start;
+            for (Pending b : batch) {
+                ByteBuffer f = b.frames();
+                for (int i = 0, pos = f.position(); i < b.ids().size(); i++) {
+                    int len = f.getInt(pos);
+                    put(idx, b.ids().get(i), seg, off);
+                    off += FRAME_OVERHEAD + len;
+                    pos += FRAME_OVERHEAD + len;
+                }
+            }
+            // the slots must be on disk before a watermark that says they are
+            if (fsync) idx.force(false);
+            setWatermark(idx, seg, off);
+        }
+    }
+
+    // ---------- reads ----------
+
+    private interface Op<T> { T run(FileChannel idx) throws IOException; }
+
+    // run under the exclusive process and file locks, after recovery/catch-up of the index
+    private <T> T locked(Op<T> op) throws IOException {
+        lock.rw.writeLock().lock();
+        try {
+            Files.createDirectories(dir);
+            try (FileChannel lockCh = FileChannel.open(dir.resolve("LOCK"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockCh.lock();
+                 FileChannel idx = openIndex()) {
+                return op.run(idx);
+            }
+        } finally {
+            lock.rw.writeLock().unlock();
+        }
+    }
+
+    // run under the shared locks when the index already covers every record; otherwise (first
+    // open, a crash left records past the watermark) fall back to locked() to catch it up
+    private <T> T reading(Op<T> op) throws IOException {
+        lock.rw.readLock().lock();
+        try {
+            lock.enterShared(dir.resolve("LOCK"));
+            try (FileChannel idx = currentIndex()) {
+                if (idx != null) return op.run(idx);
+            } finally {
+                lock.exitShared();
+            }
+        } finally {
+            lock.rw.readLock().unlock();
+        }
+        return locked(op);
+    }
+
+    /** Latest record's JSON, or null when empty. Reads only the tail of the newest segment. */
+    public String last() throws IOException {
+        if (Files.notExists(dir)) return null;
+        return reading(idx -> {
+            List<Integer> segs = segments();
+            for (int i = segs.size() - 1; i >= 0; i--) {
+                try (FileChannel ch = FileChannel.open(segmentPath(segs.get(i)), StandardOpenOption.READ)) {
+                    long size = ch.size();
+                    if (size < SEG_HEADER + FRAME_OVERHEAD + 20) continue;
+                    int len = readInt(ch, size - 4);
+                    long start = size - FRAME_OVERHEAD - (long) len;
+                    if (len < 20 || start < SEG_HEADER) {
+                        throw new IOException("corrupt tail in " + segmentPath(segs.get(i)).getFileName());
+                    }
+                    return readJson(ch, start);
+                }
+            }
+            return null;
+        });
+    }
+
+    /** Record for a commit (latest if recorded more than once), or null. One index probe plus one read. */
+    public String get(ObjectId commit) throws IOException {
+        if (Files.notExists(dir)) return null;
+        return reading(idx -> {
+            long[] loc = find(idx, commit);
+            if (loc == null) return null;
+            try (FileChannel ch = FileChannel.open(segmentPath((int) loc[0]), StandardOpenOption.READ)) {
+                return readJson(ch, loc[1]);
+            }
+        });
+    }
+
+    /** Records for many commits under one lock (absent ones are left out). */
+    public Map<ObjectId, String> getAll(Collection<? extends ObjectId> commits) throws IOException {
+        Map<ObjectId, String> out = new HashMap<>();
+        if (commits.isEmpty() || Files.notExists(dir)) return out;
+        return reading(idx -> {
+            Map<Integer, FileChannel> open = new HashMap<>();
+            try {
+                for (ObjectId c : commits) {
+                    long[] loc = find(idx, c);
+                    if (loc == null) continue;
+                    FileChannel ch = open.get((int) loc[0]);
+                    if (ch == null) {
+                        ch = FileChannel.open(segmentPath((int) loc[0]), StandardOpenOption.READ);
+                        open.put((int) loc[0], ch);
+                    }
+                    out.put(c.copy(), readJson(ch, loc[1]));
+                }
+            } finally {
+                for (FileChannel ch : open.values()) ch.close();
+            }
+            return out;
+        });
+    }
+
+    /** Ids of all recorded commits, from one read of the index table. */
+    public Set<ObjectId> commitIds() throws IOException {
+        Set<ObjectId> out = new HashSet<>();
+        if (Files.notExists(dir)) return out;
+        return reading(idx -> {
+            int slots = readInt(idx, 8);
+            ByteBuffer table = ByteBuffer.allocate(slots * SLOT);
+            readFully(idx, table, IDX_HEADER);
+            for (int i = 0; i < slots; i++) {
+                if (table.getInt(i * SLOT + 20) != 0) out.add(ObjectId.fromRaw(table.array(), i * SLOT));
+            }
+            return out;
+        });
+    }
+
+    /** Every record's JSON in append order (this is also the jsonl export format). */
+    public void forEach(Consumer<String> sink) throws IOException {
+        if (Files.notExists(dir)) return;
+        reading(idx -> {
+            for (int seg : segments()) {
+                long end = scan(seg, SEG_HEADER, (id, off, json) -> sink.accept(json));
+                if (end < Files.size(segmentPath(seg))) {
+                    throw new IOException("corrupt frame at " + end + " in " + segmentPath(seg).getFileName());
+                }
+            }
+            return null;
+        });
+    }
+
+    // ---------- segments ----------
+
+    private interface FrameSink { void accept(ObjectId id, long off, String json) throws IOException; }
+
+    // returns the offset just past the last intact frame (scanning stops at the first torn or corrupt one)
+    private long scan(int seg, long from, FrameSink sink) throws IOException {
+        Path p = segmentPath(seg);
+        long pos = from;
+        try (InputStream raw = Files.newInputStream(p);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16))) {
+            if (in.readInt() != SEG_MAGIC || in.readInt() != FORMAT) throw new IOException("bad segment " + p.getFileName());
+            in.skipNBytes(pos - SEG_HEADER);
+            byte[] id = new byte[20];
+            CRC32C crc = new CRC32C();
+            while (true) {
+                try {
+                    int len = in.readInt();
+                    int sum = in.readInt();
+                    if (len < 20 || len > SEGMENT_BYTES) break;
+                    in.readFully(id);
+                    byte[] body = new byte[len - 20];
+                    in.readFully(body);
+                    if (in.readInt() != len) break;
+                    crc.reset();
+                    crc.update(id);
+                    crc.update(body);
+                    if ((int) crc.getValue() != sum) break;
+                    sink.accept(ObjectId.fromRaw(id), pos, new String(body, StandardCharsets.UTF_8));
+                    pos += FRAME_OVERHEAD + len;
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+        return pos;
+    }
+
+    private List<Integer> segments() throws IOException {
+        List<Integer> out = new ArrayList<>();
+        if (Files.notExists(dir)) return out;
+        try (Stream<Path> s = Files.list(dir)) {
+            s.map(p -> p.getFileName().toString())
+             .filter(n -> n.startsWith("seg-") && n.endsWith(".log"))
+             .forEach(n -> out.add(Integer.parseInt(n.substring(4, n.length() - 4))));
+        }
+        out.sort(null);
+        return out;
+    }
+
+    private int currentSegment(int frameBytes) throws IOException {
+        List<Integer> segs = segments();
+        if (segs.isEmpty()) return 1;
+        int last = segs.get(segs.size() - 1);
+        long size = Files.size(segmentPath(last));
+        return (size > SEG_HEADER && size + frameBytes > SEGMENT_BYTES) ? last + 1 : last;
+    }
+
+    private Path segmentPath(int seg) {
+        return dir.resolve(String.format("seg-%06d.log", seg));
+    }
+
+    private static ByteBuffer segHeader() {
+        return ByteBuffer.allocate(SEG_HEADER).putInt(SEG_MAGIC).putInt(FORMAT).flip();
+    }
+
+    private static String readJson(FileChannel ch, long frame) throws IOException {
+        int len = readInt(ch, frame);
+        ByteBuffer b = ByteBuffer.allocate(len - 20);
+        readFully(ch, b, frame + 8 + 20);
+        return new String(b.array(), StandardCharsets.UTF_8);
+    }
+
+    // ---------- index ----------
+
+    private Path indexPath() { return dir.resolve("index.bin"); }
+
+    // the index, read-only, when nothing lies past its watermark (caller holds LOCK shared); else null
+    private FileChannel currentIndex() throws IOException {
+        if (Files.notExists(indexPath())) return null;
+        FileChannel idx = FileChannel.open(indexPath(), StandardOpenOption.READ);
+        try {
+            if (idx.size() >= IDX_HEADER && readInt(idx, 0) == IDX_MAGIC && readInt(idx, 4) == FORMAT) {
+                int wmSeg = readInt(idx, 16);
+                long wmOff = readLong(idx, 20);
+                // segments are created in sequence, so nothing past wmSeg + 1 exists without it
+                Path wm = segmentPath(wmSeg);
+                if (Files.notExists(segmentPath(wmSeg + 1))
+                        && (wmSeg == 0 || (Files.exists(wm) && Files.size(wm) == wmOff))) {
+                    return idx;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            idx.close();
+            throw e;
+        }
+        idx.close();
+        return null;
+    }
+
+    // open the index (caller holds LOCK): create or rebuild it, truncate a torn segment tail,
+    // and index records appended past the watermark
+    private FileChannel openIndex() throws IOException {
+        FileChannel idx = FileChannel.open(indexPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            List<Integer> segs = segments();
+            if (idx.size() < IDX_HEADER || readInt(idx, 0) != IDX_MAGIC || readInt(idx, 4) != FORMAT) {
+                initIndex(idx, 1024);
+            }
+            int wmSeg = readInt(idx, 16);
+            long wmOff = readLong(idx, 20);
+            if (wmSeg > 0 && (!segs.contains(wmSeg) || Files.size(segmentPath(wmSeg)) < wmOff)) {
+                // log lost data the index had seen (unsynced writes): start over from the log
+                initIndex(idx, 1024);
+                wmSeg = 0;
+                wmOff = 0;
+            }
+            for (int seg : segs) {
+                if (seg < wmSeg) continue;
+                long from = seg == wmSeg ? Math.max(wmOff, SEG_HEADER) : SEG_HEADER;
+                Path p = segmentPath(seg);
+                if (Files.size(p) < SEG_HEADER) {
+                    Files.delete(p); // crashed while creating it
+                    continue;
+                }
+                final int s = seg;
+                long end = scan(seg, from, (id, off, json) -> put(idx, id, s, off));
+                if (end < Files.size(p)) {
+                    try (FileChannel ch = FileChannel.open(p, StandardOpenOption.WRITE)) {
+                        ch.truncate(end);
+                        ch.force(false);
+                    }
+                }
+                if (end > from) idx.force(false);
+                setWatermark(idx, seg, end);
+            }
+            return idx;
+        } catch (IOException | RuntimeException e) {
+            idx.close();
+            throw e;
+        }
+    }
+
+    private static void initIndex(FileChannel idx, int slots) throws IOException {
+        idx.truncate(0);
+        ByteBuffer h = ByteBuffer.allocate(IDX_HEADER);
+        h.putInt(IDX_MAGIC).putInt(FORMAT).putInt(slots).putInt(0).putInt(0).putLong(0).flip();
+        writeFully(idx, h, 0);
+        // sparse: unwritten slots read back as zero (= empty)
+        writeFully(idx, ByteBuffer.allocate(1), IDX_HEADER + (long) slots * SLOT - 1);
+    }
+
+    private static void put(FileChannel idx, ObjectId id, int seg, long off) throws IOException {
+        int slots = readInt(idx, 8);
+        int used = readInt(idx, 12);
+        if ((used + 1) * 2L > slots) {
+            grow(idx, slots * 2);
+            slots = readInt(idx, 8);
+        }
+        ByteBuffer slot = ByteBuffer.allocate(SLOT);
+        byte[] key = new byte[20];
+        id.copyRawTo(key, 0);
+        for (int i = id.hashCode() & (slots - 1); ; i = (i + 1) & (slots - 1)) {
+            long pos = IDX_HEADER + (long) i * SLOT;
+            slot.clear();
+            readFully(idx, slot, pos);
+            int s = slot.getInt(20);
+            if (s == 0 || sameKey(slot, key)) {
+                slot.clear();
+                slot.put(key).putInt(seg).putLong(off).flip();
+                writeFully(idx, slot, pos);
+                if (s == 0) writeFully(idx, ByteBuffer.allocate(4).putInt(used + 1).flip(), 12);
+                return;
+            }
+        }
+    }
+
+    private static long[] find(FileChannel idx, ObjectId id) throws IOException {
+        int slots = readInt(idx, 8);
+        ByteBuffer slot = ByteBuffer.allocate(SLOT);
+        byte[] key = new byte[20];
+        id.copyRawTo(key, 0);
+        for (int i = id.hashCode() & (slots - 1), n = 0; n < slots; i = (i + 1) & (slots - 1), n++) {
+            slot.clear();
+            readFully(idx, slot, IDX_HEADER + (long) i * SLOT);
+            int s = slot.getInt(20);
+            if (s == 0) return null;
+            if (sameKey(slot, key)) return new long[]{s, slot.getLong(24)};
+        }
+        return null;
+    }
+
+    // rehash into a table of twice the size (in memory: the table is small next to the data log).
+    // The table is rewritten in place, so the magic is zeroed and forced first: an index torn
+    // by a crash mid-rewrite fails the header check on the next open and is rebuilt.
+    private static void grow(FileChannel idx, int newSlots) throws IOException {
+        int slots = readInt(idx, 8);
+        ByteBuffer old = ByteBuffer.allocate(slots * SLOT);
+        readFully(idx, old, IDX_HEADER);
+        int wmSeg = readInt(idx, 16);
+        long wmOff = readLong(idx, 20);
+
+        ByteBuffer table = ByteBuffer.allocate(newSlots * SLOT);
+        int used = 0;
+        for (int i = 0; i < slots; i++) {
+            int base = i * SLOT;
+            if (old.getInt(base + 20) == 0) continue;
+            int h = old.getInt(base + 4); // == ObjectId.hashCode() (the id's second word)
+            for (int j = h & (newSlots - 1); ; j = (j + 1) & (newSlots - 1)) {
+                if (table.getInt(j * SLOT + 20) == 0) {
+                    table.put(j * SLOT, old, base, SLOT);
+                    break;
+                }
+            }
+            used++;
+        }
+        ByteBuffer h = ByteBuffer.allocate(IDX_HEADER);
+        h.putInt(IDX_MAGIC).putInt(FORMAT).putInt(newSlots).putInt(used).putInt(wmSeg).putLong(wmOff).flip();
+        writeFully(idx, ByteBuffer.allocate(4), 0);
+        idx.force(false);
+        writeFully(idx, table.clear(), IDX_HEADER);
+        idx.force(false);
+        writeFully(idx, h, 0);
+    }
+
+    private static boolean sameKey(ByteBuffer slot, byte[] key) {
+        for (int i = 0; i < 20; i++) if (slot.get(i) != key[i]) return false;
+        return true;
+    }
+
+    private static void setWatermark(FileChannel idx, int seg, long off) throws IOException {
+        writeFully(idx, ByteBuffer.allocate(12).putInt(seg).putLong(off).flip(), 16);
+    }
+
+    // ---------- channel helpers ----------
+
+    private static int readInt(FileChannel ch, long pos) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4);
+        readFully(ch, b, pos);
+        return b.getInt(0);
+    }
+
+    private static long readLong(FileChannel ch, long pos) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(8);
+        readFully(ch, b, pos);
+        return b.getLong(0);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            int n = ch.read(b, pos + b.position());
+            if (n < 0) throw new EOFException();
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) ch.write(b, pos + b.position());
     }
 }
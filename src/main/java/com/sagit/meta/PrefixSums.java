@@ -0,0 +1,87 @@
+package com.sagit.meta;
+
+import com.sagit.semantic.JavaSemanticAnalyzer;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checkpointed cumulative Java totals per commit (.sagit/meta/prefix.bin): for commit C,
+ * the sum of recorded deltas along first-parent history from the root to C, i.e. the
+ * type/method counts of C's tree. Append-only [id][types i64][methods i64] entries after a
+ * (magic, analyzer version) header; another version or a torn entry is ignored on load.
+ */
+final class PrefixSums {
+
+    private static final int MAGIC = 0x53475031; // "SGP1"
+    private static final int HEADER = 8;
+    private static final int ENTRY = 36;
+
+    private final Path file;
+    private final Map<ObjectId, long[]> sums = new HashMap<>();
+    private final List<ObjectId> added = new ArrayList<>();
+    private boolean valid;
+
+    private PrefixSums(Path file) {
+        this.file = file;
+    }
+
+    static PrefixSums load(Path dir) {
+        PrefixSums p = new PrefixSums(dir.resolve("prefix.bin"));
+        try {
+            if (!Files.exists(p.file)) return p;
+            ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(p.file));
+            if (b.remaining() < HEADER || b.getInt() != MAGIC || b.getInt() != JavaSemanticAnalyzer.VERSION) return p;
+            p.valid = true;
+            byte[] id = new byte[20];
+            while (b.remaining() >= ENTRY) {
+                b.get(id);
+                p.sums.put(ObjectId.fromRaw(id), new long[]{b.getLong(), b.getLong()});
+            }
+        } catch (IOException e) {
+            p.sums.clear(); // unreadable: rebuilt as ranges are queried
+        }
+        return p;
+    }
+
+    /** {types, methods} at a commit, or null if not checkpointed. */
+    long[] get(ObjectId commit) {
+        return sums.get(commit);
+    }
+
+    void put(ObjectId commit, long types, long methods) {
+        if (sums.put(commit.copy(), new long[]{types, methods}) == null) added.add(commit.copy());
+    }
+
+    void flush() throws IOException {
+        if (added.isEmpty()) return;
+        Files.createDirectories(file.getParent());
+        ByteBuffer b = ByteBuffer.allocate((valid ? 0 : HEADER) + added.size() * ENTRY);
+        if (!valid) b.putInt(MAGIC).putInt(JavaSemanticAnalyzer.VERSION);
+        for (ObjectId id : added) {
+            long[] v = sums.get(id);
+            id.copyRawTo(b);
+            b.putLong(v[0]).putLong(v[1]);
+        }
+        b.flip();
+        try (FileChannel ch = valid
+                ? FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            // a torn tail left by an earlier crash would misalign what we append
+            if (valid && (ch.size() - HEADER) % ENTRY != 0) ch.truncate(HEADER + (ch.size() - HEADER) / ENTRY * ENTRY);
+            while (b.hasRemaining()) ch.write(b);
+        }
+        valid = true;
+        added.clear();
+    }
+}
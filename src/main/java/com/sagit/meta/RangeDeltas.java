@@ -0,0 +1,157 @@
+package com.sagit.meta;
+
+import com.sagit.config.Config;
+import com.sagit.git.GitService;
+import com.sagit.semantic.BlobAnalyzer;
+import com.sagit.semantic.JavaSemanticAnalyzer.Stats;
+import com.sagit.semantic.StagedAnalysis;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Java type/method deltas over a range, summed from recorded per-commit deltas instead of
+ * parsing the changed files.
+ *
+ * A record holds stats(tree) - stats(first parent's tree), so along first-parent history the
+ * deltas telescope: their sum from the root to C is the count for C's tree. Those running
+ * totals are checkpointed per commit in {@link PrefixSums}, which makes any from..to two
+ * lookups once both ends are known, and only the commits since the last checkpoint are read
+ * otherwise. When history below is incomplete but `from` is a first-parent ancestor of `to`,
+ * the deltas in between are summed directly. Commits without a current record are diffed
+ * live, up to {@link #MAX_LIVE}; past that the caller diffs the range itself.
+ */
+public final class RangeDeltas {
+
+    /** Net deltas and how many commits came from records vs. live diffs. */
+    public record Totals(long types, long methods, int recorded, int live) {}
+
+    static final int MAX_LIVE = 64;
+    static final int MAX_PAST_FROM = 20_000; // walk this far below `from` looking for a checkpoint or the root
+
+    private record Link(ObjectId commit, ObjectId parentTree, ObjectId tree) {}
+
+    private static final class Walk {
+        final List<Link> chain = new ArrayList<>(); // newest first
+        long[] base;                                // running total below the chain; null = incomplete
+        int fromAt = -1;                            // links newer than `from`, if it was reached
+    }
+
+    private RangeDeltas() {}
+
+    /** Deltas of {@code to}'s tree minus {@code from}'s (null = empty tree), or null when too little is recorded. */
+    public static Totals between(GitService gs, Config cfg, ObjectId from, ObjectId to) throws IOException {
+        MetaStore store = MetaStore.forRepo(gs.workTree());
+        if (Files.notExists(store.dir())) return null;
+        PrefixSums prefix = PrefixSums.load(store.dir());
+        int[] counts = new int[2]; // recorded, live
+
+        try (RevWalk rw = new RevWalk(gs.repo())) {
+            Walk w = walk(rw, to, from, prefix);
+            Map<ObjectId, String> recs = store.getAll(ids(w.chain));
+
+            if (w.base != null) {
+                long[][] d = deltas(gs, cfg, w.chain, recs, counts);
+                if (d != null) {
+                    cumulate(prefix, w, d);
+                    long[] cumFrom = from == null ? new long[2] : prefix.get(from);
+                    if (cumFrom == null) {
+                        // `from` is off the first-parent line of `to`: bring its own line up to date
+                        Walk wf = walk(rw, from, null, prefix);
+                        long[][] df = wf.base == null ? null
+                                : deltas(gs, cfg, wf.chain, store.getAll(ids(wf.chain)), counts);
+                        if (df != null) {
+                            cumulate(prefix, wf, df);
+                            cumFrom = prefix.get(from);
+                        }
+                    }
+                    prefix.flush();
+                    if (cumFrom != null) {
+                        long[] cumTo = prefix.get(to);
+                        return new Totals(cumTo[0] - cumFrom[0], cumTo[1] - cumFrom[1], counts[0], counts[1]);
+                    }
+                }
+            }
+
+            if (w.fromAt >= 0) {
+                counts[0] = counts[1] = 0;
+                long[][] d = deltas(gs, cfg, w.chain.subList(0, w.fromAt), recs, counts);
+                if (d != null) {
+                    long types = 0, methods = 0;
+                    for (long[] x : d) { types += x[0]; methods += x[1]; }
+                    return new Totals(types, methods, counts[0], counts[1]);
+                }
+            }
+            return null;
+        }
+    }
+
+    // first parents from `start` down to a checkpointed commit or the root (or MAX_PAST_FROM past `from`)
+    private static Walk walk(RevWalk rw, ObjectId start, ObjectId from, PrefixSums prefix) throws IOException {
+        Walk w = new Walk();
+        RevCommit c = rw.parseCommit(start);
+        while (true) {
+            if (from != null && w.fromAt < 0 && c.equals(from)) w.fromAt = w.chain.size();
+            long[] p = prefix.get(c);
+            if (p != null) { w.base = p; return w; }
+            if (w.fromAt >= 0 && w.chain.size() - w.fromAt >= MAX_PAST_FROM) return w;
+
+            RevCommit parent = c.getParentCount() > 0 ? c.getParent(0) : null;
+            if (parent != null) rw.parseHeaders(parent);
+            w.chain.add(new Link(c.copy(), parent == null ? ObjectId.zeroId() : parent.getTree().copy(), c.getTree().copy()));
+            if (parent == null) { w.base = new long[2]; return w; }
+            c = parent;
+        }
+    }
+
+    private static List<ObjectId> ids(List<Link> chain) {
+        List<ObjectId> ids = new ArrayList<>(chain.size());
+        for (Link l : chain) ids.add(l.commit());
+        return ids;
+    }
+
+    // {types, methods} per link, from records where current and live diffs otherwise
+    private static long[][] deltas(GitService gs, Config cfg, List<Link> chain, Map<ObjectId, String> recs,
+                                   int[] counts) throws IOException {
+        long[][] out = new long[chain.size()][];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < chain.size(); i++) {
+            String json = recs.get(chain.get(i).commit());
+            Integer t = json == null ? null : MetaRecord.intField(json, "java_types_delta");
+            Integer m = json == null ? null : MetaRecord.intField(json, "java_methods_delta");
+            if (t != null && m != null && MetaRecord.isCurrent(json)) {
+                out[i] = new long[]{t, m};
+            } else {
+                missing.add(i);
+            }
+        }
+        if (missing.size() > MAX_LIVE) return null;
+        if (!missing.isEmpty()) {
+            try (BlobAnalyzer analyzer = BlobAnalyzer.open(gs, cfg)) {
+                for (int i : missing) {
+                    Link l = chain.get(i);
+                    Stats d = StagedAnalysis.compute(gs, analyzer, cfg, l.parentTree(), l.tree(), cfg.jobs).javaDelta;
+                    out[i] = new long[]{d.classes + d.interfaces_ + d.enums_, d.methods};
+                }
+            }
+        }
+        counts[0] += chain.size() - missing.size();
+        counts[1] += missing.size();
+        return out;
+    }
+
+    private static void cumulate(PrefixSums prefix, Walk w, long[][] d) {
+        long types = w.base[0], methods = w.base[1];
+        for (int i = w.chain.size() - 1; i >= 0; i--) {
+            types += d[i][0];
+            methods += d[i][1];
+            prefix.put(w.chain.get(i).commit(), types, methods);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.sagit.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Log-linear latency histogram over nanoseconds: exact below {@link #SUB}, then each power of
+ * two split into {@link #SUB} equal buckets, so any recorded value is known to within 1/16
+ * (6.25%). Fixed size, no allocation per sample; histograms of the same layout merge by adding
+ * counts, which is how runs accumulate in {@link MetricsStore}.
+ *
+ * Recording is synchronized (analysis workers share a phase); there is no contention to speak of
+ * at the rates hooks and commands record.
+ */
+public final class Histogram {
+
+    static final int SUB_BITS = 4;
+    static final int SUB = 1 << SUB_BITS;
+    /** Buckets needed for any positive long. */
+    static final int BUCKETS = (63 - SUB_BITS + 1) * SUB;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count, sum, min = Long.MAX_VALUE, max;
+
+    public synchronized void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[index(nanos)]++;
+        count++;
+        sum += nanos;
+        if (nanos < min) min = nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    /** Add another histogram's samples to this one. */
+    public synchronized void add(Histogram o) {
+        synchronized (o) {
+            for (int i = 0; i < BUCKETS; i++) counts[i] += o.counts[i];
+            count += o.count;
+            sum += o.sum;
+            min = Math.min(min, o.min);
+            max = Math.max(max, o.max);
+        }
+    }
+
+    public synchronized long count() { return count; }
+    public synchronized long sumNanos() { return sum; }
+    public synchronized long maxNanos() { return max; }
+    public synchronized long minNanos() { return count == 0 ? 0 : min; }
+
+    public synchronized double meanNanos() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Value at quantile {@code q} (0..1): the middle of the bucket holding the sample of that rank,
+     * clamped to the recorded min/max (so p0 and p100 are exact).
+     */
+    public synchronized long quantileNanos(double q) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long mid = lowerBound(i) + (width(i) - 1) / 2;
+                return Math.max(min, Math.min(max, mid));
+            }
+        }
+        return max;
+    }
+
+    /** Samples at or below {@code nanos}, counting a bucket only when it lies entirely at or below. */
+    public synchronized long countAtOrBelow(long nanos) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS && lowerBound(i) + width(i) - 1 <= nanos; i++) n += counts[i];
+        return n;
+    }
+
+    // ---------- buckets ----------
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros(v);                   // >= SUB_BITS
+        return (e - SUB_BITS + 1) * SUB + (int) ((v >>> (e - SUB_BITS)) & (SUB - 1));
+    }
+
+    static long lowerBound(int i) {
+        if (i < SUB) return i;
+        int e = i / SUB + SUB_BITS - 1;
+        return ((long) SUB + i % SUB) << (e - SUB_BITS);
+    }
+
+    static long width(int i) {
+        return i < SUB ? 1 : 1L << (i / SUB - 1);
+    }
+
+    // ---------- serialization ----------
+
+    // [long count][long sum][long min][long max][int nonEmpty] then [short bucket][long n] per non-empty bucket
+    synchronized void write(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(sum);
+        out.writeLong(min);
+        out.writeLong(max);
+        int nonEmpty = 0;
+        for (long c : counts) if (c != 0) nonEmpty++;
+        out.writeInt(nonEmpty);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] == 0) continue;
+            out.writeShort(i);
+            out.writeLong(counts[i]);
+        }
+    }
+
+    static Histogram read(DataInput in) throws IOException {
+        Histogram h = new Histogram();
+        h.count = in.readLong();
+        h.sum = in.readLong();
+        h.min = in.readLong();
+        h.max = in.readLong();
+        int n = in.readInt();
+        for (int k = 0; k < n; k++) {
+            int i = in.readShort();
+            if (i < 0 || i >= BUCKETS) throw new IOException("bad histogram bucket " + i);
+            h.counts[i] = in.readLong();
+        }
+        return h;
+    }
+}
@@ -0,0 +1,80 @@
+package com.sagit.metrics;
+
+import com.sagit.config.Config;
+import com.sagit.utils.FS;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Per-phase timings of the running command. A command is bracketed by {@link #begin} /
+ * {@link #end} (SagitCLI does it for every command line, the daemon for every request);
+ * instrumented code in between does
+ *
+ *   long t = Metrics.start();  ...  Metrics.stop(Metrics.Phase.PARSE, t);
+ *
+ * which costs two nanoTime calls and a histogram increment, and nothing but the nanoTime calls
+ * outside a command (benchmarks, library use). {@link #end} folds the command's histograms into
+ * .sagit/metrics of the repository, when sagit is set up there and config 'metrics' is on.
+ *
+ * One command runs at a time per process (the daemon serves requests in turn); its analysis
+ * workers record into the same histograms.
+ */
+public final class Metrics {
+
+    /** Instrumented phases; {@link #COMMAND} is the whole command. Names are what the store and exports use. */
+    public enum Phase {
+        COMMAND("command"),
+        REPO_OPEN("repo_open"),
+        REPO_ROOT("repo_root"),
+        INDEX_TREE("index_tree_write"),
+        DIFF_SCAN("diff_scan"),
+        RENAMES("rename_detection"),
+        BLOB_LOAD("blob_load"),
+        DECODE("decode"),
+        PARSE("parse"),
+        META_APPEND("meta_append");
+
+        public final String key;
+
+        Phase(String key) { this.key = key; }
+    }
+
+    private record Run(String command, long started, Histogram[] phases) {}
+
+    private static volatile Run current;
+
+    private Metrics() {}
+
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /** Record the time since {@code started} (from {@link #start}) for a phase of the current command. */
+    public static void stop(Phase phase, long started) {
+        Run r = current;
+        if (r != null) r.phases()[phase.ordinal()].record(System.nanoTime() - started);
+    }
+
+    /** Start timing a command, e.g. "hook commit-msg". */
+    public static void begin(String command) {
+        Histogram[] phases = new Histogram[Phase.values().length];
+        for (int i = 0; i < phases.length; i++) phases[i] = new Histogram();
+        current = new Run(command, System.nanoTime(), phases);
+    }
+
+    /** Finish the current command and persist its timings; never fails the command. */
+    public static void end() {
+        Run r = current;
+        if (r == null) return;
+        r.phases()[Phase.COMMAND.ordinal()].record(System.nanoTime() - r.started());
+        current = null;
+        try {
+            Path root = FS.repoRoot(); // resolved (and timed) by the command already, or not a repository
+            if (!Files.isDirectory(root.resolve(".sagit")) || !Config.load(root).metrics) return;
+            MetricsStore.merge(root, r.command(), r.phases());
+        } catch (Exception ignored) {
+            // outside a repository, read-only checkout, ...: timings are best effort
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.sagit.metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Phase histograms accumulated over every recorded run, per command
+ * (.sagit/metrics/histograms.bin, replaced atomically under .sagit/metrics/LOCK).
+ *
+ * Format: magic "SGM1", format, command count, then per command (sorted)
+ * [utf command][int phases] and per phase [utf phase][histogram]; phases are stored by name, so
+ * a file written by another version still merges.
+ */
+public final class MetricsStore {
+
+    private static final int MAGIC = 0x53474d31; // "SGM1"
+    private static final int FORMAT = 1;
+
+    private MetricsStore() {}
+
+    public static Path dir(Path root) {
+        return root.resolve(".sagit/metrics");
+    }
+
+    private static Path file(Path root) {
+        return dir(root).resolve("histograms.bin");
+    }
+
+    /** command -> phase -> histogram; empty when nothing was recorded yet. */
+    public static Map<String, Map<String, Histogram>> load(Path root) throws IOException {
+        return read(file(root));
+    }
+
+    /** Add one run's non-empty phase histograms (indexed by {@link Metrics.Phase} ordinal). */
+    static void merge(Path root, String command, Histogram[] phases) throws IOException {
+        Path dir = dir(root);
+        Files.createDirectories(dir);
+        try (FileChannel lockCh = FileChannel.open(dir.resolve("LOCK"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockCh.lock()) {
+            Map<String, Map<String, Histogram>> all = read(file(root));
+            Map<String, Histogram> byPhase = all.computeIfAbsent(command, k -> new TreeMap<>());
+            for (Metrics.Phase p : Metrics.Phase.values()) {
+                Histogram h = phases[p.ordinal()];
+                if (h.count() > 0) byPhase.computeIfAbsent(p.key, k -> new Histogram()).add(h);
+            }
+            write(file(root), all);
+        }
+    }
+
+    /** Drop everything recorded so far; returns whether there was anything. */
+    public static boolean reset(Path root) throws IOException {
+        Path dir = dir(root);
+        if (!Files.isDirectory(dir)) return false;
+        try (FileChannel lockCh = FileChannel.open(dir.resolve("LOCK"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockCh.lock()) {
+            return Files.deleteIfExists(file(root));
+        }
+    }
+
+    private static Map<String, Map<String, Histogram>> read(Path file) throws IOException {
+        Map<String, Map<String, Histogram>> out = new TreeMap<>();
+        if (!Files.exists(file)) return out;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) return out; // other format: start over
+            int commands = in.readInt();
+            for (int c = 0; c < commands; c++) {
+                Map<String, Histogram> byPhase = new TreeMap<>();
+                out.put(in.readUTF(), byPhase);
+                int phases = in.readInt();
+                for (int p = 0; p < phases; p++) byPhase.put(in.readUTF(), Histogram.read(in));
+            }
+        }
+        return out;
+    }
+
+    private static void write(Path file, Map<String, Map<String, Histogram>> all) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(all.size());
+            for (Map.Entry<String, Map<String, Histogram>> c : all.entrySet()) {
+                out.writeUTF(c.getKey());
+                out.writeInt(c.getValue().size());
+                for (Map.Entry<String, Histogram> p : c.getValue().entrySet()) {
+                    out.writeUTF(p.getKey());
+                    p.getValue().write(out);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
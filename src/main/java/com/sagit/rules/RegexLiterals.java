@@ -0,0 +1,155 @@
+package com.sagit.rules;
+
+/**
+ * Literal text a java.util.regex pattern is guaranteed to match, read off its source without
+ * compiling it. Both answers are conservative: when in doubt they return less (or nothing),
+ * never a literal the pattern could match without.
+ */
+final class RegexLiterals {
+
+    private static final String META = "\\[](){}.*+?^$|";
+
+    private RegexLiterals() {}
+
+    /**
+     * For `^literal...` patterns, the literal every match starts with ("" if none); null if the
+     * pattern is not anchored or has an alternation that could escape the anchor.
+     */
+    static String anchoredPrefix(String regex) {
+        if (!regex.startsWith("^") || hasAlternation(regex) || regex.contains("\\Q")) return null;
+        StringBuilder sb = new StringBuilder();
+        int i = 1;
+        while (i < regex.length()) {
+            int c = literalAt(regex, i);
+            if (c < 0) break;
+            int width = regex.charAt(i) == '\\' ? 2 : 1;
+            char q = i + width < regex.length() ? regex.charAt(i + width) : 0;
+            if (q == '?' || q == '*' || q == '{') break; // optional or counted: stop before it
+            sb.append((char) c);
+            if (q == '+') break;                        // one is required, the rest may vary
+            i += width;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The longest run of literal characters at the top level of the pattern — outside groups and
+     * classes — that every match must contain; "" if there is none or it cannot be told safely
+     * (alternation, inline flags, \p{..}-style escapes).
+     */
+    static String requiredLiteral(String regex) {
+        if (hasAlternation(regex) || hasInlineFlags(regex) || hasWideEscapes(regex)) return "";
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char ch = regex.charAt(i);
+            if (ch == '[') {
+                int close = classEnd(regex, i);
+                if (close < 0) return "";
+                i = close + 1;
+                best = longer(best, run);
+                run.setLength(0);
+                continue;
+            }
+            if (ch == '(') { depth++; i++; best = longer(best, run); run.setLength(0); continue; }
+            if (ch == ')') { depth--; i++; continue; }
+            if (depth > 0) { i += ch == '\\' ? 2 : 1; continue; }
+            if (ch == '{') {                       // {n,m}: its digits are not text
+                int close = regex.indexOf('}', i);
+                if (close < 0) return "";
+                i = close + 1;
+                best = longer(best, run);
+                run.setLength(0);
+                continue;
+            }
+
+            int c = literalAt(regex, i);
+            int width = ch == '\\' ? 2 : 1;
+            if (c < 0) {
+                i += width;
+                best = longer(best, run);
+                run.setLength(0);
+                continue;
+            }
+            char q = i + width < regex.length() ? regex.charAt(i + width) : 0;
+            if (q == '?' || q == '*' || q == '{') {
+                best = longer(best, run);          // this char is optional: the run ends before it
+                run.setLength(0);
+            } else {
+                run.append((char) c);
+                if (q == '+') {
+                    best = longer(best, run);
+                    run.setLength(0);
+                }
+            }
+            i += width;
+        }
+        return longer(best, run);
+    }
+
+    // the literal character at i (a plain char or an escaped punctuation char), or -1
+    private static int literalAt(String regex, int i) {
+        char ch = regex.charAt(i);
+        if (ch == '\\') {
+            if (i + 1 >= regex.length()) return -1;
+            char d = regex.charAt(i + 1);
+            return Character.isLetterOrDigit(d) ? -1 : d; // \d, \Q, \1 ... are not literals
+        }
+        return META.indexOf(ch) >= 0 ? -1 : ch;
+    }
+
+    // any unescaped '|' outside a character class
+    private static boolean hasAlternation(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char ch = regex.charAt(i);
+            if (ch == '\\') { i++; continue; }
+            if (ch == '[') {
+                int close = classEnd(regex, i);
+                if (close < 0) return true;
+                i = close;
+                continue;
+            }
+            if (ch == '|') return true;
+        }
+        return false;
+    }
+
+    // (?i), (?x) ... anywhere: literal text may then match other characters
+    private static boolean hasInlineFlags(String regex) {
+        for (int i = regex.indexOf("(?"); i >= 0; i = regex.indexOf("(?", i + 2)) {
+            char c = i + 2 < regex.length() ? regex.charAt(i + 2) : 0;
+            if (c != ':' && c != '=' && c != '!' && c != '<' && c != '>') return true;
+        }
+        return false;
+    }
+
+    // \p{..}, \x41, \u0041, \Q..\E ...: escapes whose trailing characters are not literals
+    private static boolean hasWideEscapes(String regex) {
+        for (int i = 0; i + 1 < regex.length(); i++) {
+            if (regex.charAt(i) != '\\') continue;
+            if ("pPxu0cNkQ".indexOf(regex.charAt(i + 1)) >= 0) return true;
+            i++;
+        }
+        return false;
+    }
+
+    // index of the ']' closing the class opened at i, or -1 (nested classes are not followed)
+    private static int classEnd(String regex, int i) {
+        int j = i + 1;
+        if (j < regex.length() && regex.charAt(j) == '^') j++;
+        if (j < regex.length() && regex.charAt(j) == ']') j++; // leading ']' is literal
+        for (; j < regex.length(); j++) {
+            char ch = regex.charAt(j);
+            if (ch == '\\') { j++; continue; }
+            if (ch == '[') return -1;
+            if (ch == ']') return j;
+        }
+        return -1;
+    }
+
+    private static String longer(String best, StringBuilder run) {
+        return run.length() > best.length() ? run.toString() : best;
+    }
+}
@@ -0,0 +1,303 @@
+package com.sagit.rules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled `pattern => replacement` rules (.sagit/tests.map): the first rule whose pattern is
+ * found in a path wins, as with a linear scan, but most rules are never tried.
+ *
+ * Rules anchored with a literal prefix (`^src/main/java/a/b/`) hang off a character trie
+ * under that prefix, so a path only meets the rules whose prefix it starts with. The rest are
+ * "floating": tried for every path, behind a `contains` check on the longest literal the
+ * pattern requires, when it has one. Candidates are tried in rule order, so the result is the
+ * one the linear scan would give. Patterns are compiled on first use.
+ *
+ * The compiled form is cached (.sagit/cache/rules.bin) keyed by the SHA-256 of the rules
+ * file; a changed file is recompiled, and a pattern that does not compile ends the rule list
+ * there, as before.
+ */
+public final class RuleMatcher {
+
+    private static final int MAGIC = 0x53475231; // "SGR1"
+    private static final int FORMAT = 1;
+
+    private final String[] patterns;
+    private final String[] replacements;
+    private final Pattern[] compiled;    // lazily
+    private final int[] floating;        // rule ids, ascending
+    private final String[] literals;     // per floating rule: required literal or ""
+    // trie in CSR form: edges of node n are [edgeStart[n], edgeStart[n + 1]), sorted by label
+    private final int[] edgeStart;
+    private final char[] labels;
+    private final int[] targets;
+    // rules whose prefix ends at node n: ruleIds[ruleStart[n] .. ruleStart[n + 1])
+    private final int[] ruleStart;
+    private final int[] ruleIds;
+
+    private RuleMatcher(String[] patterns, String[] replacements, int[] floating, String[] literals,
+                        int[] edgeStart, char[] labels, int[] targets, int[] ruleStart, int[] ruleIds) {
+        this.patterns = patterns;
+        this.replacements = replacements;
+        this.compiled = new Pattern[patterns.length];
+        this.floating = floating;
+        this.literals = literals;
+        this.edgeStart = edgeStart;
+        this.labels = labels;
+        this.targets = targets;
+        this.ruleStart = ruleStart;
+        this.ruleIds = ruleIds;
+    }
+
+    public static final RuleMatcher EMPTY = compile(List.of());
+
+    public static Path cacheFile(Path root) {
+        return root.resolve(".sagit/cache/rules.bin");
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    /** Rules from {@code rulesFile} (none if absent), through the compiled cache at {@code cacheFile}. */
+    public static RuleMatcher load(Path rulesFile, Path cacheFile) {
+        try {
+            if (!Files.exists(rulesFile)) return EMPTY;
+            byte[] bytes = Files.readAllBytes(rulesFile);
+            byte[] key = sha256(bytes);
+            RuleMatcher cached = readCache(cacheFile, key);
+            if (cached != null) return cached;
+            RuleMatcher m = compile(parse(new String(bytes, StandardCharsets.UTF_8)));
+            try {
+                m.writeCache(cacheFile, key);
+            } catch (IOException ignored) { /* cache is best-effort */ }
+            return m;
+        } catch (IOException e) {
+            return EMPTY;
+        }
+    }
+
+    /** `pattern => replacement` lines; blank lines and '#' comments are skipped. */
+    public static List<String[]> parse(String text) {
+        List<String[]> out = new ArrayList<>();
+        for (String raw : text.split("\r?\n")) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("=>", 2);
+            if (parts.length != 2) continue;
+            String pattern = parts[0].trim();
+            try {
+                Pattern.compile(pattern);
+            } catch (RuntimeException e) {
+                break; // the linear loader stopped at the first bad pattern; keep that
+            }
+            out.add(new String[]{pattern, parts[1].trim()});
+        }
+        return out;
+    }
+
+    /** Replacement of the first rule found in {@code path}, or null. */
+    public String apply(String path) {
+        // trie candidates: rules whose literal prefix the path starts with
+        int[] cand = null;
+        int nc = 0;
+        int node = 0;
+        for (int i = 0; i < path.length(); i++) {
+            node = child(node, path.charAt(i));
+            if (node < 0) break;
+            int from = ruleStart[node], to = ruleStart[node + 1];
+            if (from == to) continue;
+            if (cand == null) cand = new int[Math.max(8, to - from)];
+            if (nc + (to - from) > cand.length) cand = Arrays.copyOf(cand, Math.max(cand.length * 2, nc + to - from));
+            System.arraycopy(ruleIds, from, cand, nc, to - from);
+            nc += to - from;
+        }
+        if (cand != null) Arrays.sort(cand, 0, nc);
+
+        // merge with the floating rules in rule order
+        int a = 0, b = 0;
+        while (a < nc || b < floating.length) {
+            int rule;
+            if (b >= floating.length || (a < nc && cand[a] < floating[b])) {
+                rule = cand[a++];
+            } else {
+                String lit = literals[b];
+                rule = floating[b++];
+                if (!lit.isEmpty() && !path.contains(lit)) continue;
+            }
+            Matcher m = pattern(rule).matcher(path);
+            if (m.find()) return m.replaceAll(replacements[rule]);
+        }
+        return null;
+    }
+
+    private Pattern pattern(int rule) {
+        Pattern p = compiled[rule];
+        if (p == null) compiled[rule] = p = Pattern.compile(patterns[rule]);
+        return p;
+    }
+
+    private int child(int node, char c) {
+        int lo = edgeStart[node], hi = edgeStart[node + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (labels[mid] < c) lo = mid + 1;
+            else if (labels[mid] > c) hi = mid - 1;
+            else return targets[mid];
+        }
+        return -1;
+    }
+
+    // ---------- compiling ----------
+
+    private static final class Node {
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        final List<Integer> rules = new ArrayList<>();
+        int id;
+    }
+
+    public static RuleMatcher compile(List<String[]> rules) {
+        int n = rules.size();
+        String[] patterns = new String[n], replacements = new String[n];
+        Node root = new Node();
+        List<Integer> floating = new ArrayList<>();
+        List<String> literals = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            patterns[i] = rules.get(i)[0];
+            replacements[i] = rules.get(i)[1];
+            String prefix = RegexLiterals.anchoredPrefix(patterns[i]);
+            if (prefix == null || prefix.isEmpty()) {
+                floating.add(i);
+                literals.add(RegexLiterals.requiredLiteral(patterns[i]));
+                continue;
+            }
+            Node at = root;
+            for (int k = 0; k < prefix.length(); k++) at = at.children.computeIfAbsent(prefix.charAt(k), c -> new Node());
+            at.rules.add(i);
+        }
+
+        // number nodes breadth-first and flatten
+        List<Node> order = new ArrayList<>();
+        order.add(root);
+        for (int i = 0; i < order.size(); i++) {
+            order.get(i).id = i;
+            order.addAll(order.get(i).children.values());
+        }
+        int nodes = order.size(), edges = nodes - 1;
+        int[] edgeStart = new int[nodes + 1], targets = new int[edges], ruleStart = new int[nodes + 1];
+        char[] labels = new char[edges];
+        int rulesTotal = 0;
+        for (Node x : order) rulesTotal += x.rules.size();
+        int[] ruleIds = new int[rulesTotal];
+        int e = 0, r = 0;
+        for (int i = 0; i < nodes; i++) {
+            Node x = order.get(i);
+            edgeStart[i] = e;
+            for (Map.Entry<Character, Node> c : x.children.entrySet()) {
+                labels[e] = c.getKey();
+                targets[e++] = c.getValue().id;
+            }
+            ruleStart[i] = r;
+            for (int id : x.rules) ruleIds[r++] = id;
+        }
+        edgeStart[nodes] = e;
+        ruleStart[nodes] = r;
+
+        return new RuleMatcher(patterns, replacements, floating.stream().mapToInt(Integer::intValue).toArray(),
+                literals.toArray(new String[0]), edgeStart, labels, targets, ruleStart, ruleIds);
+    }
+
+    // ---------- cache ----------
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static RuleMatcher readCache(Path file, byte[] key) {
+        if (!Files.exists(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new ByteArrayInputStream(Files.readAllBytes(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) return null;
+            byte[] k = new byte[key.length];
+            in.readFully(k);
+            if (!Arrays.equals(k, key)) return null;
+            int n = in.readInt();
+            String[] patterns = new String[n], replacements = new String[n];
+            for (int i = 0; i < n; i++) {
+                patterns[i] = in.readUTF();
+                replacements[i] = in.readUTF();
+            }
+            int[] floating = readInts(in);
+            String[] literals = new String[floating.length];
+            for (int i = 0; i < literals.length; i++) literals[i] = in.readUTF();
+            int[] edgeStart = readInts(in);
+            char[] labels = new char[in.readInt()];
+            for (int i = 0; i < labels.length; i++) labels[i] = in.readChar();
+            int[] targets = readInts(in);
+            int[] ruleStart = readInts(in);
+            int[] ruleIds = readInts(in);
+            return new RuleMatcher(patterns, replacements, floating, literals, edgeStart, labels, targets,
+                    ruleStart, ruleIds);
+        } catch (IOException | RuntimeException e) {
+            return null; // unreadable: recompile
+        }
+    }
+
+    private void writeCache(Path file, byte[] key) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.write(key);
+            out.writeInt(patterns.length);
+            for (int i = 0; i < patterns.length; i++) {
+                out.writeUTF(patterns[i]);
+                out.writeUTF(replacements[i]);
+            }
+            writeInts(out, floating);
+            for (String l : literals) out.writeUTF(l);
+            writeInts(out, edgeStart);
+            out.writeInt(labels.length);
+            for (char c : labels) out.writeChar(c);
+            writeInts(out, targets);
+            writeInts(out, ruleStart);
+            writeInts(out, ruleIds);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] a = new int[in.readInt()];
+        for (int i = 0; i < a.length; i++) a[i] = in.readInt();
+        return a;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int v : a) out.writeInt(v);
+    }
+}
@@ -0,0 +1,146 @@
+package com.sagit.semantic;
+
+import com.sagit.git.GitService;
+import com.sagit.semantic.JavaSemanticAnalyzer.Stats;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared load → decode → parse pipeline for diff-driven commands.
+ *
+ * The tree diff is done by the caller; this fans the per-file work out over a
+ * bounded pool where each worker opens its own reader for the call and closes it when
+ * done (readers are not thread-safe), then reduces the per-file deltas. Deltas are kept in input
+ * order and summed, so output does not depend on scheduling.
+ */
+public final class AnalysisPipeline {
+
+    private AnalysisPipeline() {}
+
+    /** Per-entry deltas (same order as {@code entries}) and their sum. */
+    public record Result(List<DiffEntry> entries, Stats[] deltas, Stats total) {}
+
+    /** Resolve a --jobs / config value: 0 or negative means one worker per core. */
+    public static int effectiveJobs(int jobs) {
+        return jobs > 0 ? jobs : Runtime.getRuntime().availableProcessors();
+    }
+
+    public static Result run(GitService gs, BlobAnalyzer analyzer, List<DiffEntry> entries, int jobs)
+            throws IOException {
+        Stats[] deltas = new Stats[entries.size()];
+        forEach(gs, entries.size(), jobs, (i, reader) -> deltas[i] = analyzer.delta(entries.get(i), reader));
+
+        Stats total = new Stats();
+        for (Stats d : deltas) total.add(d);
+        return new Result(entries, deltas, total);
+    }
+
+    /** A {@link Result} and the member-level changes of the same entries. */
+    public record Detailed(Result result, MemberDiff members) {}
+
+    /** {@link #run} and {@link #members} together, loading and parsing each blob once. */
+    public static Detailed runWithMembers(GitService gs, BlobAnalyzer analyzer, List<DiffEntry> entries, int jobs)
+            throws IOException {
+        Stats[] deltas = new Stats[entries.size()];
+        MemberDiff[] diffs = new MemberDiff[entries.size()];
+        forEach(gs, entries.size(), jobs, (i, reader) -> {
+            DiffEntry de = entries.get(i);
+            BlobAnalyzer.Analysis before = analyzer.analysis(de.getOldId(), reader);
+            BlobAnalyzer.Analysis after = analyzer.analysis(de.getNewId(), reader);
+            deltas[i] = after.stats().diff(before.stats());
+            diffs[i] = MemberDiff.of(before.members(), after.members(), BlobAnalyzer.path(de));
+        });
+
+        Stats total = new Stats();
+        for (Stats d : deltas) total.add(d);
+        MemberDiff all = new MemberDiff();
+        for (MemberDiff d : diffs) all.add(d);
+        return new Detailed(new Result(entries, deltas, total), all.pairMoves());
+    }
+
+    /** Member-level changes of all entries, merged in input order, with moves paired across files. */
+    public static MemberDiff members(GitService gs, BlobAnalyzer analyzer, List<DiffEntry> entries, int jobs)
+            throws IOException {
+        MemberDiff[] diffs = new MemberDiff[entries.size()];
+        forEach(gs, entries.size(), jobs, (i, reader) -> diffs[i] = analyzer.memberDiff(entries.get(i), reader));
+
+        MemberDiff all = new MemberDiff();
+        for (MemberDiff d : diffs) all.add(d);
+        return all.pairMoves();
+    }
+
+    /** Member tables of many blobs (e.g. every Java file of a tree), in input order. */
+    public static MemberTable[] tables(GitService gs, BlobAnalyzer analyzer, List<ObjectId> blobs, int jobs)
+            throws IOException {
+        MemberTable[] out = new MemberTable[blobs.size()];
+        forEach(gs, blobs.size(), jobs,
+                (i, reader) -> out[i] = analyzer.members(AbbreviatedObjectId.fromObjectId(blobs.get(i)), reader));
+        return out;
+    }
+
+    /** Type references of many blobs, in input order. */
+    public static TypeReferences[] references(GitService gs, BlobAnalyzer analyzer, List<ObjectId> blobs, int jobs)
+            throws IOException {
+        TypeReferences[] out = new TypeReferences[blobs.size()];
+        forEach(gs, blobs.size(), jobs, (i, reader) -> out[i] = analyzer.references(blobs.get(i), reader));
+        return out;
+    }
+
+    private interface Task {
+        void run(int index, ObjectReader reader) throws IOException;
+    }
+
+    private static void forEach(GitService gs, int n, int jobs, Task task) throws IOException {
+        int workers = Math.min(effectiveJobs(jobs), n);
+
+        if (workers <= 1) {
+            ObjectReader reader = gs.reader();
+            for (int i = 0; i < n; i++) task.run(i, reader);
+            return;
+        }
+        // workers pull the next index from a shared cursor; no per-file task objects
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "sagit-analyze");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Void>> running = new ArrayList<>(workers);
+            for (int w = 0; w < workers; w++) {
+                running.add(pool.submit(() -> {
+                    // pool threads die with the call; a service reader (gs.reader()) would stay open until gs.close()
+                    try (ObjectReader reader = gs.repo().newObjectReader()) {
+                        for (int i = next.getAndIncrement(); i < n; i = next.getAndIncrement()) {
+                            task.run(i, reader);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> f : running) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("analysis interrupted", e);
+        } catch (ExecutionException e) {
+            next.set(n); // stop the remaining workers early
+            Throwable c = e.getCause();
+            if (c instanceof IOException io) throw io;
+            if (c instanceof RuntimeException re) throw re;
+            throw new IOException(c);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.sagit.semantic;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.sagit.cache.BlobKeyedCache;
+import com.sagit.config.Config;
+import com.sagit.git.GitService;
+import com.sagit.metrics.Metrics;
+import com.sagit.semantic.JavaSemanticAnalyzer.Stats;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Analyzes blobs by id, consulting the persistent analysis cache first.
+ * Blobs are immutable, so a (blob id, analyzer version) hit never needs re-parsing.
+ */
+public class BlobAnalyzer implements Closeable {
+
+    private final GitService gs;
+    private final JavaSemanticAnalyzer analyzer;
+    private final Config cfg;
+    private final JavaSemanticAnalyzer.Mode mode;
+    private BlobKeyedCache<Stats> cache; // opened on first stats query
+    private BlobKeyedCache<MemberTable> memberCache; // opened on first member query
+    private BlobKeyedCache<TypeReferences> refsCache; // opened on first reference query
+
+    private BlobAnalyzer(GitService gs, Config cfg, JavaSemanticAnalyzer.Mode mode) {
+        this.gs = gs;
+        this.analyzer = new JavaSemanticAnalyzer(mode);
+        this.cfg = cfg;
+        this.mode = mode;
+    }
+
+    /** Analyzer for interactive commands (config 'analyzerMode', default full). */
+    public static BlobAnalyzer open(GitService gs, Config cfg) {
+        return open(gs, cfg, JavaSemanticAnalyzer.Mode.parse(cfg.analyzerMode, JavaSemanticAnalyzer.Mode.FULL));
+    }
+
+    /** Analyzer for git hooks (config 'hookAnalyzerMode', default fast). */
+    public static BlobAnalyzer openForHook(GitService gs, Config cfg) {
+        return open(gs, cfg, JavaSemanticAnalyzer.Mode.parse(cfg.hookAnalyzerMode, JavaSemanticAnalyzer.Mode.FAST));
+    }
+
+    // One cache per mode, so a gap in the fast recognizer never leaks into FULL results.
+    public static BlobAnalyzer open(GitService gs, Config cfg, JavaSemanticAnalyzer.Mode mode) {
+        return new BlobAnalyzer(gs, cfg, mode);
+    }
+
+    public static BlobKeyedCache<Stats> openCache(Path root, Config cfg, JavaSemanticAnalyzer.Mode mode) {
+        BlobKeyedCache<Stats> r = resident;
+        Path file = cacheFile(root, mode).toAbsolutePath().normalize();
+        if (r != null && r.file().equals(file)) return r;
+        return BlobKeyedCache.open(file, JavaSemanticAnalyzer.VERSION, cfg.cacheMaxBytes, Stats.CODEC);
+    }
+
+    // Daemon mode: one loaded cache for the life of the process (close() only flushes it).
+    private static volatile BlobKeyedCache<Stats> resident;
+
+    /** Keep the cache of the mode the hooks use (config 'hookAnalyzerMode') loaded. */
+    public static void keepCacheResident(Path root, Config cfg) {
+        resident = null;
+        resident = openCache(root, cfg, JavaSemanticAnalyzer.Mode.parse(cfg.hookAnalyzerMode, JavaSemanticAnalyzer.Mode.FAST));
+    }
+
+    public static Path cacheFile(Path root, JavaSemanticAnalyzer.Mode mode) {
+        return root.resolve(mode == JavaSemanticAnalyzer.Mode.FAST ? ".sagit/cache/analysis-fast.bin" : ".sagit/cache/analysis.bin");
+    }
+
+    public static Path memberCacheFile(Path root) {
+        return root.resolve(".sagit/cache/members.bin");
+    }
+
+    public static BlobKeyedCache<MemberTable> openMemberCache(Path root, Config cfg) {
+        return BlobKeyedCache.open(memberCacheFile(root).toAbsolutePath().normalize(),
+                MemberTable.VERSION, cfg.cacheMaxBytes, MemberTable.CODEC);
+    }
+
+    public static Path refsCacheFile(Path root) {
+        return root.resolve(".sagit/cache/refs.bin");
+    }
+
+    public static BlobKeyedCache<TypeReferences> openRefsCache(Path root, Config cfg) {
+        return BlobKeyedCache.open(refsCacheFile(root).toAbsolutePath().normalize(),
+                TypeReferences.VERSION, cfg.cacheMaxBytes, TypeReferences.CODEC);
+    }
+
+    /** Stats for a blob; absent/zero ids analyze as an empty file. */
+    public Stats stats(AbbreviatedObjectId abbr) throws IOException {
+        return stats(abbr, gs.reader());
+    }
+
+    /** Same as {@link #stats(AbbreviatedObjectId)}, loading through the caller's thread-confined reader. */
+    public Stats stats(AbbreviatedObjectId abbr, ObjectReader reader) throws IOException {
+        if (abbr == null || !abbr.isComplete()) return new Stats();
+        ObjectId id = abbr.toObjectId();
+        if (ObjectId.zeroId().equals(id)) return new Stats();
+
+        BlobKeyedCache<Stats> sc = statsCache();
+        Stats s = sc.get(id);
+        if (s != null) return s;
+        byte[] bytes;
+        try {
+            bytes = gs.loadBlob(reader, id);
+        } catch (LargeObjectException e) {
+            return new Stats(); // over maxBlobBytes: generated/vendored source, not analyzed (and not cached)
+        }
+        String source = decode(bytes);
+        long t = Metrics.start();
+        s = analyzer.analyze(source);
+        Metrics.stop(Metrics.Phase.PARSE, t);
+        sc.put(id, s);
+        return s;
+    }
+
+    /** new - old for one diff entry. */
+    public Stats delta(DiffEntry de) throws IOException {
+        return delta(de, gs.reader());
+    }
+
+    public Stats delta(DiffEntry de, ObjectReader reader) throws IOException {
+        return stats(de.getNewId(), reader).diff(stats(de.getOldId(), reader));
+    }
+
+    /** Member table for a blob; absent/zero ids and oversized blobs have none. Always full-parses on a miss. */
+    public MemberTable members(AbbreviatedObjectId abbr, ObjectReader reader) throws IOException {
+        if (abbr == null || !abbr.isComplete()) return MemberTable.EMPTY;
+        ObjectId id = abbr.toObjectId();
+        if (ObjectId.zeroId().equals(id)) return MemberTable.EMPTY;
+
+        BlobKeyedCache<MemberTable> mc = memberCache();
+        MemberTable t = mc.get(id);
+        if (t != null) return t;
+        byte[] bytes;
+        try {
+            bytes = gs.loadBlob(reader, id);
+        } catch (LargeObjectException e) {
+            return MemberTable.EMPTY;
+        }
+        String source = decode(bytes);
+        long started = Metrics.start();
+        t = MemberTable.extract(source);
+        Metrics.stop(Metrics.Phase.PARSE, started);
+        mc.put(id, t);
+        return t;
+    }
+
+    /** Member-level changes for one diff entry. */
+    public MemberDiff memberDiff(DiffEntry de, ObjectReader reader) throws IOException {
+        return MemberDiff.of(members(de.getOldId(), reader), members(de.getNewId(), reader), path(de));
+    }
+
+    /** Stats and member table of one blob. */
+    public record Analysis(Stats stats, MemberTable members) {
+        static Analysis empty() { return new Analysis(new Stats(), MemberTable.EMPTY); }
+    }
+
+    /** Both {@link #stats} and {@link #members} of a blob from one load and at most one parse; fills both caches. */
+    public Analysis analysis(AbbreviatedObjectId abbr, ObjectReader reader) throws IOException {
+        if (abbr == null || !abbr.isComplete()) return Analysis.empty();
+        ObjectId id = abbr.toObjectId();
+        if (ObjectId.zeroId().equals(id)) return Analysis.empty();
+
+        BlobKeyedCache<Stats> sc = statsCache();
+        BlobKeyedCache<MemberTable> mc = memberCache();
+        Stats s = sc.get(id);
+        MemberTable t = mc.get(id);
+        if (s != null && t != null) return new Analysis(s, t);
+        byte[] bytes;
+        try {
+            bytes = gs.loadBlob(reader, id);
+        } catch (LargeObjectException e) {
+            return Analysis.empty();
+        }
+        String source = decode(bytes);
+        long started = Metrics.start();
+        boolean statsMissed = s == null;
+        if (statsMissed) s = analyzer.withoutParse(source);
+        CompilationUnit cu = s == null || t == null ? JavaSemanticAnalyzer.parse(source) : null;
+        if (s == null) s = cu == null ? new Stats() : analyzer.analyze(cu);
+        if (t == null) {
+            t = cu == null ? MemberTable.EMPTY : MemberTable.of(cu);
+            mc.put(id, t);
+        }
+        Metrics.stop(Metrics.Phase.PARSE, started);
+        if (statsMissed) sc.put(id, s);
+        return new Analysis(s, t);
+    }
+
+    /** The path member changes are reported under: the old one for deletions, else the new one. */
+    static String path(DiffEntry de) {
+        return de.getChangeType() == DiffEntry.ChangeType.DELETE ? de.getOldPath() : de.getNewPath();
+    }
+
+    /** Type references of a blob (lexical scan on a miss); absent/zero ids and oversized blobs have none. */
+    public TypeReferences references(ObjectId id, ObjectReader reader) throws IOException {
+        if (id == null || ObjectId.zeroId().equals(id)) return TypeReferences.EMPTY;
+        BlobKeyedCache<TypeReferences> rc = refsCache();
+        TypeReferences r = rc.get(id);
+        if (r != null) return r;
+        byte[] bytes;
+        try {
+            bytes = gs.loadBlob(reader, id);
+        } catch (LargeObjectException e) {
+            return TypeReferences.EMPTY;
+        }
+        String source = decode(bytes);
+        long t = Metrics.start();
+        r = TypeReferences.scan(source);
+        Metrics.stop(Metrics.Phase.PARSE, t);
+        rc.put(id, r);
+        return r;
+    }
+
+    private static String decode(byte[] bytes) {
+        long t = Metrics.start();
+        String s = new String(bytes, StandardCharsets.UTF_8);
+        Metrics.stop(Metrics.Phase.DECODE, t);
+        return s;
+    }
+
+    private synchronized BlobKeyedCache<Stats> statsCache() {
+        if (cache == null) cache = openCache(gs.workTree(), cfg, mode);
+        return cache;
+    }
+
+    private synchronized BlobKeyedCache<TypeReferences> refsCache() {
+        if (refsCache == null) refsCache = openRefsCache(gs.workTree(), cfg);
+        return refsCache;
+    }
+
+    private synchronized BlobKeyedCache<MemberTable> memberCache() {
+        if (memberCache == null) memberCache = openMemberCache(gs.workTree(), cfg);
+        return memberCache;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (cache != null) {
+                try { cache.close(); } catch (IOException ignored) { /* cache is best-effort */ }
+            }
+            if (memberCache != null) {
+                try { memberCache.close(); } catch (IOException ignored) { /* cache is best-effort */ }
+            }
+            if (refsCache != null) {
+                try { refsCache.close(); } catch (IOException ignored) { /* cache is best-effort */ }
+            }
+        }
+    }
+}
@@ -0,0 +1,1398 @@
+package com.sagit.semantic;
+
+import com.sagit.semantic.JavaSemanticAnalyzer.Stats;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Declaration counter that recognizes Java 17 source without building an AST: the "fast"
+ * analyzer mode.
+ *
+ * A recursive-descent recognizer over a small lexer checks the whole compilation unit against
+ * the grammar, bodies and initializers included, and counts type, method, constructor and field
+ * declarations on the way; nothing is allocated per node. It is strict on purpose: a syntax
+ * error, and anything it does not check in full — local and anonymous classes, enum constant
+ * bodies, unicode escapes, non-ASCII identifiers, module-info, type annotations, switch
+ * patterns, qualified {@code new}/{@code super}, modifier combinations JavaParser's validators
+ * reject, and a few rarer forms — make {@link #scan} return null, and the caller parses with
+ * JavaParser. What is accepted here is meant to be exactly what JavaParser parses without
+ * problems, where the two modes count the same; the analysis cache still keeps them apart.
+ */
+final class DeclarationScanner {
+
+    private static final int EOF = 0, IDENT = 1, OP = 2, LITERAL = 3;
+
+    private enum Kind { CLASS, INTERFACE, ENUM, RECORD, ANNOTATION }
+
+    /** Thrown to abandon the scan; stackless since it is control flow. */
+    private static final class Ambiguous extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Ambiguous() { super(null, null, false, false); }
+    }
+    private static final Ambiguous AMBIGUOUS = new Ambiguous();
+
+    // modifiers, as bits
+    private static final int PUBLIC = 1, PROTECTED = 1 << 1, PRIVATE = 1 << 2, STATIC = 1 << 3, FINAL = 1 << 4,
+            ABSTRACT = 1 << 5, NATIVE = 1 << 6, SYNCHRONIZED = 1 << 7, TRANSIENT = 1 << 8, VOLATILE = 1 << 9,
+            STRICTFP = 1 << 10, DEFAULT = 1 << 11, SEALED = 1 << 12, NON_SEALED = 1 << 13,
+            ANNOTATED = 1 << 14; // annotations only, not a modifier keyword
+    private static final int VISIBILITY = PUBLIC | PROTECTED | PRIVATE;
+    // modifiers allowed per declaration (within what JavaParser's validators accept)
+    private static final int TOP_CLASS = PUBLIC | ABSTRACT | FINAL | STRICTFP | SEALED | NON_SEALED,
+            TOP_INTERFACE = PUBLIC | ABSTRACT | STRICTFP | SEALED | NON_SEALED,
+            TOP_ENUM = PUBLIC | STRICTFP,
+            TOP_RECORD = PUBLIC | FINAL | STRICTFP,
+            TOP_ANNOTATION = PUBLIC | ABSTRACT | STRICTFP,
+            MEMBER_TYPE = PROTECTED | PRIVATE | STATIC,
+            METHOD = VISIBILITY | STATIC | FINAL | ABSTRACT | NATIVE | SYNCHRONIZED | STRICTFP,
+            INTERFACE_METHOD = PUBLIC | PRIVATE | STATIC | ABSTRACT | DEFAULT,
+            FIELD = VISIBILITY | STATIC | FINAL | TRANSIENT | VOLATILE,
+            CONSTANT = PUBLIC | STATIC | FINAL,
+            CONSTRUCTOR = VISIBILITY,
+            ANNOTATION_MEMBER = PUBLIC | ABSTRACT;
+
+    // what an expression turned out to be: assignable (NAME, SELECT), a statement on its own, or neither
+    private static final int VALUE = 0, NAME = 1, SELECT = 2, CALL = 3, CREATION = 4, ASSIGNMENT = 5, STEP = 6,
+            TYPE = 7; // `int[]` / `Name[]` before `::`
+
+    // reserved words by first letter ('_' is handled on its own)
+    private static final String[][] KEYWORDS = new String[26][];
+    static {
+        String all = "abstract assert boolean break byte case catch char class const continue default do double"
+                + " else enum extends final finally float for goto if implements import instanceof int interface"
+                + " long native new package private protected public return short static strictfp super switch"
+                + " synchronized this throw throws transient try void volatile while true false null";
+        for (int c = 0; c < 26; c++) {
+            char letter = (char) ('a' + c);
+            KEYWORDS[c] = Arrays.stream(all.split(" ")).filter(k -> k.charAt(0) == letter).toArray(String[]::new);
+        }
+    }
+
+    private static final String DIGITS = "[0-9](?:[0-9_]*[0-9])?", HEX = "[0-9a-fA-F](?:[0-9a-fA-F_]*[0-9a-fA-F])?";
+    private static final Pattern NUMBER = Pattern.compile(
+            "(?:0|[1-9](?:[0-9_]*[0-9])?|0[0-7_]*[0-7]|0[xX]" + HEX + "|0[bB][01](?:[01_]*[01])?)[lL]?"
+            + "|(?:" + DIGITS + "\\.(?:" + DIGITS + ")?|\\." + DIGITS + ")(?:[eE][+-]?" + DIGITS + ")?[fFdD]?"
+            + "|" + DIGITS + "(?:[eE][+-]?" + DIGITS + "[fFdD]?|[fFdD])"
+            + "|0[xX](?:" + HEX + "\\.?|(?:" + HEX + ")?\\." + HEX + ")[pP][+-]?" + DIGITS + "[fFdD]?");
+
+    private static final String TWO_CHAR_OPS = "->::++--&&||==!=<=<<+=-=*=/=%=&=|=^=";
+
+    private final String src;
+    private final int len;
+    private final Stats stats = new Stats();
+
+    // current token; '>' is always a token of its own (generics), shifts and '>=' are read as runs
+    private int kind;
+    private int start, end;
+    private int nesting;
+    private boolean inSwitchExpression; // `yield` is a statement here
+    private int opTokens;               // tokens of the binary operator last seen by binaryPrecedence()
+
+    private DeclarationScanner(String src) {
+        this.src = src;
+        this.len = src.length();
+    }
+
+    /** Declaration counts, or null when a full parse is needed to be exact. */
+    static Stats scan(String source) {
+        if (source.indexOf("\\u") >= 0) return null; // unicode escapes can hide any token
+        DeclarationScanner s = new DeclarationScanner(source);
+        try {
+            s.compilationUnit();
+            return s.stats;
+        } catch (Ambiguous | StackOverflowError e) {
+            return null;
+        }
+    }
+
+    // ---------- declarations ----------
+
+    private void compilationUnit() {
+        next();
+        int mods = modifiers();
+        if (isIdent("package")) {
+            if ((mods & ~ANNOTATED) != 0) throw AMBIGUOUS;
+            next();
+            qualifiedName();
+            expect(';');
+            mods = modifiers();
+        }
+        while (mods == 0 && isIdent("import")) {
+            next();
+            if (isIdent("static")) next();
+            name();
+            while (isOp('.')) {
+                next();
+                if (isOp('*')) { next(); break; }
+                name();
+            }
+            expect(';');
+            mods = modifiers();
+        }
+        while (kind != EOF) {
+            if (mods == 0 && isOp(';')) { next(); mods = modifiers(); continue; }
+            Kind k = typeKeyword();
+            if (k == null) throw AMBIGUOUS; // module-info, or not a declaration
+            typeDeclaration(k, mods, true);
+            mods = modifiers();
+        }
+        if (mods != 0) throw AMBIGUOUS;
+    }
+
+    /** At the type keyword ('@' of '@interface'); consumes the whole declaration. */
+    private void typeDeclaration(Kind k, int mods, boolean top) {
+        int allowed = switch (k) {
+            case CLASS      -> { stats.classes++;     yield TOP_CLASS; }
+            case INTERFACE  -> { stats.interfaces_++; yield TOP_INTERFACE; }
+            case ENUM       -> { stats.enums_++;      yield TOP_ENUM; }
+            case RECORD     -> { stats.records++;     yield TOP_RECORD; }
+            case ANNOTATION -> { stats.annotations++; yield TOP_ANNOTATION; }
+        };
+        checkModifiers(mods, top ? allowed : allowed | MEMBER_TYPE);
+        if (++nesting > stats.depth) stats.depth = nesting;
+
+        if (k == Kind.ANNOTATION) next(); // '@'
+        next();
+        int nameStart = start, nameEnd = end;
+        typeName();
+        if ((k == Kind.CLASS || k == Kind.INTERFACE || k == Kind.RECORD) && isOp('<')) typeParameters();
+        int[] components = k == Kind.RECORD ? recordHeader() : null;
+        if (k == Kind.CLASS && isIdent("extends")) { next(); classType(false); }
+        if (k == Kind.INTERFACE && isIdent("extends")) { next(); typeList(); }
+        if (k != Kind.INTERFACE && k != Kind.ANNOTATION && isIdent("implements")) { next(); typeList(); }
+        if ((k == Kind.CLASS || k == Kind.INTERFACE) && isIdent("permits")) { next(); typeList(); }
+        expect('{');
+        typeBody(k, nameStart, nameEnd, components);
+        nesting--;
+    }
+
+    /** After the opening brace; consumes through the closing brace. */
+    private void typeBody(Kind k, int nameStart, int nameEnd, int[] components) {
+        if (k == Kind.ENUM && enumConstants()) return;
+        while (!isOp('}')) {
+            if (kind == EOF) throw AMBIGUOUS;
+            if (isOp(';')) { next(); continue; }
+            member(k, nameStart, nameEnd, components);
+        }
+        next();
+    }
+
+    /** Enum constant list; returns true if the body closed right after it. */
+    private boolean enumConstants() {
+        while (true) {
+            if (isOp('}')) { next(); return true; }
+            if (isOp(';')) { next(); return false; }
+            if ((modifiers() & ~ANNOTATED) != 0) throw AMBIGUOUS;
+            name();
+            if (isOp('(')) arguments();
+            if (isOp('{')) throw AMBIGUOUS; // constant class body declares members
+            if (isOp(',')) next();
+            else if (!isOp(';') && !isOp('}')) throw AMBIGUOUS;
+        }
+    }
+
+    /** `(` components `)` of a record; returns the start/end offsets of the component names. */
+    private int[] recordHeader() {
+        expect('(');
+        int[] names = new int[8];
+        int n = 0;
+        while (!isOp(')')) {
+            if ((modifiers() & ~ANNOTATED) != 0) throw AMBIGUOUS;
+            type();
+            boolean varargs = isOp("...");
+            if (varargs) next();
+            if (n == names.length) names = Arrays.copyOf(names, n * 2);
+            names[n++] = start;
+            names[n++] = end;
+            name();
+            if (isOp(')')) break;
+            if (varargs) throw AMBIGUOUS;
+            expect(',');
+            if (isOp(')')) throw AMBIGUOUS;
+        }
+        next();
+        return Arrays.copyOf(names, n);
+    }
+
+    /** One member declaration inside a type body. */
+    private void member(Kind owner, int ownerStart, int ownerEnd, int[] components) {
+        boolean iface = owner == Kind.INTERFACE || owner == Kind.ANNOTATION;
+        if (isOp('{') || isIdent("static") && peekIs('{')) { // initializer
+            if (iface || owner == Kind.RECORD && isOp('{')) throw AMBIGUOUS;
+            if (isIdent("static")) next();
+            block();
+            return;
+        }
+        int mods = modifiers();
+        Kind k = typeKeyword();
+        if (k != null) { typeDeclaration(k, mods, false); return; }
+        boolean generic = isOp('<');
+        if (generic) typeParameters();
+
+        if (kind == IDENT && regionEquals(start, end, ownerStart, ownerEnd) && !iface) {
+            if (peekIs('(')) {
+                checkModifiers(mods, CONSTRUCTOR);
+                next();
+                formalParameters();
+                throwsClause();
+                stats.constructors++;
+                constructorBody();
+                return;
+            }
+            if (owner == Kind.RECORD && !generic && peekIs('{')) {
+                // compact canonical constructor: not a ConstructorDeclaration
+                checkModifiers(mods, CONSTRUCTOR);
+                next();
+                block();
+                return;
+            }
+        }
+
+        boolean isVoid = isIdent("void");
+        if (isVoid) next(); else type();
+        int nameStart = start, nameEnd = end;
+        name();
+        if (isOp('(')) {
+            if (owner == Kind.ANNOTATION) {
+                checkModifiers(mods, ANNOTATION_MEMBER);
+                if (generic || isVoid) throw AMBIGUOUS;
+                next();
+                expect(')');
+                if (isIdent("default")) { next(); elementValue(); }
+                expect(';');
+                return;
+            }
+            checkMethodModifiers(mods, iface ? INTERFACE_METHOD : METHOD);
+            int params = formalParameters();
+            if (owner == Kind.RECORD && params == 0 && (mods & STATIC) == 0 && isComponent(nameStart, nameEnd, components)) {
+                throw AMBIGUOUS; // accessor: JavaParser checks its return type against the component
+            }
+            if (dims() > 0 && isVoid) throw AMBIGUOUS;
+            throwsClause();
+            stats.methods++;
+            if (isOp(';')) {
+                if ((mods & DEFAULT) != 0) throw AMBIGUOUS;
+                next();
+                return;
+            }
+            block();
+            return;
+        }
+        if (generic || isVoid) throw AMBIGUOUS;
+        checkModifiers(mods, iface ? CONSTANT : FIELD);
+        if (owner == Kind.RECORD && (mods & STATIC) == 0) throw AMBIGUOUS; // records have no instance fields
+        declaratorRest();
+        while (isOp(',')) { next(); declarator(); }
+        expect(';');
+        stats.fields++;
+    }
+
+    private boolean isComponent(int nameStart, int nameEnd, int[] components) {
+        for (int i = 0; i < components.length; i += 2) {
+            if (regionEquals(nameStart, nameEnd, components[i], components[i + 1])) return true;
+        }
+        return false;
+    }
+
+    /** Parameter list; returns the parameter count. */
+    private int formalParameters() {
+        expect('(');
+        if (isOp(')')) { next(); return 0; }
+        int n = 1;
+        while (!formalParameter(false) && isOp(',')) { // varargs come last
+            next();
+            n++;
+        }
+        expect(')');
+        return n;
+    }
+
+    /** One parameter (of a method, constructor or lambda); returns whether it is varargs. */
+    private boolean formalParameter(boolean lambda) {
+        checkModifiers(modifiers(), FINAL);
+        if (lambda && isIdent("var") && peekIdentStart()) {
+            next();
+            name();
+            return false;
+        }
+        type();
+        boolean varargs = isOp("...");
+        if (varargs) next();
+        name();
+        if (dims() > 0 && varargs) throw AMBIGUOUS;
+        return varargs;
+    }
+
+    private void throwsClause() {
+        if (!isIdent("throws")) return;
+        next();
+        typeList();
+    }
+
+    private void constructorBody() {
+        expect('{');
+        if ((isIdent("this") || isIdent("super")) && peekIs('(')) { // explicit constructor invocation
+            next();
+            arguments();
+            expect(';');
+        }
+        while (!isOp('}')) blockStatement();
+        next();
+    }
+
+    // ---------- modifiers and annotations ----------
+
+    /** Modifier keywords and annotations, as bits ({@link #ANNOTATED} for annotations). */
+    private int modifiers() {
+        int mods = 0;
+        while (true) {
+            if (isOp('@')) {
+                if (peekWord("interface")) return mods;
+                annotation();
+                mods |= ANNOTATED;
+                continue;
+            }
+            int bit = modifierBit();
+            if (bit == 0) return mods;
+            if ((mods & bit) != 0) throw AMBIGUOUS;
+            mods |= bit;
+            if (bit == NON_SEALED) { next(); next(); }
+            next();
+        }
+    }
+
+    private int modifierBit() {
+        if (kind != IDENT) return 0;
+        return switch (end - start) {
+            case 3 -> isIdent("non") && src.startsWith("-sealed", end)
+                    && (end + 7 == len || !identPart(src.charAt(end + 7))) ? NON_SEALED : 0;
+            case 5 -> isIdent("final") ? FINAL : 0;
+            case 6 -> isIdent("public") ? PUBLIC : isIdent("static") ? STATIC : isIdent("native") ? NATIVE
+                    : isIdent("sealed") && peekIdentStart() ? SEALED : 0;
+            case 7 -> isIdent("private") ? PRIVATE : isIdent("default") ? DEFAULT : 0;
+            case 8 -> isIdent("abstract") ? ABSTRACT : isIdent("strictfp") ? STRICTFP : isIdent("volatile") ? VOLATILE : 0;
+            case 9 -> isIdent("protected") ? PROTECTED : isIdent("transient") ? TRANSIENT : 0;
+            case 12 -> isIdent("synchronized") ? SYNCHRONIZED : 0;
+            default -> 0;
+        };
+    }
+
+    private void checkModifiers(int mods, int allowed) {
+        mods &= ~ANNOTATED;
+        if ((mods & ~allowed) != 0
+                || Integer.bitCount(mods & VISIBILITY) > 1
+                || Integer.bitCount(mods & (FINAL | SEALED | NON_SEALED)) > 1
+                || (mods & (FINAL | ABSTRACT)) == (FINAL | ABSTRACT)
+                || (mods & (FINAL | VOLATILE)) == (FINAL | VOLATILE)
+                || (mods & (NATIVE | STRICTFP)) == (NATIVE | STRICTFP)
+                || (mods & DEFAULT) != 0 && (mods & (STATIC | PRIVATE)) != 0) {
+            throw AMBIGUOUS;
+        }
+    }
+
+    private void checkMethodModifiers(int mods, int allowed) {
+        checkModifiers(mods, allowed);
+        if ((mods & ABSTRACT) != 0 && (mods & (PRIVATE | STATIC | FINAL | NATIVE | SYNCHRONIZED | STRICTFP | DEFAULT)) != 0) {
+            throw AMBIGUOUS;
+        }
+    }
+
+    private void annotation() {
+        next(); // '@'
+        qualifiedName();
+        if (!isOp('(')) return;
+        next();
+        if (kind == IDENT && !isKeyword() && peekAssign()) {
+            while (true) {
+                name();
+                expect('=');
+                elementValue();
+                if (isOp(')')) break;
+                expect(',');
+            }
+        } else if (!isOp(')')) {
+            elementValue();
+        }
+        expect(')');
+    }
+
+    private void elementValue() {
+        if (isOp('@')) { annotation(); return; }
+        if (!isOp('{')) { ternary(); return; }
+        next();
+        while (!isOp('}')) {
+            elementValue();
+            if (!isOp('}')) expect(',');
+        }
+        next();
+    }
+
+    // ---------- types ----------
+
+    private void type() {
+        if (primitive()) next(); else classType(false);
+        dims();
+    }
+
+    /** A type that may be a type argument: a class type or an array type. */
+    private void referenceType() {
+        if (primitive()) {
+            next();
+            if (dims() == 0) throw AMBIGUOUS;
+            return;
+        }
+        classType(false);
+        dims();
+    }
+
+    /** Qualified, possibly parameterized class type; returns whether it used the diamond. */
+    private boolean classType(boolean diamondAllowed) {
+        if (isRestrictedTypeName()) throw AMBIGUOUS;
+        boolean diamond = false;
+        while (true) {
+            name();
+            if (isOp('<')) diamond = typeArguments(diamondAllowed);
+            if (!isOp('.')) return diamond;
+            next();
+        }
+    }
+
+    private void typeList() {
+        classType(false);
+        while (isOp(',')) { next(); classType(false); }
+    }
+
+    /** At '<'; returns true for the diamond. */
+    private boolean typeArguments(boolean diamondAllowed) {
+        next();
+        if (isOp('>')) {
+            if (!diamondAllowed) throw AMBIGUOUS;
+            next();
+            return true;
+        }
+        while (true) {
+            if (isOp('?')) {
+                next();
+                if (isIdent("extends") || isIdent("super")) { next(); referenceType(); }
+            } else {
+                referenceType();
+            }
+            if (isOp('>')) { next(); return false; }
+            expect(',');
+        }
+    }
+
+    private void typeParameters() {
+        next(); // '<'
+        while (true) {
+            typeName();
+            if (isIdent("extends")) {
+                next();
+                classType(false);
+                while (isOp('&')) { next(); classType(false); }
+            }
+            if (isOp('>')) { next(); return; }
+            expect(',');
+        }
+    }
+
+    /** Empty bracket pairs; returns how many. */
+    private int dims() {
+        int n = 0;
+        while (isOp('[') && peekIs(']')) {
+            next();
+            next();
+            n++;
+        }
+        return n;
+    }
+
+    // ---------- statements ----------
+
+    private void block() {
+        expect('{');
+        while (!isOp('}')) blockStatement();
+        next();
+    }
+
+    private void blockStatement() {
+        if (isOp('@') || isIdent("final") || isIdent("abstract") || isIdent("static") || isIdent("strictfp")) {
+            checkModifiers(modifiers(), FINAL);
+            if (typeKeyword() != null) throw AMBIGUOUS; // local class
+            localVariables();
+            expect(';');
+            return;
+        }
+        if (typeKeyword() != null) throw AMBIGUOUS; // local class, interface, enum or record: counted by the visitor
+        if (isIdent("var") && peekIdentStart() || localVariableAhead(false)) {
+            localVariables();
+            expect(';');
+            return;
+        }
+        statement();
+    }
+
+    private void statement() {
+        if (isOp('{')) { block(); return; }
+        if (isOp(';')) { next(); return; }
+        if (kind == IDENT) {
+            if (isIdent("if")) {
+                next();
+                parenthesized();
+                statement();
+                if (isIdent("else")) { next(); statement(); }
+                return;
+            }
+            if (isIdent("while")) { next(); parenthesized(); statement(); return; }
+            if (isIdent("do")) {
+                next();
+                statement();
+                if (!isIdent("while")) throw AMBIGUOUS;
+                next();
+                parenthesized();
+                expect(';');
+                return;
+            }
+            if (isIdent("for")) { forStatement(); return; }
+            if (isIdent("try")) { tryStatement(); return; }
+            if (isIdent("switch")) { switchBlock(false); return; }
+            if (isIdent("return")) {
+                next();
+                if (!isOp(';')) expression();
+                expect(';');
+                return;
+            }
+            if (isIdent("throw")) { next(); expression(); expect(';'); return; }
+            if (isIdent("break") || isIdent("continue")) {
+                next();
+                if (!isOp(';')) name();
+                expect(';');
+                return;
+            }
+            if (isIdent("synchronized")) { next(); parenthesized(); block(); return; }
+            if (isIdent("assert")) {
+                next();
+                expression();
+                if (isOp(':')) { next(); expression(); }
+                expect(';');
+                return;
+            }
+            if (isIdent("yield")) {
+                // a yield statement only inside a switch expression, and only in its plain forms
+                if (!inSwitchExpression) throw AMBIGUOUS;
+                next();
+                if (kind == OP && !isOp('!') && !isOp('~') || isIdent("instanceof")) throw AMBIGUOUS;
+                expression();
+                expect(';');
+                return;
+            }
+            if (!isKeyword() && peekLabelColon()) { // labeled statement
+                next();
+                next();
+                statement();
+                return;
+            }
+        }
+        statementExpression();
+        expect(';');
+    }
+
+    /** Assignment, ++/--, method call or instance creation. */
+    private void statementExpression() {
+        int s = expression();
+        if (s != ASSIGNMENT && s != STEP && s != CALL && s != CREATION) throw AMBIGUOUS;
+    }
+
+    private void forStatement() {
+        next();
+        expect('(');
+        if (!isOp(';')) {
+            int mods = modifiers();
+            checkModifiers(mods, FINAL);
+            boolean var = isIdent("var") && peekIdentStart();
+            if (mods != 0 || var || localVariableAhead(true)) {
+                if (var) next(); else type();
+                name();
+                if (!var) dims();
+                if (isOp(':')) { // enhanced for
+                    next();
+                    expression();
+                    expect(')');
+                    statement();
+                    return;
+                }
+                if (var) varInitializer();
+                else {
+                    declaratorRest();
+                    while (isOp(',')) { next(); declarator(); }
+                }
+            } else {
+                statementExpressionList();
+            }
+        }
+        expect(';');
+        if (!isOp(';')) expression();
+        expect(';');
+        if (!isOp(')')) statementExpressionList();
+        expect(')');
+        statement();
+    }
+
+    private void statementExpressionList() {
+        statementExpression();
+        while (isOp(',')) { next(); statementExpression(); }
+    }
+
+    private void tryStatement() {
+        next();
+        boolean resources = isOp('(');
+        if (resources) {
+            next();
+            do {
+                resource();
+                if (isOp(';')) next();
+                else if (!isOp(')')) throw AMBIGUOUS;
+            } while (!isOp(')'));
+            next();
+        }
+        block();
+        boolean handlers = false;
+        while (isIdent("catch")) {
+            next();
+            expect('(');
+            checkModifiers(modifiers(), FINAL);
+            classType(false);
+            while (isOp('|')) { next(); classType(false); }
+            name();
+            expect(')');
+            block();
+            handlers = true;
+        }
+        if (isIdent("finally")) {
+            next();
+            block();
+            handlers = true;
+        }
+        if (!resources && !handlers) throw AMBIGUOUS;
+    }
+
+    private void resource() {
+        int mods = modifiers();
+        checkModifiers(mods, FINAL);
+        if (isIdent("var") && peekIdentStart()) {
+            next();
+            name();
+            varInitializer();
+            return;
+        }
+        if (mods != 0 || localVariableAhead(false)) {
+            type();
+            name();
+            expect('=');
+            expression();
+            return;
+        }
+        // an existing variable: a name or a field of this
+        if (isIdent("this")) { next(); expect('.'); }
+        qualifiedName();
+    }
+
+    private void switchBlock(boolean isExpression) {
+        next();
+        parenthesized();
+        expect('{');
+        boolean saved = inSwitchExpression;
+        if (isExpression) inSwitchExpression = true;
+        boolean arrows = false, colons = false;
+        while (!isOp('}')) {
+            if (isIdent("case")) {
+                next();
+                while (true) {
+                    if (isIdent("null") || isIdent("default")) throw AMBIGUOUS; // Java 21 labels
+                    binary(1);
+                    if (!isOp(',')) break;
+                    next();
+                }
+            } else if (isIdent("default")) {
+                next();
+            } else {
+                throw AMBIGUOUS;
+            }
+            if (isOp("->")) {
+                if (colons) throw AMBIGUOUS;
+                arrows = true;
+                next();
+                if (isOp('{')) block();
+                else if (isIdent("throw")) statement();
+                else {
+                    if (isExpression) expression(); else statementExpression();
+                    expect(';');
+                }
+            } else if (isOp(':')) {
+                if (arrows) throw AMBIGUOUS;
+                colons = true;
+                next();
+                while (!isOp('}') && !isIdent("case") && !isIdent("default")) blockStatement();
+            } else {
+                throw AMBIGUOUS;
+            }
+        }
+        next();
+        inSwitchExpression = saved;
+    }
+
+    /** At the type (or `var`) of a local variable declaration; through its declarators. */
+    private void localVariables() {
+        if (isIdent("var")) {
+            next();
+            name();
+            varInitializer();
+            return;
+        }
+        type();
+        declarator();
+        while (isOp(',')) { next(); declarator(); }
+    }
+
+    // `var`: exactly one variable, no brackets, initialized from an expression other than null
+    private void varInitializer() {
+        expect('=');
+        if (isOp('{') || isIdent("null")) throw AMBIGUOUS;
+        expression();
+        if (isOp(',')) throw AMBIGUOUS;
+    }
+
+    private void declarator() {
+        name();
+        declaratorRest();
+    }
+
+    private void declaratorRest() {
+        dims();
+        if (!isOp('=')) return;
+        next();
+        if (isOp('{')) arrayInitializer(); else expression();
+    }
+
+    private void arrayInitializer() {
+        next(); // '{'
+        while (!isOp('}')) {
+            if (isOp('{')) arrayInitializer(); else expression();
+            if (!isOp('}')) expect(',');
+        }
+        next();
+    }
+
+    /** Whether a local variable declaration starts here: a type, then a name and what follows one. */
+    private boolean localVariableAhead(boolean forHeader) {
+        if (kind != IDENT) return false;
+        int m = mark();
+        try {
+            type();
+            if (kind != IDENT || isKeyword()) return false;
+            next();
+            return isOp('=') || isOp(';') || isOp(',') || isOp('[') || forHeader && isOp(':');
+        } catch (Ambiguous e) {
+            return false;
+        } finally {
+            reset(m);
+        }
+    }
+
+    private void parenthesized() {
+        expect('(');
+        expression();
+        expect(')');
+    }
+
+    // ---------- expressions ----------
+
+    private int expression() {
+        if (lambdaAhead()) {
+            lambda();
+            return VALUE;
+        }
+        int s = ternary();
+        if (assignmentOperator()) {
+            if (s != NAME && s != SELECT) throw AMBIGUOUS;
+            expression();
+            return ASSIGNMENT;
+        }
+        return s;
+    }
+
+    private int ternary() {
+        int s = binary(1);
+        if (!isOp('?')) return s;
+        next();
+        expression();
+        expect(':');
+        if (lambdaAhead()) lambda(); else ternary();
+        return VALUE;
+    }
+
+    private int binary(int minPrecedence) {
+        int s = unary();
+        while (true) {
+            int p = binaryPrecedence();
+            if (p == 0 || p < minPrecedence) return s;
+            if (isIdent("instanceof")) {
+                next();
+                int mods = modifiers();
+                checkModifiers(mods, FINAL);
+                referenceType();
+                if (kind == IDENT && !isKeyword()) next(); // pattern variable
+                else if (mods != 0) throw AMBIGUOUS;
+            } else {
+                for (int i = opTokens; i > 0; i--) next();
+                binary(p + 1);
+            }
+            s = VALUE;
+        }
+    }
+
+    /** Precedence of the binary operator at the current token (1 = ||), or 0. */
+    private int binaryPrecedence() {
+        opTokens = 1;
+        if (kind == IDENT) return isIdent("instanceof") ? 7 : 0;
+        if (kind != OP) return 0;
+        if (isOp("||")) return 1;
+        if (isOp("&&")) return 2;
+        if (isOp('|')) return 3;
+        if (isOp('^')) return 4;
+        if (isOp('&')) return 5;
+        if (isOp("==") || isOp("!=")) return 6;
+        if (isOp('<') || isOp("<=")) return 7;
+        if (isOp('>')) {
+            int run = greaterRun();
+            boolean eq = singleEqualsAt(start + run);
+            if (run == 1) {
+                if (eq) opTokens = 2; // >=
+                return 7;
+            }
+            if (eq || run > 3) return 0; // >>= and >>>= assign
+            opTokens = run;
+            return 8;
+        }
+        if (isOp("<<")) return 8;
+        if (isOp('+') || isOp('-')) return 9;
+        if (isOp('*') || isOp('/') || isOp('%')) return 10;
+        return 0;
+    }
+
+    /** Consumes an assignment operator, if one is next. */
+    private boolean assignmentOperator() {
+        if (kind != OP) return false;
+        if (isOp('=') || isOp("+=") || isOp("-=") || isOp("*=") || isOp("/=") || isOp("%=")
+                || isOp("&=") || isOp("|=") || isOp("^=") || isOp("<<=")) {
+            next();
+            return true;
+        }
+        if (!isOp('>')) return false;
+        int run = greaterRun();
+        if ((run != 2 && run != 3) || !singleEqualsAt(start + run)) return false;
+        for (int i = 0; i <= run; i++) next();
+        return true;
+    }
+
+    private int unary() {
+        if (isOp("++") || isOp("--")) {
+            next();
+            int s = unary();
+            if (s != NAME && s != SELECT) throw AMBIGUOUS;
+            return STEP;
+        }
+        if (isOp('+') || isOp('-') || isOp('!') || isOp('~')) {
+            next();
+            unary();
+            return VALUE;
+        }
+        if (isOp('(') && cast()) {
+            if (lambdaAhead()) lambda(); else unary();
+            return VALUE;
+        }
+        return postfix();
+    }
+
+    /** At '(': consumes `(Type)` and returns true when it is a cast, else consumes nothing. */
+    private boolean cast() {
+        int m = mark();
+        try {
+            next();
+            if (primitive()) {
+                next();
+                int dims = dims();
+                if (isOp(')')) {
+                    next();
+                    if (dims == 0 || startsOperand()) return true;
+                }
+            } else {
+                classType(false);
+                dims();
+                while (isOp('&')) { next(); classType(false); }
+                if (isOp(')')) {
+                    next();
+                    if (startsOperand()) return true; // `(a) + b` is a parenthesized expression
+                }
+            }
+        } catch (Ambiguous e) {
+            // not a type: a parenthesized expression
+        }
+        reset(m);
+        return false;
+    }
+
+    // what may follow a cast to a reference type
+    private boolean startsOperand() {
+        if (kind == LITERAL || isOp('(') || isOp('!') || isOp('~')) return true;
+        if (kind != IDENT) return false;
+        return !isKeyword() || isIdent("this") || isIdent("super") || isIdent("new") || isIdent("switch")
+                || isIdent("true") || isIdent("false") || isIdent("null") || primitive();
+    }
+
+    private int postfix() {
+        int s = primary();
+        while (true) {
+            if (isOp('.')) {
+                next();
+                if (isOp('<')) { // explicit type arguments
+                    typeArguments(false);
+                    name();
+                    arguments();
+                    s = CALL;
+                } else if (isIdent("class") || isIdent("this")) {
+                    if (s != NAME) throw AMBIGUOUS;
+                    next();
+                    s = VALUE;
+                } else {
+                    name(); // also rejects `.new` and `.super`
+                    if (isOp('(')) {
+                        arguments();
+                        s = CALL;
+                    } else if (s != NAME) {
+                        s = SELECT;
+                    }
+                }
+            } else if (isOp('[')) {
+                if (peekIs(']')) { // Name[].class, Name[]::new
+                    if (s != NAME) throw AMBIGUOUS;
+                    dims();
+                    s = classOrReference();
+                    continue;
+                }
+                next();
+                expression();
+                expect(']');
+                s = SELECT;
+            } else if (isOp("::")) {
+                next();
+                if (isOp('<')) typeArguments(false);
+                if (isIdent("new")) {
+                    if (s != NAME && s != TYPE) throw AMBIGUOUS;
+                    next();
+                } else {
+                    name();
+                }
+                s = VALUE;
+            } else if (isOp("++") || isOp("--")) {
+                if (s != NAME && s != SELECT) throw AMBIGUOUS;
+                next();
+                return STEP;
+            } else {
+                return s;
+            }
+        }
+    }
+
+    private int primary() {
+        if (kind == LITERAL) { next(); return VALUE; }
+        if (isOp('(')) {
+            next();
+            expression();
+            expect(')');
+            return VALUE;
+        }
+        if (kind != IDENT) throw AMBIGUOUS;
+        if (!isKeyword()) {
+            next();
+            if (isOp('(')) { arguments(); return CALL; }
+            return NAME;
+        }
+        if (isIdent("true") || isIdent("false") || isIdent("null")) { next(); return VALUE; }
+        if (isIdent("this")) {
+            next();
+            if (isOp('(')) throw AMBIGUOUS; // only first in a constructor body
+            return VALUE;
+        }
+        if (isIdent("super")) {
+            next();
+            if (!isOp('.') && !isOp("::")) throw AMBIGUOUS;
+            return VALUE;
+        }
+        if (isIdent("new")) return creation();
+        if (isIdent("switch")) { switchBlock(true); return VALUE; }
+        if (primitive() || isIdent("void")) { // int.class, int[]::new, void.class
+            boolean isVoid = isIdent("void");
+            next();
+            if (dims() > 0 && isVoid) throw AMBIGUOUS;
+            int s = classOrReference();
+            if (s == TYPE && isVoid) throw AMBIGUOUS;
+            return s;
+        }
+        throw AMBIGUOUS;
+    }
+
+    // after a type in an expression: `.class`, or `::` (left for the caller)
+    private int classOrReference() {
+        if (isOp('.') && peekWord("class")) {
+            next();
+            next();
+            return VALUE;
+        }
+        if (!isOp("::")) throw AMBIGUOUS;
+        return TYPE;
+    }
+
+    private int creation() {
+        next(); // new
+        if (isOp('<') || isOp('@')) throw AMBIGUOUS;
+        if (primitive()) {
+            next();
+            arrayCreation();
+            return VALUE;
+        }
+        boolean diamond = classType(true);
+        if (isOp('(')) {
+            arguments();
+            if (isOp('{')) throw AMBIGUOUS; // anonymous class body
+            return CREATION;
+        }
+        if (!isOp('[') || diamond) throw AMBIGUOUS;
+        arrayCreation();
+        return VALUE;
+    }
+
+    private void arrayCreation() {
+        if (!isOp('[')) throw AMBIGUOUS;
+        if (peekIs(']')) {
+            dims();
+            if (!isOp('{')) throw AMBIGUOUS;
+            arrayInitializer();
+            return;
+        }
+        while (isOp('[') && !peekIs(']')) {
+            next();
+            expression();
+            expect(']');
+        }
+        dims();
+        if (isOp('[') || isOp('{')) throw AMBIGUOUS;
+    }
+
+    private void arguments() {
+        expect('(');
+        if (isOp(')')) { next(); return; }
+        expression();
+        while (isOp(',')) { next(); expression(); }
+        expect(')');
+    }
+
+    /** Whether a lambda starts here: `name ->` or a parenthesized list followed by `->`. */
+    private boolean lambdaAhead() {
+        if (kind == IDENT) return !isKeyword() && src.startsWith("->", peek());
+        if (!isOp('(')) return false;
+        int m = mark();
+        try {
+            int depth = 0;
+            do {
+                if (kind == EOF) throw AMBIGUOUS;
+                if (isOp('(')) depth++;
+                else if (isOp(')')) depth--;
+                next();
+            } while (depth > 0);
+            return isOp("->");
+        } finally {
+            reset(m);
+        }
+    }
+
+    private void lambda() {
+        if (kind == IDENT) {
+            next();
+        } else {
+            next(); // '('
+            boolean inferred = kind == IDENT && !isKeyword() && (peekIs(',') || peekIs(')'));
+            if (inferred) {
+                name();
+                while (isOp(',')) { next(); name(); }
+            } else if (!isOp(')')) {
+                while (!formalParameter(true) && isOp(',')) next();
+            }
+            expect(')');
+        }
+        expect("->");
+        boolean saved = inSwitchExpression;
+        inSwitchExpression = false;
+        if (isOp('{')) block(); else expression();
+        inSwitchExpression = saved;
+    }
+
+    // ---------- token predicates ----------
+
+    private Kind typeKeyword() {
+        if (isOp('@')) return peekWord("interface") ? Kind.ANNOTATION : null;
+        if (kind != IDENT) return null;
+        if (isIdent("class")) return Kind.CLASS;
+        if (isIdent("interface")) return Kind.INTERFACE;
+        if (isIdent("enum")) return Kind.ENUM;
+        if (isIdent("record") && peekIdentStart()) return Kind.RECORD; // contextual keyword
+        return null;
+    }
+
+    private boolean primitive() {
+        if (kind != IDENT) return false;
+        return switch (end - start) {
+            case 3 -> isIdent("int");
+            case 4 -> isIdent("byte") || isIdent("char") || isIdent("long");
+            case 5 -> isIdent("short") || isIdent("float");
+            case 6 -> isIdent("double");
+            case 7 -> isIdent("boolean");
+            default -> false;
+        };
+    }
+
+    private boolean isKeyword() {
+        int n = end - start;
+        char c = src.charAt(start);
+        if (n == 1) return c == '_';
+        if (n > 12 || c < 'a' || c > 'z') return false;
+        for (String k : KEYWORDS[c - 'a']) {
+            if (k.length() == n && src.startsWith(k, start)) return true;
+        }
+        return false;
+    }
+
+    // contextual keywords JavaParser does not accept as the name of a type
+    private boolean isRestrictedTypeName() {
+        return isIdent("var") || isIdent("yield") || isIdent("record") || isIdent("sealed") || isIdent("permits");
+    }
+
+    private void name() {
+        if (kind != IDENT || isKeyword()) throw AMBIGUOUS;
+        next();
+    }
+
+    private void typeName() {
+        if (isRestrictedTypeName()) throw AMBIGUOUS;
+        name();
+    }
+
+    private void qualifiedName() {
+        name();
+        while (isOp('.')) { next(); name(); }
+    }
+
+    private void expect(char c) {
+        if (!isOp(c)) throw AMBIGUOUS;
+        next();
+    }
+
+    private void expect(String op) {
+        if (!isOp(op)) throw AMBIGUOUS;
+        next();
+    }
+
+    private boolean isIdent(String word) {
+        return kind == IDENT && end - start == word.length() && src.startsWith(word, start);
+    }
+
+    private boolean isOp(char c) {
+        return kind == OP && end - start == 1 && src.charAt(start) == c;
+    }
+
+    private boolean isOp(String op) {
+        return kind == OP && end - start == op.length() && src.startsWith(op, start);
+    }
+
+    // adjacent '>' characters from the current token on (each one a token)
+    private int greaterRun() {
+        int n = 1;
+        while (start + n < len && src.charAt(start + n) == '>') n++;
+        return n;
+    }
+
+    private boolean singleEqualsAt(int p) {
+        return p < len && src.charAt(p) == '=' && (p + 1 == len || src.charAt(p + 1) != '=');
+    }
+
+    private boolean regionEquals(int aStart, int aEnd, int bStart, int bEnd) {
+        int n = aEnd - aStart;
+        return n == bEnd - bStart && src.regionMatches(aStart, src, bStart, n);
+    }
+
+    private int peek() {
+        return skipTrivia(end);
+    }
+
+    private boolean peekIs(char c) {
+        int p = peek();
+        return p < len && src.charAt(p) == c;
+    }
+
+    private boolean peekAssign() {
+        return singleEqualsAt(peek());
+    }
+
+    private boolean peekLabelColon() {
+        int p = peek();
+        return p < len && src.charAt(p) == ':' && (p + 1 == len || src.charAt(p + 1) != ':');
+    }
+
+    private boolean peekIdentStart() {
+        int p = peek();
+        return p < len && identStart(src.charAt(p));
+    }
+
+    private boolean peekWord(String word) {
+        int p = peek(), q = p + word.length();
+        return src.startsWith(word, p) && (q == len || !identPart(src.charAt(q)));
+    }
+
+    private int mark() {
+        return start;
+    }
+
+    private void reset(int mark) {
+        end = mark;
+        next();
+    }
+
+    // ---------- lexer ----------
+
+    private void next() {
+        int p = skipTrivia(end);
+        start = p;
+        if (p >= len) { kind = EOF; end = len; return; }
+        char c = src.charAt(p);
+        if (identStart(c)) {
+            kind = IDENT;
+            int q = p + 1;
+            while (q < len && identPart(src.charAt(q))) q++;
+            if (q < len && src.charAt(q) >= 0x80) throw AMBIGUOUS; // non-ASCII identifier
+            end = q;
+        } else if (c >= '0' && c <= '9' || c == '.' && p + 1 < len && src.charAt(p + 1) >= '0' && src.charAt(p + 1) <= '9') {
+            kind = LITERAL;
+            end = number(p);
+        } else if (c == '"') {
+            kind = LITERAL;
+            end = src.startsWith("\"\"\"", p) ? textBlock(p + 3) : string(p + 1);
+        } else if (c == '\'') {
+            kind = LITERAL;
+            end = character(p + 1);
+        } else {
+            kind = OP;
+            end = p + operatorLength(p);
+        }
+    }
+
+    private static boolean identStart(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c == '$';
+    }
+
+    private static boolean identPart(char c) {
+        return identStart(c) || c >= '0' && c <= '9';
+    }
+
+    private int operatorLength(int p) {
+        if (src.startsWith("<<=", p) || src.startsWith("...", p)) return 3;
+        if (p + 1 < len) {
+            for (int i = 0; i < TWO_CHAR_OPS.length(); i += 2) {
+                if (src.regionMatches(p, TWO_CHAR_OPS, i, 2)) return 2;
+            }
+        }
+        if ("(){}[];,.@=><!~?:+-*/&|^%".indexOf(src.charAt(p)) >= 0) return 1;
+        throw AMBIGUOUS; // '#', '`', non-ASCII, control characters
+    }
+
+    private int number(int p) {
+        boolean hex = src.startsWith("0x", p) || src.startsWith("0X", p);
+        int q = p + 1;
+        while (q < len) {
+            char c = src.charAt(q);
+            char prev = src.charAt(q - 1);
+            if (identPart(c) || c == '.') q++;
+            else if ((c == '+' || c == '-') && (hex ? prev == 'p' || prev == 'P' : prev == 'e' || prev == 'E')) q++;
+            else break;
+        }
+        if (!NUMBER.matcher(src).region(p, q).matches()) throw AMBIGUOUS;
+        return q;
+    }
+
+    private int string(int p) {
+        while (p < len) {
+            char c = src.charAt(p);
+            if (c == '\\') { p = escape(p + 1, false); continue; }
+            if (c == '"') return p + 1;
+            if (c == '\n' || c == '\r') break;
+            p++;
+        }
+        throw AMBIGUOUS;
+    }
+
+    private int character(int p) {
+        if (p >= len) throw AMBIGUOUS;
+        char c = src.charAt(p);
+        if (c == '\\') p = escape(p + 1, false);
+        else if (c == '\'' || c == '\n' || c == '\r') throw AMBIGUOUS;
+        else p++;
+        if (p >= len || src.charAt(p) != '\'') throw AMBIGUOUS;
+        return p + 1;
+    }
+
+    private int textBlock(int p) {
+        while (p < len && (src.charAt(p) == ' ' || src.charAt(p) == '\t' || src.charAt(p) == '\f')) p++;
+        if (p >= len || src.charAt(p) != '\n' && src.charAt(p) != '\r') throw AMBIGUOUS; // content starts on the next line
+        while (p < len) {
+            char c = src.charAt(p);
+            if (c == '\\') { p = escape(p + 1, true); continue; }
+            if (c == '"' && src.startsWith("\"\"\"", p)) return p + 3;
+            p++;
+        }
+        throw AMBIGUOUS;
+    }
+
+    /** After a backslash; returns the offset past the escape sequence. */
+    private int escape(int p, boolean textBlock) {
+        if (p >= len) throw AMBIGUOUS;
+        char c = src.charAt(p);
+        if ("btnfrs\"'\\".indexOf(c) >= 0 || textBlock && (c == '\n' || c == '\r')) return p + 1;
+        if (c < '0' || c > '7') throw AMBIGUOUS;
+        int max = c <= '3' ? 3 : 2, n = 1;
+        while (n < max && p + n < len && src.charAt(p + n) >= '0' && src.charAt(p + n) <= '7') n++;
+        return p + n;
+    }
+
+    private int skipTrivia(int p) {
+        while (p < len) {
+            char c = src.charAt(p);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') { p++; continue; }
+            if (c == '/' && p + 1 < len) {
+                char d = src.charAt(p + 1);
+                if (d == '/') {
+                    while (p < len && src.charAt(p) != '\n' && src.charAt(p) != '\r') p++;
+                    continue;
+                }
+                if (d == '*') {
+                    int close = src.indexOf("*/", p + 2);
+                    if (close < 0) throw AMBIGUOUS;
+                    p = close + 2;
+                    continue;
+                }
+            }
+            return p;
+        }
+        return p;
+    }
+}
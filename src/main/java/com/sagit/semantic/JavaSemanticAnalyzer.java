@@ -1,17 +1,44 @@
 package com.sagit.semantic;
 
-import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.AnnotationDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.EnumDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.RecordDeclaration;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import com.sagit.cache.BlobKeyedCache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 public class JavaSemanticAnalyzer {
 
+    /** Bump whenever analyze() can produce different Stats for the same source (invalidates caches). */
+    public static final int VERSION = 3;
+
+    // records and other post-11 syntax must parse, otherwise the whole file counts as zeros
+    private static final ParserConfiguration PARSER_CONFIG = new ParserConfiguration()
+            .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17);
+
     public static class Stats {
         public int classes;
         public int interfaces_;
         public int enums_;
         public int methods;
         public int fields;
+        public int constructors;
+        public int records;
+        public int annotations;   // @interface declarations
+        public int depth;         // deepest type nesting (top-level type = 1); a max, never a count
 
+        /** new - old for the counters; depth is the deeper of the two sides (nesting does not subtract). */
         public Stats diff(Stats other) {
             Stats d = new Stats();
             d.classes    = this.classes - other.classes;
@@ -19,22 +46,154 @@ public class JavaSemanticAnalyzer {
             d.enums_     = this.enums_ - other.enums_;
             d.methods    = this.methods - other.methods;
             d.fields     = this.fields - other.fields;
+            d.constructors = this.constructors - other.constructors;
+            d.records      = this.records - other.records;
+            d.annotations  = this.annotations - other.annotations;
+            d.depth        = Math.max(this.depth, other.depth);
             return d;
         }
+
+        /** Accumulate another delta into this one (depth: the deepest seen, not a sum). */
+        public void add(Stats other) {
+            this.classes     += other.classes;
+            this.interfaces_ += other.interfaces_;
+            this.enums_      += other.enums_;
+            this.methods     += other.methods;
+            this.fields      += other.fields;
+            this.constructors += other.constructors;
+            this.records      += other.records;
+            this.annotations  += other.annotations;
+            this.depth        = Math.max(this.depth, other.depth);
+        }
+
+        private static final int FIELD_COUNT = 9;
+
+        /** Compact cache encoding: field count, then one zigzag varint per counter (deltas may be negative). */
+        public static final BlobKeyedCache.Codec<Stats> CODEC = new BlobKeyedCache.Codec<>() {
+            @Override public void write(DataOutput out, Stats s) throws IOException {
+                out.writeByte(FIELD_COUNT);
+                for (int v : new int[] { s.classes, s.interfaces_, s.enums_, s.methods, s.fields,
+                                         s.constructors, s.records, s.annotations, s.depth }) {
+                    BlobKeyedCache.writeVarint(out, (v << 1) ^ (v >> 31));
+                }
+            }
+            @Override public Stats read(DataInput in) throws IOException {
+                if (in.readUnsignedByte() != FIELD_COUNT) throw new IOException("unexpected Stats layout");
+                int[] v = new int[FIELD_COUNT];
+                for (int i = 0; i < FIELD_COUNT; i++) {
+                    int z = BlobKeyedCache.readVarint(in);
+                    v[i] = (z >>> 1) ^ -(z & 1);
+                }
+                Stats s = new Stats();
+                s.classes = v[0]; s.interfaces_ = v[1]; s.enums_ = v[2]; s.methods = v[3]; s.fields = v[4];
+                s.constructors = v[5]; s.records = v[6]; s.annotations = v[7]; s.depth = v[8];
+                return s;
+            }
+        };
+    }
+
+    /** FULL parses with JavaParser; FAST recognizes the declarations itself and parses whenever it cannot vouch for the source. */
+    public enum Mode {
+        FULL, FAST;
+
+        public static Mode parse(String s, Mode dflt) {
+            if (s == null || s.isBlank()) return dflt;
+            return "fast".equalsIgnoreCase(s.trim()) ? FAST : "full".equalsIgnoreCase(s.trim()) ? FULL : dflt;
+        }
     }
 
+    private final Mode mode;
+
+    public JavaSemanticAnalyzer() {
+        this(Mode.FULL);
+    }
+
+    public JavaSemanticAnalyzer(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode mode() { return mode; }
+
     public Stats analyze(String source) {
-        Stats s = new Stats();
+        Stats fast = withoutParse(source);
+        if (fast != null) return fast;
+        CompilationUnit cu = parse(source);
+        if (cu == null) return new Stats(); /* fall back to zeros */
+        return analyze(cu);
+    }
+
+    /** The answer FAST gives without parsing, or null when the source must be parsed (always null under FULL). */
+    public Stats withoutParse(String source) {
+        return mode == Mode.FAST ? DeclarationScanner.scan(source) : null;
+    }
+
+    /** Parse as analyze() does; null when the source does not parse cleanly. */
+    public static CompilationUnit parse(String source) {
         try {
-            CompilationUnit cu = StaticJavaParser.parse(source);
-            s.classes     = cu.findAll(com.github.javaparser.ast.body.ClassOrInterfaceDeclaration.class,
-                    n -> !n.isInterface()).size();
-            s.interfaces_ = cu.findAll(com.github.javaparser.ast.body.ClassOrInterfaceDeclaration.class,
-                    com.github.javaparser.ast.body.ClassOrInterfaceDeclaration::isInterface).size();
-            s.enums_      = cu.findAll(com.github.javaparser.ast.body.EnumDeclaration.class).size();
-            s.methods     = cu.findAll(com.github.javaparser.ast.body.MethodDeclaration.class).size();
-            s.fields      = cu.findAll(com.github.javaparser.ast.body.FieldDeclaration.class).size();
-        } catch (Exception ignored) { /* fall back to zeros */ }
+            ParseResult<CompilationUnit> r = new JavaParser(PARSER_CONFIG).parse(source);
+            return r.isSuccessful() ? r.getResult().orElse(null) : null;
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    /** Count an already-parsed unit. */
+    public Stats analyze(CompilationUnit cu) {
+        Stats s = new Stats();
+        cu.accept(new CountingVisitor(), s);
         return s;
     }
+
+    /** Collects every counter in one walk; no intermediate node lists. */
+    private static final class CountingVisitor extends VoidVisitorAdapter<Stats> {
+        private int nesting;
+
+        private void enterType(Stats s) {
+            nesting++;
+            if (nesting > s.depth) s.depth = nesting;
+        }
+
+        @Override public void visit(ClassOrInterfaceDeclaration n, Stats s) {
+            if (n.isInterface()) s.interfaces_++; else s.classes++;
+            enterType(s);
+            super.visit(n, s);
+            nesting--;
+        }
+
+        @Override public void visit(EnumDeclaration n, Stats s) {
+            s.enums_++;
+            enterType(s);
+            super.visit(n, s);
+            nesting--;
+        }
+
+        @Override public void visit(RecordDeclaration n, Stats s) {
+            s.records++;
+            enterType(s);
+            super.visit(n, s);
+            nesting--;
+        }
+
+        @Override public void visit(AnnotationDeclaration n, Stats s) {
+            s.annotations++;
+            enterType(s);
+            super.visit(n, s);
+            nesting--;
+        }
+
+        @Override public void visit(MethodDeclaration n, Stats s) {
+            s.methods++;
+            super.visit(n, s);
+        }
+
+        @Override public void visit(ConstructorDeclaration n, Stats s) {
+            s.constructors++;
+            super.visit(n, s);
+        }
+
+        @Override public void visit(FieldDeclaration n, Stats s) {
+            s.fields++;
+            super.visit(n, s);
+        }
+    }
 }
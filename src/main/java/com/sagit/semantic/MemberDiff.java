@@ -0,0 +1,108 @@
+package com.sagit.semantic;
+
+import com.sagit.semantic.MemberTable.Member;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Added / removed / changed members between two versions of a file, by set difference on
+ * member keys and comparison of structural hashes (no AST comparison). Once the per-file diffs
+ * of a whole change are merged, {@link #pairMoves()} turns removed/added method pairs with the
+ * same or a similar body into {@link Move}s.
+ */
+public final class MemberDiff {
+
+    public enum Change { ADDED, REMOVED, CHANGED }
+
+    public record Entry(Change change, Member member, String path) {}
+
+    /** A method that left {@code from} and reappeared as {@code to}; similarity is 100 for an identical body. */
+    public record Move(Entry from, Entry to, int similarity) {
+        /** "moved", "renamed", "moved+renamed", "signature" (same name, other parameters), ... */
+        public String kind() {
+            Member a = from.member(), b = to.member();
+            StringJoiner j = new StringJoiner("+");
+            if (!a.type().equals(b.type()) || !from.path().equals(to.path())) j.add("moved");
+            if (!a.name().equals(b.name())) j.add("renamed");
+            else if (!a.signature().equals(b.signature())) j.add("signature");
+            return j.toString();
+        }
+
+        public String display() {
+            return from.member().display() + " -> " + to.member().display()
+                    + " (" + kind() + (similarity < 100 ? ", " + similarity + "% similar" : "") + ")";
+        }
+    }
+
+    public final List<Entry> added = new ArrayList<>();
+    public final List<Entry> removed = new ArrayList<>();
+    public final List<Entry> changed = new ArrayList<>();
+    public final List<Move> moved = new ArrayList<>();
+
+    public static MemberDiff of(MemberTable oldT, MemberTable newT, String path) {
+        MemberDiff d = new MemberDiff();
+        Map<String, Member> old = oldT.byKey();
+        for (Member m : newT.members) {
+            Member o = old.remove(m.key());
+            if (o == null) d.added.add(new Entry(Change.ADDED, m, path));
+            else if (o.hash() != m.hash()) d.changed.add(new Entry(Change.CHANGED, m, path));
+        }
+        for (Member o : oldT.members) {
+            if (old.containsKey(o.key())) d.removed.add(new Entry(Change.REMOVED, o, path));
+        }
+        return d;
+    }
+
+    public void add(MemberDiff other) {
+        added.addAll(other.added);
+        removed.addAll(other.removed);
+        changed.addAll(other.changed);
+        moved.addAll(other.moved);
+    }
+
+    /** Pair removed with added methods by body across all merged files; see {@link MemberMoves}. */
+    public MemberDiff pairMoves() {
+        MemberMoves.pair(this);
+        return this;
+    }
+
+    /** "+added -removed ~changed >moved". */
+    public String counts() {
+        return "+" + added.size() + " -" + removed.size() + " ~" + changed.size() + " >" + moved.size();
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty() && moved.isEmpty();
+    }
+
+    /** Added, removed and changed entries, grouped by change and ordered by member name. */
+    public List<Entry> all() {
+        List<Entry> out = new ArrayList<>(added.size() + removed.size() + changed.size());
+        Comparator<Entry> byName = Comparator.comparing(e -> e.member().display());
+        for (List<Entry> l : List.of(added, removed, changed)) {
+            List<Entry> s = new ArrayList<>(l);
+            s.sort(byName);
+            out.addAll(s);
+        }
+        return out;
+    }
+
+    /** Moves ordered by source member name. */
+    public List<Move> moves() {
+        List<Move> s = new ArrayList<>(moved);
+        s.sort(Comparator.comparing(m -> m.from().member().display()));
+        return s;
+    }
+
+    public static String symbol(Change c) {
+        return switch (c) {
+            case ADDED -> "+";
+            case REMOVED -> "-";
+            case CHANGED -> "~";
+        };
+    }
+}
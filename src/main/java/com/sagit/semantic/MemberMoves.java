@@ -0,0 +1,156 @@
+package com.sagit.semantic;
+
+import com.sagit.semantic.MemberDiff.Entry;
+import com.sagit.semantic.MemberDiff.Move;
+import com.sagit.semantic.MemberTable.Kind;
+import com.sagit.semantic.MemberTable.Member;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pairs removed with added methods/constructors across a whole diff, so a method moved to
+ * another class or file, or renamed, is reported once instead of as a deletion plus an addition.
+ *
+ * Two passes over hash indexes, no pairwise comparison:
+ * <ol>
+ *   <li>exact: removed bodies are bucketed by body hash and each added body takes the best
+ *       candidate from its bucket (same name first, then same type);</li>
+ *   <li>similar: what is left is bucketed by MinHash bands (LSH), so only bodies that agree on
+ *       a whole band are compared. A pair needs {@link #MIN_SIMILARITY}% estimated similarity and
+ *       must keep its name or its type — an edited body that also moved and was renamed is
+ *       too weak a signal. Best pairs are taken first.</li>
+ * </ol>
+ * Bodies under {@link #MIN_TOKENS} tokens (getters, delegates, empty bodies) never pair: they
+ * are too alike to say which went where.
+ */
+final class MemberMoves {
+
+    static final int MIN_TOKENS = 12;
+    static final int MIN_SIMILARITY = 50;
+    private static final int ROWS = 2;                                  // sketch slots per band
+    private static final int BANDS = MemberTable.SKETCH / ROWS;
+    private static final int MAX_BUCKET = 64;                           // skip boilerplate-sized buckets
+
+    private MemberMoves() {}
+
+    static void pair(MemberDiff d) {
+        List<Entry> from = candidates(d.removed);
+        List<Entry> to = candidates(d.added);
+        if (from.isEmpty() || to.isEmpty()) return;
+
+        Set<Entry> paired = Collections.newSetFromMap(new IdentityHashMap<>());
+        exact(from, to, paired, d.moved);
+        similar(from, to, paired, d.moved);
+        if (paired.isEmpty()) return;
+        d.removed.removeIf(paired::contains);
+        d.added.removeIf(paired::contains);
+    }
+
+    private static List<Entry> candidates(List<Entry> entries) {
+        List<Entry> out = new ArrayList<>();
+        for (Entry e : entries) {
+            Member m = e.member();
+            if ((m.kind() == Kind.METHOD || m.kind() == Kind.CONSTRUCTOR) && m.bodyTokens() >= MIN_TOKENS) out.add(e);
+        }
+        return out;
+    }
+
+    // ---------- exact bodies ----------
+
+    private static void exact(List<Entry> from, List<Entry> to, Set<Entry> paired, List<Move> out) {
+        Map<Long, ArrayDeque<Entry>> byBody = new HashMap<>(from.size() * 2);
+        for (Entry e : from) byBody.computeIfAbsent(bodyKey(e.member()), k -> new ArrayDeque<>()).add(e);
+
+        for (Entry t : to) {
+            ArrayDeque<Entry> bucket = byBody.get(bodyKey(t.member()));
+            if (bucket == null || bucket.isEmpty()) continue;
+            Entry best = null;
+            int bestAffinity = -1;
+            for (Entry f : bucket) {
+                int a = affinity(f.member(), t.member());
+                if (a > bestAffinity) { best = f; bestAffinity = a; }
+            }
+            bucket.remove(best);
+            paired.add(best);
+            paired.add(t);
+            out.add(new Move(best, t, 100));
+        }
+    }
+
+    private static long bodyKey(Member m) {
+        return m.bodyHash() * 31 + m.kind().ordinal();
+    }
+
+    // 2 = same name, 1 = same type, 3 = both (a signature change), 0 = neither
+    private static int affinity(Member a, Member b) {
+        return (a.name().equals(b.name()) ? 2 : 0) + (a.type().equals(b.type()) ? 1 : 0);
+    }
+
+    // ---------- similar bodies ----------
+
+    private record Candidate(Entry from, Entry to, int similarity, int affinity) {}
+
+    private static void similar(List<Entry> from, List<Entry> to, Set<Entry> paired, List<Move> out) {
+        Map<Long, List<Entry>> bands = new HashMap<>();
+        for (Entry f : from) {
+            if (paired.contains(f)) continue;
+            int[] s = f.member().sketch();
+            for (int b = 0; b < BANDS; b++) bands.computeIfAbsent(bandKey(s, b), k -> new ArrayList<>()).add(f);
+        }
+        if (bands.isEmpty()) return;
+
+        List<Candidate> found = new ArrayList<>();
+        Set<Entry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Entry t : to) {
+            if (paired.contains(t)) continue;
+            seen.clear();
+            int[] s = t.member().sketch();
+            for (int b = 0; b < BANDS; b++) {
+                List<Entry> bucket = bands.get(bandKey(s, b));
+                if (bucket == null || bucket.size() > MAX_BUCKET) continue;
+                for (Entry f : bucket) {
+                    if (!seen.add(f) || f.member().kind() != t.member().kind()) continue;
+                    int aff = affinity(f.member(), t.member());
+                    if (aff == 0 || !comparableSize(f.member(), t.member())) continue;
+                    int sim = similarity(f.member().sketch(), s);
+                    if (sim >= MIN_SIMILARITY) found.add(new Candidate(f, t, sim, aff));
+                }
+            }
+        }
+
+        found.sort((a, b) -> a.similarity() != b.similarity()
+                ? Integer.compare(b.similarity(), a.similarity())
+                : Integer.compare(b.affinity(), a.affinity()));
+        for (Candidate c : found) {
+            if (paired.contains(c.from()) || paired.contains(c.to())) continue;
+            paired.add(c.from());
+            paired.add(c.to());
+            // an estimate of 100 does not make the bodies identical (the exact pass said they are not)
+            out.add(new Move(c.from(), c.to(), Math.min(c.similarity(), 99)));
+        }
+    }
+
+    private static long bandKey(int[] sketch, int band) {
+        int i = band * ROWS;
+        return ((long) sketch[i] << 32 | (sketch[i + 1] & 0xffffffffL)) * 31 + band;
+    }
+
+    private static boolean comparableSize(Member a, Member b) {
+        int x = a.bodyTokens(), y = b.bodyTokens();
+        return Math.min(x, y) * 2 >= Math.max(x, y);
+    }
+
+    // share of equal sketch slots, in percent
+    private static int similarity(int[] a, int[] b) {
+        int eq = 0;
+        for (int i = 0; i < a.length; i++) if (a[i] == b[i]) eq++;
+        return eq * 100 / a.length;
+    }
+}
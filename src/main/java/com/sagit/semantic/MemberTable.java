@@ -0,0 +1,276 @@
+package com.sagit.semantic;
+
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.TokenRange;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.AnnotationDeclaration;
+import com.github.javaparser.ast.body.AnnotationMemberDeclaration;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.CompactConstructorDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.EnumConstantDeclaration;
+import com.github.javaparser.ast.body.EnumDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.RecordDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.sagit.cache.BlobKeyedCache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Declared members of one Java file: (kind, fully qualified type, signature, structural hash).
+ *
+ * The hash covers the member's tokens with whitespace and comments dropped, so reformatting or
+ * re-commenting does not count as a change; for a type it covers the header up to '{' (its
+ * members are entries of their own). Members of local and anonymous classes are not listed.
+ * Methods and constructors also carry their body alone: an exact hash and a MinHash sketch of
+ * token 4-grams, which let {@link MemberDiff} pair moved/renamed members across files.
+ * Tables are cached per blob id like Stats, so comparing two versions is a hash join.
+ */
+public final class MemberTable {
+
+    /** Bump whenever extraction can produce a different table for the same source (invalidates caches). */
+    public static final int VERSION = 2;
+
+    /** MinHash functions per body sketch. */
+    public static final int SKETCH = 16;
+    private static final int SHINGLE = 4;
+
+    public enum Kind { TYPE, FIELD, CONSTRUCTOR, METHOD }
+
+    /**
+     * One declared member. {@code bodyTokens}, {@code bodyHash} and {@code sketch} describe a
+     * method/constructor body (0, 0, null for other members and bodiless declarations).
+     */
+    public record Member(Kind kind, String type, String signature, long hash,
+                         int bodyTokens, long bodyHash, int[] sketch) {
+        public Member(Kind kind, String type, String signature, long hash) {
+            this(kind, type, signature, hash, 0, 0L, null);
+        }
+
+        /** Simple name: the signature up to '(' for callables. */
+        public String name() {
+            int p = signature.indexOf('(');
+            return p < 0 ? signature : signature.substring(0, p);
+        }
+
+        /** Identity across versions: same kind, type and signature. */
+        public String key() { return kind.ordinal() + type + '#' + signature; }
+
+        public String display() { return kind == Kind.TYPE ? type : type + '#' + signature; }
+    }
+
+    public static final MemberTable EMPTY = new MemberTable(List.of());
+
+    public final List<Member> members;
+
+    public MemberTable(List<Member> members) {
+        this.members = Collections.unmodifiableList(members);
+    }
+
+    /** Members keyed by {@link Member#key()}. */
+    public Map<String, Member> byKey() {
+        Map<String, Member> m = new HashMap<>(members.size() * 2);
+        for (Member x : members) m.put(x.key(), x);
+        return m;
+    }
+
+    /** Parse (as {@link JavaSemanticAnalyzer#parse} does) and extract; unparseable sources yield an empty table. */
+    public static MemberTable extract(String source) {
+        CompilationUnit cu = JavaSemanticAnalyzer.parse(source);
+        return cu == null ? EMPTY : of(cu);
+    }
+
+    public static MemberTable of(CompilationUnit cu) {
+        List<Member> out = new ArrayList<>();
+        String pkg = cu.getPackageDeclaration().map(p -> p.getNameAsString() + ".").orElse("");
+        for (TypeDeclaration<?> td : cu.getTypes()) type(td, pkg + td.getNameAsString(), out);
+        return new MemberTable(out);
+    }
+
+    private static void type(TypeDeclaration<?> td, String fq, List<Member> out) {
+        out.add(new Member(Kind.TYPE, fq, typeKind(td), headerHash(td)));
+        if (td instanceof EnumDeclaration ed) {
+            for (EnumConstantDeclaration c : ed.getEntries()) {
+                out.add(new Member(Kind.FIELD, fq, c.getNameAsString(), hash(c)));
+            }
+        }
+        if (td instanceof RecordDeclaration rd) {
+            for (Parameter p : rd.getParameters()) {
+                out.add(new Member(Kind.FIELD, fq, p.getNameAsString(), hash(p)));
+            }
+        }
+        for (BodyDeclaration<?> m : td.getMembers()) {
+            if (m instanceof TypeDeclaration<?> nested) {
+                type(nested, fq + "." + nested.getNameAsString(), out);
+            } else if (m instanceof MethodDeclaration md) {
+                out.add(callable(Kind.METHOD, fq, signature(md.getNameAsString(), md), md, md.getBody().orElse(null)));
+            } else if (m instanceof ConstructorDeclaration cd) {
+                out.add(callable(Kind.CONSTRUCTOR, fq, signature("<init>", cd), cd, cd.getBody()));
+            } else if (m instanceof CompactConstructorDeclaration cc) {
+                out.add(callable(Kind.CONSTRUCTOR, fq, "<init>(compact)", cc, cc.getBody()));
+            } else if (m instanceof AnnotationMemberDeclaration am) {
+                out.add(new Member(Kind.METHOD, fq, am.getNameAsString() + "()", hash(am)));
+            } else if (m instanceof FieldDeclaration fd) {
+                // `int a, b;` declares two members sharing one declaration hash
+                long h = hash(fd);
+                for (VariableDeclarator v : fd.getVariables()) {
+                    out.add(new Member(Kind.FIELD, fq, v.getNameAsString(), h));
+                }
+            }
+            // initializer blocks have no identity; they show up in the type's members only through their effects
+        }
+    }
+
+    private static Member callable(Kind kind, String fq, String sig, Node decl, Node body) {
+        long h = hash(decl);
+        if (body == null || body.getTokenRange().isEmpty()) return new Member(kind, fq, sig, h);
+        List<String> tokens = new ArrayList<>();
+        for (JavaToken t : body.getTokenRange().get()) {
+            if (!t.getCategory().isWhitespaceOrComment()) tokens.add(t.getText());
+        }
+        return new Member(kind, fq, sig, h, tokens.size(), fnv(tokens, 0, tokens.size()), sketch(tokens));
+    }
+
+    private static String typeKind(TypeDeclaration<?> td) {
+        if (td instanceof ClassOrInterfaceDeclaration c) return c.isInterface() ? "interface" : "class";
+        if (td instanceof EnumDeclaration) return "enum";
+        if (td instanceof RecordDeclaration) return "record";
+        if (td instanceof AnnotationDeclaration) return "@interface";
+        return "type";
+    }
+
+    private static String signature(String name, CallableDeclaration<?> cd) {
+        StringJoiner j = new StringJoiner(",", name + "(", ")");
+        for (Parameter p : cd.getParameters()) j.add(p.getType().asString() + (p.isVarArgs() ? "..." : ""));
+        return j.toString();
+    }
+
+    // ---------- structural hash ----------
+
+    private static long hash(Node n) {
+        return n.getTokenRange().map(r -> hashTokens(r, false)).orElse(0L);
+    }
+
+    private static long headerHash(TypeDeclaration<?> td) {
+        return td.getTokenRange().map(r -> hashTokens(r, true)).orElse(0L);
+    }
+
+    // 64-bit FNV-1a over token texts, skipping whitespace and comments
+    private static long hashTokens(TokenRange range, boolean headerOnly) {
+        long h = FNV_BASIS;
+        for (JavaToken t : range) {
+            if (t.getCategory().isWhitespaceOrComment()) continue;
+            if (headerOnly && t.getText().equals("{")) break;
+            h = fnv(h, t.getText());
+        }
+        return h;
+    }
+
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+
+    private static long fnv(long h, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= 0x1f; // token boundary
+        return h * 0x100000001b3L;
+    }
+
+    private static long fnv(List<String> tokens, int from, int to) {
+        long h = FNV_BASIS;
+        for (int i = from; i < to; i++) h = fnv(h, tokens.get(i));
+        return h;
+    }
+
+    // MinHash over token 4-grams: the share of equal slots between two sketches estimates their Jaccard similarity
+    private static int[] sketch(List<String> tokens) {
+        int[] mins = new int[SKETCH];
+        Arrays.fill(mins, Integer.MAX_VALUE);
+        int last = Math.max(1, tokens.size() - SHINGLE + 1);
+        for (int s = 0; s < last; s++) {
+            long x = fnv(tokens, s, Math.min(tokens.size(), s + SHINGLE));
+            for (int i = 0; i < SKETCH; i++) {
+                int v = (int) (mix(x + 0x9e3779b97f4a7c15L * (i + 1)) >>> 33);
+                if (v < mins[i]) mins[i] = v;
+            }
+        }
+        return mins;
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // ---------- cache encoding ----------
+
+    /** Type names are written once per table; members refer to them by index. */
+    public static final BlobKeyedCache.Codec<MemberTable> CODEC = new BlobKeyedCache.Codec<>() {
+        @Override public void write(DataOutput out, MemberTable t) throws IOException {
+            Map<String, Integer> types = new HashMap<>();
+            List<String> order = new ArrayList<>();
+            for (Member m : t.members) {
+                if (types.putIfAbsent(m.type(), order.size()) == null) order.add(m.type());
+            }
+            BlobKeyedCache.writeVarint(out, order.size());
+            for (String s : order) out.writeUTF(s);
+            BlobKeyedCache.writeVarint(out, t.members.size());
+            for (Member m : t.members) {
+                out.writeByte(m.kind().ordinal());
+                BlobKeyedCache.writeVarint(out, types.get(m.type()));
+                out.writeUTF(m.signature());
+                out.writeLong(m.hash());
+                BlobKeyedCache.writeVarint(out, m.bodyTokens());
+                if (m.bodyTokens() > 0) {
+                    out.writeLong(m.bodyHash());
+                    for (int v : m.sketch()) out.writeInt(v);
+                }
+            }
+        }
+
+        @Override public MemberTable read(DataInput in) throws IOException {
+            int nt = BlobKeyedCache.readVarint(in);
+            String[] types = new String[nt];
+            for (int i = 0; i < nt; i++) types[i] = in.readUTF();
+            int n = BlobKeyedCache.readVarint(in);
+            Kind[] kinds = Kind.values();
+            List<Member> members = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int k = in.readUnsignedByte();
+                int type = BlobKeyedCache.readVarint(in);
+                if (k >= kinds.length || type >= nt) throw new IOException("bad member table");
+                String sig = in.readUTF();
+                long hash = in.readLong();
+                int bodyTokens = BlobKeyedCache.readVarint(in);
+                if (bodyTokens == 0) {
+                    members.add(new Member(kinds[k], types[type], sig, hash));
+                    continue;
+                }
+                long bodyHash = in.readLong();
+                int[] sketch = new int[SKETCH];
+                for (int j = 0; j < SKETCH; j++) sketch[j] = in.readInt();
+                members.add(new Member(kinds[k], types[type], sig, hash, bodyTokens, bodyHash, sketch));
+            }
+            return new MemberTable(members);
+        }
+    };
+}
@@ -0,0 +1,222 @@
+package com.sagit.semantic;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Token-level extraction of {@link TypeReferences}: no AST, one pass over the source.
+ *
+ * A mention is any identifier starting with an upper-case letter that does not follow a
+ * '.', plus dotted chains like `java.util.List` whose leading segments are lower-case (a
+ * package). This over-approximates (type variables, constants, `var.Field`) but never misses
+ * a conventionally named type; names that match none of the repo's types are dropped when
+ * the graph is resolved. Malformed input just ends the scan early.
+ */
+final class ReferenceScanner {
+
+    private static final int EOF = 0, IDENT = 1, PUNCT = 2, LITERAL = 3;
+
+    private final String src;
+    private final int len;
+
+    // current token
+    private int kind;
+    private int start, end;
+    private char punct;
+    private int prevKind;
+    private char prevPunct;
+
+    private String pkg = "";
+    private final List<String> declared = new ArrayList<>();
+    private final Set<String> imports = new LinkedHashSet<>();
+    private final Set<String> wildcards = new LinkedHashSet<>();
+    private final Set<String> names = new LinkedHashSet<>();
+
+    private ReferenceScanner(String src) {
+        this.src = src;
+        this.len = src.length();
+    }
+
+    static TypeReferences scan(String source) {
+        ReferenceScanner s = new ReferenceScanner(source);
+        s.compilationUnit();
+        return new TypeReferences(s.pkg, s.declared, new ArrayList<>(s.imports), new ArrayList<>(s.wildcards),
+                new ArrayList<>(s.names));
+    }
+
+    private void compilationUnit() {
+        int depth = 0;
+        List<String> chain = new ArrayList<>(); // identifiers of the current a.b.C chain
+        next();
+        while (kind != EOF) {
+            if (kind == PUNCT) {
+                if (punct == '{') depth++;
+                else if (punct == '}' && depth > 0) depth--;
+                if (punct != '.') chain.clear();
+                next();
+                continue;
+            }
+            if (kind != IDENT) { chain.clear(); next(); continue; }
+
+            boolean afterDot = prevKind == PUNCT && prevPunct == '.';
+            if (depth == 0 && !afterDot && isIdent("package")) { pkg = qualifiedName(); continue; }
+            if (depth == 0 && !afterDot && isIdent("import")) { importDecl(); continue; }
+            if (!afterDot && isTypeKeyword()) {
+                next();
+                if (kind == IDENT && depth == 0) declared.add(text());
+                chain.clear();
+                continue;
+            }
+
+            String id = text();
+            if (!afterDot) {
+                chain.clear();
+                chain.add(id);
+                if (Character.isUpperCase(id.charAt(0))) names.add(id);
+            } else if (!chain.isEmpty()) {
+                chain.add(id);
+                if (Character.isUpperCase(id.charAt(0))) {
+                    // first capitalized segment after a lower-case prefix: a qualified type name
+                    if (!Character.isUpperCase(chain.get(0).charAt(0))) names.add(String.join(".", chain));
+                    chain.clear();
+                }
+            }
+            next();
+        }
+    }
+
+    private void importDecl() {
+        next();
+        boolean isStatic = isIdent("static");
+        if (isStatic) next();
+        List<String> parts = new ArrayList<>();
+        boolean star = false;
+        while (kind != EOF && !isPunct(';')) {
+            if (kind == IDENT) parts.add(text());
+            else if (isPunct('*')) star = true;
+            next();
+        }
+        next();
+        if (parts.isEmpty()) return;
+        String name = String.join(".", parts);
+        if (star) {
+            if (isStatic) imports.add(name);     // import static a.b.C.*  -> type a.b.C
+            else wildcards.add(name);
+        } else if (isStatic) {
+            if (parts.size() > 1) imports.add(name.substring(0, name.lastIndexOf('.'))); // drop the member
+        } else {
+            imports.add(name);
+        }
+    }
+
+    // at `package`: the dotted name through ';'
+    private String qualifiedName() {
+        next();
+        StringBuilder sb = new StringBuilder();
+        while (kind != EOF && !isPunct(';')) {
+            if (kind == IDENT) sb.append(text());
+            else if (isPunct('.')) sb.append('.');
+            next();
+        }
+        next();
+        return sb.toString();
+    }
+
+    private boolean isTypeKeyword() {
+        if (isIdent("class") || isIdent("interface") || isIdent("enum")) return true;
+        if (!isIdent("record")) return false;
+        int p = skipTrivia(end);
+        return p < len && Character.isJavaIdentifierStart(src.charAt(p));
+    }
+
+    private boolean isIdent(String word) {
+        return kind == IDENT && end - start == word.length() && src.startsWith(word, start);
+    }
+
+    private boolean isPunct(char c) {
+        return kind == PUNCT && punct == c;
+    }
+
+    private String text() {
+        return src.substring(start, end);
+    }
+
+    // ---------- lexer ----------
+
+    private void next() {
+        prevKind = kind;
+        prevPunct = punct;
+        int p = skipTrivia(end);
+        if (p >= len) { kind = EOF; start = end = len; return; }
+        char c = src.charAt(p);
+        start = p;
+        if (Character.isJavaIdentifierStart(c)) {
+            kind = IDENT;
+            end = skipIdent(p);
+        } else if (c == '"') {
+            kind = LITERAL;
+            end = src.startsWith("\"\"\"", p) ? skipTextBlock(p + 3) : skipQuoted(p + 1, '"');
+        } else if (c == '\'') {
+            kind = LITERAL;
+            end = skipQuoted(p + 1, '\'');
+        } else if (Character.isDigit(c)) {
+            kind = LITERAL;
+            int q = p + 1;
+            while (q < len && (Character.isLetterOrDigit(src.charAt(q)) || src.charAt(q) == '.' || src.charAt(q) == '_')) q++;
+            end = q;
+        } else {
+            kind = PUNCT;
+            punct = c;
+            end = p + 1;
+        }
+    }
+
+    private int skipIdent(int p) {
+        while (p < len && Character.isJavaIdentifierPart(src.charAt(p))) p++;
+        return p;
+    }
+
+    private int skipTrivia(int p) {
+        while (p < len) {
+            char c = src.charAt(p);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') { p++; continue; }
+            if (c == '/' && p + 1 < len) {
+                char d = src.charAt(p + 1);
+                if (d == '/') {
+                    int nl = src.indexOf('\n', p + 2);
+                    p = nl < 0 ? len : nl + 1;
+                    continue;
+                }
+                if (d == '*') {
+                    int close = src.indexOf("*/", p + 2);
+                    p = close < 0 ? len : close + 2;
+                    continue;
+                }
+            }
+            return p;
+        }
+        return p;
+    }
+
+    private int skipQuoted(int p, char quote) {
+        while (p < len) {
+            char c = src.charAt(p);
+            if (c == '\\') { p += 2; continue; }
+            if (c == quote || c == '\n') return p + 1;
+            p++;
+        }
+        return len;
+    }
+
+    private int skipTextBlock(int p) {
+        while (p < len) {
+            char c = src.charAt(p);
+            if (c == '\\') { p += 2; continue; }
+            if (c == '"' && src.startsWith("\"\"\"", p)) return p + 3;
+            p++;
+        }
+        return len;
+    }
+}
@@ -0,0 +1,180 @@
+package com.sagit.semantic;
+
+import com.sagit.cache.BlobKeyedCache;
+import com.sagit.config.Config;
+import com.sagit.git.GitService;
+import com.sagit.git.RenameDetection;
+import com.sagit.semantic.JavaSemanticAnalyzer.Stats;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summary of one tree-to-tree change (HEAD tree -> index tree for a commit in progress).
+ *
+ * The three hooks of a single `git commit` look at the same change, so the first one
+ * persists its result in .sagit/cache/staged.bin keyed by (old tree, new tree); the
+ * others reuse it. post-commit hits when the new commit's parent tree and tree equal
+ * that key. Any change to the index gives a different index tree id, hence a miss.
+ * Renames use the hook rename mode (config 'hookRenameMode'), which is part of the key.
+ */
+public final class StagedAnalysis {
+
+    private static final int MAGIC = 0x53475331; // "SGS1"
+    private static final int FORMAT = 2;
+
+    public final ObjectId oldTree;        // zeroId for the first commit
+    public final ObjectId newTree;
+    private final int[] counts;           // by DiffEntry.ChangeType ordinal
+    public final List<String> paths;      // changed paths (old path for deletes)
+    public final Stats javaDelta;
+    public final boolean reused;          // served from staged.bin
+
+    private StagedAnalysis(ObjectId oldTree, ObjectId newTree, int[] counts, List<String> paths,
+                           Stats javaDelta, boolean reused) {
+        this.oldTree = oldTree;
+        this.newTree = newTree;
+        this.counts = counts;
+        this.paths = Collections.unmodifiableList(paths);
+        this.javaDelta = javaDelta;
+        this.reused = reused;
+    }
+
+    public int count(DiffEntry.ChangeType type) {
+        return counts[type.ordinal()];
+    }
+
+    /** Staged change: HEAD tree -> current index (honors the per-request index file). */
+    public static StagedAnalysis ofIndex(GitService gs, Config cfg) throws IOException {
+        ObjectId headTree = gs.repo().resolve("HEAD^{tree}");
+        DirCache index = gs.readIndex();
+        // the key is the tree id the index will be committed as; nothing is written to the object store
+        return of(gs, cfg, headTree, gs.indexTreeId(index), index);
+    }
+
+    /** Change between two trees, reusing the persisted result when the key matches. */
+    public static StagedAnalysis of(GitService gs, Config cfg, ObjectId oldTree, ObjectId newTree) throws IOException {
+        return of(gs, cfg, oldTree, newTree, null);
+    }
+
+    // index != null: newTree is that index's (unwritten) tree id, so diff the DirCache itself
+    private static StagedAnalysis of(GitService gs, Config cfg, ObjectId oldTree, ObjectId newTree, DirCache index)
+            throws IOException {
+        ObjectId a = oldTree == null ? ObjectId.zeroId() : oldTree.copy();
+        ObjectId b = newTree.copy();
+        RenameDetection.Options ro = RenameDetection.Options.hook(cfg);
+        Path file = cacheFile(gs.workTree());
+
+        StagedAnalysis hit = read(file, a, b, ro.mode());
+        if (hit != null) return hit;
+
+        StagedAnalysis r;
+        try (BlobAnalyzer analyzer = BlobAnalyzer.openForHook(gs, cfg)) {
+            r = compute(gs, analyzer, ro, a, b, index, cfg.jobs);
+        }
+        if (cfg.cacheMaxBytes > 0) {
+            try { r.write(file, ro.mode()); } catch (IOException ignored) { /* reuse is best-effort */ }
+        }
+        return r;
+    }
+
+    /**
+     * Same summary as post-commit gets, computed without touching staged.bin: for history
+     * backfill, where many commits share one (hook-mode) analyzer and run on worker threads.
+     */
+    public static StagedAnalysis compute(GitService gs, BlobAnalyzer analyzer, Config cfg,
+                                         ObjectId oldTree, ObjectId newTree, int jobs) throws IOException {
+        ObjectId a = oldTree == null ? ObjectId.zeroId() : oldTree;
+        return compute(gs, analyzer, RenameDetection.Options.hook(cfg), a, newTree, null, jobs);
+    }
+
+    private static StagedAnalysis compute(GitService gs, BlobAnalyzer analyzer, RenameDetection.Options ro,
+                                          ObjectId a, ObjectId b, DirCache index, int jobs) throws IOException {
+        List<DiffEntry> diffs = (index != null ? gs.scanIndex(a, index, ro) : gs.scanBetween(a, b, ro)).entries();
+        int[] counts = new int[DiffEntry.ChangeType.values().length];
+        List<String> paths = new ArrayList<>(diffs.size());
+        List<DiffEntry> javaEntries = new ArrayList<>();
+        for (DiffEntry de : diffs) {
+            counts[de.getChangeType().ordinal()]++;
+            String path = de.getChangeType() == DiffEntry.ChangeType.DELETE ? de.getOldPath() : de.getNewPath();
+            if (path == null) continue;
+            paths.add(path);
+            if (path.endsWith(".java")) javaEntries.add(de);
+        }
+        Stats total = AnalysisPipeline.run(gs, analyzer, javaEntries, jobs).total();
+        return new StagedAnalysis(a, b, counts, paths, total, false);
+    }
+
+    public static Path cacheFile(Path root) {
+        return root.resolve(".sagit/cache/staged.bin");
+    }
+
+    // ---------- persistence ----------
+
+    private static StagedAnalysis read(Path file, ObjectId a, ObjectId b, RenameDetection.Mode renames) {
+        if (!Files.exists(file)) return null;
+        try (DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || in.readInt() != JavaSemanticAnalyzer.VERSION) return null;
+            byte[] raw = new byte[20];
+            in.readFully(raw);
+            if (!a.equals(ObjectId.fromRaw(raw))) return null;
+            in.readFully(raw);
+            if (!b.equals(ObjectId.fromRaw(raw))) return null;
+            if (in.readUnsignedByte() != renames.ordinal()) return null;
+
+            int[] counts = new int[DiffEntry.ChangeType.values().length];
+            int n = BlobKeyedCache.readVarint(in);
+            for (int i = 0; i < n; i++) {
+                int c = BlobKeyedCache.readVarint(in);
+                if (i < counts.length) counts[i] = c;
+            }
+            int np = BlobKeyedCache.readVarint(in);
+            List<String> paths = new ArrayList<>(np);
+            for (int i = 0; i < np; i++) paths.add(in.readUTF());
+            Stats s = Stats.CODEC.read(in);
+            return new StagedAnalysis(a, b, counts, paths, s, true);
+        } catch (IOException | RuntimeException e) {
+            return null; // unreadable: recompute
+        }
+    }
+
+    private void write(Path file, RenameDetection.Mode renames) throws IOException {
+        ByteArrayOutputStream bo = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bo);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeInt(JavaSemanticAnalyzer.VERSION);
+        byte[] raw = new byte[20];
+        oldTree.copyRawTo(raw, 0);
+        out.write(raw);
+        newTree.copyRawTo(raw, 0);
+        out.write(raw);
+        out.writeByte(renames.ordinal());
+        BlobKeyedCache.writeVarint(out, counts.length);
+        for (int c : counts) BlobKeyedCache.writeVarint(out, c);
+        BlobKeyedCache.writeVarint(out, paths.size());
+        for (String p : paths) out.writeUTF(p);
+        Stats.CODEC.write(out, javaDelta);
+        out.flush();
+
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, bo.toByteArray());
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
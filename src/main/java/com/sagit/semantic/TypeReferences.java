@@ -0,0 +1,74 @@
+package com.sagit.semantic;
+
+import com.sagit.cache.BlobKeyedCache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What one Java file declares and which type names it mentions, as a dependency graph needs
+ * them: package, top-level type names, single-type/static imports (their type part), on-demand
+ * import prefixes, and referenced names (simple, or qualified like "java.util.List").
+ *
+ * Extracted lexically by {@link ReferenceScanner} — names are not resolved here, so a mention
+ * is a candidate only; resolution against the repo's own types happens when the graph is built.
+ */
+public final class TypeReferences {
+
+    /** Bump whenever scanning can yield different references for the same source (invalidates caches). */
+    public static final int VERSION = 1;
+
+    public static final TypeReferences EMPTY = new TypeReferences("", List.of(), List.of(), List.of(), List.of());
+
+    public final String pkg;              // "" for the default package
+    public final List<String> declared;   // top-level simple names
+    public final List<String> imports;    // fully qualified types
+    public final List<String> wildcards;  // "a.b" for `import a.b.*;`
+    public final List<String> names;      // distinct mentions, simple or qualified
+
+    public TypeReferences(String pkg, List<String> declared, List<String> imports, List<String> wildcards,
+                          List<String> names) {
+        this.pkg = pkg;
+        this.declared = Collections.unmodifiableList(declared);
+        this.imports = Collections.unmodifiableList(imports);
+        this.wildcards = Collections.unmodifiableList(wildcards);
+        this.names = Collections.unmodifiableList(names);
+    }
+
+    public static TypeReferences scan(String source) {
+        return ReferenceScanner.scan(source);
+    }
+
+    /** Fully qualified name of a type declared in this file's package. */
+    public String qualify(String simpleName) {
+        return pkg.isEmpty() ? simpleName : pkg + "." + simpleName;
+    }
+
+    // ---------- cache encoding ----------
+
+    public static final BlobKeyedCache.Codec<TypeReferences> CODEC = new BlobKeyedCache.Codec<>() {
+        @Override public void write(DataOutput out, TypeReferences r) throws IOException {
+            out.writeUTF(r.pkg);
+            for (List<String> l : List.of(r.declared, r.imports, r.wildcards, r.names)) {
+                BlobKeyedCache.writeVarint(out, l.size());
+                for (String s : l) out.writeUTF(s);
+            }
+        }
+
+        @Override public TypeReferences read(DataInput in) throws IOException {
+            String pkg = in.readUTF();
+            List<List<String>> lists = new ArrayList<>(4);
+            for (int i = 0; i < 4; i++) {
+                int n = BlobKeyedCache.readVarint(in);
+                List<String> l = new ArrayList<>(n);
+                for (int j = 0; j < n; j++) l.add(in.readUTF());
+                lists.add(l);
+            }
+            return new TypeReferences(pkg, lists.get(0), lists.get(1), lists.get(2), lists.get(3));
+        }
+    };
+}
@@ -0,0 +1,496 @@
+package com.sagit.symbols;
+
+import com.sagit.semantic.TypeReferences;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reverse file-level dependency graph of the Java files of one commit: for each file, the files
+ * whose imports or type mentions resolve to a type it declares. Stored next to the symbol
+ * segments (deps-NNNNNN.bin, named in the MANIFEST) and memory-mapped like them.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header   magic "SGD1", format, nodes, edges, keys
+ * reverse  u32 offsets[nodes + 1], u32 dependents[edges]     (dependents of n: offsets[n]..offsets[n+1])
+ * forward  u32 offsets[nodes + 1], u32 dependencies[edges]   (the same edges, from the other end)
+ * keys     u64 (name hash << 32 | node)[keys], sorted: every name a node's references could resolve to
+ * nodes    u32 offset per node (nodes sorted by UTF-8 path bytes), then
+ *          [blob id (20)][u16 len][utf-8 path][u16 n][declared type (writeUTF)]*[u32 len][references]
+ * </pre>
+ * Names resolve against the types the files themselves declare: single-type and static imports
+ * (trimmed segment by segment for nested types), qualified mentions, then simple names in the
+ * file's own package and its on-demand imports (trimmed the same way, for {@code import a.Outer.*}). Anything else (JDK, libraries) is not a node.
+ * Resolution over-approximates rather than misses, which is the safe side for test selection.
+ *
+ * Each node keeps its references ({@link TypeReferences#CODEC}) and forward edges, so the graph
+ * of the next commit is derived from this one ({@link #update}) without reading unchanged blobs.
+ */
+public final class DependencyGraph {
+
+    private static final int MAGIC = 0x53474431; // "SGD1"
+    private static final int FORMAT = 1;
+    private static final int HEADER = 20;
+
+    /** A file reached from the changed ones, {@code depth} dependency hops away (0 = changed itself). */
+    public record Reached(String path, int depth) {}
+
+    private final ByteBuffer buf;
+    private final int nodes, edges, keys;
+    private final int reverse, dependents, forward, dependencies, keyTable, pathTable;
+
+    private DependencyGraph(ByteBuffer buf) {
+        this.buf = buf;
+        nodes = buf.getInt(8);
+        edges = buf.getInt(12);
+        keys = buf.getInt(16);
+        reverse = HEADER;
+        dependents = reverse + 4 * (nodes + 1);
+        forward = dependents + 4 * edges;
+        dependencies = forward + 4 * (nodes + 1);
+        keyTable = dependencies + 4 * edges;
+        pathTable = keyTable + 8 * keys;
+    }
+
+    static DependencyGraph open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (map.capacity() < HEADER || map.getInt(0) != MAGIC || map.getInt(4) != FORMAT) {
+                throw new IOException("not a dependency graph: " + file.getFileName());
+            }
+            return new DependencyGraph(map);
+        }
+    }
+
+    public int size() { return nodes; }
+
+    public int edges() { return edges; }
+
+    private int record(int n) { return buf.getInt(pathTable + 4 * n); }
+
+    public String path(int n) {
+        int at = record(n) + 20;
+        byte[] b = new byte[buf.getShort(at) & 0xffff];
+        buf.get(at + 2, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    public ObjectId blob(int n) {
+        byte[] id = new byte[20];
+        buf.get(record(n), id);
+        return ObjectId.fromRaw(id);
+    }
+
+    /** Node of a path, or -1. */
+    public int node(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = nodes - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = comparePath(mid, key);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private int comparePath(int n, byte[] key) {
+        int at = record(n) + 20;
+        int len = buf.getShort(at) & 0xffff;
+        int m = Math.min(len, key.length);
+        for (int j = 0; j < m; j++) {
+            int c = (buf.get(at + 2 + j) & 0xff) - (key[j] & 0xff);
+            if (c != 0) return c;
+        }
+        return Integer.compare(len, key.length);
+    }
+
+    /**
+     * Breadth-first over dependents from the given paths (unknown ones are ignored), up to
+     * {@code maxDepth} hops (negative = unbounded). Seeds come first, then files by distance.
+     */
+    public List<Reached> dependentsOf(Collection<String> paths, int maxDepth) {
+        int[] depth = new int[nodes];
+        Arrays.fill(depth, -1);
+        int[] queue = new int[nodes];
+        int head = 0, tail = 0;
+        for (String p : paths) {
+            int n = node(p);
+            if (n >= 0 && depth[n] < 0) { depth[n] = 0; queue[tail++] = n; }
+        }
+        while (head < tail) {
+            int n = queue[head++];
+            if (maxDepth >= 0 && depth[n] >= maxDepth) continue;
+            for (int e = buf.getInt(reverse + 4 * n), end = buf.getInt(reverse + 4 * (n + 1)); e < end; e++) {
+                int m = buf.getInt(dependents + 4 * e);
+                if (depth[m] < 0) { depth[m] = depth[n] + 1; queue[tail++] = m; }
+            }
+        }
+        List<Reached> out = new ArrayList<>(tail);
+        for (int i = 0; i < tail; i++) out.add(new Reached(path(queue[i]), depth[queue[i]]));
+        return out;
+    }
+
+    // ---------- node records ----------
+
+    private int declaredAt(int n) {
+        int at = record(n) + 20;
+        return at + 2 + (buf.getShort(at) & 0xffff);
+    }
+
+    // end of the declared names = start of [u32 len][references]
+    private int referencesAt(int n) {
+        int at = declaredAt(n);
+        int count = buf.getShort(at) & 0xffff;
+        at += 2;
+        for (int i = 0; i < count; i++) at += 2 + (buf.getShort(at) & 0xffff);
+        return at;
+    }
+
+    private byte[] recordBytes(int n) {
+        int from = record(n), at = referencesAt(n);
+        byte[] b = new byte[at + 4 + buf.getInt(at) - from];
+        buf.get(from, b);
+        return b;
+    }
+
+    /** Fully qualified top-level types the file of node {@code n} declares. */
+    List<String> declared(int n) throws IOException {
+        int at = declaredAt(n);
+        byte[] b = new byte[referencesAt(n) - at];
+        buf.get(at, b);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(b));
+        int count = in.readUnsignedShort();
+        List<String> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) out.add(in.readUTF());
+        return out;
+    }
+
+    TypeReferences references(int n) throws IOException {
+        int at = referencesAt(n);
+        byte[] b = new byte[buf.getInt(at)];
+        buf.get(at + 4, b);
+        return TypeReferences.CODEC.read(new DataInputStream(new ByteArrayInputStream(b)));
+    }
+
+    // ---------- building ----------
+
+    /** Resolve references between the given files and write their graph (a full build). */
+    static void write(Path file, List<String> paths, List<ObjectId> blobs, TypeReferences[] refs) throws IOException {
+        update(file, null, Set.of(), paths, blobs, refs);
+    }
+
+    /**
+     * Write the graph of a later commit, starting from {@code old}: {@code replaced} are the
+     * paths whose old version changed or went away, {@code paths}/{@code blobs}/{@code refs} the
+     * changed files as they are now. Only those files, and the ones with a reference that could
+     * name a type that appeared or disappeared, are resolved again; every other node keeps its
+     * record and edges, renumbered.
+     */
+    static void update(Path file, DependencyGraph old, Set<String> replaced, List<String> paths,
+                       List<ObjectId> blobs, TypeReferences[] refs) throws IOException {
+        List<Node> all = new ArrayList<>();
+        Map<String, List<String>> before = new HashMap<>(); // what the replaced paths used to declare
+        if (old != null) {
+            for (int o = 0; o < old.nodes; o++) {
+                String p = old.path(o);
+                if (replaced.contains(p)) before.put(p, old.declared(o));
+                else all.add(new Node(p, old, o));
+            }
+        }
+        // types whose set of declaring files changed: only those can change how a name resolves
+        Set<String> moved = new HashSet<>();
+        for (int i = 0; i < paths.size(); i++) {
+            Node n = new Node(paths.get(i), blobs.get(i), refs[i]);
+            all.add(n);
+            List<String> was = before.remove(n.path);
+            if (was == null) was = List.of();
+            for (String d : was) if (!n.declared.contains(d)) moved.add(d);
+            for (String d : n.declared) if (!was.contains(d)) moved.add(d);
+        }
+        for (List<String> was : before.values()) moved.addAll(was);
+
+        all.sort((a, b) -> Arrays.compareUnsigned(a.pathBytes, b.pathBytes));
+        int n = all.size();
+        int[] remap = new int[old == null ? 0 : old.nodes];
+        Arrays.fill(remap, -1);
+        Map<String, int[]> types = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Node x = all.get(i);
+            int o = x.old >= 0 || old == null ? x.old : old.node(x.path); // a changed file keeps its path
+            if (o >= 0) remap[o] = i;
+            for (String d : x.declared) types.merge(d, new int[]{i}, DependencyGraph::concat);
+        }
+        if (old != null) {
+            for (String t : moved) {
+                for (int o : old.keyed(t.hashCode())) if (remap[o] >= 0) all.get(remap[o]).dirty = true;
+            }
+        }
+
+        // forward edges: resolved again where needed, renumbered otherwise
+        Edges fwd = new Edges(n);
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            Node x = all.get(i);
+            if (x.refs != null || x.dirty) {
+                fwd.start(i);
+                resolve(x.refs != null ? x.refs : old.references(x.old), types, fwd);
+                x.deps = fwd.toArray();
+            } else {
+                x.deps = old.dependencies(x.old, remap);
+            }
+            total += x.deps.length;
+        }
+
+        // name keys: the old ones of kept nodes renumbered, scanned ones for changed nodes
+        Keys keyed = new Keys();
+        if (old != null) {
+            for (int e = 0; e < old.keys; e++) {
+                long v = old.buf.getLong(old.keyTable + 8 * e);
+                int to = remap[(int) v];
+                if (to >= 0 && all.get(to).refs == null) keyed.add((int) (v >>> 32), to);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            Node x = all.get(i);
+            if (x.refs == null) continue;
+            Set<String> names = new HashSet<>();
+            candidates(x.refs, names::add);
+            for (String name : names) keyed.add(name.hashCode(), i);
+        }
+
+        byte[][] records = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            Node x = all.get(i);
+            records[i] = x.refs != null ? x.encode() : old.recordBytes(x.old);
+        }
+        writeFile(file, all, total, keyed.sorted(), records);
+    }
+
+    private static void writeFile(Path file, List<Node> all, int total, long[] keyed, byte[][] records)
+            throws IOException {
+        int n = all.size();
+        int[] offsets = new int[n + 1];
+        for (Node x : all) for (int t : x.deps) offsets[t + 1]++;
+        for (int i = 0; i < n; i++) offsets[i + 1] += offsets[i];
+        int[] fill = Arrays.copyOf(offsets, n);
+        int[] reverse = new int[total];
+        for (int src = 0; src < n; src++) for (int t : all.get(src).deps) reverse[fill[t]++] = src;
+
+        long size = HEADER + 8L * (n + 1) + 8L * total + 8L * keyed.length + 4L * n;
+        for (byte[] r : records) size += r.length;
+        if (size > Integer.MAX_VALUE) throw new IOException("dependency graph too large");
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC).putInt(FORMAT).putInt(n).putInt(total).putInt(keyed.length);
+        for (int o : offsets) out.putInt(o);
+        for (int d : reverse) out.putInt(d);
+        int at = 0;
+        for (Node x : all) {
+            out.putInt(at);
+            at += x.deps.length;
+        }
+        out.putInt(at);
+        for (Node x : all) for (int d : x.deps) out.putInt(d);
+        for (long v : keyed) out.putLong(v);
+        at = out.position() + 4 * n;
+        for (byte[] r : records) {
+            out.putInt(at);
+            at += r.length;
+        }
+        for (byte[] r : records) out.put(r);
+        out.flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) ch.write(out);
+            ch.force(false);
+        }
+    }
+
+    // one file of a graph being written: changed (refs scanned) or kept from the old graph
+    private static final class Node {
+        final String path;
+        final byte[] pathBytes;
+        final List<String> declared;
+        final ObjectId blob;
+        final TypeReferences refs; // null when kept
+        final int old;             // node in the old graph, -1 when changed
+        boolean dirty;             // kept, but a name it mentions may resolve differently now
+        int[] deps;
+
+        Node(String path, ObjectId blob, TypeReferences refs) throws IOException {
+            this.path = path;
+            this.pathBytes = path.getBytes(StandardCharsets.UTF_8);
+            if (pathBytes.length > 0xffff) throw new IOException("path too long: " + path);
+            this.blob = blob;
+            this.refs = refs;
+            this.old = -1;
+            List<String> d = new ArrayList<>(refs.declared.size());
+            for (String s : refs.declared) d.add(refs.qualify(s));
+            this.declared = d;
+        }
+
+        Node(String path, DependencyGraph graph, int old) throws IOException {
+            this.path = path;
+            this.pathBytes = path.getBytes(StandardCharsets.UTF_8);
+            this.blob = null;
+            this.refs = null;
+            this.old = old;
+            this.declared = graph.declared(old);
+        }
+
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream r = new ByteArrayOutputStream();
+            TypeReferences.CODEC.write(new DataOutputStream(r), refs);
+            ByteArrayOutputStream b = new ByteArrayOutputStream(64 + pathBytes.length + r.size());
+            DataOutputStream out = new DataOutputStream(b);
+            blob.copyRawTo(out);
+            out.writeShort(pathBytes.length);
+            out.write(pathBytes);
+            out.writeShort(declared.size());
+            for (String d : declared) out.writeUTF(d);
+            out.writeInt(r.size());
+            r.writeTo(out);
+            out.flush();
+            return b.toByteArray();
+        }
+    }
+
+    private static long key(int hash, int node) {
+        return (long) hash << 32 | (node & 0xffffffffL);
+    }
+
+    // (hash, node) pairs, sorted and deduplicated on the way out
+    private static final class Keys {
+        private long[] acc = new long[64];
+        private int count;
+
+        void add(int hash, int node) {
+            if (count == acc.length) acc = Arrays.copyOf(acc, count * 2);
+            acc[count++] = key(hash, node);
+        }
+
+        long[] sorted() {
+            long[] out = Arrays.copyOf(acc, count);
+            Arrays.sort(out);
+            int c = 0;
+            for (int i = 0; i < out.length; i++) if (c == 0 || out[i] != out[c - 1]) out[c++] = out[i];
+            return Arrays.copyOf(out, c);
+        }
+    }
+
+    // nodes with a reference that could name a type whose String hash is h (collisions only add nodes)
+    private int[] keyed(int h) {
+        long lo = key(h, 0);
+        int a = 0, b = keys;
+        while (a < b) {
+            int mid = (a + b) >>> 1;
+            if (buf.getLong(keyTable + 8 * mid) < lo) a = mid + 1;
+            else b = mid;
+        }
+        int end = a;
+        while (end < keys && (int) (buf.getLong(keyTable + 8 * end) >>> 32) == h) end++;
+        int[] out = new int[end - a];
+        for (int i = a; i < end; i++) out[i - a] = (int) buf.getLong(keyTable + 8 * i);
+        return out;
+    }
+
+    private int[] dependencies(int n, int[] remap) {
+        int from = buf.getInt(forward + 4 * n), to = buf.getInt(forward + 4 * (n + 1));
+        int[] out = new int[to - from];
+        int c = 0;
+        for (int e = from; e < to; e++) {
+            int t = remap[buf.getInt(dependencies + 4 * e)];
+            if (t >= 0) out[c++] = t;
+        }
+        return c == out.length ? out : Arrays.copyOf(out, c);
+    }
+
+    // targets of one node, deduplicated with a stamp per target
+    private static final class Edges {
+        private final int[] stamp;
+        private int[] acc = new int[16];
+        private int self, count;
+
+        Edges(int nodes) { stamp = new int[nodes]; }
+
+        void start(int node) { self = node; count = 0; }
+
+        void add(int[] nodes) {
+            for (int t : nodes) {
+                if (t == self || stamp[t] == self + 1) continue;
+                stamp[t] = self + 1;
+                if (count == acc.length) acc = Arrays.copyOf(acc, count * 2);
+                acc[count++] = t;
+            }
+        }
+
+        int[] toArray() { return Arrays.copyOf(acc, count); }
+    }
+
+    private static void resolve(TypeReferences r, Map<String, int[]> types, Edges out) {
+        for (String imp : r.imports) qualified(imp, types, out);
+        for (String name : r.names) {
+            if (name.indexOf('.') >= 0) { qualified(name, types, out); continue; }
+            int[] t = types.get(r.qualify(name));
+            if (t != null) out.add(t);
+            // `import a.Outer.*;` brings in a.Outer.Inner, which resolves to its file through a.Outer
+            for (String w : r.wildcards) qualified(w + "." + name, types, out);
+        }
+    }
+
+    // every name resolve() may look up for these references, whatever types exist
+    private static void candidates(TypeReferences r, Consumer<String> out) {
+        for (String imp : r.imports) prefixes(imp, out);
+        for (String name : r.names) {
+            if (name.indexOf('.') >= 0) { prefixes(name, out); continue; }
+            out.accept(r.qualify(name));
+            for (String w : r.wildcards) prefixes(w + "." + name, out);
+        }
+    }
+
+    // a.b.Outer.Inner -> a.b.Outer: only top-level types are nodes' declarations
+    private static void qualified(String name, Map<String, int[]> types, Edges out) {
+        for (String n = name; ; ) {
+            int[] t = types.get(n);
+            if (t != null) { out.add(t); return; }
+            int dot = n.lastIndexOf('.');
+            if (dot < 0) return;
+            n = n.substring(0, dot);
+        }
+    }
+
+    private static void prefixes(String name, Consumer<String> out) {
+        for (String n = name; ; ) {
+            out.accept(n);
+            int dot = n.lastIndexOf('.');
+            if (dot < 0) return;
+            n = n.substring(0, dot);
+        }
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+}
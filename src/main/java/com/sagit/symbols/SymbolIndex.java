@@ -0,0 +1,292 @@
+package com.sagit.symbols;
+
+import com.sagit.git.GitService;
+import com.sagit.git.RenameDetection;
+import com.sagit.semantic.AnalysisPipeline;
+import com.sagit.semantic.BlobAnalyzer;
+import com.sagit.semantic.MemberTable;
+import com.sagit.semantic.MemberTable.Kind;
+import com.sagit.semantic.MemberTable.Member;
+import com.sagit.utils.SegmentDir;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Repo-wide symbol index in .sagit/symbols/: fully qualified types and members
+ * (as in {@link MemberTable}: "pkg.Type", "pkg.Type#method(String)") -> path and blob id,
+ * for the Java files of one commit.
+ *
+ * sym-NNNNNN.seg  immutable sorted segments ({@link SymbolSegment}); the first is a full
+ *                 build, each later one holds the symbols of the files a commit changed plus
+ *                 tombstones for the paths it replaces or deletes.
+ * deps-NNNNNN.bin the dependency graph of the same commit ({@link DependencyGraph}); an update
+ *                 derives it from the previous graph and the changed files' references, so
+ *                 unchanged blobs are neither read nor looked up in the reference cache.
+ * MANIFEST        the commit indexed, the live segments (oldest first) and the graph ({@link SegmentDir}).
+ * LOCK            held by writers only.
+ *
+ * Readers take a manifest snapshot and search the mapped segments newest first, skipping
+ * entries whose path a newer segment tombstoned, so they never lock and never see a half-
+ * applied update. Updates diff the indexed commit against the new one and only parse (or
+ * fetch from the member cache) the changed blobs; past {@link #MAX_SEGMENTS} the segments
+ * are merged into one.
+ */
+public final class SymbolIndex {
+
+    /** One resolved symbol. */
+    public record Symbol(String name, Kind kind, String path, ObjectId blob) {}
+
+    /** What a refresh did: "built", "updated", "current" or "compacted", with counts. */
+    public record Refresh(String action, int files, int segments) {}
+
+    private static final String MANIFEST_HEADER = "sagit-symbols 1 " + MemberTable.VERSION;
+    static final int MAX_SEGMENTS = 8;
+
+    private final ObjectId commit;
+    private final List<SymbolSegment> segments; // newest first
+    private final DependencyGraph graph;
+
+    private SymbolIndex(ObjectId commit, List<SymbolSegment> segments, DependencyGraph graph) {
+        this.commit = commit;
+        this.segments = segments;
+        this.graph = graph;
+    }
+
+    public static Path dir(Path root) {
+        return root.resolve(".sagit/symbols");
+    }
+
+    // segments and graphs share one counter, so a name is never reused
+    private static SegmentDir store(Path root) {
+        return new SegmentDir(dir(root), MANIFEST_HEADER, "sym-", "deps-");
+    }
+
+    /** The commit whose tree this snapshot describes. */
+    public ObjectId commit() {
+        return commit;
+    }
+
+    /** Reverse dependency graph of the same commit. */
+    public DependencyGraph graph() {
+        return graph;
+    }
+
+    // ---------- reads ----------
+
+    /** Snapshot of the current index, or null when there is none (or it is from another format). */
+    public static SymbolIndex open(Path root) throws IOException {
+        SegmentDir store = store(root);
+        return store.open(lines -> {
+            Manifest m = Manifest.parse(lines);
+            if (m == null) return null;
+            List<SymbolSegment> segs = new ArrayList<>(m.segments().size());
+            for (int i = m.segments().size() - 1; i >= 0; i--) segs.add(SymbolSegment.open(store.resolve(m.segments().get(i))));
+            return new SymbolIndex(m.commit(), segs, DependencyGraph.open(store.resolve(m.deps())));
+        });
+    }
+
+    /** Symbols named exactly {@code name} (several when two files declare the same type). */
+    public List<Symbol> lookup(String name) {
+        return find(name, false);
+    }
+
+    /** Symbols whose name starts with {@code prefix}, e.g. "pkg.Type#" for the members of a type. */
+    public List<Symbol> prefix(String prefix) {
+        return find(prefix, true);
+    }
+
+    private List<Symbol> find(String name, boolean prefix) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        List<Symbol> out = new ArrayList<>();
+        Set<String> dead = new HashSet<>();
+        for (SymbolSegment s : segments) {
+            for (int i = s.lowerBound(key); s.matches(i, key, prefix); i++) {
+                int p = s.pathIndex(i);
+                String path = s.path(p);
+                if (!dead.contains(path)) out.add(new Symbol(s.key(i), s.kind(i), path, s.blob(p)));
+            }
+            dead.addAll(s.tombstones);
+        }
+        if (segments.size() > 1) out.sort((a, b) -> a.name().compareTo(b.name()));
+        return out;
+    }
+
+    // every live entry, for compaction
+    private List<SymbolSegment.Entry> live() {
+        List<SymbolSegment.Entry> out = new ArrayList<>();
+        Set<String> dead = new HashSet<>();
+        for (SymbolSegment s : segments) {
+            for (int i = 0; i < s.size(); i++) {
+                int p = s.pathIndex(i);
+                String path = s.path(p);
+                if (!dead.contains(path)) out.add(new SymbolSegment.Entry(s.key(i), s.kind(i), path, s.blob(p)));
+            }
+            dead.addAll(s.tombstones);
+        }
+        return out;
+    }
+
+    // ---------- writes ----------
+
+    /**
+     * Bring the index to {@code commit}: a diff against the indexed commit when there is one,
+     * a full build otherwise (or when {@code rebuild}). Returns null, without building, when
+     * there is no index and {@code buildIfMissing} is false (the post-commit hook's case).
+     */
+    public static Refresh refresh(GitService gs, BlobAnalyzer analyzer, ObjectId commit, int jobs,
+                                  boolean buildIfMissing, boolean rebuild) throws IOException {
+        SegmentDir dir = store(gs.workTree());
+        if (!buildIfMissing && Manifest.read(dir) == null) return null;
+        return dir.locked(() -> {
+            try (RevWalk rw = new RevWalk(gs.repo())) {
+                Manifest m = rebuild ? null : Manifest.read(dir);
+                if (m == null && !buildIfMissing && !rebuild) return null;
+                RevCommit to = rw.parseCommit(commit);
+                if (m != null && m.commit().equals(to)) return new Refresh("current", 0, m.segments().size());
+
+                RevCommit from = null;
+                if (m != null && gs.repo().getObjectDatabase().has(m.commit())) from = rw.parseCommit(m.commit());
+                Refresh r = from == null
+                        ? build(gs, analyzer, dir, to, jobs)
+                        : update(gs, analyzer, dir, m, DependencyGraph.open(dir.resolve(m.deps())), from, to, jobs);
+                dir.deleteUnlisted();
+                return r;
+            }
+        });
+    }
+
+    private static Refresh build(GitService gs, BlobAnalyzer analyzer, SegmentDir dir, RevCommit to, int jobs)
+            throws IOException {
+        List<String> paths = new ArrayList<>();
+        List<ObjectId> blobs = new ArrayList<>();
+        javaFiles(gs, to, paths, blobs);
+        // the graph is written first so the one manifest that publishes the build names it
+        String deps = dir.nextFile("deps-", ".bin");
+        DependencyGraph.write(dir.resolve(deps), paths, blobs, AnalysisPipeline.references(gs, analyzer, blobs, jobs));
+        List<SymbolSegment.Entry> entries = entries(gs, analyzer, paths, blobs, jobs);
+        String seg = dir.nextFile("sym-", ".seg");
+        SymbolSegment.write(dir.resolve(seg), entries, List.of());
+        Manifest.write(dir, new Manifest(to.copy(), List.of(seg), deps));
+        return new Refresh("built", paths.size(), 1);
+    }
+
+    private static void javaFiles(GitService gs, RevCommit commit, List<String> paths, List<ObjectId> blobs)
+            throws IOException {
+        try (TreeWalk tw = new TreeWalk(gs.repo())) {
+            tw.addTree(commit.getTree());
+            tw.setRecursive(true);
+            tw.setFilter(PathSuffixFilter.create(".java"));
+            while (tw.next()) {
+                if (tw.getFileMode(0).getObjectType() != Constants.OBJ_BLOB) continue;
+                paths.add(tw.getPathString());
+                blobs.add(tw.getObjectId(0));
+            }
+        }
+    }
+
+    private static Refresh update(GitService gs, BlobAnalyzer analyzer, SegmentDir dir, Manifest m, DependencyGraph graph,
+                                  RevCommit from, RevCommit to, int jobs) throws IOException {
+        // plain tree diff: a rename is just a delete plus an add here
+        RenameDetection.Options off = gs.renameOptions().withMode(RenameDetection.Mode.OFF);
+        Set<String> tombstones = new LinkedHashSet<>();
+        List<String> paths = new ArrayList<>();
+        List<ObjectId> blobs = new ArrayList<>();
+        for (DiffEntry de : gs.scanBetween(from.getTree(), to.getTree(), off).entries()) {
+            if (isJava(de.getOldPath())) tombstones.add(de.getOldPath());
+            if (isJava(de.getNewPath()) && de.getNewMode() != FileMode.GITLINK) {
+                tombstones.add(de.getNewPath());
+                paths.add(de.getNewPath());
+                blobs.add(de.getNewId().toObjectId());
+            }
+        }
+
+        // the graph follows the same diff
+        String deps = m.deps();
+        if (!tombstones.isEmpty()) {
+            deps = dir.nextFile("deps-", ".bin");
+            DependencyGraph.update(dir.resolve(deps), graph, tombstones, paths, blobs,
+                    AnalysisPipeline.references(gs, analyzer, blobs, jobs));
+        }
+
+        List<String> segs = new ArrayList<>(m.segments());
+        if (!tombstones.isEmpty()) {
+            String seg = dir.nextFile("sym-", ".seg");
+            SymbolSegment.write(dir.resolve(seg), entries(gs, analyzer, paths, blobs, jobs), tombstones);
+            segs.add(seg);
+        }
+        if (segs.size() <= MAX_SEGMENTS) {
+            Manifest.write(dir, new Manifest(to.copy(), segs, deps));
+            return new Refresh("updated", tombstones.size(), segs.size());
+        }
+
+        // publish the update first, then merge everything live into a new base
+        Manifest.write(dir, new Manifest(to.copy(), segs, deps));
+        SymbolIndex snapshot = open(gs.workTree());
+        String base = dir.nextFile("sym-", ".seg");
+        SymbolSegment.write(dir.resolve(base), snapshot.live(), List.of());
+        Manifest.write(dir, new Manifest(to.copy(), List.of(base), deps));
+        return new Refresh("compacted", tombstones.size(), 1);
+    }
+
+    private static boolean isJava(String path) {
+        return path != null && !DiffEntry.DEV_NULL.equals(path) && path.endsWith(".java");
+    }
+
+    private static List<SymbolSegment.Entry> entries(GitService gs, BlobAnalyzer analyzer, List<String> paths,
+                                                     List<ObjectId> blobs, int jobs) throws IOException {
+        MemberTable[] tables = AnalysisPipeline.tables(gs, analyzer, blobs, jobs);
+        List<SymbolSegment.Entry> out = new ArrayList<>();
+        for (int i = 0; i < tables.length; i++) {
+            for (Member x : tables[i].members) {
+                String name = x.kind() == Kind.TYPE ? x.type() : x.type() + '#' + x.signature();
+                out.add(new SymbolSegment.Entry(name, x.kind(), paths.get(i), blobs.get(i)));
+            }
+        }
+        return out;
+    }
+
+    // ---------- manifest ----------
+
+    private record Manifest(ObjectId commit, List<String> segments, String deps) {
+
+        static Manifest read(SegmentDir dir) throws IOException {
+            return parse(dir.readManifest());
+        }
+
+        static Manifest parse(List<String> lines) {
+            if (lines == null || lines.isEmpty() || !lines.get(0).startsWith("commit ")) return null;
+            String id = lines.get(0).substring("commit ".length());
+            if (!ObjectId.isId(id)) return null;
+            List<String> segs = new ArrayList<>();
+            String deps = null;
+            for (String l : lines.subList(1, lines.size())) {
+                if (l.startsWith("seg ")) segs.add(l.substring(4));
+                else if (l.startsWith("deps ")) deps = l.substring(5);
+            }
+            return segs.isEmpty() || deps == null ? null : new Manifest(ObjectId.fromString(id), segs, deps);
+        }
+
+        static void write(SegmentDir dir, Manifest m) throws IOException {
+            List<String> lines = new ArrayList<>();
+            lines.add("commit " + m.commit().name());
+            for (String s : m.segments()) lines.add("seg " + s);
+            lines.add("deps " + m.deps());
+            dir.writeManifest(lines);
+        }
+    }
+}
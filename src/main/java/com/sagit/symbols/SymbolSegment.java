@@ -0,0 +1,199 @@
+package com.sagit.symbols;
+
+import com.sagit.semantic.MemberTable.Kind;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One immutable, memory-mapped segment of the symbol index.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header     magic "SGY1", format, entries, paths, tombstones, 0
+ * offsets    u32 per path, u32 per entry (entries sorted by UTF-8 key bytes), u32 per tombstone
+ * paths      [blob id (20)][u16 len][utf-8 path]
+ * entries    [kind u8][path index u32][u16 len][utf-8 key]
+ * tombstones [u16 len][utf-8 path]
+ * </pre>
+ * Tombstones name paths whose entries in older segments are dead (changed or deleted files);
+ * a base segment has none. Reads use absolute gets only, so one mapping serves any number of
+ * threads without locking.
+ */
+final class SymbolSegment {
+
+    private static final int MAGIC = 0x53475931; // "SGY1"
+    private static final int FORMAT = 1;
+    private static final int HEADER = 24;
+
+    /** A symbol to write: key, kind and the file (path, blob) declaring it. */
+    record Entry(String key, Kind kind, String path, ObjectId blob) {}
+
+    final Path file;
+    private final ByteBuffer buf;
+    private final int entries, paths;
+    private final int pathTable, entryTable;
+    final Set<String> tombstones;
+
+    private SymbolSegment(Path file, ByteBuffer buf) throws IOException {
+        this.file = file;
+        this.buf = buf;
+        if (buf.capacity() < HEADER || buf.getInt(0) != MAGIC || buf.getInt(4) != FORMAT) {
+            throw new IOException("not a symbol segment: " + file.getFileName());
+        }
+        entries = buf.getInt(8);
+        paths = buf.getInt(12);
+        int tombs = buf.getInt(16);
+        pathTable = HEADER;
+        entryTable = pathTable + 4 * paths;
+        int tombTable = entryTable + 4 * entries;
+        Set<String> t = new HashSet<>(tombs * 2);
+        for (int i = 0; i < tombs; i++) t.add(string(buf.getInt(tombTable + 4 * i)));
+        tombstones = t;
+    }
+
+    static SymbolSegment open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new SymbolSegment(file, map);
+        }
+    }
+
+    int size() { return entries; }
+
+    private int entryAt(int i) { return buf.getInt(entryTable + 4 * i); }
+
+    Kind kind(int i) { return Kind.values()[buf.get(entryAt(i))]; }
+
+    int pathIndex(int i) { return buf.getInt(entryAt(i) + 1); }
+
+    String key(int i) { return string(entryAt(i) + 5); }
+
+    String path(int p) { return string(buf.getInt(pathTable + 4 * p) + 20); }
+
+    ObjectId blob(int p) {
+        byte[] id = new byte[20];
+        buf.get(buf.getInt(pathTable + 4 * p), id);
+        return ObjectId.fromRaw(id);
+    }
+
+    /** First entry whose key is >= {@code key} in UTF-8 byte order. */
+    int lowerBound(byte[] key) {
+        int lo = 0, hi = entries;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKey(mid, key, false) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Whether entry i's key equals {@code key} (or starts with it, for a prefix). */
+    boolean matches(int i, byte[] key, boolean prefix) {
+        return i < entries && compareKey(i, key, prefix) == 0;
+    }
+
+    // unsigned byte order; as a prefix, a longer key that starts with `key` compares equal
+    private int compareKey(int i, byte[] key, boolean prefix) {
+        int at = entryAt(i) + 5;
+        int len = buf.getShort(at) & 0xffff;
+        int n = Math.min(len, key.length);
+        for (int j = 0; j < n; j++) {
+            int c = (buf.get(at + 2 + j) & 0xff) - (key[j] & 0xff);
+            if (c != 0) return c;
+        }
+        if (prefix && len >= key.length) return 0;
+        return Integer.compare(len, key.length);
+    }
+
+    private String string(int at) {
+        int len = buf.getShort(at) & 0xffff;
+        byte[] b = new byte[len];
+        buf.get(at + 2, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // ---------- writing ----------
+
+    /** Write a segment; the caller publishes it through the manifest. */
+    static void write(Path file, List<Entry> symbols, Collection<String> tombstones) throws IOException {
+        record Sorted(byte[] key, Entry e) {}
+        List<Sorted> sorted = new ArrayList<>(symbols.size());
+        for (Entry e : symbols) sorted.add(new Sorted(utf8(e.key()), e));
+        sorted.sort((a, b) -> Arrays.compareUnsigned(a.key(), b.key()));
+
+        Map<String, Integer> pathIds = new HashMap<>();
+        List<Entry> pathOrder = new ArrayList<>();
+        for (Sorted s : sorted) {
+            if (pathIds.putIfAbsent(s.e().path(), pathOrder.size()) == null) pathOrder.add(s.e());
+        }
+        List<byte[]> tombs = new ArrayList<>(tombstones.size());
+        for (String t : tombstones) tombs.add(utf8(t));
+
+        List<byte[]> pathBytes = new ArrayList<>(pathOrder.size());
+        long size = HEADER + 4L * (pathOrder.size() + sorted.size() + tombs.size());
+        for (Entry p : pathOrder) {
+            byte[] b = utf8(p.path());
+            pathBytes.add(b);
+            size += 22 + b.length;
+        }
+        for (Sorted s : sorted) size += 7 + s.key().length;
+        for (byte[] t : tombs) size += 2 + t.length;
+        if (size > Integer.MAX_VALUE) throw new IOException("symbol segment too large");
+
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC).putInt(FORMAT).putInt(sorted.size()).putInt(pathOrder.size()).putInt(tombs.size()).putInt(0);
+        int at = HEADER + 4 * (pathOrder.size() + sorted.size() + tombs.size());
+        for (int i = 0; i < pathOrder.size(); i++) {
+            out.putInt(at);
+            at += 22 + pathBytes.get(i).length;
+        }
+        for (Sorted s : sorted) {
+            out.putInt(at);
+            at += 7 + s.key().length;
+        }
+        for (byte[] t : tombs) {
+            out.putInt(at);
+            at += 2 + t.length;
+        }
+        for (int i = 0; i < pathOrder.size(); i++) {
+            pathOrder.get(i).blob().copyRawTo(out);
+            putString(out, pathBytes.get(i));
+        }
+        for (Sorted s : sorted) {
+            out.put((byte) s.e().kind().ordinal()).putInt(pathIds.get(s.e().path()));
+            putString(out, s.key());
+        }
+        for (byte[] t : tombs) putString(out, t);
+
+        out.flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) ch.write(out);
+            ch.force(false); // durable before the manifest can name it
+        }
+    }
+
+    private static byte[] utf8(String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xffff) throw new IOException("symbol name too long: " + s.substring(0, 80) + "...");
+        return b;
+    }
+
+    private static void putString(ByteBuffer out, byte[] b) {
+        out.putShort((short) b.length).put(b);
+    }
+}
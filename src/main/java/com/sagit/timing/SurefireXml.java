@@ -0,0 +1,74 @@
+package com.sagit.timing;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-class results from a Surefire/Failsafe (TEST-*.xml) or JUnit-style XML report, streamed
+ * with StAX. Each {@code testcase} adds its {@code time} to its {@code classname} (the
+ * enclosing suite's name when missing); a failure, error or flaky rerun marks the class
+ * failed. {@code testsuites} wrappers with several suites are fine.
+ */
+public final class SurefireXml {
+
+    private SurefireXml() {}
+
+    public static Map<String, TestHistory.Result> read(Path file) throws IOException {
+        XMLInputFactory f = XMLInputFactory.newFactory();
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        Map<String, double[]> seconds = new LinkedHashMap<>();
+        Map<String, Boolean> failed = new LinkedHashMap<>();
+        try (InputStream in = Files.newInputStream(file)) {
+            XMLStreamReader r = f.createXMLStreamReader(in);
+            String suite = "", testClass = null;
+            while (r.hasNext()) {
+                int ev = r.next();
+                if (ev == XMLStreamConstants.END_ELEMENT && "testcase".equals(r.getLocalName())) testClass = null;
+                if (ev != XMLStreamConstants.START_ELEMENT) continue;
+                switch (r.getLocalName()) {
+                    case "testsuite" -> suite = attr(r, "name");
+                    case "testcase" -> {
+                        String c = attr(r, "classname");
+                        testClass = c.isEmpty() ? suite : c;
+                        if (testClass.isEmpty()) break;
+                        seconds.computeIfAbsent(testClass, k -> new double[1])[0] += time(attr(r, "time"));
+                        failed.putIfAbsent(testClass, false);
+                    }
+                    case "failure", "error", "flakyFailure", "flakyError", "rerunFailure", "rerunError" -> {
+                        if (testClass != null && !testClass.isEmpty()) failed.put(testClass, true);
+                    }
+                    default -> { }
+                }
+            }
+            r.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(file.getFileName() + ": not a JUnit XML report (" + e.getMessage() + ")", e);
+        }
+        Map<String, TestHistory.Result> out = new LinkedHashMap<>();
+        seconds.forEach((c, s) -> out.put(c, new TestHistory.Result(s[0], failed.get(c))));
+        return out;
+    }
+
+    private static String attr(XMLStreamReader r, String name) {
+        String v = r.getAttributeValue(null, name);
+        return v == null ? "" : v;
+    }
+
+    // "0.123", and "1,234.5" as some locales write it
+    private static double time(String s) {
+        try {
+            return s.isEmpty() ? 0 : Math.max(0, Double.parseDouble(s.replace(",", "")));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
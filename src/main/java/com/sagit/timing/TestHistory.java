@@ -0,0 +1,184 @@
+package com.sagit.timing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Durations and failure history per test class, from ingested Surefire/JUnit XML reports
+ * (.sagit/tests/history.bin, replaced atomically under .sagit/tests/LOCK).
+ *
+ * Per class: a smoothed duration (exponentially weighted, {@link #ALPHA} for the newest run),
+ * the number of runs seen, and a 64-run failure register (bit 0 = the latest run that included
+ * the class). Classes are keyed by fully qualified name; impacted's test paths are mapped to it.
+ *
+ * Format: magic "SGT1", format, count, then per class (sorted by name)
+ * [utf name][double seconds][int runs][long failures].
+ */
+public final class TestHistory {
+
+    /** History of one test class. */
+    public record Entry(String test, double seconds, int runs, long failures) {
+        /** Failed in at least one of its last 64 runs. */
+        public boolean failedRecently() { return failures != 0; }
+    }
+
+    /** One class's outcome in an ingested run. */
+    public record Result(double seconds, boolean failed) {}
+
+    private static final int MAGIC = 0x53475431; // "SGT1"
+    private static final int FORMAT = 1;
+    static final double ALPHA = 0.3;
+    /** Estimate for a class with no history when nothing else is known. */
+    static final double DEFAULT_SECONDS = 1.0;
+
+    private final Map<String, Entry> entries;
+    private final Map<String, String> bySimpleName; // simple -> qualified, only when unique
+    private final double fallback;                  // median duration
+
+    private TestHistory(Map<String, Entry> entries) {
+        this.entries = entries;
+        this.bySimpleName = new HashMap<>();
+        Map<String, Integer> seen = new HashMap<>();
+        for (String t : entries.keySet()) {
+            String simple = t.substring(t.lastIndexOf('.') + 1);
+            if (seen.merge(simple, 1, Integer::sum) == 1) bySimpleName.put(simple, t);
+            else bySimpleName.remove(simple);
+        }
+        double[] d = entries.values().stream().mapToDouble(Entry::seconds).sorted().toArray();
+        this.fallback = d.length == 0 ? DEFAULT_SECONDS : d[d.length / 2];
+    }
+
+    public static Path dir(Path root) {
+        return root.resolve(".sagit/tests");
+    }
+
+    private static Path file(Path root) {
+        return dir(root).resolve("history.bin");
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** The history, empty when nothing was ingested yet. */
+    public static TestHistory load(Path root) throws IOException {
+        return new TestHistory(read(file(root)));
+    }
+
+    /** History of a test given as a class name or a source path (src/test/java/a/FooTest.java), or null. */
+    public Entry find(String testOrPath) {
+        String name = className(testOrPath);
+        Entry e = entries.get(name);
+        if (e != null) return e;
+        String q = bySimpleName.get(name.substring(name.lastIndexOf('.') + 1));
+        return q == null ? null : entries.get(q);
+    }
+
+    /** Expected seconds for a test; the median of known durations when it has no history. */
+    public double estimate(String testOrPath) {
+        Entry e = find(testOrPath);
+        return e == null ? fallback : e.seconds();
+    }
+
+    /**
+     * Recently failing tests first — the most recent failure first, then more failures — and the
+     * rest after them; the order among equals (and among tests that never failed) is kept.
+     */
+    public List<String> failFirst(List<String> tests) {
+        List<String> out = new ArrayList<>(tests);
+        out.sort(Comparator.comparingLong((String t) -> {
+            Entry e = find(t);
+            return e == null || e.failures() == 0 ? Long.MAX_VALUE : Long.numberOfTrailingZeros(e.failures());
+        }).thenComparingInt(t -> {
+            Entry e = find(t);
+            return e == null ? 0 : -Long.bitCount(e.failures());
+        }));
+        return out;
+    }
+
+    /** Entries by descending duration, for `tests stats`. */
+    public List<Entry> slowest(int limit) {
+        Entry[] all = entries.values().toArray(new Entry[0]);
+        Arrays.sort(all, Comparator.comparingDouble(Entry::seconds).reversed().thenComparing(Entry::test));
+        return Arrays.asList(all).subList(0, Math.min(limit, all.length));
+    }
+
+    // com.acme.FooTest, src/test/java/com/acme/FooTest.java, mod/src/it/java/com/acme/FooIT.java
+    static String className(String testOrPath) {
+        if (!testOrPath.endsWith(".java")) return testOrPath;
+        String p = testOrPath.substring(0, testOrPath.length() - ".java".length());
+        int java = p.lastIndexOf("/java/");
+        if (java >= 0) p = p.substring(java + "/java/".length());
+        else if (p.startsWith("java/")) p = p.substring("java/".length());
+        return p.replace('/', '.');
+    }
+
+    // ---------- writes ----------
+
+    /** Fold one run's results into the history; returns the number of classes now known. */
+    public static int record(Path root, Map<String, Result> results) throws IOException {
+        Path dir = dir(root);
+        Files.createDirectories(dir);
+        try (FileChannel lockCh = FileChannel.open(dir.resolve("LOCK"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockCh.lock()) {
+            Map<String, Entry> all = read(file(root));
+            for (Map.Entry<String, Result> r : results.entrySet()) {
+                Entry old = all.get(r.getKey());
+                double secs = r.getValue().seconds();
+                long bit = r.getValue().failed() ? 1 : 0;
+                all.put(r.getKey(), old == null
+                        ? new Entry(r.getKey(), secs, 1, bit)
+                        : new Entry(r.getKey(), ALPHA * secs + (1 - ALPHA) * old.seconds(), old.runs() + 1,
+                                (old.failures() << 1) | bit));
+            }
+            write(file(root), all);
+            return all.size();
+        }
+    }
+
+    private static Map<String, Entry> read(Path file) throws IOException {
+        Map<String, Entry> out = new TreeMap<>();
+        if (!Files.exists(file)) return out;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) return out; // other format: start over
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                Entry e = new Entry(in.readUTF(), in.readDouble(), in.readInt(), in.readLong());
+                out.put(e.test(), e);
+            }
+        }
+        return out;
+    }
+
+    private static void write(Path file, Map<String, Entry> entries) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(entries.size());
+            for (Entry e : entries.values()) {
+                out.writeUTF(e.test());
+                out.writeDouble(e.seconds());
+                out.writeInt(e.runs());
+                out.writeLong(e.failures());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -1,8 +1,10 @@
 package com.sagit.utils;
 
-import java.io.BufferedReader;
+import com.sagit.metrics.Metrics;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -12,17 +14,27 @@ import java.util.EnumSet;
 import java.util.Set;
 
 public class FS {
-    public static Path repoRoot() throws IOException, InterruptedException {
-        Process p = new ProcessBuilder("git", "rev-parse", "--show-toplevel")
-                .redirectErrorStream(true).start();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-            String line = br.readLine();
-            p.waitFor();
-            if (line == null || line.isBlank()) {
-                throw new IOException("Not a git repository (or no git in PATH)");
-            }
-            return Paths.get(line).toAbsolutePath().normalize();
+    private static volatile Path repoRoot; // resolved once per process
+
+    /** Work tree top-level, found like `git rev-parse --show-toplevel` (GIT_DIR/GIT_WORK_TREE aware) without forking git. */
+    public static Path repoRoot() throws IOException {
+        Path r = repoRoot;
+        if (r != null) return r;
+        long t = Metrics.start(); // timed only when it is actually resolved
+        FileRepositoryBuilder b = new FileRepositoryBuilder()
+                .readEnvironment()
+                .findGitDir(new File("").getAbsoluteFile());
+        if (b.getGitDir() == null) {
+            throw new IOException("Not a git repository (or any of the parent directories)");
         }
+        b.setup();
+        if (b.isBare() || b.getWorkTree() == null) {
+            throw new IOException("Not inside a work tree (bare repository " + b.getGitDir() + ")");
+        }
+        r = b.getWorkTree().toPath().toAbsolutePath().normalize();
+        repoRoot = r;
+        Metrics.stop(Metrics.Phase.REPO_ROOT, t);
+        return r;
     }
 
     public static Path ensureDir(Path dir) throws IOException {
@@ -48,6 +60,20 @@ public class FS {
         Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
     }
 
+    /** Hex SHA-256 of a file's contents. */
+    public static String sha256(Path file) throws IOException {
+        try {
+            java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
+            try (var in = Files.newInputStream(file)) {
+                byte[] buf = new byte[1 << 16];
+                for (int n; (n = in.read(buf)) > 0; ) md.update(buf, 0, n);
+            }
+            return java.util.HexFormat.of().formatHex(md.digest());
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
     public static Path jarSelf() {
         return Paths.get(SagitJarLocator.locate());
     }
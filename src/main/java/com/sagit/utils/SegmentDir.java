@@ -0,0 +1,145 @@
+package com.sagit.utils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * A directory of immutable, numbered files published by one manifest (the symbol and coverage
+ * indexes):
+ *
+ * MANIFEST  a header line, then "key value..." lines naming the live files; replaced atomically.
+ * LOCK      held by writers only.
+ *
+ * Readers take a manifest snapshot and open what it names, so they never lock. Files are named
+ * prefix + six-digit number + suffix from one counter shared by all prefixes, so a name is never
+ * reused while a reader may still have the old file mapped.
+ */
+public final class SegmentDir {
+
+    /** Opens the files a manifest names; a NoSuchFileException makes {@link #open} retry. */
+    public interface Reader<T> {
+        T read(List<String> manifest) throws IOException;
+    }
+
+    /** A write done under the directory's lock. */
+    public interface Writer<T> {
+        T write() throws IOException;
+    }
+
+    // FileLock is per process: threads of one JVM also serialize on a monitor per directory
+    private static final ConcurrentHashMap<Path, Object> WRITERS = new ConcurrentHashMap<>();
+
+    private final Path dir;
+    private final String header;
+    private final List<String> prefixes;
+
+    /** {@code prefixes} are the file name prefixes this directory owns, e.g. "sym-", "deps-". */
+    public SegmentDir(Path dir, String header, String... prefixes) {
+        this.dir = dir;
+        this.header = header;
+        this.prefixes = List.of(prefixes);
+    }
+
+    public Path resolve(String name) {
+        return dir.resolve(name);
+    }
+
+    // ---------- manifest ----------
+
+    /** The manifest's lines after the header, or null when there is none (or it has another header). */
+    public List<String> readManifest() throws IOException {
+        Path f = dir.resolve("MANIFEST");
+        if (!Files.exists(f)) return null;
+        List<String> lines = Files.readAllLines(f, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(header)) return null;
+        return lines.subList(1, lines.size());
+    }
+
+    public void writeManifest(List<String> lines) throws IOException {
+        StringBuilder sb = new StringBuilder(header).append('\n');
+        for (String l : lines) sb.append(l).append('\n');
+        Path tmp = dir.resolve("MANIFEST.tmp");
+        Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve("MANIFEST"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** What {@code reader} makes of the current manifest, or null when there is none. */
+    public <T> T open(Reader<T> reader) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            List<String> m = readManifest();
+            if (m == null) return null;
+            try {
+                return reader.read(m);
+            } catch (NoSuchFileException e) {
+                // a writer compacted between our manifest read and the open: take the new manifest
+                if (attempt == 3) throw e;
+            }
+        }
+    }
+
+    // ---------- writes ----------
+
+    /** Runs {@code writer} holding the LOCK file and the in-process monitor of this directory. */
+    public <T> T locked(Writer<T> writer) throws IOException {
+        Files.createDirectories(dir);
+        synchronized (WRITERS.computeIfAbsent(dir.toAbsolutePath().normalize(), k -> new Object())) {
+            try (FileChannel lockCh = FileChannel.open(dir.resolve("LOCK"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockCh.lock()) {
+                return writer.write();
+            }
+        }
+    }
+
+    /** A fresh file name, e.g. nextFile("sym-", ".seg") -> "sym-000007.seg". */
+    public String nextFile(String prefix, String suffix) throws IOException {
+        int max = 0;
+        try (Stream<Path> s = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                Integer n = fileNumber(p.getFileName().toString());
+                if (n != null) max = Math.max(max, n);
+            }
+        }
+        return String.format("%s%06d%s", prefix, max + 1, suffix);
+    }
+
+    private Integer fileNumber(String name) {
+        int dot = name.lastIndexOf('.');
+        for (String prefix : prefixes) {
+            if (!name.startsWith(prefix) || dot <= prefix.length()) continue;
+            try {
+                return Integer.parseInt(name.substring(prefix.length(), dot));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /** Deletes the files no manifest line names any more (merged or replaced, or left by a crash). */
+    public void deleteUnlisted() throws IOException {
+        List<String> m = readManifest();
+        Set<String> keep = new HashSet<>();
+        if (m != null) for (String l : m) keep.addAll(List.of(l.split(" ")));
+        try (Stream<Path> s = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                String name = p.getFileName().toString();
+                if (fileNumber(name) == null || keep.contains(name)) continue;
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) { /* still mapped by a reader (Windows): next time */ }
+            }
+        }
+    }
+}